@@ -0,0 +1,119 @@
+package com.rmouduri.fixme;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Fix messages of the kinds the Router forwards, and a mix of them in realistic proportions
+ */
+public final class BenchmarkMessages {
+    public static final String ORDER = "ORDER";
+    public static final String REJECT = "REJECT";
+    public static final String EXECUTION = "EXECUTION";
+    public static final String LONG_TEXT = "LONG_TEXT";
+    public static final String MIX = "MIX";
+
+    /* Out of 100 messages of the mix: orders, execution reports, rejects, then execution reports with a long text */
+    private static final int[] MIX_WEIGHTS = { 55, 35, 8, 2 };
+    private static final String[] MIX_KINDS = { ORDER, EXECUTION, REJECT, LONG_TEXT };
+    private static final int LONG_TEXT_LENGTH = 1024;
+    private static final String[] INSTRUMENTS = { "AAPL", "MSFT", "AMZN", "GOOGL", "TSLA", "META", "BRK.B",
+            "NVDA", "JNJ", "V" };
+
+    private final FixMessage[] messages;
+    private final FixLayout[] layouts;
+    private final String[] wires;
+    private final byte[][] bytes;
+
+    /**
+     * @param kind One of the message kinds, or MIX
+     */
+    public BenchmarkMessages(final String kind) throws FixMessageException {
+        final Random random = new Random(42);
+        final List<String> kinds = new ArrayList<>();
+
+        if (MIX.equals(kind)) {
+            for (int i = 0; i < MIX_KINDS.length; ++i) {
+                kinds.addAll(Collections.nCopies(MIX_WEIGHTS[i], MIX_KINDS[i]));
+            }
+            Collections.shuffle(kinds, random);
+        } else {
+            kinds.add(kind);
+        }
+
+        this.messages = new FixMessage[kinds.size()];
+        this.layouts = new FixLayout[kinds.size()];
+        this.wires = new String[kinds.size()];
+        this.bytes = new byte[kinds.size()][];
+
+        for (int i = 0; i < kinds.size(); ++i) {
+            this.messages[i] = createMessage(kinds.get(i), random);
+            this.layouts[i] = layoutOf(kinds.get(i));
+            this.wires[i] = this.messages[i].buildMessage(this.layouts[i]);
+            this.bytes[i] = this.wires[i].getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static FixMessage createMessage(final String kind, final Random random) {
+        final FixMessage message = new FixMessage();
+        final String broker = String.format("Broker%06d", random.nextInt(1, 1000));
+        final String market = String.format("Market%06d", random.nextInt(1, 1000));
+        final String instrument = INSTRUMENTS[random.nextInt(INSTRUMENTS.length)];
+        final int quantity = random.nextInt(1, 5000);
+        final double price = random.nextInt(2_000_000, 1_000_000_000) / 1e6;
+
+        switch (kind) {
+            case ORDER -> {
+                message.setSenderId(broker);
+                message.setDestId(market);
+                message.setOrderType(random.nextBoolean() ? FixMessage.BUY_ORDER : FixMessage.SELL_ORDER);
+                message.setInstrument(instrument);
+                message.setQuantity(quantity);
+                message.setPrice(price);
+                message.setClOrdId(Integer.toString(random.nextInt(1, 1_000_000)));
+            }
+            case REJECT -> {
+                message.setSenderId(market);
+                message.setDestId(broker);
+                message.setText(String.format("Not enough instruments (%d in stock)", quantity));
+            }
+            case EXECUTION -> {
+                message.setSenderId(market);
+                message.setDestId(broker);
+                message.setText(String.format("Buy order of %d %s for %f$ executed", quantity, instrument, price));
+            }
+            case LONG_TEXT -> {
+                final char[] text = new char[LONG_TEXT_LENGTH];
+
+                Arrays.fill(text, 'x');
+                message.setSenderId(market);
+                message.setDestId(broker);
+                message.setText(new String(text));
+            }
+            default -> throw new IllegalArgumentException(String.format("Unknown message kind `%s'", kind));
+        }
+        return message;
+    }
+
+    private static FixLayout layoutOf(final String kind) {
+        return switch (kind) {
+            case ORDER -> FixLayout.NEW_ORDER;
+            case REJECT -> FixLayout.REJECT;
+            default -> FixLayout.EXECUTION;
+        };
+    }
+
+    public int size() { return this.messages.length; }
+
+    public FixMessage getMessage(final int index) { return this.messages[index]; }
+
+    public FixLayout getLayout(final int index) { return this.layouts[index]; }
+
+    public String getWire(final int index) { return this.wires[index]; }
+
+    public byte[] getBytes(final int index) { return this.bytes[index]; }
+}
@@ -0,0 +1,87 @@
+package com.rmouduri.fixme;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checksum validation as FixMessage did it, splitting the message on `10=' and summing a copy of its characters,
+ * against FixChecksum reading the message in place, with and without the Vector API
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChecksumBenchmark {
+    private static final String VECTOR_MODULE = "--add-modules=jdk.incubator.vector";
+
+    @Param({ BenchmarkMessages.ORDER, BenchmarkMessages.EXECUTION, BenchmarkMessages.LONG_TEXT,
+            BenchmarkMessages.MIX })
+    public String kind;
+
+    private BenchmarkMessages messages;
+    private int[] checksums;
+    private int next;
+
+    @Setup
+    public void setup() throws FixMessageException {
+        this.messages = new BenchmarkMessages(this.kind);
+        this.checksums = new int[this.messages.size()];
+        for (int i = 0; i < this.messages.size(); ++i) {
+            this.checksums[i] = new FixMessage(this.messages.getWire(i)).getChecksum();
+        }
+    }
+
+    private int next() {
+        final int index = this.next;
+
+        this.next = index + 1 == this.messages.size() ? 0 : index + 1;
+        return index;
+    }
+
+    /**
+     * FixMessage.validateChecksum before FixChecksum
+     */
+    @Benchmark
+    public boolean splitAndSumChars() {
+        final int index = this.next();
+        final String message = this.messages.getWire(index).split("10=")[0];
+        int checksum = 0;
+
+        for (char c : message.toCharArray()) {
+            checksum += c;
+        }
+        return this.checksums[index] == checksum % 256;
+    }
+
+    /**
+     * FixMessage.validateChecksum, reading its String in place
+     */
+    @Benchmark
+    public boolean validateString() {
+        return FixChecksum.validate(this.messages.getWire(this.next()));
+    }
+
+    /**
+     * Wire bytes summed eight at a time in a long
+     */
+    @Benchmark
+    public boolean validateBytes() {
+        final byte[] bytes = this.messages.getBytes(this.next());
+
+        return FixChecksum.validate(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Wire bytes summed with the Vector API
+     */
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = VECTOR_MODULE)
+    public boolean validateBytesVector() {
+        final byte[] bytes = this.messages.getBytes(this.next());
+
+        return FixChecksum.validate(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,183 @@
+package com.rmouduri.fixme;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse, build and checksum paths of Fix messages, for each kind of message and for a realistic mix of them
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FixMessageBenchmark {
+    @Param({ BenchmarkMessages.ORDER, BenchmarkMessages.REJECT, BenchmarkMessages.EXECUTION,
+            BenchmarkMessages.LONG_TEXT, BenchmarkMessages.MIX })
+    public String kind;
+
+    private BenchmarkMessages messages;
+    private FixMessage[] parsed;
+    private LinkedHashSet<Integer>[] identifiers;
+    private final FixDecoder decoder = new FixDecoder();
+    private final FixEncoder encoder = new FixEncoder();
+    private final FixBinaryDecoder binaryDecoder = new FixBinaryDecoder();
+    private final FixBinaryEncoder binaryEncoder = new FixBinaryEncoder();
+    private byte[][] frames;
+    private int next;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws FixMessageException {
+        this.messages = new BenchmarkMessages(this.kind);
+        this.parsed = new FixMessage[this.messages.size()];
+        this.identifiers = new LinkedHashSet[this.messages.size()];
+        this.frames = new byte[this.messages.size()][];
+
+        for (int i = 0; i < this.messages.size(); ++i) {
+            final FixLayout layout = this.messages.getLayout(i);
+
+            this.parsed[i] = new FixMessage(this.messages.getWire(i));
+            this.identifiers[i] = new LinkedHashSet<>();
+            for (int field = 0; field < layout.getFieldCount(); ++field) {
+                this.identifiers[i].add(layout.getTag(field));
+            }
+
+            final byte[] bytes = this.messages.getBytes(i);
+            FixTranslator.toBinary(this.decoder.wrap(bytes, 0, bytes.length), this.binaryEncoder);
+            this.frames[i] = Arrays.copyOf(this.binaryEncoder.getBuffer(), this.binaryEncoder.getLength());
+        }
+    }
+
+    private int next() {
+        final int index = this.next;
+
+        this.next = index + 1 == this.messages.size() ? 0 : index + 1;
+        return index;
+    }
+
+    /**
+     * Router and Market path before the decoder: a String per line, parsed into a FixMessage
+     */
+    @Benchmark
+    public FixMessage parseFixMessage() throws FixMessageException {
+        return new FixMessage(this.messages.getWire(this.next()));
+    }
+
+    /**
+     * Single-pass decoding of the line bytes, reading the fields the Router routes on
+     */
+    @Benchmark
+    public void decode(final Blackhole blackhole) throws FixMessageException {
+        final byte[] bytes = this.messages.getBytes(this.next());
+
+        this.decoder.wrap(bytes, 0, bytes.length);
+        blackhole.consume(this.decoder.indexOf(FixMessage.SENDER_IDENTIFIER));
+        blackhole.consume(this.decoder.getString(FixMessage.DEST_IDENTIFIER));
+    }
+
+    /**
+     * Same fields read after indexing only the routing fields, as the Router scans the messages it forwards
+     */
+    @Benchmark
+    public void decodeRouting(final Blackhole blackhole) throws FixMessageException {
+        final byte[] bytes = this.messages.getBytes(this.next());
+
+        this.decoder.wrapRouting(bytes, 0, bytes.length);
+        blackhole.consume(this.decoder.indexOf(FixMessage.SENDER_IDENTIFIER));
+        blackhole.consume(this.decoder.getString(FixMessage.DEST_IDENTIFIER));
+    }
+
+    /**
+     * Same fields read from the binary frame of the message
+     */
+    @Benchmark
+    public void decodeBinary(final Blackhole blackhole) throws FixMessageException {
+        final byte[] frame = this.frames[this.next()];
+
+        this.binaryDecoder.wrap(frame, 0, frame.length);
+        blackhole.consume(this.binaryDecoder.indexOf(FixMessage.SENDER_IDENTIFIER));
+        blackhole.consume(this.binaryDecoder.getString(FixMessage.DEST_IDENTIFIER));
+    }
+
+    @Benchmark
+    public String buildMessage() throws FixMessageException {
+        final int index = this.next();
+
+        return this.messages.getMessage(index).buildMessage(new LinkedHashSet<>(this.identifiers[index]));
+    }
+
+    @Benchmark
+    public String buildMessageWithLayout() throws FixMessageException {
+        final int index = this.next();
+
+        return this.messages.getMessage(index).buildMessage(this.messages.getLayout(index));
+    }
+
+    /**
+     * Reused encoder writing the fields of the message, as the Market and Broker send them
+     */
+    @Benchmark
+    public int encode() throws FixMessageException {
+        return this.encode(this.encoder, this.next());
+    }
+
+    /**
+     * Same fields written as a binary frame, as sessions which chose binary at Logon send them
+     */
+    @Benchmark
+    public int encodeBinary() throws FixMessageException {
+        return this.encode(this.binaryEncoder, this.next());
+    }
+
+    /**
+     * Text to binary translation, as the Router does between sessions of different encodings
+     */
+    @Benchmark
+    public int translateToBinary() throws FixMessageException {
+        final byte[] bytes = this.messages.getBytes(this.next());
+
+        return FixTranslator.toBinary(this.decoder.wrap(bytes, 0, bytes.length), this.binaryEncoder).getLength();
+    }
+
+    private int encode(final FixMessageEncoder messageEncoder, final int index) throws FixMessageException {
+        final FixMessage message = this.messages.getMessage(index);
+        final FixLayout layout = this.messages.getLayout(index);
+
+        messageEncoder.begin(layout);
+        for (int field = 0; field < layout.getFieldCount(); ++field) {
+            switch (layout.getTag(field)) {
+                case FixMessage.SENDER_IDENTIFIER -> messageEncoder.putString(message.getSenderId());
+                case FixMessage.DEST_IDENTIFIER -> messageEncoder.putString(message.getDestId());
+                case FixMessage.INSTRUMENT_IDENTIFIER -> messageEncoder.putString(message.getInstrument());
+                case FixMessage.TEXT_IDENTIFIER -> messageEncoder.putString(message.getText());
+                case FixMessage.QUANTITY_IDENTIFIER -> messageEncoder.putInt(message.getQuantity());
+                case FixMessage.ORDER_TYPE_IDENTIFIER -> messageEncoder.putInt(message.getOrderType());
+                case FixMessage.PRICE_IDENTIFIER -> messageEncoder.putPrice(message.getPrice());
+                case FixMessage.CLORDID_IDENTIFIER -> messageEncoder.putString(message.getClOrdId());
+                default -> throw new FixMessageException("Unexpected identifier in benchmark layout.");
+            }
+        }
+        return messageEncoder.finish().getLength();
+    }
+
+    @Benchmark
+    public boolean validateChecksum() {
+        return this.parsed[this.next()].validateChecksum();
+    }
+
+    /**
+     * Checksum computed by the decoder while it scans the message
+     */
+    @Benchmark
+    public boolean decodeAndValidateChecksum() throws FixMessageException {
+        final byte[] bytes = this.messages.getBytes(this.next());
+
+        return this.decoder.wrap(bytes, 0, bytes.length).validateChecksum();
+    }
+}
@@ -0,0 +1,123 @@
+package com.rmouduri.fixme;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Router session id allocation, with the id space partly used, alone and with concurrent logons
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdAllocatorBenchmark {
+    /* Share of the id space held by connected sessions */
+    @Param({ "0", "50", "99" })
+    public int usedPercent;
+
+    private IdAllocator allocator;
+    private SessionRegistry registry;
+    private final Session session = new IdleSession();
+
+    @Setup
+    public void setup() {
+        final int used = (int) ((long) IdAllocator.MAX_ID * this.usedPercent / 100);
+
+        this.allocator = new IdAllocator();
+        this.registry = new SessionRegistry();
+        for (int i = 0; i < used; ++i) {
+            this.allocator.allocate();
+            this.registry.reserve(String.format("Broker%06d", i + 1));
+        }
+    }
+
+    @Benchmark
+    public int allocateRelease() {
+        final int id = this.allocator.allocate();
+
+        this.allocator.release(id);
+        return id;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int allocateReleaseContended() {
+        return this.allocateRelease();
+    }
+
+    /**
+     * Logon and logout of a Broker without a requested id
+     */
+    @Benchmark
+    public String registerUnregister() {
+        final String id = this.registry.register(null, "Broker", this.session);
+
+        this.registry.unregister(id, this.session, false);
+        return id;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public String registerUnregisterContended() {
+        return this.registerUnregister();
+    }
+
+    /**
+     * Session that is never written to
+     */
+    private static final class IdleSession implements Session {
+        @Override
+        public void write(final byte[] buffer, final int offset, final int length) {}
+
+        @Override
+        public void writeConflated(final ConflationSlot slot, final byte[] frame) {}
+
+        @Override
+        public boolean isBinary() { return false; }
+
+        @Override
+        public void setBinary(final boolean binary) {}
+
+        @Override
+        public SessionSequence getSequence() { return null; }
+
+        @Override
+        public void setSequence(final SessionSequence sequence) {}
+
+        @Override
+        public boolean isIdGranted() { return false; }
+
+        @Override
+        public void setIdGranted(final boolean idGranted) {}
+
+        @Override
+        public Liveness getLiveness() { return null; }
+
+        @Override
+        public boolean isBackedUp() { return false; }
+
+        @Override
+        public long getQueuedBytes() { return 0; }
+
+        @Override
+        public void whenDrained(final Runnable task) { task.run(); }
+
+        @Override
+        public void pauseUntilDrained(final Session destination) {}
+
+        @Override
+        public boolean isClosed() { return false; }
+
+        @Override
+        public void close() {}
+
+        @Override
+        public void abort() {}
+
+        @Override
+        public void closeWhenFlushed() {}
+    }
+}
@@ -2,7 +2,14 @@ package com.rmouduri.fixme;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 
 public class Broker {
     public static final String RESET = "\u001B[0m";
@@ -10,11 +17,41 @@ public class Broker {
     public static final String GREEN = "\u001B[32m";
     public static final String CYAN = "\u001B[36m";
 
-    private final static short BROKER_PORT = 5000;
-    private final static String LOCAL = "localhost";
+    /* Routers tried in turn, `host:port' separated by commas */
+    private final static String[] ROUTERS = System.getProperty("fixme.broker.router", "localhost:5000").split(",");
+    /* Redirects followed to reach the node of a Router cluster owning the Broker's id */
+    private final static int MAX_REDIRECTS = 4;
+    private final static int RECONNECT_ATTEMPTS = 3;
+    private final static int RECONNECT_DELAY_MILLIS = 1000;
+    private final static String MODE = System.getProperty("fixme.broker.mode", "interactive");
+    /* Wire encoding asked for at Logon, `text' or `binary' */
+    private final static String ENCODING = System.getProperty("fixme.broker.encoding", "text");
+    /* Orders submitted and not answered yet, beyond which submitOrder waits */
+    private final static int WINDOW = Integer.getInteger("fixme.broker.window", 1024);
+    /* Last orders sent kept for resending after a reconnection, the older ones being skipped */
+    private final static int RESEND_WINDOW = Integer.getInteger("fixme.broker.resend.window", 1024);
+    private final static String USAGE = "Usage:\n  [buy/sell] MARKET_ID INSTRUMENT QUANTITY PRICE\n"
+            + "Or\n  [subscribe/unsubscribe] MARKET_ID INSTRUMENT\nOr\n  exit";
 
     private String id;
     private Socket socket;
+    private OutputStream out;
+    private FixLineReader in;
+    private final ReentrantLock outLock = new ReentrantLock();
+    private FixMessageEncoder encoder;
+    /* Whether the Router granted binary frames at Logon */
+    private boolean binary;
+    private final AtomicLong nextClOrdId = new AtomicLong();
+    /* Futures of the orders waiting for their first report, by ClOrdID */
+    private final ConcurrentHashMap<Long, CompletableFuture<OrderReport>> pendingOrders = new ConcurrentHashMap<>();
+    private final Semaphore window = new Semaphore(WINDOW);
+    /* MsgSeqNums of the session, kept across connections so only the missed messages are resent */
+    private final SessionSequence sequence = new SessionSequence(RESEND_WINDOW);
+    /* Last quotes received, by market and instrument */
+    private final ConcurrentHashMap<String, Quote> quotes = new ConcurrentHashMap<>();
+    private volatile Consumer<Quote> quoteListener;
+    /* Console of the interactive mode, closed when the Router goes away */
+    private Scanner scanner;
     private volatile boolean running;
 
     public Broker() {
@@ -31,57 +68,354 @@ public class Broker {
 
     public void start() {
         try {
-            this.socket = new Socket(LOCAL, BROKER_PORT);
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
-            BufferedReader in = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
-
-            out.write(String.format("%s\n", this.getId()));
-            out.flush();
-
-            final FixMessage identificationFixMessage = new FixMessage(in.readLine());
-            if (!identificationFixMessage.getMsgType().equals("A")
-                    || !identificationFixMessage.getSenderId().equals("Router")) {
-                throw new BrokerException(String.format("Invalid identification message from Router: `%s'.",
-                        identificationFixMessage.getMessage()));
+            this.connect();
+
+            if (MODE.equals("load")) {
+                new LoadGenerator(this.getId(), this.out, this.binary).run(this.in);
+                this.socket.close();
+                return;
             }
 
-            this.setId(identificationFixMessage.getUserId());
-            System.out.printf("New Broker Id: %s\n", this.getId());
-
-            Scanner scanner = new Scanner(System.in);
-            this.running = true;
-            Thread listeningThread = new Thread(() -> {
-                while (this.running) {
-                    try {
-                        final String message = in.readLine();
-
-                        if (message != null) {
-                            FixMessage fixMessage = new FixMessage(message);
-
-                            System.out.printf("Received %s message from %s: `%s'\n",
-                                    fixMessage.getMsgType().equals(FixMessage.REJECTED_MSG_TYPE) ?
-                                            RED + "Rejected" + RESET: GREEN + "Executed" + RESET,
-                                    fixMessage.getSenderId(), fixMessage.getText());
-                        } else {
-                            scanner.close();
-                            break;
+            this.scanner = new Scanner(System.in);
+            this.startListening();
+            this.handleOrders(this.scanner);
+            this.close();
+        } catch (IOException | FixMessageException | BrokerException e) {
+            Log.error("Error in broker: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Connect to the first Router of `fixme.broker.router' that answers and log on, its Logon giving the Broker
+     * its id and wire encoding
+     */
+    public void connect() throws IOException, FixMessageException, BrokerException {
+        IOException failure = null;
+
+        for (final String router : ROUTERS) {
+            try {
+                this.connect(router.trim(), MAX_REDIRECTS);
+                return;
+            } catch (IOException e) {
+                Log.warn("Router %s unreachable: %s", router, e.getMessage());
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Connect to the Router at @param address and log on, following at most @param redirects Logouts of a
+     * clustered Router moving the Broker to the node owning its id.
+     * The new connection replaces the previous one, if any: the Logon then tells the last MsgSeqNum the Broker
+     * processed, and the orders the Router did not get are resent from the last number it processed.
+     */
+    private void connect(final String address, final int redirects)
+            throws IOException, FixMessageException, BrokerException {
+        final Socket newSocket = new Socket();
+        final FixDecoder decoder = new FixDecoder();
+
+        try {
+            newSocket.connect(Address.parse(address));
+        } catch (IllegalArgumentException e) {
+            throw new BrokerException(e.getMessage());
+        }
+
+        final OutputStream newOut = new BufferedOutputStream(newSocket.getOutputStream());
+        final FixLineReader newIn = new FixLineReader(newSocket.getInputStream());
+        if (this.socket != null) {
+            final FixEncoder logon = new FixEncoder().begin(FixLayout.SEQUENCED_LOGON).putString(this.getId())
+                    .putString(ENCODING.equalsIgnoreCase("binary") ? FixMessage.BINARY_ENCODING
+                            : FixMessage.TEXT_ENCODING).putLong(this.sequence.getLastReceived()).finish();
+
+            newOut.write(logon.getBuffer(), 0, logon.getLength());
+            newOut.write('\n');
+        } else if (ENCODING.equalsIgnoreCase("binary")) {
+            final FixEncoder logon = new FixEncoder().begin(FixLayout.LOGON_REQUEST).putString(this.getId())
+                    .putString(FixMessage.BINARY_ENCODING).finish();
+
+            newOut.write(logon.getBuffer(), 0, logon.getLength());
+            newOut.write('\n');
+        } else {
+            newOut.write(String.format("%s\n", this.getId()).getBytes(StandardCharsets.US_ASCII));
+        }
+        newOut.flush();
+
+        if (!newIn.next()) {
+            newSocket.close();
+            throw new BrokerException("Connection closed by Router before identification.");
+        }
+        decoder.wrap(newIn.getBuffer(), newIn.getOffset(), newIn.getLength());
+        if (decoder.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.LOGOUT_MSG_TYPE)
+                && decoder.contains(FixMessage.REDIRECT_IDENTIFIER)) {
+            final String redirect = decoder.getString(FixMessage.REDIRECT_IDENTIFIER);
+
+            newSocket.close();
+            if (redirects == 0) {
+                throw new BrokerException("Too many redirects between Routers.");
+            }
+            Log.info("Redirected to Router %s", redirect);
+            this.connect(redirect, redirects - 1);
+            return;
+        }
+        if (!decoder.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.LOGON_MSG_TYPE)
+                || !decoder.valueEquals(FixMessage.SENDER_IDENTIFIER, "Router")) {
+            newSocket.close();
+            throw new BrokerException(String.format("Invalid identification message from Router: `%s'.",
+                    decoder));
+        }
+
+        this.setId(decoder.getString(FixMessage.USERID_IDENTIFIER));
+        final boolean newBinary = decoder.valueEquals(FixMessage.ENCODING_IDENTIFIER, FixMessage.BINARY_ENCODING);
+        if (ENCODING.equalsIgnoreCase("binary") && !newBinary) {
+            Log.warn("Binary encoding not granted by Router, using text.");
+        }
+        newIn.setBinary(newBinary);
+
+        this.outLock.lock();
+        try {
+            if (this.socket != null) {
+                this.socket.close();
+            }
+            this.socket = newSocket;
+            this.out = newOut;
+            this.in = newIn;
+            this.binary = newBinary;
+            this.encoder = newBinary ? new FixBinaryEncoder() : new FixEncoder();
+            if (decoder.contains(FixMessage.LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER)) {
+                final long lastProcessed = decoder.getInt(FixMessage.LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER);
+                final int resent = this.sequence.resume(lastProcessed, this.getId(), "Router", newBinary,
+                        this::writeFrame);
+
+                this.out.flush();
+                Log.info("Resumed after message %d, %d orders resent", lastProcessed, resent);
+            }
+        } finally {
+            this.outLock.unlock();
+        }
+        Log.info("New Broker Id: %s%s", this.getId(), this.binary ? " (binary)" : "");
+    }
+
+    /**
+     * Write @param length bytes of the message @param frame to the Router, holding outLock
+     */
+    private void writeFrame(final byte[] frame, final int offset, final int length) throws IOException {
+        this.out.write(frame, offset, length);
+        if (!this.binary) {
+            this.out.write('\n');
+        }
+    }
+
+    /**
+     * Connect again after the Router redirected the Broker to @param redirect, or to any Router if it is null
+     * and the connection was lost, orders in flight keeping their futures as the Router saves their reports
+     * @return false if no Router could be reached
+     */
+    private boolean reconnect(final String redirect) {
+        /* Messages to send wait for the new connection */
+        this.outLock.lock();
+        try {
+            for (int attempt = 0; attempt < RECONNECT_ATTEMPTS && this.running; ++attempt) {
+                try {
+                    if (redirect != null && attempt == 0) {
+                        Log.info("Redirected to Router %s", redirect);
+                        this.connect(redirect, MAX_REDIRECTS);
+                    } else {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                        this.connect();
+                    }
+                    return true;
+                } catch (IOException | FixMessageException | BrokerException e) {
+                    Log.warn("Error while reconnecting to Router: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            this.outLock.unlock();
+        }
+    }
+
+    /**
+     * Read the Router's reports on a listener thread, each first report of an order completing its future.
+     * Stages depending on those futures run on the listener thread unless made asynchronous.
+     */
+    public void startListening() {
+        final FixDecoder decoder = new FixDecoder();
+        final FixBinaryDecoder binaryDecoder = new FixBinaryDecoder();
+
+        this.running = true;
+        final Thread listeningThread = ThreadMode.newThread("broker-listener", () -> {
+            while (this.running) {
+                try {
+                    if (this.in.next()) {
+                        final FixFields report = this.binary
+                                ? binaryDecoder.wrap(this.in.getBuffer(), this.in.getOffset(), this.in.getLength())
+                                : decoder.wrap(this.in.getBuffer(), this.in.getOffset(), this.in.getLength());
+
+                        if (!report.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.LOGOUT_MSG_TYPE)
+                                || !report.contains(FixMessage.REDIRECT_IDENTIFIER)) {
+                            if (this.inSequence(report) && !this.isHeartbeat(report)) {
+                                this.handleReport(report);
+                            }
+                            continue;
+                        } else if (this.reconnect(report.getString(FixMessage.REDIRECT_IDENTIFIER))) {
+                            continue;
                         }
+                    } else if (this.running && ROUTERS.length > 1 && this.reconnect(null)) {
+                        /* Another node of the Router cluster took over */
+                        continue;
+                    }
 
-                    } catch (IOException | FixMessageException e) {
-                        System.out.println(e.getMessage());
-                        break;
+                    if (this.scanner != null) {
+                        this.scanner.close();
+                    }
+                    break;
+                } catch (IOException | FixMessageException e) {
+                    if (this.running) {
+                        Log.error(e.getMessage());
                     }
+                    break;
                 }
-            });
+            }
 
-            listeningThread.start();
-            this.handleOrders(scanner);
-            this.socket.close();
-        } catch (IOException | FixMessageException | BrokerException e) {
-            System.err.println("Error in broker: " + e.getMessage());
+            this.running = false;
+            this.failPendingOrders(new BrokerException("Connection to Router lost."));
+        });
+
+        listeningThread.start();
+    }
+
+    /**
+     * Check the MsgSeqNum of @param report, asking the Router again for the messages missed before it, and answer
+     * the Router's ResendRequests
+     * @return true if @param report is to be handled
+     */
+    private boolean inSequence(final FixFields report) throws IOException, FixMessageException {
+        final SessionSequence.Status status = this.sequence.receive(report);
+
+        if (status == SessionSequence.Status.ACCEPTED) {
+            return true;
+        } else if (status != SessionSequence.Status.GAP && status != SessionSequence.Status.RESEND_REQUESTED) {
+            return false;
+        }
+
+        this.outLock.lock();
+        try {
+            if (status == SessionSequence.Status.GAP) {
+                Log.warn("%sGap%s in messages from Router, asking again from %d", RED, RESET,
+                        this.sequence.getExpectedSeqNum());
+                this.sequence.requestResend(this.getId(), "Router", this.binary, this::writeFrame);
+            } else {
+                final int resent = this.sequence.resend(report.getInt(FixMessage.BEGIN_SEQ_NO_IDENTIFIER),
+                        this.getId(), "Router", this.binary, this::writeFrame);
+
+                Log.info("Resent %d orders to Router", resent);
+            }
+            this.out.flush();
+        } finally {
+            this.outLock.unlock();
+        }
+        return false;
+    }
+
+    /**
+     * Answer the Router's TestRequest @param message with a Heartbeat echoing its TestReqID
+     * @return true if @param message was a Heartbeat or a TestRequest, which are not reports
+     */
+    private boolean isHeartbeat(final FixFields message) throws IOException, FixMessageException {
+        if (message.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.HEARTBEAT_MSG_TYPE)) {
+            return true;
+        } else if (!message.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEST_REQUEST_MSG_TYPE)) {
+            return false;
+        }
+
+        this.outLock.lock();
+        try {
+            this.encoder.begin(FixLayout.TEST_HEARTBEAT).putString(this.getId()).putString("Router")
+                    .putString(message.getString(FixMessage.TEST_REQ_ID_IDENTIFIER, "")).finish();
+            this.writeFrame(this.encoder.getBuffer(), 0, this.encoder.getLength());
+            this.out.flush();
+        } finally {
+            this.outLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Log @param report, and complete the future of the order it answers if it is the first answer
+     */
+    private void handleReport(final FixFields report) throws FixMessageException {
+        if (report.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.MARKET_DATA_MSG_TYPE)) {
+            this.handleQuote(Quote.of(report));
+            return;
+        }
+
+        final boolean executed = !report.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.REJECTED_MSG_TYPE);
+        final int index = report.indexOf(FixMessage.CLORDID_IDENTIFIER);
+        /* Pipelined orders would flood the console */
+        final Log.Level level = this.scanner != null ? Log.Level.INFO : Log.Level.DEBUG;
+
+        if (Log.isEnabled(level)) {
+            Log.log(level, "Received %s message from %s for order %s: `%s'",
+                    executed ? GREEN + "Executed" + RESET : RED + "Rejected" + RESET,
+                    report.getString(FixMessage.SENDER_IDENTIFIER),
+                    index == -1 ? "-" : report.getStringAt(index),
+                    report.getString(FixMessage.TEXT_IDENTIFIER, null));
+        }
+        if (index == -1) {
+            return;
+        }
+
+        final CompletableFuture<OrderReport> future;
+        try {
+            future = this.pendingOrders.remove(Long.parseLong(report.getStringAt(index)));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (future != null) {
+            /* Later reports of an order, e.g. fills of its resting part, find no future */
+            this.window.release();
+            future.complete(new OrderReport(Long.parseLong(report.getStringAt(index)),
+                    report.getString(FixMessage.SENDER_IDENTIFIER), executed,
+                    report.getString(FixMessage.TEXT_IDENTIFIER, null)));
+        }
+    }
+
+    private void handleQuote(final Quote quote) {
+        final Consumer<Quote> listener = this.quoteListener;
+
+        this.quotes.put(quote.getMarketId() + '|' + quote.getInstrument(), quote);
+        if (this.scanner != null) {
+            Log.info("%sQuote%s %s", CYAN, RESET, quote);
+        }
+        if (listener != null) {
+            listener.accept(quote);
+        }
+    }
+
+    private void failPendingOrders(final Throwable cause) {
+        for (final Long clOrdId : this.pendingOrders.keySet()) {
+            final CompletableFuture<OrderReport> future = this.pendingOrders.remove(clOrdId);
+
+            if (future != null) {
+                this.window.release();
+                future.completeExceptionally(cause);
+            }
         }
     }
 
+    /**
+     * Stop listening and disconnect, failing the futures of the orders still pending
+     */
+    public void close() throws IOException {
+        this.running = false;
+        this.socket.close();
+        this.failPendingOrders(new BrokerException("Broker closed."));
+    }
+
     /**
      * Infinite loop in which user can make orders with current Broker
      */
@@ -98,8 +432,14 @@ public class Broker {
                 if (parsedInput.length >= 1 && parsedInput[0].equalsIgnoreCase("exit")) {
                     this.running = false;
                     break;
+                } else if (parsedInput.length == 3 && parsedInput[0].equalsIgnoreCase("subscribe")) {
+                    this.subscribe(parsedInput[1], parsedInput[2]);
+                    continue;
+                } else if (parsedInput.length == 3 && parsedInput[0].equalsIgnoreCase("unsubscribe")) {
+                    this.unsubscribe(parsedInput[1], parsedInput[2]);
+                    continue;
                 } else if (parsedInput.length < 5) {
-                    System.err.println("Usage:\n  [buy/sell] MARKET_ID INSTRUMENT QUANTITY PRICE\nOr\n  exit");
+                    System.err.println(USAGE);
                     continue;
                 }
 
@@ -107,15 +447,15 @@ public class Broker {
                 try {
                     switch (order.toLowerCase()) {
                         case "buy":
-                            this.sendOrder(FixMessage.BUY_ORDER, parsedInput[1], parsedInput[2],
+                            this.submitOrder(FixMessage.BUY_ORDER, parsedInput[1], parsedInput[2],
                                     Integer.parseInt(parsedInput[3]), Double.parseDouble(parsedInput[4]));
                             break;
                         case "sell":
-                            this.sendOrder(FixMessage.SELL_ORDER, parsedInput[1], parsedInput[2],
+                            this.submitOrder(FixMessage.SELL_ORDER, parsedInput[1], parsedInput[2],
                                     Integer.parseInt(parsedInput[3]), Double.parseDouble(parsedInput[4]));
                             break;
                         default:
-                            System.err.println("Usage:\n  [buy/sell] MARKET_ID INSTRUMENT QUANTITY PRICE\nOr\n  exit");
+                            System.err.println(USAGE);
                             break;
                     }
                 } catch (IllegalArgumentException e) {
@@ -125,41 +465,99 @@ public class Broker {
                 Thread.sleep(100);
             }
         } catch (NoSuchElementException | IllegalStateException | InterruptedException e) {
-            System.err.println("Error in Broker: " + e.getMessage());
+            Log.error("Error in Broker: " + e.getMessage());
         }
 
         this.running = false;
         scanner.close();
     }
 
-    private void sendOrder(final int orderType, final String destId, final String instrument,
-            final int quantity, final double price) {
+    /**
+     * Send a new order without waiting for its answer, once fewer than `fixme.broker.window' orders are pending,
+     * so many orders can be in flight at once
+     * @return A future completed with the first execution or reject of the order, matched on its ClOrdID,
+     * or failed if the order could not be sent or the connection is lost before it is answered
+     */
+    public CompletableFuture<OrderReport> submitOrder(final int orderType, final String destId,
+            final String instrument, final int quantity, final double price) throws InterruptedException {
+        final CompletableFuture<OrderReport> future = new CompletableFuture<>();
+
+        this.window.acquire();
+        final long clOrdId = this.nextClOrdId.incrementAndGet();
+        this.pendingOrders.put(clOrdId, future);
+        if (!this.running) {
+            this.failPendingOrders(new BrokerException("Broker not listening to Router."));
+            return future;
+        }
+
+        /* Not synchronized, which would pin a virtual submitting thread to its carrier while blocked writing */
+        this.outLock.lock();
         try {
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
-            FixMessage fixOrder = new FixMessage();
-
-            fixOrder.setOrderType(orderType);
-            fixOrder.setSenderId(this.getId());
-            fixOrder.setDestId(destId);
-            fixOrder.setInstrument(instrument);
-            fixOrder.setQuantity(quantity);
-            fixOrder.setPrice(price);
-
-            final String message = fixOrder.buildMessage(new LinkedHashSet<>(Arrays.asList(FixMessage.SENDER_IDENTIFIER,
-                    FixMessage.ORDER_TYPE_IDENTIFIER, FixMessage.DEST_IDENTIFIER, FixMessage.INSTRUMENT_IDENTIFIER,
-                    FixMessage.QUANTITY_IDENTIFIER, FixMessage.PRICE_IDENTIFIER)));
-
-            System.out.println("Order sent to Router: " + message);
-            out.write(message + '\n');
-            out.flush();
+            this.sequence.resetIfExhausted(this.getId(), "Router", this.binary, this::writeFrame);
+            final long seqNum = this.sequence.getNextSeqNum();
+
+            this.encoder.begin(FixLayout.NEW_ORDER).putString(this.getId()).putInt(orderType).putString(destId)
+                    .putString(instrument).putInt(quantity).putPrice(price).putLong(clOrdId).putSeqNum(seqNum)
+                    .finish();
+
+            if (Log.isDebugEnabled()) {
+                Log.debug("Order %d sent to Router", clOrdId);
+            }
+            this.writeFrame(this.encoder.getBuffer(), 0, this.encoder.getLength());
+            this.out.flush();
+            /* Only numbered once written, an order failing to be sent is not resent */
+            this.sequence.sent(this.sequence.nextSeqNum(), this.encoder.getBuffer(), 0, this.encoder.getLength(),
+                    this.binary);
         } catch (IOException e) {
-            throw new RuntimeException(e);
-        } catch (FixMessageException e) {
-            System.err.println("err");
-            throw new RuntimeException(e);
+            if (this.pendingOrders.remove(clOrdId) != null) {
+                this.window.release();
+                future.completeExceptionally(e);
+            }
+        } finally {
+            this.outLock.unlock();
         }
+
+        return future;
     }
 
+    /**
+     * Receive the quotes of @param instrument on @param marketId: the last ones right away if the Router has them,
+     * then every update, conflated by the Router when the Broker reads slower than they come
+     */
+    public void subscribe(final String marketId, final String instrument) {
+        this.sendMarketDataRequest(marketId, instrument, FixMessage.SUBSCRIBE);
+    }
+
+    public void unsubscribe(final String marketId, final String instrument) {
+        this.sendMarketDataRequest(marketId, instrument, FixMessage.UNSUBSCRIBE);
+    }
+
+    private void sendMarketDataRequest(final String marketId, final String instrument, final String type) {
+        this.outLock.lock();
+        try {
+            this.encoder.begin(FixLayout.MARKET_DATA_REQUEST).putString(this.getId()).putString(marketId)
+                    .putString(instrument).putString(type).finish();
+            this.writeFrame(this.encoder.getBuffer(), 0, this.encoder.getLength());
+            this.out.flush();
+        } catch (IOException e) {
+            Log.error("Error while sending market data request: " + e.getMessage());
+        } finally {
+            this.outLock.unlock();
+        }
+    }
+
+    /**
+     * @return The last quotes received for @param instrument on @param marketId, or null
+     */
+    public Quote getQuote(final String marketId, final String instrument) {
+        return this.quotes.get(marketId + '|' + instrument);
+    }
+
+    /**
+     * Have @param listener called with every quote received, on the listener thread
+     */
+    public void setQuoteListener(final Consumer<Quote> listener) { this.quoteListener = listener; }
+
     public String getId() { return this.id; }
 
     public void setId(final String idParam) { this.id = idParam; }
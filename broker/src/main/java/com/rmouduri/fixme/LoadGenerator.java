@@ -0,0 +1,222 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Headless Broker sending buy and sell orders at a fixed rate across markets and instruments, and measuring the
+ * time until the first execution or reject of each order, matched on its ClOrdID.
+ * Open-loop, orders are due on a fixed schedule and latencies count from the time an order was due, so a stalled
+ * Router or Market shows in the percentiles instead of slowing the generator down.
+ * Closed-loop, at most `window' orders are pending and latencies are corrected with the expected interval.
+ */
+public class LoadGenerator {
+    public static final String OPEN_LOOP = "open";
+    public static final String CLOSED_LOOP = "closed";
+
+    private static final int RATE = Integer.getInteger("fixme.broker.load.rate", 1000);
+    private static final String LOOP = System.getProperty("fixme.broker.load.loop", OPEN_LOOP);
+    private static final int WINDOW = Integer.getInteger("fixme.broker.load.window", 64);
+    private static final long DURATION_SECONDS = Long.getLong("fixme.broker.load.duration", 10);
+    private static final String MARKETS = System.getProperty("fixme.broker.load.markets", "");
+    private static final String INSTRUMENTS = System.getProperty("fixme.broker.load.instruments",
+            "AAPL,MSFT,AMZN,GOOGL,TSLA,META,BRK.B,NVDA,JNJ,V");
+
+    /* Time allowed to the pending orders to be answered once the run is over */
+    private static final long DRAIN_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    /* Sent times are kept by ClOrdID modulo this, which bounds the orders pending at once */
+    private static final int PENDING_CAPACITY = 1 << 20;
+    /* Buy orders cross any ask and sell orders any bid, so most orders fill and the books stay small */
+    private static final double BUY_PRICE = 1_000_000.;
+    private static final double SELL_PRICE = 0.000001;
+
+    private final String id;
+    private final OutputStream out;
+    private final FixMessageEncoder encoder;
+    private final String[] markets;
+    private final String[] instruments;
+    private final boolean closedLoop;
+    private final long interval;
+    private final Semaphore window;
+
+    /* Time each pending order was sent, or was due in open-loop, 0 once answered */
+    private final AtomicLongArray sentTimes = new AtomicLongArray(PENDING_CAPACITY);
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram current = new LatencyHistogram();
+    private final AtomicLong answered = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private long sent;
+
+    /**
+     * @param idParam Id given to the Broker by the Router
+     * @param outParam Stream to the Router
+     * @param binary Whether the Router granted binary frames at Logon
+     */
+    public LoadGenerator(final String idParam, final OutputStream outParam, final boolean binary)
+            throws BrokerException {
+        this.id = idParam;
+        this.out = outParam;
+        this.encoder = binary ? new FixBinaryEncoder() : new FixEncoder();
+        this.markets = MARKETS.isBlank() ? new String[0] : MARKETS.split(",");
+        this.instruments = INSTRUMENTS.split(",");
+
+        if (this.markets.length == 0) {
+            throw new BrokerException("No market to send orders to, set fixme.broker.load.markets.");
+        } else if (RATE <= 0) {
+            throw new BrokerException(String.format("Invalid load rate (%d).", RATE));
+        } else if (!OPEN_LOOP.equals(LOOP) && !CLOSED_LOOP.equals(LOOP)) {
+            throw new BrokerException(String.format("Unknown load loop `%s', expected `%s' or `%s'.", LOOP,
+                    OPEN_LOOP, CLOSED_LOOP));
+        } else if (WINDOW <= 0 || WINDOW > PENDING_CAPACITY) {
+            throw new BrokerException(String.format("Invalid load window (%d).", WINDOW));
+        }
+
+        this.closedLoop = CLOSED_LOOP.equals(LOOP);
+        this.interval = TimeUnit.SECONDS.toNanos(1) / RATE;
+        this.window = new Semaphore(WINDOW);
+    }
+
+    /**
+     * Send orders for the configured duration, then wait for the pending ones and print the latencies
+     * @param in Reader of the Router's stream, read by a separate thread
+     */
+    public void run(final FixLineReader in) throws IOException {
+        final Thread listeningThread = ThreadMode.newThread("load-listener", () -> this.listen(in));
+
+        Log.info("Sending %d orders/s %s-loop to %d markets for %ds", RATE, LOOP, this.markets.length,
+                DURATION_SECONDS);
+        listeningThread.setDaemon(true);
+        listeningThread.start();
+
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        long nextReport = start + REPORT_INTERVAL_NANOS;
+        long due = start;
+
+        while (due < end && listeningThread.isAlive()) {
+            long now = System.nanoTime();
+
+            if (now < due) {
+                /* Ahead of schedule: send what is buffered, then wait for the next order to be due */
+                this.out.flush();
+                LockSupport.parkNanos(due - System.nanoTime());
+                now = System.nanoTime();
+            }
+            if (this.closedLoop && !this.window.tryAcquire()) {
+                this.out.flush();
+                if (!this.acquireUntil(end)) {
+                    break;
+                }
+                now = System.nanoTime();
+            }
+
+            this.sendOrder(this.closedLoop ? now : due);
+            due += this.interval;
+
+            if (now >= nextReport) {
+                this.out.flush();
+                this.report("interval", this.current);
+                this.current.reset();
+                nextReport += REPORT_INTERVAL_NANOS;
+            }
+        }
+        this.out.flush();
+
+        final long drainEnd = System.nanoTime() + DRAIN_NANOS;
+        while (this.answered.get() < this.sent && System.nanoTime() < drainEnd && listeningThread.isAlive()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+        }
+
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        Log.info("Sent %d orders in %.1fs (%.0f/s), %d answered (%d rejected), %d unanswered",
+                this.sent, seconds, this.sent / seconds, this.answered.get(), this.rejected.get(),
+                this.sent - this.answered.get());
+        this.report("total", this.total);
+    }
+
+    /**
+     * Wait for a pending order to be answered, until @param deadline at the latest
+     */
+    private boolean acquireUntil(final long deadline) {
+        try {
+            return this.window.tryAcquire(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void sendOrder(final long sentTime) throws IOException {
+        final long clOrdId = ++this.sent;
+        /* Each market gets a buy then a sell of each instrument in turn */
+        final long marketSequence = clOrdId / this.markets.length;
+        final boolean buy = (marketSequence & 1) == 0;
+
+        this.sentTimes.set((int) (clOrdId % PENDING_CAPACITY), sentTime);
+        this.encoder.begin(FixLayout.NEW_ORDER).putString(this.id)
+                .putInt(buy ? FixMessage.BUY_ORDER : FixMessage.SELL_ORDER)
+                .putString(this.markets[(int) (clOrdId % this.markets.length)])
+                .putString(this.instruments[(int) (marketSequence / 2 % this.instruments.length)])
+                .putInt(1).putPrice(buy ? BUY_PRICE : SELL_PRICE).putLong(clOrdId).finish();
+        this.out.write(this.encoder.getBuffer(), 0, this.encoder.getLength());
+        if (!this.encoder.isBinary()) {
+            this.out.write('\n');
+        }
+    }
+
+    /**
+     * Read reports from the Router, recording the latency of the first one received for each order
+     */
+    private void listen(final FixLineReader in) {
+        final FixDecoder decoder = new FixDecoder();
+        final FixBinaryDecoder binaryDecoder = new FixBinaryDecoder();
+
+        try {
+            while (in.next()) {
+                final FixFields report = in.isBinary()
+                        ? binaryDecoder.wrap(in.getBuffer(), in.getOffset(), in.getLength())
+                        : decoder.wrap(in.getBuffer(), in.getOffset(), in.getLength());
+                final long now = System.nanoTime();
+                final int index = report.indexOf(FixMessage.CLORDID_IDENTIFIER);
+
+                if (index == -1) {
+                    continue;
+                }
+
+                final long clOrdId = report.getIntAt(index);
+                final long sentTime = this.sentTimes.getAndSet((int) (clOrdId % PENDING_CAPACITY), 0);
+
+                if (sentTime == 0) {
+                    /* Fill of an order that rested, already answered */
+                    continue;
+                }
+                if (this.closedLoop) {
+                    this.total.recordWithExpectedInterval(now - sentTime, this.interval);
+                    this.current.recordWithExpectedInterval(now - sentTime, this.interval);
+                    this.window.release();
+                } else {
+                    this.total.record(now - sentTime);
+                    this.current.record(now - sentTime);
+                }
+                if (report.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.REJECTED_MSG_TYPE)) {
+                    this.rejected.incrementAndGet();
+                }
+                this.answered.incrementAndGet();
+            }
+            Log.info("Connection closed by Router.");
+        } catch (IOException | FixMessageException e) {
+            Log.error("Error in load listener: " + e.getMessage());
+        }
+    }
+
+    private void report(final String name, final LatencyHistogram histogram) {
+        Log.info("%s%-8s%s %7d samples  %s", Broker.CYAN, name, Broker.RESET, histogram.getCount(),
+                histogram.summary());
+    }
+}
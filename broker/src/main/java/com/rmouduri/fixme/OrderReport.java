@@ -0,0 +1,39 @@
+package com.rmouduri.fixme;
+
+/**
+ * First execution or reject received for an order submitted with Broker.submitOrder, matched on its ClOrdID
+ */
+public final class OrderReport {
+    private final long clOrdId;
+    private final String senderId;
+    private final boolean executed;
+    private final String text;
+
+    /**
+     * @param clOrdIdParam ClOrdID of the order
+     * @param senderIdParam Market which executed the order, or Router or Market which rejected it
+     * @param executedParam false if the order was rejected
+     * @param textParam Text of the report
+     */
+    public OrderReport(final long clOrdIdParam, final String senderIdParam, final boolean executedParam,
+            final String textParam) {
+        this.clOrdId = clOrdIdParam;
+        this.senderId = senderIdParam;
+        this.executed = executedParam;
+        this.text = textParam;
+    }
+
+    public long getClOrdId() { return this.clOrdId; }
+
+    public String getSenderId() { return this.senderId; }
+
+    public boolean isExecuted() { return this.executed; }
+
+    public String getText() { return this.text; }
+
+    @Override
+    public String toString() {
+        return String.format("%s order %d from %s: `%s'", this.executed ? "Executed" : "Rejected", this.clOrdId,
+                this.senderId, this.text);
+    }
+}
@@ -0,0 +1,73 @@
+package com.rmouduri.fixme;
+
+/**
+ * Last quotes of an instrument published by a Market, received through a subscription of the Broker
+ */
+public final class Quote {
+    private final String marketId;
+    private final String instrument;
+    private final double price;
+    private final int quantity;
+    private final double bid;
+    private final long bidSize;
+    private final double ask;
+    private final long askSize;
+
+    /**
+     * @param priceParam Price of the instrument
+     * @param quantityParam Stock of the instrument held by the market
+     * @param bidParam Best bid, 0 if there is none
+     * @param askParam Best ask, 0 if there is none
+     */
+    public Quote(final String marketIdParam, final String instrumentParam, final double priceParam,
+            final int quantityParam, final double bidParam, final long bidSizeParam, final double askParam,
+            final long askSizeParam) {
+        this.marketId = marketIdParam;
+        this.instrument = instrumentParam;
+        this.price = priceParam;
+        this.quantity = quantityParam;
+        this.bid = bidParam;
+        this.bidSize = bidSizeParam;
+        this.ask = askParam;
+        this.askSize = askSizeParam;
+    }
+
+    /**
+     * Read the quotes of the MarketData message @param message
+     */
+    public static Quote of(final FixFields message) throws FixMessageException {
+        try {
+            return new Quote(message.getString(FixMessage.SENDER_IDENTIFIER),
+                    message.getString(FixMessage.INSTRUMENT_IDENTIFIER),
+                    message.getDouble(FixMessage.PRICE_IDENTIFIER), message.getInt(FixMessage.QUANTITY_IDENTIFIER),
+                    message.getDouble(FixMessage.BID_PRICE_IDENTIFIER),
+                    Long.parseLong(message.getString(FixMessage.BID_SIZE_IDENTIFIER)),
+                    message.getDouble(FixMessage.ASK_PRICE_IDENTIFIER),
+                    Long.parseLong(message.getString(FixMessage.ASK_SIZE_IDENTIFIER)));
+        } catch (NumberFormatException e) {
+            throw new FixMessageException("Invalid size in market data: " + e.getMessage());
+        }
+    }
+
+    public String getMarketId() { return this.marketId; }
+
+    public String getInstrument() { return this.instrument; }
+
+    public double getPrice() { return this.price; }
+
+    public int getQuantity() { return this.quantity; }
+
+    public double getBid() { return this.bid; }
+
+    public long getBidSize() { return this.bidSize; }
+
+    public double getAsk() { return this.ask; }
+
+    public long getAskSize() { return this.askSize; }
+
+    @Override
+    public String toString() {
+        return String.format("%s %5s:  qty: %6d | price: %10f $ | bid: %d @ %f $ | ask: %d @ %f $", this.marketId,
+                this.instrument, this.quantity, this.price, this.bidSize, this.bid, this.askSize, this.ask);
+    }
+}
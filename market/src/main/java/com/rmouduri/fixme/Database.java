@@ -2,11 +2,18 @@ package com.rmouduri.fixme;
 
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.List;
 
-public class Database {
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/fixme";
+/**
+ * MySQL storage of the transactions
+ */
+public class Database implements TransactionStore {
+    /* Batches are sent as multi-row inserts rather than one statement at a time */
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/fixme?rewriteBatchedStatements=true";
     private static final String USER = "user";
     private static final String PASSWORD = "password";
 
@@ -31,60 +38,137 @@ public class Database {
      */
     private static final String INSERT_TRANSACTION_SQL = """
             INSERT INTO transaction (order_type, sender, destination, instrument, quantity, price)
-            VALUES (%d, '%s', '%s', '%s', %d, %f);
+            VALUES (?, ?, ?, ?, ?, ?);
             """;
 
+    private static final String SELECT_TRANSACTIONS_SQL = """
+            SELECT order_type, sender, destination, instrument, quantity, price FROM transaction ORDER BY id;
+            """;
+    /* Has MySQL stream the rows one at a time, instead of reading the whole table in memory */
+    private static final int SCAN_FETCH_SIZE = Integer.MIN_VALUE;
+
     private Connection connection;
+    private PreparedStatement insertStatement;
+    private boolean available = true;
 
-    public Database() {
+    /**
+     * Open the connection and create the transaction table if needed
+     */
+    @Override
+    public void open() throws MarketException {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            this.connection = DriverManager.getConnection(DB_URL, USER, PASSWORD);
-            System.out.println("Connection to the database established successfully.");
-
-            if (connection != null) {
-                try (Statement stmt = this.getConnection().createStatement()) {
-                    stmt.execute(String.format(Database.CREATE_TABLE_SQL));
-                } catch (SQLException e) {
-                    System.out.println("Database error: " + e.getMessage());
-                }
-            }
+            this.connect();
         } catch (ClassNotFoundException e) {
-            System.err.println("MySQL Driver not found: " + e.getMessage());
+            this.available = false;
+            throw new MarketException("MySQL Driver not found: " + e.getMessage());
         } catch (SQLException e) {
-            System.err.println("Connection failed: " + e.getMessage());
+            this.closeConnection();
+            throw new MarketException("Connection failed: " + e.getMessage());
+        }
+    }
+
+    private void connect() throws ClassNotFoundException, SQLException {
+        Class.forName("com.mysql.cj.jdbc.Driver");
+        this.connection = DriverManager.getConnection(DB_URL, USER, PASSWORD);
+        Log.info("Connection to the database established successfully.");
+
+        try (Statement stmt = this.getConnection().createStatement()) {
+            stmt.execute(Database.CREATE_TABLE_SQL);
         }
+        this.connection.setAutoCommit(false);
+        this.insertStatement = this.connection.prepareStatement(INSERT_TRANSACTION_SQL);
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return this.available;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.connection != null;
     }
 
     public Connection getConnection() {
         return connection;
     }
 
+    @Override
+    public void close() {
+        this.closeConnection();
+    }
+
     public void closeConnection() {
         if (connection != null) {
             try {
                 connection.close();
-                System.out.println("Connection to the database closed.");
+                Log.info("Connection to the database closed.");
             } catch (SQLException e) {
-                System.err.println("Failed to close connection: " + e.getMessage());
+                Log.error("Failed to close connection: " + e.getMessage());
             }
+            this.connection = null;
+            this.insertStatement = null;
         }
     }
 
-    public void insertTransaction(final FixMessage fixMessage) {
-        if (connection != null) {
-            try (Statement stmt = this.getConnection().createStatement()) {
+    /**
+     * Insert @param transactions in a single batch and commit them, rolling them back and closing the connection
+     * on failure
+     */
+    @Override
+    public void store(final List<Transaction> transactions) throws MarketException {
+        try {
+            this.insertTransactions(transactions);
+        } catch (SQLException e) {
+            this.closeConnection();
+            throw new MarketException("Database error: " + e.getMessage());
+        }
+    }
 
-                stmt.execute(
-                        String.format(Database.INSERT_TRANSACTION_SQL,
-                                fixMessage.getOrderType(), fixMessage.getSenderId(), fixMessage.getDestId(),
-                                fixMessage.getInstrument(), fixMessage.getQuantity(), fixMessage.getPrice()));
-                System.out.println("Transaction stored in database");
-            } catch (SQLException e) {
-                System.out.println("Database error: " + e.getMessage());
+    private void insertTransactions(final List<Transaction> transactions) throws SQLException {
+        try {
+            for (final Transaction transaction : transactions) {
+                this.insertStatement.setInt(1, transaction.getOrderType());
+                this.insertStatement.setString(2, transaction.getSenderId());
+                this.insertStatement.setString(3, transaction.getDestId());
+                this.insertStatement.setString(4, transaction.getInstrument());
+                this.insertStatement.setInt(5, transaction.getQuantity());
+                this.insertStatement.setDouble(6, transaction.getPrice());
+                this.insertStatement.addBatch();
+            }
+            this.insertStatement.executeBatch();
+            this.connection.commit();
+        } catch (SQLException e) {
+            this.insertStatement.clearBatch();
+            try {
+                this.connection.rollback();
+            } catch (SQLException rollbackError) {
+                e.addSuppressed(rollbackError);
             }
-        } else {
-            System.err.println("Can't store transaction to database.");
+            throw e;
+        }
+    }
+
+    @Override
+    public long scan(final TransactionConsumer consumer) throws MarketException {
+        long count = 0;
+
+        if (!this.isOpen()) {
+            throw new MarketException("Database error: connection is not open.");
+        }
+        try (Statement stmt = this.getConnection().createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(SCAN_FETCH_SIZE);
+            try (ResultSet result = stmt.executeQuery(SELECT_TRANSACTIONS_SQL)) {
+                while (result.next()) {
+                    consumer.accept(new Transaction(result.getInt(1), result.getString(2), result.getString(3),
+                            result.getString(4), result.getInt(5), result.getDouble(6)));
+                    ++count;
+                }
+            }
+        } catch (SQLException e) {
+            throw new MarketException("Database error: " + e.getMessage());
         }
+        return count;
     }
-}
\ No newline at end of file
+}
@@ -2,29 +2,57 @@ package com.rmouduri.fixme;
 
 import java.io.*;
 import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Market {
-    private final static short MARKET_PORT = 5001;
-    private final static String LOCAL = "localhost";
+    /* Routers tried in turn, `host:port' separated by commas */
+    private final static String[] ROUTERS = System.getProperty("fixme.market.router", "localhost:5001").split(",");
+    /* Redirects followed to reach the node of a Router cluster owning the Market's id */
+    private final static int MAX_REDIRECTS = 4;
+    private final static int RECONNECT_ATTEMPTS = 3;
+    private final static int RECONNECT_DELAY_MILLIS = 1000;
 
     public static final String RESET = "\u001B[0m";
     public static final String RED = "\u001B[31m";
     public static final String GREEN = "\u001B[32m";
     public static final String CYAN = "\u001B[36m";
 
+    /* Threads matching orders, each owning the books of some instruments */
+    private static final int SHARDS = Integer.getInteger("fixme.market.shards",
+            Runtime.getRuntime().availableProcessors());
+    private static final int SHARD_QUEUE_CAPACITY = Integer.getInteger("fixme.market.queue", 4096);
+    private static final String STORE = System.getProperty("fixme.market.store", "jdbc");
+    private static final Path JOURNAL_DIRECTORY = Path.of(System.getProperty("fixme.market.journal.dir",
+            "market-journal"));
+    /* Wire encoding asked for at Logon, `text' or `binary' */
+    private static final String ENCODING = System.getProperty("fixme.market.encoding", "text");
+    /* Last reports sent kept for resending after a reconnection, the older ones being skipped */
+    private static final int RESEND_WINDOW = Integer.getInteger("fixme.market.resend.window", 1024);
+
     private String id;
     private Socket socket;
-    private final HashMap<String, Instrument> instruments;
-    private final Database database;
+    private OutputStream out;
+    private FixLineReader in;
+    private final ReentrantLock outLock = new ReentrantLock();
+    private FixMessageEncoder encoder;
+    /* Whether the Router granted binary frames at Logon */
+    private boolean binary;
+    /* MsgSeqNums of the session, kept across connections so only the missed messages are resent */
+    private final SessionSequence sequence = new SessionSequence(RESEND_WINDOW);
+    private final HashMap<String, MarketShard> shardsByInstrument;
+    private MarketShard[] shards;
+    private final TransactionWriter transactions;
     private volatile boolean running;
 
     public Market() {
         this.id = "";
         this.socket = null;
         this.running = false;
-        this.instruments = new HashMap<>();
-        this.database = new Database();
+        this.shardsByInstrument = new HashMap<>();
+        this.transactions = new TransactionWriter();
         this.fillInstruments();
     }
 
@@ -32,136 +60,399 @@ public class Market {
         this.id = idParam;
         this.socket = null;
         this.running = false;
-        this.instruments = new HashMap<>();
-        this.database = new Database();
+        this.shardsByInstrument = new HashMap<>();
+        this.transactions = new TransactionWriter();
         this.fillInstruments();
     }
 
     public void start() {
         try {
-            this.socket = new Socket(LOCAL, MARKET_PORT);
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
-            BufferedReader in = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
-
-            out.write(String.format("%s\n", this.getId()));
-            out.flush();
-
-            final FixMessage identificationFixMessage = new FixMessage(in.readLine());
-            if (!identificationFixMessage.getMsgType().equals("A")
-                    || !identificationFixMessage.getSenderId().equals("Router")) {
-                throw new MarketException(String.format("Invalid identification message from Router: `%s'.",
-                        identificationFixMessage.getMessage()));
-            }
+            final FixDecoder decoder = new FixDecoder();
+            final FixBinaryDecoder binaryDecoder = new FixBinaryDecoder();
 
-            this.setId(identificationFixMessage.getUserId());
-            System.out.printf("New Market Id: %s\n", this.getId());
+            this.connect();
+            this.encoder = this.newEncoder();
             this.displayInstruments();
 
             this.running = true;
-            Thread listeningThread = new Thread(() -> {
+            final Thread listeningThread = ThreadMode.newThread("market-listener", () -> {
                 while (this.running) {
                     try {
-                        final String message = in.readLine();
-
-                        if (message != null) {
-                            FixMessage fixMessage = new FixMessage(message);
+                        if (this.in.next()) {
+                            final FixFields order = this.binary
+                                    ? binaryDecoder.wrap(this.in.getBuffer(), this.in.getOffset(), this.in.getLength())
+                                    : decoder.wrap(this.in.getBuffer(), this.in.getOffset(), this.in.getLength());
 
-                            System.out.printf("Received %s order from %s of %d %s for %f$\n",
-                                    fixMessage.getOrderType() == FixMessage.BUY_ORDER ? "Buy" : "Sell",
-                                    fixMessage.getSenderId(), fixMessage.getQuantity(), fixMessage.getInstrument(),
-                                    fixMessage.getPrice());
-
-                            this.handleOrder(fixMessage);
-                        } else {
+                            if (order.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.LOGOUT_MSG_TYPE)
+                                    && order.contains(FixMessage.REDIRECT_IDENTIFIER)) {
+                                if (!this.reconnect(order.getString(FixMessage.REDIRECT_IDENTIFIER))) {
+                                    break;
+                                }
+                            } else if (!this.inSequence(order) || this.isHeartbeat(order)) {
+                                continue;
+                            } else if (order.contains(FixMessage.MSG_TYPE_IDENTIFIER)) {
+                                /* Reports bounced by the Router, e.g. for a Broker that left */
+                                if (Log.isDebugEnabled()) {
+                                    Log.debug("Ignoring message from %s: `%s'",
+                                            order.getString(FixMessage.SENDER_IDENTIFIER, null),
+                                            order.getString(FixMessage.TEXT_IDENTIFIER, null));
+                                }
+                            } else {
+                                this.dispatchOrder(order);
+                            }
+                        } else if (ROUTERS.length == 1 || !this.reconnect(null)) {
                             break;
                         }
 
-                    } catch (IOException | FixMessageException e) {
-                        System.out.println(e.getMessage());
+                    } catch (FixMessageException e) {
+                        /* A message the Market cannot read does not end the session, only a broken socket does */
+                        Log.warn("Dropping malformed message: " + e.getMessage());
+                    } catch (IOException e) {
+                        Log.error(e.getMessage());
                         break;
                     }
                 }
+
+                this.stop();
             });
 
+            this.transactions.start(this.createStore());
+            for (int i = 0; i < this.shards.length; ++i) {
+                this.shards[i].start(String.format("market-shard-%d", i));
+            }
             listeningThread.start();
         } catch (IOException | FixMessageException | MarketException e) {
-            System.err.println("Error in market: " + e.getMessage());
+            Log.error("Error in market: " + e.getMessage());
         }
     }
 
-    private void handleOrder(final FixMessage order) {
-        if (!this.instruments.containsKey(order.getInstrument())) {
-            this.rejectOrder(order, String.format("No such instrument `%s`", order.getInstrument()));
-        } else if (order.getOrderType() == FixMessage.BUY_ORDER) {
-            if (this.instruments.get(order.getInstrument()).getQuantity() < order.getQuantity()) {
-                this.rejectOrder(order, String.format("Not enough instruments (%d in stock)",
-                        this.instruments.get(order.getInstrument()).getQuantity()));
-            } else if (this.instruments.get(order.getInstrument()).getPrice() > order.getPrice()) {
-                this.rejectOrder(order, String.format("Price too low (%f$)",
-                        this.instruments.get(order.getInstrument()).getPrice()));
-            } else {
-                final Instrument instrument = this.instruments.get(order.getInstrument());
+    /**
+     * Connect to the first Router of `fixme.market.router' that answers and log on, its Logon giving the Market
+     * its id and wire encoding
+     */
+    private void connect() throws IOException, FixMessageException, MarketException {
+        IOException failure = null;
+
+        for (final String router : ROUTERS) {
+            try {
+                this.connect(router.trim(), MAX_REDIRECTS);
+                return;
+            } catch (IOException e) {
+                Log.warn("Router %s unreachable: %s", router, e.getMessage());
+                failure = e;
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * Connect to the Router at @param address and log on, following at most @param redirects Logouts of a
+     * clustered Router moving the Market to the node owning its id.
+     * The new connection replaces the previous one, if any: the Logon then tells the last MsgSeqNum the Market
+     * processed, and the reports the Router did not get are resent from the last number it processed.
+     */
+    private void connect(final String address, final int redirects)
+            throws IOException, FixMessageException, MarketException {
+        final Socket newSocket = new Socket();
+        final FixDecoder decoder = new FixDecoder();
+
+        try {
+            newSocket.connect(Address.parse(address));
+        } catch (IllegalArgumentException e) {
+            throw new MarketException(e.getMessage());
+        }
+
+        final OutputStream newOut = new BufferedOutputStream(newSocket.getOutputStream());
+        final FixLineReader newIn = new FixLineReader(newSocket.getInputStream());
+        if (this.socket != null) {
+            final FixEncoder logon = new FixEncoder().begin(FixLayout.SEQUENCED_LOGON).putString(this.getId())
+                    .putString(ENCODING.equalsIgnoreCase("binary") ? FixMessage.BINARY_ENCODING
+                            : FixMessage.TEXT_ENCODING).putLong(this.sequence.getLastReceived()).finish();
+
+            newOut.write(logon.getBuffer(), 0, logon.getLength());
+            newOut.write('\n');
+        } else if (ENCODING.equalsIgnoreCase("binary")) {
+            final FixEncoder logon = new FixEncoder().begin(FixLayout.LOGON_REQUEST).putString(this.getId())
+                    .putString(FixMessage.BINARY_ENCODING).finish();
+
+            newOut.write(logon.getBuffer(), 0, logon.getLength());
+            newOut.write('\n');
+        } else {
+            newOut.write(String.format("%s\n", this.getId()).getBytes(StandardCharsets.US_ASCII));
+        }
+        newOut.flush();
 
-                instrument.setQuantity(instrument.getQuantity() - order.getQuantity());
-                this.acceptOrder(order);
+        if (!newIn.next()) {
+            newSocket.close();
+            throw new MarketException("Connection closed by Router before identification.");
+        }
+        decoder.wrap(newIn.getBuffer(), newIn.getOffset(), newIn.getLength());
+        if (decoder.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.LOGOUT_MSG_TYPE)
+                && decoder.contains(FixMessage.REDIRECT_IDENTIFIER)) {
+            final String redirect = decoder.getString(FixMessage.REDIRECT_IDENTIFIER);
+
+            newSocket.close();
+            if (redirects == 0) {
+                throw new MarketException("Too many redirects between Routers.");
+            }
+            Log.info("Redirected to Router %s", redirect);
+            this.connect(redirect, redirects - 1);
+            return;
+        }
+        if (!decoder.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.LOGON_MSG_TYPE)
+                || !decoder.valueEquals(FixMessage.SENDER_IDENTIFIER, "Router")) {
+            newSocket.close();
+            throw new MarketException(String.format("Invalid identification message from Router: `%s'.",
+                    decoder));
+        }
+
+        this.setId(decoder.getString(FixMessage.USERID_IDENTIFIER));
+        final boolean newBinary = decoder.valueEquals(FixMessage.ENCODING_IDENTIFIER, FixMessage.BINARY_ENCODING);
+        if (ENCODING.equalsIgnoreCase("binary") && !newBinary) {
+            Log.warn("Binary encoding not granted by Router, using text.");
+        }
+        newIn.setBinary(newBinary);
+
+        this.outLock.lock();
+        try {
+            if (this.socket != null) {
+                this.socket.close();
             }
-        } else if (order.getOrderType() == FixMessage.SELL_ORDER) {
-            if (order.getPrice() > this.instruments.get(order.getInstrument()).getPrice()) {
-                this.rejectOrder(order, String.format("Price too high (%f$)",
-                        this.instruments.get(order.getInstrument()).getPrice()));
+            this.socket = newSocket;
+            this.out = newOut;
+            this.in = newIn;
+            this.binary = newBinary;
+            if (decoder.contains(FixMessage.LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER)) {
+                final long lastProcessed = decoder.getInt(FixMessage.LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER);
+                final int resent = this.sequence.resume(lastProcessed, this.getId(), "Router", newBinary,
+                        this::writeFrame);
+
+                this.out.flush();
+                Log.info("Resumed after message %d, %d reports resent", lastProcessed, resent);
+            }
+        } finally {
+            this.outLock.unlock();
+        }
+        Log.info("New Market Id: %s%s", this.getId(), this.binary ? " (binary)" : "");
+    }
+
+    /**
+     * Connect again after the Router redirected the Market to @param redirect, or to any Router if it is null
+     * and the connection was lost. The shards keep matching meanwhile, and their reports wait for the new
+     * connection.
+     * @return false if no Router could be reached
+     */
+    private boolean reconnect(final String redirect) {
+        /* Messages to send wait for the new connection */
+        this.outLock.lock();
+        try {
+            for (int attempt = 0; attempt < RECONNECT_ATTEMPTS; ++attempt) {
+                try {
+                    if (redirect != null && attempt == 0) {
+                        Log.info("Redirected to Router %s", redirect);
+                        this.connect(redirect, MAX_REDIRECTS);
+                    } else {
+                        Thread.sleep(RECONNECT_DELAY_MILLIS);
+                        this.connect();
+                    }
+                    return true;
+                } catch (IOException | FixMessageException | MarketException e) {
+                    Log.warn("Error while reconnecting to Router: " + e.getMessage());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return false;
+        } finally {
+            this.outLock.unlock();
+        }
+    }
+
+    /**
+     * Check the MsgSeqNum of @param message, asking the Router again for the messages missed before it, and
+     * answer the Router's ResendRequests
+     * @return true if @param message is to be handled
+     */
+    private boolean inSequence(final FixFields message) throws IOException, FixMessageException {
+        final SessionSequence.Status status = this.sequence.receive(message);
+
+        if (status == SessionSequence.Status.ACCEPTED) {
+            return true;
+        } else if (status != SessionSequence.Status.GAP && status != SessionSequence.Status.RESEND_REQUESTED) {
+            return false;
+        }
+
+        this.outLock.lock();
+        try {
+            if (status == SessionSequence.Status.GAP) {
+                Log.warn("%sGap%s in messages from Router, asking again from %d", RED, RESET,
+                        this.sequence.getExpectedSeqNum());
+                this.sequence.requestResend(this.getId(), "Router", this.binary, this::writeFrame);
             } else {
-                final Instrument instrument = this.instruments.get(order.getInstrument());
+                final int resent = this.sequence.resend(message.getInt(FixMessage.BEGIN_SEQ_NO_IDENTIFIER),
+                        this.getId(), "Router", this.binary, this::writeFrame);
 
-                instrument.setQuantity(instrument.getQuantity() + order.getQuantity());
-                this.acceptOrder(order);
+                Log.info("Resent %d reports to Router", resent);
             }
+            this.out.flush();
+        } finally {
+            this.outLock.unlock();
+        }
+        return false;
+    }
+
+    /**
+     * @return The TransactionStore selected by `fixme.market.store'
+     */
+    private TransactionStore createStore() throws MarketException {
+        return switch (STORE) {
+            case "jdbc" -> new Database();
+            case "journal" -> new TradeJournal(JOURNAL_DIRECTORY.resolve(this.getId() + ".trades"));
+            default -> throw new MarketException(String.format("Unknown transaction store `%s'", STORE));
+        };
+    }
+
+    /**
+     * Let the shards handle the orders already received, then store their last transactions
+     */
+    private void stop() {
+        try {
+            for (final MarketShard shard : this.shards) {
+                shard.stop();
+            }
+            for (final MarketShard shard : this.shards) {
+                shard.join();
+            }
+            this.transactions.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        Log.info("%d transactions stored, their queue peaking at %d of %d", this.transactions.getStored(),
+                this.transactions.getPeakQueueDepth(), this.transactions.getQueueCapacity());
+        if (this.transactions.getDropped() > 0) {
+            Log.error("%d transactions were not stored.", this.transactions.getDropped());
+        }
+    }
+
+    /**
+     * Hand @param order to the shard owning its instrument, or reject it if its instrument is unknown or its
+     * side, quantity or price is missing or malformed
+     */
+    private void dispatchOrder(final FixFields order) throws FixMessageException {
+        final String senderId = order.getString(FixMessage.SENDER_IDENTIFIER);
+        final String clOrdId = order.getString(FixMessage.CLORDID_IDENTIFIER, null);
+        final String instrumentName = order.getString(FixMessage.INSTRUMENT_IDENTIFIER, null);
+        final MarketShard shard = instrumentName == null ? null : this.shardsByInstrument.get(instrumentName);
+
+        if (shard == null) {
+            Log.debug("Received order from %s for unknown instrument %s", senderId, instrumentName);
+            this.rejectOrder(senderId, clOrdId, String.format("No such instrument `%s`", instrumentName));
+            return;
+        }
+
+        final int orderType;
+        final int quantity;
+        final double price;
+        try {
+            orderType = order.getInt(FixMessage.ORDER_TYPE_IDENTIFIER);
+            quantity = order.getInt(FixMessage.QUANTITY_IDENTIFIER);
+            price = order.getDouble(FixMessage.PRICE_IDENTIFIER);
+        } catch (FixMessageException e) {
+            Log.debug("Received malformed order from %s: %s", senderId, e.getMessage());
+            this.rejectOrder(senderId, clOrdId, e.getMessage());
+            return;
+        }
+
+        final OrderQueue queue = shard.getQueue();
+        queue.claim().set(orderType, senderId, instrumentName, quantity, price, clOrdId);
+        queue.publish();
+    }
+
+    /**
+     * Answer the Router's TestRequest @param message with a Heartbeat echoing its TestReqID
+     * @return true if @param message was a Heartbeat or a TestRequest, which are not orders
+     */
+    private boolean isHeartbeat(final FixFields message) throws IOException, FixMessageException {
+        if (message.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.HEARTBEAT_MSG_TYPE)) {
+            return true;
+        } else if (!message.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEST_REQUEST_MSG_TYPE)) {
+            return false;
         }
+
+        this.encoder.begin(FixLayout.TEST_HEARTBEAT).putString(this.getId()).putString("Router")
+                .putString(message.getString(FixMessage.TEST_REQ_ID_IDENTIFIER, "")).finish();
+        this.writeMessage(this.encoder);
+        return true;
     }
 
-    private void acceptOrder(final FixMessage order) {
+    private void rejectOrder(final String senderId, final String clOrdId, final String reason) {
         try {
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
-            FixMessage executedOrder = new FixMessage();
+            encodeReport(this.encoder, FixLayout.REJECT, FixLayout.ORDER_REJECT, this.getId(), senderId, clOrdId,
+                    reason);
 
-            executedOrder.setSenderId(this.getId());
-            executedOrder.setDestId(order.getSenderId());
-            executedOrder.setMsgType(FixMessage.EXECUTED_MSG_TYPE);
-            executedOrder.setText(String.format("%s order of %d %s for %f$ executed",
-                    order.getOrderType() == FixMessage.BUY_ORDER ? "Buy" : "Sell",
-                    order.getQuantity(), order.getInstrument(), order.getPrice()));
-            executedOrder.buildMessage(new LinkedHashSet<>(Arrays.asList(FixMessage.SENDER_IDENTIFIER,
-                    FixMessage.DEST_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEXT_IDENTIFIER)));
+            Log.debug("Sending %sRejected%s order to %s: %s", RED, RESET, senderId, reason);
+            this.writeMessage(this.encoder);
+        } catch (IOException e) {
+            Log.error("Error while sending reject order: " + e.getMessage());
+        }
+    }
 
-            System.out.printf("Sending %sExecuted%s order to %s: %s\n", GREEN, RESET, executedOrder.getDestId(),
-                    executedOrder.getText());
-            out.write(executedOrder.getMessage() + '\n');
-            out.flush();
-            this.database.insertTransaction(order);
-        } catch (IOException | FixMessageException e) {
-            System.err.println("Error while sending execute order: " + e.getMessage());
+    /**
+     * Encode a report from @param marketId to @param destId in @param encoder, with @param orderLayout to echo
+     * @param clOrdId when the order had one, with @param layout otherwise
+     */
+    static void encodeReport(final FixMessageEncoder encoder, final FixLayout layout, final FixLayout orderLayout,
+            final String marketId, final String destId, final String clOrdId, final String text) {
+        if (clOrdId == null) {
+            encoder.begin(layout).putString(marketId).putString(destId).putString(text).putSeqNum(0).finish();
+        } else {
+            encoder.begin(orderLayout).putString(marketId).putString(destId).putString(clOrdId).putString(text)
+                    .putSeqNum(0).finish();
         }
+    }
 
-        this.displayInstruments();
+    /**
+     * @return A new encoder writing the wire encoding granted at Logon
+     */
+    FixMessageEncoder newEncoder() {
+        return this.binary ? new FixBinaryEncoder() : new FixEncoder();
     }
 
-    private void rejectOrder(final FixMessage order, final String reason) {
+    /**
+     * Send the message held by @param messageEncoder to the Router, from any shard, numbering it first if it
+     * has room for a MsgSeqNum
+     */
+    public void writeMessage(final FixMessageEncoder messageEncoder) throws IOException {
+        /* Not synchronized, which would pin a virtual listener thread to its carrier while blocked writing */
+        this.outLock.lock();
         try {
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(this.socket.getOutputStream()));
-            FixMessage rejectedOrder = new FixMessage();
+            final boolean numbered = messageEncoder.hasSeqNum();
 
-            rejectedOrder.setSenderId(this.getId());
-            rejectedOrder.setDestId(order.getSenderId());
-            rejectedOrder.setMsgType(FixMessage.REJECTED_MSG_TYPE);
-            rejectedOrder.setText(reason);
-            rejectedOrder.buildMessage(new LinkedHashSet<>(Arrays.asList(FixMessage.SENDER_IDENTIFIER,
-                    FixMessage.DEST_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEXT_IDENTIFIER)));
+            if (numbered) {
+                this.sequence.resetIfExhausted(this.getId(), "Router", this.binary, this::writeFrame);
+                messageEncoder.setSeqNum(this.sequence.getNextSeqNum());
+            }
+            this.writeFrame(messageEncoder.getBuffer(), 0, messageEncoder.getLength());
+            this.out.flush();
+            /* Only numbered once written, a report failing to be sent is not resent */
+            if (numbered) {
+                this.sequence.sent(this.sequence.nextSeqNum(), messageEncoder.getBuffer(), 0,
+                        messageEncoder.getLength(), messageEncoder.isBinary());
+            }
+        } finally {
+            this.outLock.unlock();
+        }
+    }
 
-            System.out.printf("Sending %sRejected%s order to %s: %s\n", RED, RESET, rejectedOrder.getDestId(),
-                    rejectedOrder.getText());
-            out.write(rejectedOrder.getMessage() + '\n');
-            out.flush();
-        } catch (IOException | FixMessageException e) {
-            System.err.println("Error while sending reject order: " + e.getMessage());
+    /**
+     * Write @param length bytes of the message @param frame to the Router, holding outLock
+     */
+    private void writeFrame(final byte[] frame, final int offset, final int length) throws IOException {
+        this.out.write(frame, offset, length);
+        if (!this.binary) {
+            this.out.write('\n');
         }
     }
 
@@ -170,16 +461,24 @@ public class Market {
                 "BRK.B", "NVDA", "JNJ", "V");
         Random random = new Random();
 
-        for (final String instrument : instrumentNames) {
-            this.instruments.put(instrument, new Instrument(instrument, random.nextInt(30, 5000),
-                    random.nextDouble(20.0, 1000.0)));
+        this.shards = new MarketShard[Math.max(1, Math.min(SHARDS, instrumentNames.size()))];
+        for (int i = 0; i < this.shards.length; ++i) {
+            this.shards[i] = new MarketShard(this, this.transactions, SHARD_QUEUE_CAPACITY);
+        }
+
+        for (int i = 0; i < instrumentNames.size(); ++i) {
+            final String instrument = instrumentNames.get(i);
+            final MarketShard shard = this.shards[i % this.shards.length];
+
+            shard.list(new Instrument(instrument, random.nextInt(30, 5000), random.nextDouble(20.0, 1000.0)));
+            this.shardsByInstrument.put(instrument, shard);
         }
     }
 
     private void displayInstruments() {
-        System.out.println(CYAN + this.getId() + RESET + ":");
-        for (Map.Entry<String, Instrument> instrumentEntry : this.instruments.entrySet()) {
-            System.out.println(instrumentEntry.getValue());
+        Log.info(CYAN + this.getId() + RESET + ":");
+        for (final MarketShard shard : this.shards) {
+            shard.displayInstruments();
         }
     }
 
@@ -0,0 +1,371 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Single-writer owner of the order books of some of the Market's instruments.
+ * The Market's reader hands it orders through its OrderQueue, and its thread alone matches them, so orders
+ * for one instrument keep their sequence while different shards run in parallel.
+ * Whenever its queue runs empty, it publishes the quotes of the instruments its last orders changed.
+ */
+public class MarketShard implements Runnable {
+    private static final int MARKET_OWNER = 0;
+    /* The market buys back at its quoted price as much as its stock can still hold */
+    private static final int MAX_STOCK = Integer.MAX_VALUE;
+    /* Whether quotes are published for the Router to fan out to subscribed Brokers */
+    private static final boolean MARKET_DATA = Boolean.parseBoolean(System.getProperty("fixme.market.data",
+            "true"));
+
+    private final Market market;
+    private final TransactionWriter transactions;
+    private final OrderQueue queue;
+    /* Set once the Router granted the Market its wire encoding */
+    private FixMessageEncoder encoder;
+    private final HashMap<String, Listing> listings = new HashMap<>();
+    /* Order book owners, the market itself being MARKET_OWNER */
+    private final ArrayList<String> owners = new ArrayList<>(List.of(""));
+    private final HashMap<String, Integer> ownerNumbers = new HashMap<>();
+    private final OrderBook.FillListener fillListener = this::onFill;
+    /* Order being matched */
+    private Listing currentListing;
+    private int currentOrderType;
+    private int currentOwner;
+    private String currentSenderId;
+    private String currentClOrdId;
+    private int currentFilled;
+    private boolean requoteAsk;
+    private Thread thread;
+
+    public MarketShard(final Market marketParam, final TransactionWriter transactionsParam,
+            final int queueCapacity) {
+        this.market = marketParam;
+        this.transactions = transactionsParam;
+        this.queue = new OrderQueue(queueCapacity);
+    }
+
+    /**
+     * Open the order book of @param instrument, with the market's own quotes in it
+     */
+    public void list(final Instrument instrument) {
+        final Listing listing = new Listing(instrument);
+
+        this.quoteAsk(listing);
+        this.quoteBid(listing);
+        this.listings.put(instrument.getInstrumentName(), listing);
+    }
+
+    public void start(final String name) {
+        this.encoder = this.market.newEncoder();
+        this.thread = new Thread(this, name);
+        this.thread.start();
+    }
+
+    /**
+     * Stop once the orders already handed over are handled
+     */
+    public void stop() {
+        if (this.thread != null) {
+            this.queue.close(this.thread);
+        }
+    }
+
+    public void join() throws InterruptedException {
+        if (this.thread != null) {
+            this.thread.join();
+        }
+    }
+
+    @Override
+    public void run() {
+        Order order;
+
+        this.publishQuotes();
+        while ((order = this.queue.take()) != null) {
+            this.handleOrder(order.getOrderType(), order.getSenderId(), order.getInstrument(), order.getQuantity(),
+                    order.getPrice(), order.getClOrdId());
+            this.queue.release();
+
+            /* A burst of orders publishes the resulting quotes once */
+            if (this.queue.size() == 0) {
+                this.publishQuotes();
+            }
+        }
+    }
+
+    /**
+     * Publish the top of book and stock of every instrument changed since last published
+     */
+    private void publishQuotes() {
+        if (!MARKET_DATA) {
+            return;
+        }
+
+        for (final Listing listing : this.listings.values()) {
+            if (!listing.changed) {
+                continue;
+            }
+
+            final OrderBook book = listing.book;
+            listing.changed = false;
+            try {
+                this.encoder.begin(FixLayout.MARKET_DATA).putString(this.market.getId())
+                        .putString(listing.instrument.getInstrumentName()).putPrice(listing.instrument.getPrice())
+                        .putInt(listing.instrument.getQuantity())
+                        .putPrice(book.getBestBid() == -1 ? 0 : OrderBook.toPrice(book.getBestBid()))
+                        .putLong(book.getBestBidQuantity())
+                        .putPrice(book.getBestAsk() == -1 ? 0 : OrderBook.toPrice(book.getBestAsk()))
+                        .putLong(book.getBestAskQuantity()).finish();
+                this.market.writeMessage(this.encoder);
+            } catch (IOException e) {
+                Log.error("Error while publishing quotes: " + e.getMessage());
+            }
+        }
+    }
+
+    private void handleOrder(final int orderType, final String senderId, final String instrumentName,
+            final int quantity, final double price, final String clOrdId) {
+        final Listing listing = this.listings.get(instrumentName);
+
+        if (Log.isDebugEnabled()) {
+            Log.debug("Received %s order from %s of %d %s for %f$",
+                    orderType == FixMessage.BUY_ORDER ? "Buy" : "Sell", senderId, quantity, instrumentName, price);
+        }
+
+        if (listing == null) {
+            this.rejectOrder(senderId, clOrdId, String.format("No such instrument `%s`", instrumentName));
+        } else if (orderType != FixMessage.BUY_ORDER && orderType != FixMessage.SELL_ORDER) {
+            this.rejectOrder(senderId, clOrdId, String.format("Invalid order type `%d`", orderType));
+        } else if (quantity <= 0) {
+            this.rejectOrder(senderId, clOrdId, String.format("Invalid quantity (%d)", quantity));
+        } else if (!(price > 0)) {
+            this.rejectOrder(senderId, clOrdId, String.format("Invalid price (%f$)", price));
+        } else {
+            this.placeOrder(listing, orderType, senderId, clOrdId, quantity, OrderBook.toTicks(price));
+            listing.changed = true;
+        }
+    }
+
+    /**
+     * Match an order against the book of @param listing, then requote the market's offer if it bought some,
+     * and its bid if it was exhausted and the stock can hold more
+     */
+    private void placeOrder(final Listing listing, final int orderType, final String senderId,
+            final String clOrdId, final int quantity, final long price) {
+        this.requoteAsk = false;
+
+        final int slot = this.matchOrder(listing, orderType, this.ownerOf(senderId), senderId, clOrdId, quantity,
+                price);
+        final int filled = this.currentFilled;
+
+        if (slot != -1) {
+            listing.setClOrdId(slot, clOrdId);
+            this.sendExecution(senderId, clOrdId, String.format("%s order of %d %s for %f$ resting",
+                    orderType == FixMessage.BUY_ORDER ? "Buy" : "Sell", quantity - filled,
+                    listing.instrument.getInstrumentName(), OrderBook.toPrice(price)));
+        }
+
+        if (listing.bidSlot == -1 && listing.instrument.getQuantity() < MAX_STOCK) {
+            this.quoteBid(listing);
+        }
+        if (this.requoteAsk) {
+            if (listing.askSlot != -1) {
+                listing.book.cancel(listing.askSlot);
+            }
+            this.quoteAsk(listing);
+        }
+
+        if (filled > 0 && Log.isDebugEnabled()) {
+            Log.debug("%s%s%s: %s", Market.CYAN, this.market.getId(), Market.RESET, describe(listing));
+        }
+    }
+
+    /**
+     * Match an order of @param owner against the book of @param listing, reporting each fill to both sides
+     * @return The slot of what is left of the order, or -1 if it was completely filled
+     */
+    private int matchOrder(final Listing listing, final int orderType, final int owner, final String senderId,
+            final String clOrdId, final int quantity, final long price) {
+        this.currentListing = listing;
+        this.currentOrderType = orderType;
+        this.currentOwner = owner;
+        this.currentSenderId = senderId;
+        this.currentClOrdId = clOrdId;
+        this.currentFilled = 0;
+
+        return listing.book.submit(orderType, owner, price, quantity, this.fillListener);
+    }
+
+    /**
+     * Offer the whole stock of the instrument of @param listing at its price
+     */
+    private void quoteAsk(final Listing listing) {
+        final Instrument instrument = listing.instrument;
+
+        listing.askSlot = instrument.getQuantity() > 0
+                ? this.matchOrder(listing, FixMessage.SELL_ORDER, MARKET_OWNER, this.market.getId(), null,
+                        instrument.getQuantity(), OrderBook.toTicks(instrument.getPrice()))
+                : -1;
+    }
+
+    /**
+     * Bid one tick below the price of the instrument of @param listing, so the market's quotes never cross,
+     * for what its stock can still hold so no fill of the bid overflows it
+     */
+    private void quoteBid(final Listing listing) {
+        final Instrument instrument = listing.instrument;
+
+        listing.bidSlot = instrument.getQuantity() < MAX_STOCK
+                ? this.matchOrder(listing, FixMessage.BUY_ORDER, MARKET_OWNER, this.market.getId(), null,
+                        MAX_STOCK - instrument.getQuantity(), OrderBook.toTicks(instrument.getPrice()) - 1)
+                : -1;
+    }
+
+    /**
+     * Report a fill of the order being matched against the resting order of @param restingOwner
+     */
+    private void onFill(final int restingSlot, final int restingOwner, final long price, final int quantity,
+            final int restingRemaining) {
+        final Listing listing = this.currentListing;
+        final Instrument instrument = listing.instrument;
+        final boolean buy = this.currentOrderType == FixMessage.BUY_ORDER;
+        final double fillPrice = OrderBook.toPrice(price);
+        final String counterpartyId;
+
+        this.currentFilled += quantity;
+
+        if (restingOwner == MARKET_OWNER) {
+            counterpartyId = this.market.getId();
+            if (buy) {
+                instrument.setQuantity(instrument.getQuantity() - quantity);
+                if (restingRemaining == 0) {
+                    listing.askSlot = -1;
+                }
+            } else {
+                instrument.setQuantity(instrument.getQuantity() + quantity);
+                if (restingRemaining == 0) {
+                    listing.bidSlot = -1;
+                }
+                this.requoteAsk = true;
+            }
+        } else {
+            counterpartyId = this.owners.get(restingOwner);
+            this.sendExecution(counterpartyId, listing.getClOrdId(restingSlot),
+                    String.format("%s order of %d %s for %f$ executed", buy ? "Sell" : "Buy", quantity,
+                            instrument.getInstrumentName(), fillPrice));
+            if (restingRemaining == 0) {
+                listing.setClOrdId(restingSlot, null);
+            }
+        }
+
+        if (this.currentOwner == MARKET_OWNER) {
+            /* The market's own quote filled resting orders */
+            if (buy) {
+                instrument.setQuantity(instrument.getQuantity() + quantity);
+                this.requoteAsk = true;
+            } else {
+                instrument.setQuantity(instrument.getQuantity() - quantity);
+            }
+        } else {
+            this.sendExecution(this.currentSenderId, this.currentClOrdId,
+                    String.format("%s order of %d %s for %f$ executed", buy ? "Buy" : "Sell", quantity,
+                            instrument.getInstrumentName(), fillPrice));
+        }
+
+        this.transactions.submit(new Transaction(this.currentOrderType, this.currentSenderId, counterpartyId,
+                instrument.getInstrumentName(), quantity, fillPrice));
+    }
+
+    private void sendExecution(final String destId, final String clOrdId, final String text) {
+        try {
+            Market.encodeReport(this.encoder, FixLayout.EXECUTION, FixLayout.ORDER_EXECUTION, this.market.getId(),
+                    destId, clOrdId, text);
+
+            Log.debug("Sending %sExecuted%s order to %s: %s", Market.GREEN, Market.RESET, destId, text);
+            this.market.writeMessage(this.encoder);
+        } catch (IOException e) {
+            Log.error("Error while sending execute order: " + e.getMessage());
+        }
+    }
+
+    private void rejectOrder(final String senderId, final String clOrdId, final String reason) {
+        try {
+            Market.encodeReport(this.encoder, FixLayout.REJECT, FixLayout.ORDER_REJECT, this.market.getId(),
+                    senderId, clOrdId, reason);
+
+            Log.debug("Sending %sRejected%s order to %s: %s", Market.RED, Market.RESET, senderId, reason);
+            this.market.writeMessage(this.encoder);
+        } catch (IOException e) {
+            Log.error("Error while sending reject order: " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return The number standing for @param senderId in the order books
+     */
+    private int ownerOf(final String senderId) {
+        Integer owner = this.ownerNumbers.get(senderId);
+
+        if (owner == null) {
+            owner = this.owners.size();
+            this.owners.add(senderId);
+            this.ownerNumbers.put(senderId, owner);
+        }
+        return owner;
+    }
+
+    /**
+     * Print the instruments of the shard, before its thread starts
+     */
+    public void displayInstruments() {
+        for (final Listing listing : this.listings.values()) {
+            Log.info(describe(listing));
+        }
+    }
+
+    private static String describe(final Listing listing) {
+        final OrderBook book = listing.book;
+
+        return String.format("%s | bid: %s | ask: %s | resting: %d", listing.instrument,
+                formatQuote(book.getBestBid()), formatQuote(book.getBestAsk()), book.getRestingOrders());
+    }
+
+    private static String formatQuote(final long price) {
+        return price == -1 ? String.format("%12s", "none") : String.format("%10f $", OrderBook.toPrice(price));
+    }
+
+    public OrderQueue getQueue() { return this.queue; }
+
+    /**
+     * Order book of an instrument, along with the slots of the market's own quotes in it
+     */
+    private static final class Listing {
+        private final Instrument instrument;
+        private final OrderBook book;
+        private int askSlot = -1;
+        private int bidSlot = -1;
+        /* Quotes to publish, the first ones included */
+        private boolean changed = true;
+        /* ClOrdID of the resting orders, by slot */
+        private String[] clOrdIds = new String[64];
+
+        private Listing(final Instrument instrumentParam) {
+            this.instrument = instrumentParam;
+            this.book = new OrderBook(instrumentParam.getInstrumentName());
+        }
+
+        private void setClOrdId(final int slot, final String clOrdId) {
+            if (slot >= this.clOrdIds.length) {
+                this.clOrdIds = Arrays.copyOf(this.clOrdIds, Math.max(slot + 1, this.clOrdIds.length * 2));
+            }
+            this.clOrdIds[slot] = clOrdId;
+        }
+
+        private String getClOrdId(final int slot) {
+            return slot < this.clOrdIds.length ? this.clOrdIds[slot] : null;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.rmouduri.fixme;
+
+/**
+ * Order handed from the Market's reader to a shard.
+ * Orders are the reusable entries of an OrderQueue, filled in place by the reader.
+ */
+public class Order {
+    private int orderType;
+    private String senderId;
+    private String instrument;
+    private int quantity;
+    private double price;
+    private String clOrdId;
+
+    public void set(final int orderTypeParam, final String senderIdParam, final String instrumentParam,
+            final int quantityParam, final double priceParam, final String clOrdIdParam) {
+        this.orderType = orderTypeParam;
+        this.senderId = senderIdParam;
+        this.instrument = instrumentParam;
+        this.quantity = quantityParam;
+        this.price = priceParam;
+        this.clOrdId = clOrdIdParam;
+    }
+
+    /**
+     * Drop the references held by the order once it is handled
+     */
+    public void clear() {
+        this.senderId = null;
+        this.instrument = null;
+        this.clOrdId = null;
+    }
+
+    public int getOrderType() { return this.orderType; }
+
+    public String getSenderId() { return this.senderId; }
+
+    public String getInstrument() { return this.instrument; }
+
+    public int getQuantity() { return this.quantity; }
+
+    public double getPrice() { return this.price; }
+
+    public String getClOrdId() { return this.clOrdId; }
+}
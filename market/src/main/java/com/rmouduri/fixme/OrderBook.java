@@ -0,0 +1,284 @@
+package com.rmouduri.fixme;
+
+import java.util.Arrays;
+
+/**
+ * Limit order book of one instrument, matching on price then time priority.
+ * Resting orders live in primitive slot arrays, chained in first-in first-out order within their price level,
+ * and each side keeps its price levels in a sorted array with the best price last.
+ * An order book is not thread safe.
+ */
+public class OrderBook {
+    public static final long PRICE_SCALE = 1_000_000;
+    private static final int INITIAL_SLOTS = 1024;
+    private static final int INITIAL_LEVELS = 64;
+    private static final int NONE = -1;
+
+    private final String instrument;
+
+    /* Order slots */
+    private long[] slotPrices = new long[INITIAL_SLOTS];
+    private int[] slotQuantities = new int[INITIAL_SLOTS];
+    private int[] slotOwners = new int[INITIAL_SLOTS];
+    private int[] slotNext = new int[INITIAL_SLOTS];
+    private int[] slotPrevious = new int[INITIAL_SLOTS];
+    private boolean[] slotBuy = new boolean[INITIAL_SLOTS];
+    private int usedSlots;
+    private int freeSlot = NONE;
+    private int restingOrders;
+
+    private final Side bids = new Side(true);
+    private final Side asks = new Side(false);
+
+    public OrderBook(final String instrumentParam) {
+        this.instrument = instrumentParam;
+    }
+
+    /**
+     * Match an order of @param owner against the opposite side, then rest what is left of it
+     * @param orderType FixMessage.BUY_ORDER or FixMessage.SELL_ORDER
+     * @param price Limit price, in millionths
+     * @return The slot of the resting remainder, or -1 if the order was completely filled
+     */
+    public int submit(final int orderType, final int owner, final long price, final int quantity,
+            final FillListener listener) {
+        final boolean buy = orderType == FixMessage.BUY_ORDER;
+        final Side opposite = buy ? this.asks : this.bids;
+        int remaining = quantity;
+
+        while (remaining > 0 && opposite.count > 0) {
+            final int level = opposite.count - 1;
+            final long levelPrice = opposite.prices[level];
+
+            if (buy ? levelPrice > price : levelPrice < price) {
+                break;
+            }
+
+            int slot = opposite.heads[level];
+            while (remaining > 0 && slot != NONE) {
+                final int fill = Math.min(remaining, this.slotQuantities[slot]);
+                final int nextSlot = this.slotNext[slot];
+
+                remaining -= fill;
+                this.slotQuantities[slot] -= fill;
+                opposite.quantities[level] -= fill;
+                listener.onFill(slot, this.slotOwners[slot], levelPrice, fill, this.slotQuantities[slot]);
+
+                if (this.slotQuantities[slot] == 0) {
+                    opposite.unlink(level, slot);
+                    this.freeSlot(slot);
+                }
+                slot = nextSlot;
+            }
+
+            if (opposite.heads[level] == NONE) {
+                opposite.removeLevel(level);
+            }
+        }
+
+        if (remaining == 0) {
+            return NONE;
+        }
+
+        final int slot = this.allocateSlot();
+        this.slotPrices[slot] = price;
+        this.slotQuantities[slot] = remaining;
+        this.slotOwners[slot] = owner;
+        this.slotBuy[slot] = buy;
+        (buy ? this.bids : this.asks).append(price, slot);
+        ++this.restingOrders;
+
+        return slot;
+    }
+
+    /**
+     * Remove the resting order in @param slot
+     */
+    public void cancel(final int slot) {
+        final Side side = this.slotBuy[slot] ? this.bids : this.asks;
+        final int level = side.find(this.slotPrices[slot]);
+
+        if (level < 0 || this.slotQuantities[slot] == 0) {
+            return;
+        }
+
+        side.quantities[level] -= this.slotQuantities[slot];
+        side.unlink(level, slot);
+        if (side.heads[level] == NONE) {
+            side.removeLevel(level);
+        }
+        this.freeSlot(slot);
+    }
+
+    private int allocateSlot() {
+        if (this.freeSlot != NONE) {
+            final int slot = this.freeSlot;
+
+            this.freeSlot = this.slotNext[slot];
+            return slot;
+        }
+
+        if (this.usedSlots == this.slotQuantities.length) {
+            final int capacity = this.usedSlots * 2;
+
+            this.slotPrices = Arrays.copyOf(this.slotPrices, capacity);
+            this.slotQuantities = Arrays.copyOf(this.slotQuantities, capacity);
+            this.slotOwners = Arrays.copyOf(this.slotOwners, capacity);
+            this.slotNext = Arrays.copyOf(this.slotNext, capacity);
+            this.slotPrevious = Arrays.copyOf(this.slotPrevious, capacity);
+            this.slotBuy = Arrays.copyOf(this.slotBuy, capacity);
+        }
+        return this.usedSlots++;
+    }
+
+    private void freeSlot(final int slot) {
+        this.slotQuantities[slot] = 0;
+        this.slotNext[slot] = this.freeSlot;
+        this.freeSlot = slot;
+        --this.restingOrders;
+    }
+
+    /**
+     * @return The best bid in millionths, or -1 if there is none
+     */
+    public long getBestBid() { return this.bids.count == 0 ? NONE : this.bids.prices[this.bids.count - 1]; }
+
+    /**
+     * @return The best ask in millionths, or -1 if there is none
+     */
+    public long getBestAsk() { return this.asks.count == 0 ? NONE : this.asks.prices[this.asks.count - 1]; }
+
+    public long getBestBidQuantity() { return this.bids.count == 0 ? 0 : this.bids.quantities[this.bids.count - 1]; }
+
+    public long getBestAskQuantity() { return this.asks.count == 0 ? 0 : this.asks.quantities[this.asks.count - 1]; }
+
+    public int getRestingOrders() { return this.restingOrders; }
+
+    public String getInstrument() { return this.instrument; }
+
+    public static long toTicks(final double price) { return Math.round(price * PRICE_SCALE); }
+
+    public static double toPrice(final long ticks) { return (double) ticks / PRICE_SCALE; }
+
+    /**
+     * Price levels of one side, sorted so the best one is last
+     */
+    private final class Side {
+        private final boolean buy;
+        private long[] prices = new long[INITIAL_LEVELS];
+        private long[] quantities = new long[INITIAL_LEVELS];
+        private int[] heads = new int[INITIAL_LEVELS];
+        private int[] tails = new int[INITIAL_LEVELS];
+        private int count;
+
+        private Side(final boolean buyParam) {
+            this.buy = buyParam;
+        }
+
+        /**
+         * @return The level of @param price, or -(insertion point) - 1 if there is none
+         */
+        private int find(final long price) {
+            int low = 0;
+            int high = this.count - 1;
+
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final long middlePrice = this.prices[middle];
+
+                if (middlePrice == price) {
+                    return middle;
+                } else if (this.buy ? middlePrice < price : middlePrice > price) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return -(low + 1);
+        }
+
+        private void append(final long price, final int slot) {
+            int level = this.find(price);
+
+            if (level < 0) {
+                level = -(level + 1);
+                this.insertLevel(level, price);
+            }
+
+            slotNext[slot] = NONE;
+            slotPrevious[slot] = this.tails[level];
+            if (this.tails[level] == NONE) {
+                this.heads[level] = slot;
+            } else {
+                slotNext[this.tails[level]] = slot;
+            }
+            this.tails[level] = slot;
+            this.quantities[level] += slotQuantities[slot];
+        }
+
+        private void unlink(final int level, final int slot) {
+            final int previous = slotPrevious[slot];
+            final int next = slotNext[slot];
+
+            if (previous == NONE) {
+                this.heads[level] = next;
+            } else {
+                slotNext[previous] = next;
+            }
+            if (next == NONE) {
+                this.tails[level] = previous;
+            } else {
+                slotPrevious[next] = previous;
+            }
+        }
+
+        private void insertLevel(final int level, final long price) {
+            if (this.count == this.prices.length) {
+                final int capacity = this.count * 2;
+
+                this.prices = Arrays.copyOf(this.prices, capacity);
+                this.quantities = Arrays.copyOf(this.quantities, capacity);
+                this.heads = Arrays.copyOf(this.heads, capacity);
+                this.tails = Arrays.copyOf(this.tails, capacity);
+            }
+
+            final int moved = this.count - level;
+            System.arraycopy(this.prices, level, this.prices, level + 1, moved);
+            System.arraycopy(this.quantities, level, this.quantities, level + 1, moved);
+            System.arraycopy(this.heads, level, this.heads, level + 1, moved);
+            System.arraycopy(this.tails, level, this.tails, level + 1, moved);
+
+            this.prices[level] = price;
+            this.quantities[level] = 0;
+            this.heads[level] = NONE;
+            this.tails[level] = NONE;
+            ++this.count;
+        }
+
+        private void removeLevel(final int level) {
+            final int moved = this.count - level - 1;
+
+            System.arraycopy(this.prices, level + 1, this.prices, level, moved);
+            System.arraycopy(this.quantities, level + 1, this.quantities, level, moved);
+            System.arraycopy(this.heads, level + 1, this.heads, level, moved);
+            System.arraycopy(this.tails, level + 1, this.tails, level, moved);
+            --this.count;
+        }
+    }
+
+    /**
+     * Receives each fill of a submitted order against a resting one
+     */
+    @FunctionalInterface
+    public interface FillListener {
+        /**
+         * @param restingSlot Slot of the resting order, freed once @param restingRemaining is 0
+         * @param restingOwner Owner of the resting order
+         * @param price Price of the fill in millionths, the resting order's
+         * @param quantity Quantity filled
+         * @param restingRemaining Quantity left on the resting order
+         */
+        void onFill(final int restingSlot, final int restingOwner, final long price, final int quantity,
+                final int restingRemaining);
+    }
+}
@@ -0,0 +1,107 @@
+package com.rmouduri.fixme;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free bounded queue of orders between one producer and one consumer thread.
+ * Its entries are preallocated Orders filled in place, so handing an order over allocates nothing.
+ * The consumer spins briefly when the queue is empty, then parks until the producer publishes.
+ */
+public class OrderQueue {
+    private static final int SPINS = 1000;
+
+    private final Order[] orders;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    /* Producer side */
+    private long producerTail;
+    private long cachedHead;
+    /* Consumer side */
+    private long consumerHead;
+    private volatile Thread sleeper;
+    private volatile boolean closed;
+
+    /**
+     * @param capacity Rounded up to a power of two
+     */
+    public OrderQueue(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+
+        this.orders = new Order[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; ++i) {
+            this.orders[i] = new Order();
+        }
+    }
+
+    /**
+     * Wait for a free entry, to be filled then handed over with publish()
+     */
+    public Order claim() {
+        while (this.producerTail - this.cachedHead == this.orders.length) {
+            this.cachedHead = this.head.get();
+            if (this.producerTail - this.cachedHead == this.orders.length) {
+                Thread.onSpinWait();
+            }
+        }
+        return this.orders[(int) this.producerTail & this.mask];
+    }
+
+    /**
+     * Hand the entry returned by claim() to the consumer
+     */
+    public void publish() {
+        this.tail.set(++this.producerTail);
+
+        final Thread thread = this.sleeper;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Wait for the next order, to be handed back with release() once handled
+     * @return The next order, or null once the queue is closed and empty
+     */
+    public Order take() {
+        int spins = 0;
+
+        while (this.consumerHead == this.tail.get()) {
+            if (this.closed) {
+                /* The producer closes the queue after its last publish */
+                if (this.consumerHead == this.tail.get()) {
+                    return null;
+                }
+                break;
+            }
+            if (++spins < SPINS) {
+                Thread.onSpinWait();
+                continue;
+            }
+
+            this.sleeper = Thread.currentThread();
+            if (this.consumerHead == this.tail.get() && !this.closed) {
+                LockSupport.park(this);
+            }
+            this.sleeper = null;
+        }
+        return this.orders[(int) this.consumerHead & this.mask];
+    }
+
+    public void release() {
+        this.orders[(int) this.consumerHead & this.mask].clear();
+        this.head.lazySet(++this.consumerHead);
+    }
+
+    /**
+     * Let the consumer return null once it has taken every order left
+     */
+    public void close(final Thread consumer) {
+        this.closed = true;
+        LockSupport.unpark(consumer);
+    }
+
+    public int size() { return (int) (this.tail.get() - this.head.get()); }
+}
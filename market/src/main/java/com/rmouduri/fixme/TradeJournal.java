@@ -0,0 +1,236 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Local storage of the transactions in a memory-mapped file of fixed-size binary records.
+ * A record is RECORD_SIZE bytes: the time it was stored, order type, quantity, price in millionths, then
+ * the sender, destination and instrument in ASCII, zero-padded and truncated to their width.
+ * The time is written last and is never 0, so a record cut short by a crash is overwritten on reopening.
+ * Records are left to the page cache, surviving a crash of the Market but not of the machine, unless
+ * `fixme.market.journal.sync' forces every batch to disk.
+ * The file is mapped WINDOW_RECORDS records at a time, and grows as windows are mapped.
+ */
+public class TradeJournal implements TransactionStore {
+    public static final int RECORD_SIZE = 64;
+    private static final int WINDOW_RECORDS = 1 << 16;
+    private static final long WINDOW_SIZE = (long) WINDOW_RECORDS * RECORD_SIZE;
+    /* Force every batch to disk, instead of leaving it to the page cache */
+    private static final boolean SYNC = Boolean.getBoolean("fixme.market.journal.sync");
+
+    private static final int TIME_OFFSET = 0;
+    private static final int ORDER_TYPE_OFFSET = 8;
+    private static final int QUANTITY_OFFSET = 12;
+    private static final int PRICE_OFFSET = 16;
+    private static final int SENDER_OFFSET = 24;
+    private static final int DEST_OFFSET = 36;
+    private static final int INSTRUMENT_OFFSET = 48;
+    private static final int ID_WIDTH = 12;
+    private static final int INSTRUMENT_WIDTH = 16;
+
+    private final Path path;
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowIndex = -1;
+    private long records;
+
+    public TradeJournal(final Path pathParam) {
+        this.path = pathParam;
+    }
+
+    /**
+     * Open the journal, after the last complete record it holds
+     */
+    @Override
+    public void open() throws MarketException {
+        try {
+            if (this.path.getParent() != null) {
+                Files.createDirectories(this.path.getParent());
+            }
+            this.channel = FileChannel.open(this.path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            this.records = this.countRecords();
+            Log.info("Trade journal %s holds %d transactions", this.path, this.records);
+        } catch (IOException e) {
+            this.close();
+            throw new MarketException("Trade journal error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Binary search of the first empty record, as complete records are never followed by a gap
+     */
+    private long countRecords() throws IOException {
+        final ByteBuffer time = ByteBuffer.allocate(Long.BYTES);
+        long low = 0;
+        long high = this.channel.size() / RECORD_SIZE;
+
+        while (low < high) {
+            final long middle = (low + high) >>> 1;
+
+            time.clear();
+            this.channel.read(time, middle * RECORD_SIZE + TIME_OFFSET);
+            if (time.getLong(0) != 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    @Override
+    public boolean isAvailable() {
+        return true;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return this.channel != null;
+    }
+
+    /**
+     * Write @param transactions after the last record, which only moves once the whole batch is written.
+     * A batch failing halfway is erased and the journal closed, so reopening it does not count its first records.
+     */
+    @Override
+    public void store(final List<Transaction> transactions) throws MarketException {
+        long next = this.records;
+
+        try {
+            final long time = System.currentTimeMillis();
+
+            for (final Transaction transaction : transactions) {
+                final int position = this.mapRecord(next);
+                final MappedByteBuffer buffer = this.window;
+
+                buffer.putInt(position + ORDER_TYPE_OFFSET, transaction.getOrderType());
+                buffer.putInt(position + QUANTITY_OFFSET, transaction.getQuantity());
+                buffer.putLong(position + PRICE_OFFSET, OrderBook.toTicks(transaction.getPrice()));
+                putAscii(buffer, position + SENDER_OFFSET, ID_WIDTH, transaction.getSenderId());
+                putAscii(buffer, position + DEST_OFFSET, ID_WIDTH, transaction.getDestId());
+                putAscii(buffer, position + INSTRUMENT_OFFSET, INSTRUMENT_WIDTH, transaction.getInstrument());
+                buffer.putLong(position + TIME_OFFSET, time);
+                ++next;
+            }
+
+            if (SYNC) {
+                this.window.force();
+            }
+            this.records = next;
+        } catch (IOException e) {
+            this.erase(this.records, next);
+            this.close();
+            throw new MarketException("Trade journal error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Clear the time of the records from @param from to @param to, so they are overwritten
+     */
+    private void erase(final long from, final long to) {
+        try {
+            for (long record = from; record < to; ++record) {
+                final int position = this.mapRecord(record);
+
+                this.window.putLong(position + TIME_OFFSET, 0);
+            }
+        } catch (IOException e) {
+            Log.error("Failed to erase %d trade journal records: %s", to - from, e.getMessage());
+        }
+    }
+
+    /**
+     * Map the window holding @param record if needed
+     * @return The position of the record in the window
+     */
+    private int mapRecord(final long record) throws IOException {
+        final long index = record / WINDOW_RECORDS;
+
+        if (index != this.windowIndex) {
+            if (SYNC && this.window != null) {
+                this.window.force();
+            }
+            this.window = this.channel.map(FileChannel.MapMode.READ_WRITE, index * WINDOW_SIZE, WINDOW_SIZE);
+            this.windowIndex = index;
+        }
+        return (int) (record % WINDOW_RECORDS) * RECORD_SIZE;
+    }
+
+    @Override
+    public long scan(final TransactionConsumer consumer) throws MarketException {
+        final long count = this.records;
+
+        try {
+            for (long start = 0; start < count; start += WINDOW_RECORDS) {
+                final int windowRecords = (int) Math.min(WINDOW_RECORDS, count - start);
+                final MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                        start * RECORD_SIZE, (long) windowRecords * RECORD_SIZE);
+
+                for (int position = 0; position < windowRecords * RECORD_SIZE; position += RECORD_SIZE) {
+                    consumer.accept(new Transaction(buffer.getInt(position + ORDER_TYPE_OFFSET),
+                            getAscii(buffer, position + SENDER_OFFSET, ID_WIDTH),
+                            getAscii(buffer, position + DEST_OFFSET, ID_WIDTH),
+                            getAscii(buffer, position + INSTRUMENT_OFFSET, INSTRUMENT_WIDTH),
+                            buffer.getInt(position + QUANTITY_OFFSET),
+                            OrderBook.toPrice(buffer.getLong(position + PRICE_OFFSET))));
+                }
+            }
+        } catch (IOException e) {
+            throw new MarketException("Trade journal error: " + e.getMessage());
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (this.channel == null) {
+            return;
+        }
+
+        try {
+            if (this.window != null) {
+                this.window.force();
+            }
+            this.channel.close();
+        } catch (IOException e) {
+            Log.error("Failed to close trade journal: " + e.getMessage());
+        }
+        this.channel = null;
+        this.window = null;
+        this.windowIndex = -1;
+    }
+
+    public long getRecords() { return this.records; }
+
+    private static void putAscii(final ByteBuffer buffer, final int position, final int width, final String value) {
+        final int length = Math.min(width, value.length());
+
+        for (int i = 0; i < length; ++i) {
+            buffer.put(position + i, (byte) value.charAt(i));
+        }
+        for (int i = length; i < width; ++i) {
+            buffer.put(position + i, (byte) 0);
+        }
+    }
+
+    private static String getAscii(final ByteBuffer buffer, final int position, final int width) {
+        int length = 0;
+
+        while (length < width && buffer.get(position + length) != 0) {
+            ++length;
+        }
+
+        final byte[] bytes = new byte[length];
+        buffer.get(position, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,35 @@
+package com.rmouduri.fixme;
+
+/**
+ * Fill of an order, as stored by the Market
+ */
+public class Transaction {
+    private final int orderType;
+    private final String senderId;
+    private final String destId;
+    private final String instrument;
+    private final int quantity;
+    private final double price;
+
+    public Transaction(final int orderTypeParam, final String senderIdParam, final String destIdParam,
+            final String instrumentParam, final int quantityParam, final double priceParam) {
+        this.orderType = orderTypeParam;
+        this.senderId = senderIdParam;
+        this.destId = destIdParam;
+        this.instrument = instrumentParam;
+        this.quantity = quantityParam;
+        this.price = priceParam;
+    }
+
+    public int getOrderType() { return this.orderType; }
+
+    public String getSenderId() { return this.senderId; }
+
+    public String getDestId() { return this.destId; }
+
+    public String getInstrument() { return this.instrument; }
+
+    public int getQuantity() { return this.quantity; }
+
+    public double getPrice() { return this.price; }
+}
@@ -0,0 +1,44 @@
+package com.rmouduri.fixme;
+
+import java.util.List;
+
+/**
+ * Storage of the Market's transactions, only used by the TransactionWriter thread.
+ * Selected with the `fixme.market.store' property: `jdbc' for the MySQL Database, `journal' for a local
+ * TradeJournal file.
+ */
+public interface TransactionStore {
+    /**
+     * Open the store, or reopen it after a failure
+     */
+    void open() throws MarketException;
+
+    /**
+     * @return false once the store can never be opened, so retrying is pointless
+     */
+    boolean isAvailable();
+
+    boolean isOpen();
+
+    /**
+     * Store @param transactions, all of them or none. How durably depends on the store: the Database commits
+     * them, while the TradeJournal leaves them to the page cache unless `fixme.market.journal.sync' is set.
+     */
+    void store(final List<Transaction> transactions) throws MarketException;
+
+    /**
+     * Hand every stored transaction to @param consumer, in the order they were stored
+     * @return The number of transactions scanned
+     */
+    long scan(final TransactionConsumer consumer) throws MarketException;
+
+    void close();
+
+    /**
+     * Receives the transactions of a scan
+     */
+    @FunctionalInterface
+    interface TransactionConsumer {
+        void accept(final Transaction transaction);
+    }
+}
@@ -0,0 +1,222 @@
+package com.rmouduri.fixme;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Background writer storing the Market's transactions in a TransactionStore.
+ * Shards hand transactions over through a bounded queue without ever waiting, and the writer inserts them
+ * in batches committed every BATCH_SIZE transactions or LINGER_MILLIS milliseconds, whichever comes first.
+ * A failed batch is kept and inserted again once the connection is back, waiting longer after each failure,
+ * and dropped after MAX_ATTEMPTS failed insertions so a batch the store always refuses does not block the others.
+ * Every REPORT_MILLIS milliseconds with activity, the writer logs what it stored, its queue depth and its drops.
+ */
+public class TransactionWriter implements Runnable {
+    private static final int BATCH_SIZE = Integer.getInteger("fixme.market.db.batch", 500);
+    private static final long LINGER_MILLIS = Long.getLong("fixme.market.db.linger", 50);
+    private static final int QUEUE_CAPACITY = Integer.getInteger("fixme.market.db.queue", 1 << 16);
+    private static final long MIN_RECONNECT_MILLIS = 500;
+    private static final long MAX_RECONNECT_MILLIS = 30_000;
+    private static final int MAX_ATTEMPTS = Integer.getInteger("fixme.market.db.attempts", 5);
+    /* Period of the info line reporting the queue, none if not positive */
+    private static final long REPORT_MILLIS = Long.getLong("fixme.market.db.report", 10_000);
+
+    private TransactionStore store;
+    private final ArrayBlockingQueue<Transaction> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    /* Only written by the writer thread */
+    private volatile long stored;
+    private volatile int peakQueueDepth;
+    private long reportedStored;
+    private long reportedDropped;
+    private volatile boolean running;
+    /* Cleared when the store can never be opened, so transactions are not queued for nothing */
+    private volatile boolean available = true;
+    private Thread thread;
+
+    /**
+     * Start storing the transactions in @param storeParam
+     */
+    public void start(final TransactionStore storeParam) {
+        this.store = storeParam;
+        this.running = true;
+        this.thread = new Thread(this, "market-transaction-writer");
+        this.thread.start();
+    }
+
+    /**
+     * Queue @param transaction for storage, without waiting
+     * @return false if it was dropped, as the queue is full or the store unavailable
+     */
+    public boolean submit(final Transaction transaction) {
+        if (this.available && this.queue.offer(transaction)) {
+            return true;
+        }
+
+        this.dropped.increment();
+        return false;
+    }
+
+    /**
+     * Store the transactions already queued, then stop
+     */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            this.running = false;
+            this.notifyAll();
+        }
+        if (this.thread != null) {
+            this.thread.join();
+        }
+    }
+
+    @Override
+    public void run() {
+        final ArrayList<Transaction> batch = new ArrayList<>(BATCH_SIZE);
+        long reconnectMillis = MIN_RECONNECT_MILLIS;
+        int attempts = 0;
+        long nextReport = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REPORT_MILLIS);
+
+        try {
+            while (this.running || !this.queue.isEmpty() || !batch.isEmpty()) {
+                this.fillBatch(batch);
+                this.peakQueueDepth = Math.max(this.peakQueueDepth, this.getQueueDepth());
+                if (REPORT_MILLIS > 0 && System.nanoTime() - nextReport >= 0) {
+                    this.report();
+                    nextReport = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(REPORT_MILLIS);
+                }
+                if (batch.isEmpty()) {
+                    continue;
+                }
+
+                if (!this.store.isOpen() && !this.open()) {
+                    if (!this.available || !this.running) {
+                        this.drop(batch);
+                        continue;
+                    }
+                    reconnectMillis = this.backOff(reconnectMillis);
+                    continue;
+                }
+
+                try {
+                    this.store.store(batch);
+                    Log.debug("Stored %d transactions (%d pending)", batch.size(), this.getQueueDepth());
+                    this.stored += batch.size();
+                    batch.clear();
+                    reconnectMillis = MIN_RECONNECT_MILLIS;
+                    attempts = 0;
+                } catch (MarketException e) {
+                    Log.error(e.getMessage());
+                    if (++attempts >= MAX_ATTEMPTS) {
+                        this.dropped.add(batch.size());
+                        Log.error("Dropping %d transactions after %d failed attempts.", batch.size(), attempts);
+                        batch.clear();
+                        attempts = 0;
+                    } else {
+                        reconnectMillis = this.backOff(reconnectMillis);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            this.drop(batch);
+        } finally {
+            this.store.close();
+        }
+    }
+
+    /**
+     * Add queued transactions to @param batch until it is full, or LINGER_MILLIS after its first one
+     */
+    private void fillBatch(final ArrayList<Transaction> batch) throws InterruptedException {
+        if (batch.isEmpty()) {
+            final Transaction first = this.queue.poll(LINGER_MILLIS, TimeUnit.MILLISECONDS);
+
+            if (first == null) {
+                return;
+            }
+            batch.add(first);
+        }
+
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+        while (batch.size() < BATCH_SIZE) {
+            if (this.queue.drainTo(batch, BATCH_SIZE - batch.size()) > 0) {
+                continue;
+            }
+
+            final long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || (!this.running && !batch.isEmpty())) {
+                return;
+            }
+
+            final Transaction transaction = this.queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (transaction == null) {
+                return;
+            }
+            batch.add(transaction);
+        }
+    }
+
+    /**
+     * Wait @param reconnectMillis before trying the store again, unless stopping
+     * @return The time to wait after the next failure
+     */
+    private long backOff(final long reconnectMillis) throws InterruptedException {
+        synchronized (this) {
+            if (this.running) {
+                this.wait(reconnectMillis);
+            }
+        }
+        return Math.min(reconnectMillis * 2, MAX_RECONNECT_MILLIS);
+    }
+
+    /**
+     * Log the transactions stored and dropped since the last report and the depth of the queue, unless the
+     * writer was idle
+     */
+    private void report() {
+        final long storedNow = this.stored;
+        final long droppedNow = this.getDropped();
+        final int depth = this.getQueueDepth();
+
+        if (storedNow != this.reportedStored || droppedNow != this.reportedDropped || depth > 0) {
+            Log.info("Transactions: %d stored, %d dropped, %d queued of %d (peak %d)",
+                    storedNow - this.reportedStored, droppedNow - this.reportedDropped, depth, QUEUE_CAPACITY,
+                    this.peakQueueDepth);
+            this.reportedStored = storedNow;
+            this.reportedDropped = droppedNow;
+        }
+    }
+
+    private boolean open() {
+        try {
+            this.store.open();
+            return true;
+        } catch (MarketException e) {
+            Log.error(e.getMessage());
+            this.available = this.store.isAvailable();
+        }
+        return false;
+    }
+
+    private void drop(final ArrayList<Transaction> batch) {
+        this.queue.drainTo(batch);
+        this.dropped.add(batch.size());
+        Log.error("Can't store %d transactions.", batch.size());
+        batch.clear();
+    }
+
+    public int getQueueDepth() { return this.queue.size(); }
+
+    /**
+     * @return The deepest the queue was seen by the writer, which samples it once per batch
+     */
+    public int getPeakQueueDepth() { return this.peakQueueDepth; }
+
+    public int getQueueCapacity() { return QUEUE_CAPACITY; }
+
+    public long getStored() { return this.stored; }
+
+    public long getDropped() { return this.dropped.sum(); }
+}
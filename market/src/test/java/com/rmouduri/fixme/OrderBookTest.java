@@ -0,0 +1,165 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Matching of the order book on price then time priority
+ */
+class OrderBookTest {
+    private static final int BUY = FixMessage.BUY_ORDER;
+    private static final int SELL = FixMessage.SELL_ORDER;
+
+    private final OrderBook book = new OrderBook("AAPL");
+    private final List<Fill> fills = new ArrayList<>();
+    private final OrderBook.FillListener listener = (slot, owner, price, quantity, remaining) ->
+            this.fills.add(new Fill(slot, owner, price, quantity, remaining));
+
+    private record Fill(int slot, int owner, long price, int quantity, int remaining) {
+    }
+
+    private int submit(final int orderType, final int owner, final double price, final int quantity) {
+        return this.book.submit(orderType, owner, OrderBook.toTicks(price), quantity, this.listener);
+    }
+
+    @Test
+    void ordersThatDoNotCrossRest() {
+        assertNotEquals(-1, this.submit(BUY, 1, 99, 10));
+        assertNotEquals(-1, this.submit(BUY, 2, 99, 5));
+        assertNotEquals(-1, this.submit(SELL, 3, 101, 7));
+
+        assertTrue(this.fills.isEmpty());
+        assertEquals(OrderBook.toTicks(99), this.book.getBestBid());
+        assertEquals(15, this.book.getBestBidQuantity());
+        assertEquals(OrderBook.toTicks(101), this.book.getBestAsk());
+        assertEquals(7, this.book.getBestAskQuantity());
+        assertEquals(3, this.book.getRestingOrders());
+    }
+
+    @Test
+    void emptyBookHasNoQuotes() {
+        assertEquals(-1, this.book.getBestBid());
+        assertEquals(-1, this.book.getBestAsk());
+        assertEquals(0, this.book.getBestBidQuantity());
+        assertEquals(0, this.book.getBestAskQuantity());
+    }
+
+    @Test
+    void crossingOrderFillsAtTheRestingPrice() {
+        this.submit(SELL, 1, 100, 10);
+
+        assertEquals(-1, this.submit(BUY, 2, 105, 10));
+        assertEquals(List.of(new Fill(0, 1, OrderBook.toTicks(100), 10, 0)), this.fills);
+        assertEquals(-1, this.book.getBestAsk());
+        assertEquals(0, this.book.getRestingOrders());
+    }
+
+    @Test
+    void bestPriceIsFilledFirst() {
+        this.submit(SELL, 1, 102, 5);
+        this.submit(SELL, 2, 100, 5);
+        this.submit(SELL, 3, 101, 5);
+
+        this.submit(BUY, 4, 102, 12);
+        assertEquals(3, this.fills.size());
+        assertEquals(2, this.fills.get(0).owner());
+        assertEquals(OrderBook.toTicks(100), this.fills.get(0).price());
+        assertEquals(3, this.fills.get(1).owner());
+        assertEquals(OrderBook.toTicks(101), this.fills.get(1).price());
+        assertEquals(1, this.fills.get(2).owner());
+        assertEquals(2, this.fills.get(2).quantity());
+        assertEquals(3, this.fills.get(2).remaining());
+        assertEquals(3, this.book.getBestAskQuantity());
+    }
+
+    @Test
+    void earlierOrderIsFilledFirstAtTheSamePrice() {
+        this.submit(BUY, 1, 100, 5);
+        this.submit(BUY, 2, 100, 5);
+        this.submit(BUY, 3, 100, 5);
+
+        this.submit(SELL, 4, 100, 7);
+        assertEquals(2, this.fills.size());
+        assertEquals(new Fill(0, 1, OrderBook.toTicks(100), 5, 0), this.fills.get(0));
+        assertEquals(new Fill(1, 2, OrderBook.toTicks(100), 2, 3), this.fills.get(1));
+        assertEquals(8, this.book.getBestBidQuantity());
+
+        this.fills.clear();
+        this.submit(SELL, 4, 100, 8);
+        assertEquals(List.of(2, 3), this.fills.stream().map(Fill::owner).toList());
+    }
+
+    @Test
+    void matchingStopsAtTheLimitAndRestsTheRemainder() {
+        this.submit(SELL, 1, 100, 5);
+        this.submit(SELL, 2, 103, 5);
+
+        final int slot = this.submit(BUY, 3, 101, 8);
+        assertNotEquals(-1, slot);
+        assertEquals(1, this.fills.size());
+        assertEquals(OrderBook.toTicks(101), this.book.getBestBid());
+        assertEquals(3, this.book.getBestBidQuantity());
+        assertEquals(OrderBook.toTicks(103), this.book.getBestAsk());
+    }
+
+    @Test
+    void cancelledOrderIsNotFilled() {
+        final int first = this.submit(SELL, 1, 100, 5);
+        this.submit(SELL, 2, 100, 5);
+
+        this.book.cancel(first);
+        this.book.cancel(first);
+        assertEquals(5, this.book.getBestAskQuantity());
+        assertEquals(1, this.book.getRestingOrders());
+
+        this.submit(BUY, 3, 100, 10);
+        assertEquals(1, this.fills.size());
+        assertEquals(2, this.fills.get(0).owner());
+        assertEquals(OrderBook.toTicks(100), this.book.getBestBid());
+        assertEquals(5, this.book.getBestBidQuantity());
+    }
+
+    @Test
+    void cancellingTheLastOrderOfALevelRemovesIt() {
+        final int best = this.submit(BUY, 1, 100, 5);
+        this.submit(BUY, 2, 99, 5);
+
+        this.book.cancel(best);
+        assertEquals(OrderBook.toTicks(99), this.book.getBestBid());
+    }
+
+    @Test
+    void levelQuantitiesAddUpPastIntRange() {
+        this.submit(BUY, 1, 100, Integer.MAX_VALUE);
+        this.submit(BUY, 2, 100, Integer.MAX_VALUE);
+
+        assertEquals(2L * Integer.MAX_VALUE, this.book.getBestBidQuantity());
+    }
+
+    @Test
+    void growsPastItsInitialSlotsAndLevels() {
+        final int orders = 3000;
+
+        for (int i = 0; i < orders; ++i) {
+            this.submit(SELL, i + 1, 100 + i % 200, 1);
+        }
+        assertEquals(orders, this.book.getRestingOrders());
+        assertEquals(OrderBook.toTicks(100), this.book.getBestAsk());
+
+        assertEquals(-1, this.submit(BUY, 0, 1000, orders));
+        assertEquals(orders, this.fills.size());
+        for (int i = 1; i < orders; ++i) {
+            final Fill previous = this.fills.get(i - 1);
+            final Fill fill = this.fills.get(i);
+
+            assertTrue(previous.price() < fill.price()
+                    || (previous.price() == fill.price() && previous.owner() < fill.owner()));
+        }
+        assertEquals(0, this.book.getRestingOrders());
+        assertEquals(-1, this.book.getBestAsk());
+    }
+}
@@ -0,0 +1,96 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hand-over of orders from the Market's reader to a shard through the single-producer single-consumer queue
+ */
+class OrderQueueTest {
+    private static void offer(final OrderQueue queue, final int index) {
+        queue.claim().set(FixMessage.BUY_ORDER, "Broker" + index, "AAPL", index, index / 100.0, "Order" + index);
+        queue.publish();
+    }
+
+    @Test
+    void roundsItsCapacityUpToAPowerOfTwo() {
+        final OrderQueue queue = new OrderQueue(5);
+
+        for (int i = 0; i < 8; ++i) {
+            offer(queue, i);
+        }
+        assertEquals(8, queue.size());
+
+        for (int i = 0; i < 8; ++i) {
+            assertEquals(i, queue.take().getQuantity());
+            queue.release();
+        }
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void releasedEntriesDropTheirReferences() {
+        final OrderQueue queue = new OrderQueue(2);
+
+        offer(queue, 1);
+        final Order order = queue.take();
+        assertEquals("Broker1", order.getSenderId());
+        queue.release();
+        assertNull(order.getSenderId());
+        assertNull(order.getInstrument());
+    }
+
+    @Test
+    void closedQueueIsDrainedBeforeReturningNull() {
+        final OrderQueue queue = new OrderQueue(4);
+
+        offer(queue, 1);
+        offer(queue, 2);
+        queue.close(Thread.currentThread());
+
+        assertEquals(1, queue.take().getQuantity());
+        queue.release();
+        assertEquals(2, queue.take().getQuantity());
+        queue.release();
+        assertNull(queue.take());
+    }
+
+    @Test
+    void handsOverEveryOrderInSequenceAcrossThreads() throws InterruptedException {
+        final OrderQueue queue = new OrderQueue(16);
+        final int count = 200_000;
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final int[] taken = new int[1];
+
+        final Thread consumer = new Thread(() -> {
+            Order order;
+
+            while ((order = queue.take()) != null) {
+                if (order.getQuantity() != taken[0] || !("Broker" + taken[0]).equals(order.getSenderId())) {
+                    failure.compareAndSet(null, String.format("Order %d taken as %d from %s", taken[0],
+                            order.getQuantity(), order.getSenderId()));
+                }
+                ++taken[0];
+                queue.release();
+            }
+        });
+        consumer.start();
+
+        for (int i = 0; i < count; ++i) {
+            offer(queue, i);
+            if (i % 10_000 == 0) {
+                /* Let the consumer run dry and park */
+                Thread.sleep(2);
+            }
+        }
+        queue.close(consumer);
+        consumer.join(10_000);
+
+        assertFalse(consumer.isAlive());
+        assertNull(failure.get());
+        assertEquals(count, taken[0]);
+    }
+}
@@ -0,0 +1,156 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Storing, scanning and recovering the records of the trade journal
+ */
+class TradeJournalTest {
+    @TempDir
+    Path directory;
+
+    private static Transaction transaction(final int index) {
+        return new Transaction(index % 2 == 0 ? FixMessage.BUY_ORDER : FixMessage.SELL_ORDER,
+                String.format("Broker%06d", index), "Market000001", "AAPL", index + 1, 100 + index * 0.25);
+    }
+
+    private static List<Transaction> transactions(final int from, final int count) {
+        final List<Transaction> transactions = new ArrayList<>(count);
+
+        for (int i = from; i < from + count; ++i) {
+            transactions.add(transaction(i));
+        }
+        return transactions;
+    }
+
+    private static List<Transaction> scan(final TradeJournal journal) throws MarketException {
+        final List<Transaction> transactions = new ArrayList<>();
+
+        journal.scan(transactions::add);
+        return transactions;
+    }
+
+    private static void assertTransaction(final Transaction expected, final Transaction actual) {
+        assertEquals(expected.getOrderType(), actual.getOrderType());
+        assertEquals(expected.getSenderId(), actual.getSenderId());
+        assertEquals(expected.getDestId(), actual.getDestId());
+        assertEquals(expected.getInstrument(), actual.getInstrument());
+        assertEquals(expected.getQuantity(), actual.getQuantity());
+        assertEquals(expected.getPrice(), actual.getPrice(), 1e-6);
+    }
+
+    @Test
+    void storedTransactionsAreScannedInOrder() throws MarketException {
+        final TradeJournal journal = new TradeJournal(this.directory.resolve("trades"));
+
+        journal.open();
+        journal.store(transactions(0, 3));
+        journal.store(transactions(3, 2));
+
+        final List<Transaction> scanned = scan(journal);
+        assertEquals(5, journal.getRecords());
+        assertEquals(5, scanned.size());
+        for (int i = 0; i < 5; ++i) {
+            assertTransaction(transaction(i), scanned.get(i));
+        }
+        journal.close();
+    }
+
+    @Test
+    void reopeningResumesAfterTheLastRecord() throws MarketException {
+        final Path path = this.directory.resolve("trades");
+        final TradeJournal journal = new TradeJournal(path);
+
+        journal.open();
+        journal.store(transactions(0, 4));
+        journal.close();
+        assertFalse(journal.isOpen());
+
+        final TradeJournal reopened = new TradeJournal(path);
+        reopened.open();
+        assertEquals(4, reopened.getRecords());
+        reopened.store(transactions(4, 1));
+
+        final List<Transaction> scanned = scan(reopened);
+        assertEquals(5, scanned.size());
+        assertTransaction(transaction(4), scanned.get(4));
+        reopened.close();
+    }
+
+    @Test
+    void tornRecordIsOverwrittenOnReopening() throws MarketException, IOException {
+        final Path path = this.directory.resolve("trades");
+        final TradeJournal journal = new TradeJournal(path);
+
+        journal.open();
+        journal.store(transactions(0, 3));
+        journal.close();
+
+        /* A crash after writing every field of the fourth record but its time, which is written last */
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            final ByteBuffer torn = ByteBuffer.allocate(TradeJournal.RECORD_SIZE);
+
+            for (int i = Long.BYTES; i < TradeJournal.RECORD_SIZE; ++i) {
+                torn.put(i, (byte) 0x7F);
+            }
+            channel.write(torn, 3L * TradeJournal.RECORD_SIZE);
+        }
+
+        final TradeJournal reopened = new TradeJournal(path);
+        reopened.open();
+        assertEquals(3, reopened.getRecords());
+        assertEquals(3, scan(reopened).size());
+
+        reopened.store(transactions(3, 2));
+        final List<Transaction> scanned = scan(reopened);
+        assertEquals(5, scanned.size());
+        for (int i = 0; i < 5; ++i) {
+            assertTransaction(transaction(i), scanned.get(i));
+        }
+        reopened.close();
+    }
+
+    @Test
+    void recordsSpanSeveralWindows() throws MarketException {
+        final Path path = this.directory.resolve("trades");
+        final TradeJournal journal = new TradeJournal(path);
+        final int count = (1 << 16) + 10;
+
+        journal.open();
+        for (int from = 0; from < count; from += 500) {
+            journal.store(transactions(from, Math.min(500, count - from)));
+        }
+        journal.close();
+
+        final TradeJournal reopened = new TradeJournal(path);
+        reopened.open();
+        assertEquals(count, reopened.getRecords());
+
+        final List<Transaction> scanned = scan(reopened);
+        assertEquals(count, scanned.size());
+        assertTransaction(transaction(count - 1), scanned.get(count - 1));
+        reopened.close();
+    }
+
+    @Test
+    void longValuesAreTruncatedToTheirWidth() throws MarketException {
+        final TradeJournal journal = new TradeJournal(this.directory.resolve("trades"));
+
+        journal.open();
+        journal.store(List.of(new Transaction(FixMessage.BUY_ORDER, "Broker000001", "Market000001",
+                "AVERYLONGINSTRUMENTNAME", 1, 1)));
+        assertEquals("AVERYLONGINSTRUM", scan(journal).get(0).getInstrument());
+        journal.close();
+    }
+}
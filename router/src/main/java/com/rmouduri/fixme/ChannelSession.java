@@ -0,0 +1,237 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Session served by a non-blocking SocketChannel registered on an EventLoop.
+ * Writers only queue their message; the EventLoop is the single drainer, and writes everything queued
+ * since its last flush with one gathering write.
+ */
+public class ChannelSession implements Session {
+    private static final int READ_BUFFER_SIZE = 8192;
+    private static final int MAX_GATHERED_WRITES = 64;
+
+    private final SocketChannel channel;
+    private final EventLoop eventLoop;
+    private final int port;
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    /* Buffers, or ConflationSlots read once the buffers queued before them are written */
+    private final ConcurrentLinkedQueue<Object> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    /* Only touched by the EventLoop thread */
+    private final ArrayDeque<ByteBuffer> unflushed = new ArrayDeque<>();
+    private final ByteBuffer[] gathered = new ByteBuffer[MAX_GATHERED_WRITES];
+    private final OutboundWatermarks watermarks = new OutboundWatermarks();
+    private final Liveness liveness = new Liveness();
+    private SelectionKey key;
+    private String id;
+    private Runnable onDrained;
+    /* Whether reading is paused until a backed up destination catches up, only touched by the EventLoop thread */
+    private boolean paused;
+    private volatile boolean binary;
+    private volatile SessionSequence sequence;
+    private volatile boolean idGranted;
+
+    public ChannelSession(final SocketChannel channelParam, final EventLoop eventLoopParam, final int portParam) {
+        this.channel = channelParam;
+        this.eventLoop = eventLoopParam;
+        this.port = portParam;
+        this.id = null;
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) {
+        final ByteBuffer buffer = ByteBuffer.allocate(this.binary ? length : length + 1);
+
+        buffer.put(bytes, offset, length);
+        if (!this.binary) {
+            buffer.put((byte) '\n');
+        }
+        buffer.flip();
+        this.watermarks.queued(buffer.limit());
+        this.liveness.sent();
+        this.outbound.add(buffer);
+        if (this.flushScheduled.compareAndSet(false, true)) {
+            this.eventLoop.scheduleFlush(this);
+        }
+    }
+
+    @Override
+    public void writeConflated(final ConflationSlot slot, final byte[] frame) {
+        if (slot.offer(frame)) {
+            this.outbound.add(slot);
+        }
+        this.liveness.sent();
+        if (this.flushScheduled.compareAndSet(false, true)) {
+            this.eventLoop.scheduleFlush(this);
+        }
+    }
+
+    /**
+     * Write every queued message in as few gathering writes as the socket accepts, called by the EventLoop
+     * after each batch of reads or when the socket becomes writable again.
+     * Messages are only taken from the queue once the previous ones are written, so conflated updates keep
+     * being replaced while the socket is full.
+     */
+    void flush() throws IOException {
+        this.flushScheduled.set(false);
+
+        while (!this.unflushed.isEmpty() || this.takeOutbound()) {
+            int count = 0;
+            for (final ByteBuffer pending : this.unflushed) {
+                if (count == MAX_GATHERED_WRITES) {
+                    break;
+                }
+                this.gathered[count++] = pending;
+            }
+
+            this.channel.write(this.gathered, 0, count);
+            int written = 0;
+            while (!this.unflushed.isEmpty() && !this.unflushed.peek().hasRemaining()) {
+                written += this.unflushed.poll().limit();
+            }
+            this.watermarks.written(written);
+            if (this.gathered[count - 1].hasRemaining()) {
+                /* Socket buffer full, waiting for the EventLoop to report it writable */
+                if (this.key.isValid()) {
+                    this.key.interestOps(this.key.interestOps() | SelectionKey.OP_WRITE);
+                }
+                return;
+            }
+        }
+
+        if (this.key.isValid()) {
+            this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_WRITE);
+        }
+        if (this.onDrained != null) {
+            final Runnable task = this.onDrained;
+
+            this.onDrained = null;
+            this.eventLoop.execute(task);
+        }
+    }
+
+    /**
+     * Move the queued messages to the unflushed ones
+     * @return false if there was none
+     */
+    private boolean takeOutbound() {
+        Object message;
+
+        while ((message = this.outbound.poll()) != null) {
+            if (message instanceof ConflationSlot slot) {
+                final byte[] frame = slot.take();
+
+                if (frame != null) {
+                    this.watermarks.queued(frame.length);
+                    this.unflushed.add(ByteBuffer.wrap(frame));
+                }
+            } else {
+                this.unflushed.add((ByteBuffer) message);
+            }
+        }
+        return !this.unflushed.isEmpty();
+    }
+
+    /**
+     * Run @param task on the EventLoop once everything queued so far has been written
+     */
+    void setOnDrained(final Runnable task) {
+        this.onDrained = task;
+        this.eventLoop.scheduleFlush(this);
+    }
+
+    @Override
+    public boolean isBinary() { return this.binary; }
+
+    @Override
+    public void setBinary(final boolean binaryParam) { this.binary = binaryParam; }
+
+    @Override
+    public SessionSequence getSequence() { return this.sequence; }
+
+    @Override
+    public void setSequence(final SessionSequence sequenceParam) { this.sequence = sequenceParam; }
+
+    @Override
+    public boolean isIdGranted() { return this.idGranted; }
+
+    @Override
+    public void setIdGranted(final boolean idGrantedParam) { this.idGranted = idGrantedParam; }
+
+    @Override
+    public boolean isBackedUp() { return this.watermarks.isBackedUp(); }
+
+    @Override
+    public long getQueuedBytes() { return this.watermarks.getQueued(); }
+
+    @Override
+    public void whenDrained(final Runnable task) {
+        this.watermarks.whenDrained(task);
+    }
+
+    /**
+     * Stop selecting the session for reads, on its EventLoop thread which is the one calling this, the frames
+     * already read still being handled
+     */
+    @Override
+    public void pauseUntilDrained(final Session destination) {
+        if (this.paused || !this.key.isValid()) {
+            return;
+        }
+
+        this.paused = true;
+        this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+        destination.whenDrained(() -> this.eventLoop.execute(() -> {
+            this.paused = false;
+            if (this.key.isValid()) {
+                this.key.interestOps(this.key.interestOps() | SelectionKey.OP_READ);
+            }
+        }));
+    }
+
+    @Override
+    public Liveness getLiveness() { return this.liveness; }
+
+    @Override
+    public boolean isClosed() { return !this.channel.isOpen(); }
+
+    @Override
+    public void close() {
+        try {
+            this.channel.close();
+        } catch (IOException ignored) {
+        }
+        this.watermarks.close();
+    }
+
+    @Override
+    public void abort() {
+        this.eventLoop.execute(() -> this.eventLoop.disconnect(this));
+    }
+
+    @Override
+    public void closeWhenFlushed() {
+        this.eventLoop.execute(() -> this.setOnDrained(() -> this.eventLoop.disconnect(this)));
+    }
+
+    public SocketChannel getChannel() { return this.channel; }
+
+    public ByteBuffer getReadBuffer() { return this.readBuffer; }
+
+    public int getPort() { return this.port; }
+
+    public String getId() { return this.id; }
+
+    public void setId(final String idParam) { this.id = idParam; }
+
+    public SelectionKey getKey() { return this.key; }
+
+    public void setKey(final SelectionKey keyParam) { this.key = keyParam; }
+}
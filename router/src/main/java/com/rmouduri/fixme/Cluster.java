@@ -0,0 +1,267 @@
+package com.rmouduri.fixme;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Membership of this Router in a cluster of Routers, and the links between the nodes.
+ * Every node dials each other node of `fixme.router.cluster.nodes' and sends it its messages on that link, while
+ * reading the messages of the other nodes on the links they dialed. A node belongs to the ring while the link to
+ * it is up, so the ring follows nodes joining and leaving, and the Router then rebalances the ids that moved.
+ * Without other nodes, this Router owns every id.
+ */
+public class Cluster {
+    private final static int DIAL_PERIOD_MILLIS = 1000;
+    private final static int CONNECT_TIMEOUT_MILLIS = 500;
+
+    private final Router router;
+    private final ExecutorService executorService;
+    /* Dials the nodes and updates the ring, so rebalances never overlap */
+    private final ScheduledExecutorService dialer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "router-cluster");
+
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final String self;
+    private final int port;
+    private final List<String> peers = new ArrayList<>();
+    private final String brokerAddress;
+    private final String marketAddress;
+    private final ConcurrentHashMap<String, ClusterLink> links = new ConcurrentHashMap<>();
+    private volatile ClusterRing ring;
+
+    /**
+     * @param host Host the other nodes and the redirected sessions reach this node on
+     * @param portParam Port the other nodes dial this node on
+     * @param nodes `host:port' ids of every node of the cluster, this one included, the same on every node
+     */
+    public Cluster(final Router routerParam, final ExecutorService executorServiceParam, final String host,
+            final int portParam, final List<String> nodes, final int brokerPort, final int marketPort) {
+        this.router = routerParam;
+        this.executorService = executorServiceParam;
+        this.self = host + ":" + portParam;
+        this.port = portParam;
+        this.brokerAddress = host + ":" + brokerPort;
+        this.marketAddress = host + ":" + marketPort;
+        for (final String node : nodes) {
+            if (!node.isBlank() && !node.trim().equals(this.self)) {
+                this.peers.add(node.trim());
+            }
+        }
+        this.ring = new ClusterRing(List.of(this.self));
+    }
+
+    /**
+     * Accept the links of the other nodes and dial them, unless there is none
+     */
+    public void start() {
+        if (this.peers.isEmpty()) {
+            return;
+        }
+
+        this.executorService.submit(this::acceptLinks);
+        this.dialer.scheduleWithFixedDelay(this::dialPeers, 0, DIAL_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+        Log.info("Router node %s joining cluster of %s", this.self, this.peers);
+    }
+
+    public void stop() {
+        this.dialer.shutdownNow();
+        for (final ClusterLink link : this.links.values()) {
+            link.getSession().close();
+        }
+    }
+
+    /**
+     * @return The link to the node owning @param id, or null if this node owns it or it is not a session id
+     */
+    public ClusterLink getOwner(final String id) {
+        if (this.peers.isEmpty()) {
+            return null;
+        }
+
+        final int number = SessionRegistry.getNumber(id);
+        return number == -1 ? null : this.getOwner(number);
+    }
+
+    /**
+     * @return The link to the node owning session number @param number, or null if this node owns it
+     */
+    public ClusterLink getOwner(final int number) {
+        final String owner = this.ring.getOwner(number);
+
+        return owner.equals(this.self) ? null : this.links.get(owner);
+    }
+
+    /**
+     * @return true if this node hands out session number @param number
+     */
+    public boolean owns(final int number) {
+        return this.peers.isEmpty() || this.ring.getOwner(number).equals(this.self);
+    }
+
+    /**
+     * @return The link this node sends to @param node on, or null if it is down
+     */
+    public ClusterLink getLink(final String node) {
+        return this.links.get(node);
+    }
+
+    /**
+     * Dial every node without a link, then update the ring if a link came up or went down
+     */
+    private void dialPeers() {
+        for (final String peer : this.peers) {
+            if (!this.links.containsKey(peer)) {
+                this.dial(peer);
+            }
+        }
+
+        final Set<String> nodes = new HashSet<>(this.links.keySet());
+        nodes.add(this.self);
+        if (!nodes.equals(this.ring.getNodes())) {
+            this.ring = new ClusterRing(nodes);
+            Log.info("%sCluster ring%s now %s", Router.CYAN, Router.RESET, nodes);
+            this.router.rebalance();
+        }
+    }
+
+    /**
+     * Open the link to @param peer: both nodes send their ROUTER_LOGON, and this node then only writes to it
+     */
+    private void dial(final String peer) {
+        final Socket socket = new Socket();
+
+        try {
+            socket.connect(Address.parse(peer), CONNECT_TIMEOUT_MILLIS);
+            socket.setTcpNoDelay(true);
+            this.sendLogon(socket.getOutputStream());
+
+            final FixLineReader in = new FixLineReader(socket.getInputStream());
+            final FixDecoder logon = this.readLogon(in);
+            if (!logon.valueEquals(FixMessage.SENDER_IDENTIFIER, peer)) {
+                throw new RouterException(String.format("Node `%s' answered as `%s'.", peer,
+                        logon.getString(FixMessage.SENDER_IDENTIFIER)));
+            }
+
+            final SocketSession session = new SocketSession(socket, this.executorService);
+            session.setBinary(true);
+            final ClusterLink link = new ClusterLink(peer, session,
+                    logon.getString(FixMessage.BROKER_ADDRESS_IDENTIFIER),
+                    logon.getString(FixMessage.MARKET_ADDRESS_IDENTIFIER));
+            this.links.put(peer, link);
+            this.executorService.submit(() -> this.watchLink(link, socket));
+            Log.info("%sLinked%s to Router node %s", Router.GREEN, Router.RESET, peer);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.debug("Router node %s unreachable: %s", peer, e.getMessage());
+            closeQuietly(socket);
+        } catch (FixMessageException | RouterException e) {
+            Log.error("Error while linking to Router node %s: %s", peer, e.getMessage());
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Wait for the peer of @param link to close it, as it never writes on it after its Logon
+     */
+    private void watchLink(final ClusterLink link, final Socket socket) {
+        try (InputStream in = socket.getInputStream()) {
+            while (in.read() != -1) {
+                /* Nothing expected */
+            }
+        } catch (IOException ignored) {
+        }
+
+        Log.warn("%sLink to Router node %s lost%s", Router.RED, link.getNode(), Router.RESET);
+        link.getSession().close();
+        this.links.remove(link.getNode(), link);
+        this.router.linkDown(link);
+        this.dialer.execute(this::dialPeers);
+    }
+
+    private void acceptLinks() {
+        try (ServerSocket serverSocket = new ServerSocket(this.port)) {
+            Log.info("Router node %s listening to other nodes on port %d", this.self, this.port);
+
+            while (true) {
+                final Socket socket = serverSocket.accept();
+
+                this.executorService.submit(() -> this.handleLink(socket));
+            }
+        } catch (IOException e) {
+            Log.error("Error while listening to Router nodes on port %d: %s", this.port, e.getMessage());
+        }
+    }
+
+    /**
+     * Answer the Logon of the node which dialed @param socket, then hand every frame it sends to the Router
+     */
+    private void handleLink(final Socket socket) {
+        final FixBinaryDecoder decoder = new FixBinaryDecoder();
+        String node = null;
+
+        try (socket) {
+            final FixLineReader in = new FixLineReader(socket.getInputStream());
+
+            node = this.readLogon(in).getString(FixMessage.SENDER_IDENTIFIER);
+            socket.setTcpNoDelay(true);
+            this.sendLogon(socket.getOutputStream());
+            in.setBinary(true);
+
+            while (in.next()) {
+                this.router.handleLinkMessage(decoder.wrap(in.getBuffer(), in.getOffset(), in.getLength()), node);
+            }
+        } catch (IOException e) {
+            Log.error("Error while reading Router node %s: %s", node, e.getMessage());
+        } catch (FixMessageException e) {
+            Log.error("Error in FixMessage from Router node %s: %s", node, e.getMessage());
+        } catch (RouterException e) {
+            Log.error("Error in Router: " + e.getMessage());
+        }
+    }
+
+    private void sendLogon(final OutputStream stream) throws IOException {
+        final OutputStream out = new BufferedOutputStream(stream);
+        final FixEncoder logon = new FixEncoder().begin(FixLayout.ROUTER_LOGON).putString(this.self)
+                .putString(this.brokerAddress).putString(this.marketAddress).finish();
+
+        out.write(logon.getBuffer(), 0, logon.getLength());
+        out.write('\n');
+        out.flush();
+    }
+
+    private FixDecoder readLogon(final FixLineReader in) throws IOException, FixMessageException, RouterException {
+        if (!in.next()) {
+            throw new RouterException("Router node link closed before Logon.");
+        }
+
+        final FixDecoder logon = new FixDecoder().wrap(in.getBuffer(), in.getOffset(), in.getLength());
+        if (!logon.validateChecksum() || !logon.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.LOGON_MSG_TYPE)
+                || !logon.contains(FixMessage.BROKER_ADDRESS_IDENTIFIER)) {
+            throw new RouterException(String.format("Invalid Router node Logon: `%s'.", logon));
+        }
+        return logon;
+    }
+
+    private static void closeQuietly(final Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    public String getSelf() { return this.self; }
+}
@@ -0,0 +1,35 @@
+package com.rmouduri.fixme;
+
+/**
+ * Link a node of a Router cluster dialed to another node, on which it sends that node's messages as binary frames
+ */
+public final class ClusterLink {
+    private final String node;
+    private final SocketSession session;
+    private final String brokerAddress;
+    private final String marketAddress;
+
+    /**
+     * @param nodeParam Id of the node dialed
+     * @param brokerAddressParam Address the node serves Brokers on, where its Brokers are redirected
+     * @param marketAddressParam Address the node serves Markets on
+     */
+    public ClusterLink(final String nodeParam, final SocketSession sessionParam, final String brokerAddressParam,
+            final String marketAddressParam) {
+        this.node = nodeParam;
+        this.session = sessionParam;
+        this.brokerAddress = brokerAddressParam;
+        this.marketAddress = marketAddressParam;
+    }
+
+    public String getNode() { return this.node; }
+
+    public SocketSession getSession() { return this.session; }
+
+    /**
+     * @return The address Brokers, or Markets if @param id is a Market's, must connect to to reach the node
+     */
+    public String getAddressFor(final String id) {
+        return id.startsWith("Market") ? this.marketAddress : this.brokerAddress;
+    }
+}
@@ -0,0 +1,78 @@
+package com.rmouduri.fixme;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Immutable consistent-hash ring of the nodes of a Router cluster.
+ * Each node is placed at VIRTUAL_NODES points of the ring, and a session number belongs to the node of the first
+ * point at or after the hash of the number: a node joining or leaving only moves the numbers of the arcs it takes
+ * or gives back, every other number keeping its owner.
+ */
+public final class ClusterRing {
+    private static final int VIRTUAL_NODES = 128;
+
+    private final Set<String> nodes;
+    /* Points sorted by hash, and the node at each of them */
+    private final long[] points;
+    private final String[] owners;
+
+    /**
+     * @param nodesParam Ids of the nodes, the same on every node for them to agree on the owners
+     */
+    public ClusterRing(final Collection<String> nodesParam) {
+        final TreeMap<Long, String> ring = new TreeMap<>();
+
+        this.nodes = Set.copyOf(nodesParam);
+        for (final String node : this.nodes) {
+            for (int i = 0; i < VIRTUAL_NODES; ++i) {
+                ring.put(mix((long) node.hashCode() << 32 | i), node);
+            }
+        }
+
+        this.points = new long[ring.size()];
+        this.owners = new String[ring.size()];
+        int point = 0;
+        for (final Map.Entry<Long, String> entry : ring.entrySet()) {
+            this.points[point] = entry.getKey();
+            this.owners[point++] = entry.getValue();
+        }
+    }
+
+    /**
+     * @return The node owning session number @param number
+     */
+    public String getOwner(final int number) {
+        final long hash = mix(number);
+        int low = 0;
+        int high = this.points.length;
+
+        /* First point at or after hash, wrapping around to the first one */
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (this.points[middle] < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return this.owners[low == this.points.length ? 0 : low];
+    }
+
+    public Set<String> getNodes() { return this.nodes; }
+
+    /**
+     * Murmur3 finalizer, spreading close numbers and node ids over the whole ring
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
@@ -0,0 +1,26 @@
+package com.rmouduri.fixme;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Latest frame of one stream of updates to one session, queued in the session once and read when the session
+ * writes it: an update arriving before then replaces the previous one instead of being queued behind it
+ */
+public final class ConflationSlot {
+    private final AtomicReference<byte[]> frame = new AtomicReference<>();
+
+    /**
+     * Replace the pending frame with @param frameParam
+     * @return true if no frame was pending, in which case the slot must be queued in the session
+     */
+    boolean offer(final byte[] frameParam) {
+        return this.frame.getAndSet(frameParam) == null;
+    }
+
+    /**
+     * @return The pending frame, or null if it was already written
+     */
+    byte[] take() {
+        return this.frame.getAndSet(null);
+    }
+}
@@ -0,0 +1,313 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Selector thread serving many ChannelSessions, and accepting new connections for the ports registered on it
+ */
+public class EventLoop implements Runnable {
+    private static final int MAX_ACCEPTS = 64;
+
+    private final Router router;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<ChannelSession> pendingFlushes = new ArrayDeque<>();
+    private final FixDecoder decoder = new FixDecoder();
+    private final FixBinaryDecoder binaryDecoder = new FixBinaryDecoder();
+    private byte[] frame = new byte[1024];
+    private volatile Thread thread;
+
+    public EventLoop(final Router routerParam) throws IOException {
+        this.router = routerParam;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Run @param task on this loop's thread, before its next select
+     */
+    public void execute(final Runnable task) {
+        this.tasks.add(task);
+        this.selector.wakeup();
+    }
+
+    /**
+     * Have @param session written out once this loop is done with its current batch of reads,
+     * so every message queued for it meanwhile leaves in the same write
+     */
+    void scheduleFlush(final ChannelSession session) {
+        if (Thread.currentThread() == this.thread) {
+            this.pendingFlushes.add(session);
+        } else {
+            this.execute(() -> this.flush(session));
+        }
+    }
+
+    /**
+     * Accept connections of @param serverChannel on this loop
+     */
+    public void listen(final ServerSocketChannel serverChannel, final int port) {
+        this.execute(() -> {
+            try {
+                serverChannel.register(this.selector, SelectionKey.OP_ACCEPT, port);
+            } catch (ClosedChannelException e) {
+                Log.error("Error while starting router on port %d", port);
+            }
+        });
+    }
+
+    /**
+     * Serve the already accepted @param channel on this loop
+     */
+    public void register(final SocketChannel channel, final int port) {
+        this.execute(() -> {
+            try {
+                final ChannelSession session = new ChannelSession(channel, this, port);
+
+                channel.configureBlocking(false);
+                session.setKey(channel.register(this.selector, SelectionKey.OP_READ, session));
+            } catch (IOException e) {
+                Log.error("Error while registering connection: " + e.getMessage());
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    @Override
+    public void run() {
+        this.thread = Thread.currentThread();
+
+        try {
+            while (this.selector.isOpen()) {
+                this.selector.select();
+
+                Runnable task;
+                while ((task = this.tasks.poll()) != null) {
+                    /* A failing task must not stop the loop, every session of the selector would hang */
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        Log.error("Error in event loop task: " + e);
+                    }
+                }
+
+                final Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    final SelectionKey key = keys.next();
+                    keys.remove();
+
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        try {
+                            this.accept(key);
+                        } catch (RuntimeException e) {
+                            Log.error("Error while accepting connection: " + e);
+                        }
+                    } else {
+                        this.handleSession(key, (ChannelSession) key.attachment());
+                    }
+                }
+
+                ChannelSession session;
+                while ((session = this.pendingFlushes.poll()) != null) {
+                    this.flush(session);
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            Log.error("Error in event loop: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Accept the pending connections of @param key, up to MAX_ACCEPTS before serving the sessions again
+     */
+    private void accept(final SelectionKey key) throws IOException {
+        final ServerSocketChannel serverChannel = (ServerSocketChannel) key.channel();
+        SocketChannel channel;
+
+        for (int i = 0; i < MAX_ACCEPTS && (channel = serverChannel.accept()) != null; ++i) {
+            this.router.nextEventLoop().register(channel, (Integer) key.attachment());
+        }
+    }
+
+    private void handleSession(final SelectionKey key, final ChannelSession session) {
+        try {
+            if (key.isWritable()) {
+                session.flush();
+            }
+            if (key.isReadable() && !this.read(session)) {
+                this.disconnect(key, session);
+            }
+        } catch (IOException e) {
+            Log.error("Error while listening to %s: %s",
+                    this.router.getSessionType(session.getPort()), e.getMessage());
+            this.disconnect(key, session);
+        } catch (FixMessageException e) {
+            Log.error("Error in FixMessage: " + e.getMessage());
+            this.disconnect(key, session);
+        } catch (RouterException e) {
+            Log.error("Error in Router: " + e.getMessage());
+            this.disconnect(key, session);
+        } catch (RuntimeException e) {
+            /* Only the offending session is closed, the loop keeps serving the others */
+            Log.error("Unexpected error while serving %s: %s", session.getId(), e);
+            this.disconnect(key, session);
+        }
+    }
+
+    /**
+     * Read what is available and hand every complete frame to the Router: `\n' terminated lines,
+     * or length-prefixed frames once the session chose binary at Logon
+     * @return false once the peer closed the connection
+     */
+    private boolean read(final ChannelSession session) throws IOException, FixMessageException, RouterException {
+        final ByteBuffer buffer = session.getReadBuffer();
+
+        if (session.getChannel().read(buffer) == -1) {
+            return false;
+        }
+
+        buffer.flip();
+        int frameStart = buffer.position();
+        while (true) {
+            final int frameLength;
+
+            if (session.isBinary()) {
+                if (buffer.limit() - frameStart < FixBinaryEncoder.LENGTH_PREFIX) {
+                    break;
+                }
+
+                final int length = FixBinaryEncoder.LENGTH_PREFIX + buffer.getInt(frameStart);
+                if (length < FixBinaryEncoder.HEADER_LENGTH || length > buffer.capacity()) {
+                    throw new IOException("Invalid binary frame length " + length);
+                } else if (buffer.limit() - frameStart < length) {
+                    break;
+                }
+                frameLength = this.copyFrame(buffer, frameStart, length);
+                frameStart += length;
+            } else {
+                int end = frameStart;
+
+                while (end < buffer.limit() && buffer.get(end) != '\n') {
+                    ++end;
+                }
+                if (end == buffer.limit()) {
+                    break;
+                }
+                frameLength = this.copyFrame(buffer, frameStart,
+                        end > frameStart && buffer.get(end - 1) == '\r' ? end - frameStart - 1 : end - frameStart);
+                frameStart = end + 1;
+            }
+
+            if (session.getId() == null) {
+                session.setId(this.router.logon(session,
+                        new String(this.frame, 0, frameLength, StandardCharsets.US_ASCII), session.getPort()));
+                if (session.getId() == null) {
+                    /* Redirected to another Router node, and closed once the Logout is written: nothing it sends
+                       meanwhile is read, as it would be taken for another Logon */
+                    if (session.getKey().isValid()) {
+                        session.getKey().interestOps(session.getKey().interestOps() & ~SelectionKey.OP_READ);
+                    }
+                    buffer.clear();
+                    return true;
+                }
+                this.sendUnsentMessages(session, 0);
+            } else if (session.isBinary()) {
+                this.router.handleRequest(this.binaryDecoder.wrap(this.frame, 0, frameLength), session,
+                        session.getPort());
+            } else {
+                this.router.handleRequest(this.decoder.wrapRouting(this.frame, 0, frameLength), session,
+                        session.getPort());
+            }
+        }
+        buffer.position(frameStart);
+        buffer.compact();
+
+        if (!buffer.hasRemaining()) {
+            throw new IOException("Message exceeds " + buffer.capacity() + " bytes");
+        }
+        return true;
+    }
+
+    /**
+     * Send the messages saved for @param session one batch at a time, the next batch waiting for the previous one
+     * to be written so a large backlog never sits in memory
+     */
+    private void sendUnsentMessages(final ChannelSession session, final long offset) {
+        if (session.isClosed()) {
+            return;
+        }
+
+        try {
+            final long next = this.router.sendUnsentMessages(session.getId(), session, offset);
+
+            if (next != -1) {
+                session.setOnDrained(() -> this.sendUnsentMessages(session, next));
+            }
+        } catch (RouterException | RuntimeException e) {
+            Log.error("Error in Router: " + e.getMessage());
+            this.disconnect(session.getKey(), session);
+        }
+    }
+
+    private void flush(final ChannelSession session) {
+        if (session.isClosed()) {
+            return;
+        }
+
+        try {
+            session.flush();
+        } catch (IOException | RuntimeException e) {
+            Log.error("Error while writing to %s: %s", session.getId(), e.getMessage());
+            this.disconnect(session.getKey(), session);
+        }
+    }
+
+    /**
+     * Close @param session and log it out, on this loop's thread
+     */
+    void disconnect(final ChannelSession session) {
+        if (!session.isClosed()) {
+            this.disconnect(session.getKey(), session);
+        }
+    }
+
+    private void disconnect(final SelectionKey key, final ChannelSession session) {
+        if (key != null) {
+            key.cancel();
+        }
+        session.close();
+        if (session.getId() != null) {
+            this.router.logout(session.getId(), session);
+        }
+        Log.warn(Router.RED + "%s disconnected." + Router.RESET,
+                session.getId() == null ? "Unknown " + this.router.getSessionType(session.getPort()) : session.getId());
+    }
+
+    /**
+     * Copy the @param length bytes of the frame at @param start into the loop's frame buffer
+     * @return The length of the frame
+     */
+    private int copyFrame(final ByteBuffer buffer, final int start, final int length) {
+        if (this.frame.length < length) {
+            this.frame = new byte[Math.max(length, this.frame.length * 2)];
+        }
+        buffer.get(start, this.frame, 0, length);
+        return length;
+    }
+
+    private static void closeQuietly(final Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.rmouduri.fixme;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer running many timeouts on a single thread: a wheel of buckets, one per tick, each holding the timeouts due
+ * when the wheel reaches it, after as many more turns as they are far away.
+ * Scheduling and cancelling are O(1) whatever the number of timeouts, which may fire up to a tick late.
+ * Timeouts scheduled before start() wait for it.
+ */
+public final class HashedWheelTimer {
+    /**
+     * Task scheduled on the timer
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadline;
+        private long rounds;
+        private volatile boolean cancelled;
+
+        private Timeout(final Runnable taskParam, final long deadlineParam) {
+            this.task = taskParam;
+            this.deadline = deadlineParam;
+        }
+
+        /**
+         * Keep the task from running if it did not yet, the timeout being dropped when its bucket is reached
+         */
+        public void cancel() {
+            this.cancelled = true;
+        }
+
+        public boolean isCancelled() { return this.cancelled; }
+    }
+
+    private final long tickNanos;
+    private final List<ArrayDeque<Timeout>> wheel;
+    private final int mask;
+    /* Timeouts scheduled since the last tick, put in their bucket by the timer thread */
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final long start = System.nanoTime();
+    private long tick;
+    private volatile boolean running = true;
+
+    /**
+     * @param name Name of the timer thread
+     * @param tickNanosParam Duration of a tick, the precision of the timer
+     * @param ticksPerWheel Buckets of the wheel, rounded up to a power of two
+     */
+    public HashedWheelTimer(final String name, final long tickNanosParam, final int ticksPerWheel) {
+        final int buckets = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+
+        this.tickNanos = tickNanosParam;
+        this.wheel = new ArrayList<>(buckets);
+        this.mask = buckets - 1;
+        for (int i = 0; i < buckets; ++i) {
+            this.wheel.add(new ArrayDeque<>());
+        }
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Start the timer thread
+     */
+    public void start() {
+        this.thread.start();
+    }
+
+    /**
+     * Run @param task on the timer thread in @param delay @param unit. The task must not block, as every other
+     * timeout waits for it.
+     */
+    public Timeout schedule(final Runnable task, final long delay, final TimeUnit unit) {
+        final Timeout timeout = new Timeout(task, System.nanoTime() - this.start + unit.toNanos(Math.max(0, delay)));
+
+        this.scheduled.add(timeout);
+        return timeout;
+    }
+
+    public void stop() {
+        this.running = false;
+        LockSupport.unpark(this.thread);
+    }
+
+    private void run() {
+        while (this.running) {
+            final long tickEnd = (this.tick + 1) * this.tickNanos;
+            long now;
+
+            while ((now = System.nanoTime() - this.start) < tickEnd && this.running) {
+                LockSupport.parkNanos(tickEnd - now);
+            }
+
+            this.transferScheduled();
+            this.expire(this.wheel.get((int) (this.tick & this.mask)));
+            ++this.tick;
+        }
+    }
+
+    /**
+     * Put the timeouts scheduled since the last tick in the bucket of their deadline, or the current one if it
+     * already passed
+     */
+    private void transferScheduled() {
+        Timeout timeout;
+
+        while ((timeout = this.scheduled.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+
+            final long ticks = Math.max(this.tick, timeout.deadline / this.tickNanos);
+            timeout.rounds = (ticks - this.tick) / this.wheel.size();
+            this.wheel.get((int) (ticks & this.mask)).add(timeout);
+        }
+    }
+
+    /**
+     * Run the timeouts of @param bucket due this turn, and keep the others for a later one
+     */
+    private void expire(final ArrayDeque<Timeout> bucket) {
+        for (int i = bucket.size(); i > 0; --i) {
+            final Timeout timeout = bucket.poll();
+
+            if (timeout.cancelled) {
+                continue;
+            } else if (timeout.rounds > 0) {
+                --timeout.rounds;
+                bucket.add(timeout);
+                continue;
+            }
+
+            try {
+                timeout.task.run();
+            } catch (RuntimeException e) {
+                Log.error("Error in timer task: " + e);
+            }
+        }
+    }
+}
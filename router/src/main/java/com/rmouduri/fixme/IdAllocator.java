@@ -0,0 +1,86 @@
+package com.rmouduri.fixme;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free bitset of the session numbers in use, from 1 to MAX_ID.
+ * Allocation resumes from the last word that had a free number, so it does not depend on how many
+ * numbers were handed out before.
+ */
+public class IdAllocator {
+    public static final int MAX_ID = 999_999;
+
+    private final AtomicLongArray words = new AtomicLongArray(MAX_ID / Long.SIZE + 1);
+    private final AtomicInteger hint = new AtomicInteger();
+
+    public IdAllocator() {
+        /* 0 is never a valid session number */
+        this.tryClaim(0);
+    }
+
+    /**
+     * @return true if @param id was free and now belongs to the caller
+     */
+    public boolean tryClaim(final int id) {
+        final int index = id / Long.SIZE;
+        final long bit = 1L << id;
+
+        while (true) {
+            final long word = this.words.get(index);
+
+            if ((word & bit) != 0) {
+                return false;
+            }
+            if (this.words.compareAndSet(index, word, word | bit)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Claim any free number
+     * @return The claimed number, or -1 once every number is in use
+     */
+    public int allocate() {
+        final int wordCount = this.words.length();
+        final int start = this.hint.get();
+
+        for (int i = 0; i < wordCount; ++i) {
+            final int index = (start + i) % wordCount;
+            long word;
+
+            while ((word = this.words.get(index)) != -1L) {
+                final int bitIndex = Long.numberOfTrailingZeros(~word);
+                final int id = index * Long.SIZE + bitIndex;
+
+                if (id > MAX_ID) {
+                    break;
+                }
+                if (this.words.compareAndSet(index, word, word | (1L << bitIndex))) {
+                    this.hint.set(index);
+                    return id;
+                }
+            }
+        }
+
+        return -1;
+    }
+
+    public void release(final int id) {
+        final int index = id / Long.SIZE;
+        final long bit = 1L << id;
+
+        while (true) {
+            final long word = this.words.get(index);
+
+            if ((word & bit) == 0 || this.words.compareAndSet(index, word, word & ~bit)) {
+                return;
+            }
+        }
+    }
+
+    public boolean isClaimed(final int id) {
+        return (this.words.get(id / Long.SIZE) & (1L << id)) != 0;
+    }
+}
@@ -0,0 +1,28 @@
+package com.rmouduri.fixme;
+
+/**
+ * When a session was last read from and written to, updated by the threads serving it and checked by the
+ * Router's heartbeat timer
+ */
+public final class Liveness {
+    private volatile long lastReceived = System.nanoTime();
+    private volatile long lastSent = this.lastReceived;
+    /* When the pending TestRequest was sent, 0 if none is, only touched by the timer thread */
+    private long testRequestSent;
+
+    public void received() {
+        this.lastReceived = System.nanoTime();
+    }
+
+    public void sent() {
+        this.lastSent = System.nanoTime();
+    }
+
+    public long getLastReceived() { return this.lastReceived; }
+
+    public long getLastSent() { return this.lastSent; }
+
+    long getTestRequestSent() { return this.testRequestSent; }
+
+    void setTestRequestSent(final long testRequestSentParam) { this.testRequestSent = testRequestSentParam; }
+}
@@ -0,0 +1,199 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Fan-out of the quotes Markets publish (MsgType X) to the Brokers subscribed to them with a MarketDataRequest
+ * (MsgType V), by market and instrument.
+ * Each update is framed once per wire encoding, and those same bytes are queued to every subscriber through its
+ * ConflationSlot: a subscriber which has not been written the previous update of an instrument yet gets it
+ * replaced, so a slow Broker receives the latest quotes instead of a growing backlog.
+ * The last update of each instrument is kept, and sent to new subscribers as a snapshot.
+ */
+public class MarketDataHub {
+    private final static ThreadLocal<FixEncoder> ENCODER = ThreadLocal.withInitial(FixEncoder::new);
+    private final static ThreadLocal<FixBinaryEncoder> BINARY_ENCODER = ThreadLocal.withInitial(FixBinaryEncoder::new);
+
+    /**
+     * Quotes of one instrument of one market
+     */
+    private static final class Topic {
+        private final String marketId;
+        private final String instrument;
+        private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+        /* Orders publishing and subscribing, so a snapshot never overtakes a newer update in a slot */
+        private final ReentrantLock lock = new ReentrantLock();
+        /* Last update, framed for text and binary sessions, either being null until needed */
+        private byte[] textFrame;
+        private byte[] binaryFrame;
+
+        private Topic(final String marketIdParam, final String instrumentParam) {
+            this.marketId = marketIdParam;
+            this.instrument = instrumentParam;
+        }
+    }
+
+    private static final class Subscription {
+        private final Session session;
+        private final ConflationSlot slot = new ConflationSlot();
+
+        private Subscription(final Session sessionParam) {
+            this.session = sessionParam;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Topic> topics = new ConcurrentHashMap<>();
+    private final RouterMetrics metrics;
+
+    public MarketDataHub(final RouterMetrics metricsParam) {
+        this.metrics = metricsParam;
+    }
+
+    /**
+     * Keep @param update as the last quotes of its market and instrument, and queue it to their subscribers
+     */
+    public void publish(final FixFields update) throws FixMessageException, IOException {
+        final String marketId = update.getString(FixMessage.SENDER_IDENTIFIER);
+        final String instrument = update.getString(FixMessage.INSTRUMENT_IDENTIFIER);
+        final Topic topic = this.topics.computeIfAbsent(topicOf(marketId, instrument),
+                key -> new Topic(marketId, instrument));
+
+        topic.lock.lock();
+        try {
+            if (update.isBinary()) {
+                topic.binaryFrame = Arrays.copyOfRange(update.getBuffer(), update.getOffset(),
+                        update.getOffset() + update.getLength());
+                topic.textFrame = null;
+            } else {
+                topic.textFrame = lineOf(update.getBuffer(), update.getOffset(), update.getLength());
+                topic.binaryFrame = null;
+            }
+
+            for (final Subscription subscription : topic.subscriptions) {
+                if (subscription.session.isClosed()) {
+                    topic.subscriptions.remove(subscription);
+                } else {
+                    this.send(topic, subscription);
+                }
+            }
+        } finally {
+            topic.lock.unlock();
+        }
+        this.metrics.marketDataPublished();
+    }
+
+    /**
+     * Subscribe or unsubscribe @param session as asked by @param request, a subscription being answered with
+     * the last quotes of the instrument if the market published any
+     */
+    public void request(final FixFields request, final Session session) throws FixMessageException, IOException {
+        final String marketId = request.getString(FixMessage.DEST_IDENTIFIER);
+        final String instrument = request.getString(FixMessage.INSTRUMENT_IDENTIFIER);
+        final String key = topicOf(marketId, instrument);
+
+        if (request.valueEquals(FixMessage.SUBSCRIPTION_TYPE_IDENTIFIER, FixMessage.UNSUBSCRIBE)) {
+            final Topic topic = this.topics.get(key);
+
+            if (topic != null) {
+                topic.subscriptions.removeIf(subscription -> subscription.session == session);
+            }
+            return;
+        }
+
+        final Topic topic = this.topics.computeIfAbsent(key, ignored -> new Topic(marketId, instrument));
+        topic.lock.lock();
+        try {
+            if (topic.subscriptions.stream().noneMatch(subscription -> subscription.session == session)) {
+                final Subscription subscription = new Subscription(session);
+
+                topic.subscriptions.add(subscription);
+                if (topic.textFrame != null || topic.binaryFrame != null) {
+                    this.send(topic, subscription);
+                }
+            }
+        } finally {
+            topic.lock.unlock();
+        }
+    }
+
+    /**
+     * Forget every subscription of the disconnected @param session
+     */
+    public void unsubscribeAll(final Session session) {
+        for (final Topic topic : this.topics.values()) {
+            topic.subscriptions.removeIf(subscription -> subscription.session == session);
+        }
+    }
+
+    /**
+     * Call @param action with the market and instrument of every topic with subscribers
+     */
+    public void forEachTopic(final BiConsumer<String, String> action) {
+        for (final Topic topic : this.topics.values()) {
+            if (!topic.subscriptions.isEmpty()) {
+                action.accept(topic.marketId, topic.instrument);
+            }
+        }
+    }
+
+    /**
+     * @return The number of subscriptions, counted when read
+     */
+    public int getSubscriptions() {
+        int subscriptions = 0;
+
+        for (final Topic topic : this.topics.values()) {
+            subscriptions += topic.subscriptions.size();
+        }
+        return subscriptions;
+    }
+
+    /**
+     * Queue the last update of @param topic to @param subscription, translating it once for the first
+     * subscriber of the other encoding
+     */
+    private void send(final Topic topic, final Subscription subscription) throws FixMessageException, IOException {
+        final byte[] frame;
+
+        if (subscription.session.isBinary()) {
+            if (topic.binaryFrame == null) {
+                final FixDecoder decoder = new FixDecoder().wrap(topic.textFrame, 0, topic.textFrame.length - 1);
+                final FixBinaryEncoder binary = FixTranslator.toBinary(decoder, BINARY_ENCODER.get());
+
+                topic.binaryFrame = Arrays.copyOf(binary.getBuffer(), binary.getLength());
+            }
+            frame = topic.binaryFrame;
+        } else {
+            if (topic.textFrame == null) {
+                final FixBinaryDecoder decoder = new FixBinaryDecoder().wrap(topic.binaryFrame, 0,
+                        topic.binaryFrame.length);
+                final FixEncoder text = FixTranslator.toText(decoder, ENCODER.get());
+
+                topic.textFrame = lineOf(text.getBuffer(), 0, text.getLength());
+            }
+            frame = topic.textFrame;
+        }
+
+        subscription.session.writeConflated(subscription.slot, frame);
+        this.metrics.sent(subscription.session);
+    }
+
+    /**
+     * @return A copy of the @param length bytes of @param message from @param offset, followed by a new line
+     */
+    private static byte[] lineOf(final byte[] message, final int offset, final int length) {
+        final byte[] line = Arrays.copyOfRange(message, offset, offset + length + 1);
+
+        line[length] = '\n';
+        return line;
+    }
+
+    private static String topicOf(final String marketId, final String instrument) {
+        return marketId + '|' + instrument;
+    }
+}
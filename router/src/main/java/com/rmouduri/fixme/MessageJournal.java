@@ -0,0 +1,268 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Append-only journal of the messages waiting for one session, stored in memory-mapped segment files.
+ * Records are an int length followed by the message, and are addressed by their offset since the journal
+ * was created. Only the base offset of each segment is kept in memory, and segments are deleted once every
+ * record they hold has been acknowledged.
+ */
+public class MessageJournal {
+    private static final int SEGMENT_SIZE = Integer.getInteger("fixme.router.journal.segment", 1 << 20);
+    private static final int RECORD_HEADER = Integer.BYTES;
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String ACK_FILE = "acknowledged";
+    /* Written then renamed over ACK_FILE, so a crash never leaves a truncated acknowledged offset */
+    private static final String ACK_TEMP_FILE = "acknowledged.tmp";
+
+    private final Path directory;
+    private final ArrayDeque<Long> segmentBases = new ArrayDeque<>();
+    /* Held by writers instead of the monitor, which would pin a virtual thread during file operations */
+    private final ReentrantLock lock = new ReentrantLock();
+    private MappedByteBuffer writeSegment;
+    private long writeSegmentBase;
+    /* Only used by the thread replaying the journal */
+    private MappedByteBuffer readSegment;
+    private long readSegmentBase = -1;
+    private volatile long writeOffset;
+    private volatile long acknowledgedOffset;
+    /* Set under the lock once deleted, so no record is appended to a journal that is gone */
+    private boolean deleted;
+
+    /**
+     * Open the journal stored in @param directoryParam, creating it or recovering its records if it exists
+     */
+    public MessageJournal(final Path directoryParam) throws IOException {
+        this.directory = directoryParam;
+        Files.createDirectories(directoryParam);
+
+        final List<Long> bases = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directoryParam)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SEGMENT_SUFFIX))
+                    .map(name -> Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+                    .sorted()
+                    .forEach(bases::add);
+        }
+
+        final Path ackFile = directoryParam.resolve(ACK_FILE);
+        if (Files.exists(ackFile)) {
+            final byte[] ack = Files.readAllBytes(ackFile);
+
+            /* Left short by an older Router killed while writing it: replaying from the start only redelivers */
+            if (ack.length >= Long.BYTES) {
+                this.acknowledgedOffset = ByteBuffer.wrap(ack).getLong();
+            } else {
+                Log.warn("Ignoring truncated acknowledged offset of journal %s", directoryParam);
+            }
+        }
+
+        if (bases.isEmpty()) {
+            final int position = (int) Math.floorMod(this.acknowledgedOffset, (long) SEGMENT_SIZE);
+
+            this.openWriteSegment(this.acknowledgedOffset - position);
+            this.writeSegment.position(position);
+            this.writeOffset = this.acknowledgedOffset;
+        } else {
+            this.segmentBases.addAll(bases);
+            this.writeSegmentBase = bases.get(bases.size() - 1);
+            this.writeSegment = map(this.segmentPath(this.writeSegmentBase), FileChannel.MapMode.READ_WRITE);
+
+            /* The write position is right after the last record of the last segment */
+            int position = 0;
+            while (position + RECORD_HEADER <= SEGMENT_SIZE && this.writeSegment.getInt(position) > 0) {
+                position += RECORD_HEADER + this.writeSegment.getInt(position);
+            }
+            this.writeSegment.position(position);
+            this.writeOffset = this.writeSegmentBase + position;
+        }
+    }
+
+    /**
+     * Append @param length bytes of @param buffer from @param offset
+     * @return false if the journal was deleted meanwhile, the record then belonging in a new journal
+     */
+    public boolean append(final byte[] buffer, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return true;
+        }
+        if (RECORD_HEADER + length > SEGMENT_SIZE) {
+            throw new IOException(String.format("Message of %d bytes exceeds journal segments", length));
+        }
+
+        this.lock.lock();
+        try {
+            if (this.deleted) {
+                return false;
+            }
+            if (this.writeSegment.remaining() < RECORD_HEADER + length) {
+                this.openWriteSegment(this.writeSegmentBase + SEGMENT_SIZE);
+            }
+
+            this.writeSegment.putInt(length).put(buffer, offset, length);
+            this.writeOffset = this.writeSegmentBase + this.writeSegment.position();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Hand @param maxRecords records at most, starting at @param fromOffset, to @param consumer.
+     * Records appended during the replay are included, and a single thread may replay at a time.
+     * @return The offset following the last record handed over
+     */
+    public long replay(final long fromOffset, final int maxRecords, final RecordConsumer consumer)
+            throws IOException {
+        final long end = this.writeOffset;
+        long offset = Math.max(fromOffset, this.acknowledgedOffset);
+        int records = 0;
+        byte[] record = new byte[256];
+
+        while (offset < end && records < maxRecords) {
+            final long segmentBase = offset - Math.floorMod(offset, (long) SEGMENT_SIZE);
+            final Path segmentPath = this.segmentPath(segmentBase);
+
+            if (!Files.exists(segmentPath)) {
+                offset = segmentBase + SEGMENT_SIZE;
+                continue;
+            }
+
+            if (this.readSegmentBase != segmentBase) {
+                this.readSegment = map(segmentPath, FileChannel.MapMode.READ_ONLY);
+                this.readSegmentBase = segmentBase;
+            }
+
+            final ByteBuffer segment = this.readSegment;
+            int position = (int) (offset - segmentBase);
+
+            while (records < maxRecords && segmentBase + position < end
+                    && position + RECORD_HEADER <= SEGMENT_SIZE && segment.getInt(position) > 0) {
+                final int length = segment.getInt(position);
+
+                if (record.length < length) {
+                    record = new byte[Math.max(length, record.length * 2)];
+                }
+                segment.get(position + RECORD_HEADER, record, 0, length);
+                consumer.accept(record, length);
+                position += RECORD_HEADER + length;
+                ++records;
+            }
+
+            offset = segmentBase + position;
+            if (records < maxRecords && offset < end) {
+                /* Rest of the segment was too small for the next record */
+                offset = segmentBase + SEGMENT_SIZE;
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Mark every record before @param offset as delivered, deleting the segments left with none to deliver
+     */
+    public void acknowledge(final long offset) throws IOException {
+        this.lock.lock();
+        try {
+            if (offset <= this.acknowledgedOffset) {
+                return;
+            }
+
+            this.acknowledgedOffset = offset;
+            final Path ackTempFile = this.directory.resolve(ACK_TEMP_FILE);
+            Files.write(ackTempFile, ByteBuffer.allocate(Long.BYTES).putLong(offset).array());
+            Files.move(ackTempFile, this.directory.resolve(ACK_FILE), StandardCopyOption.ATOMIC_MOVE);
+
+            while (this.segmentBases.size() > 1 && this.segmentBases.peekFirst() + SEGMENT_SIZE <= offset) {
+                Files.deleteIfExists(this.segmentPath(this.segmentBases.pollFirst()));
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public boolean isEmpty() { return this.acknowledgedOffset >= this.writeOffset; }
+
+    public long getAcknowledgedOffset() { return this.acknowledgedOffset; }
+
+    public long getWriteOffset() { return this.writeOffset; }
+
+    /**
+     * Remove the journal from disk if it has nothing left to deliver, no record being appended meanwhile
+     * @return true if it was removed
+     */
+    public boolean deleteIfEmpty() throws IOException {
+        this.lock.lock();
+        try {
+            if (!this.isEmpty()) {
+                return false;
+            }
+            this.delete();
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the journal from disk, once it has nothing left to deliver
+     */
+    public void delete() throws IOException {
+        this.lock.lock();
+        try {
+            this.deleted = true;
+            this.writeSegment = null;
+            this.readSegment = null;
+            try (Stream<Path> files = Files.list(this.directory)) {
+                for (final Path file : files.toList()) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(this.directory);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void openWriteSegment(final long base) throws IOException {
+        this.writeSegmentBase = base;
+        this.writeSegment = map(this.segmentPath(base), FileChannel.MapMode.READ_WRITE);
+        this.segmentBases.add(base);
+        this.writeOffset = base;
+    }
+
+    private Path segmentPath(final long base) {
+        return this.directory.resolve(String.format("%020d%s", base, SEGMENT_SUFFIX));
+    }
+
+    private static MappedByteBuffer map(final Path path, final FileChannel.MapMode mode) throws IOException {
+        if (mode == FileChannel.MapMode.READ_ONLY) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return channel.map(mode, 0, SEGMENT_SIZE);
+            }
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            return channel.map(mode, 0, SEGMENT_SIZE);
+        }
+    }
+
+    /**
+     * Receives the records of a replay, only valid during the call
+     */
+    @FunctionalInterface
+    public interface RecordConsumer {
+        void accept(final byte[] record, final int length) throws IOException;
+    }
+}
@@ -0,0 +1,121 @@
+package com.rmouduri.fixme;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bytes queued for one session and not written yet. The session is backed up once they exceed the high
+ * watermark, and stays so until they fall to the low watermark, so the Router does not flap between applying
+ * its slow consumer policy and lifting it.
+ */
+public final class OutboundWatermarks {
+    /* Bytes queued for a session beyond which it is backed up */
+    static final long HIGH = Long.getLong("fixme.router.queue.high", 1024 * 1024);
+    /* Bytes queued for a backed up session under which it catches up */
+    static final long LOW = Long.getLong("fixme.router.queue.low", HIGH / 4);
+
+    /**
+     * What the Router does to a backed up destination, chosen with `fixme.router.slow.policy'
+     */
+    public enum Policy {
+        /* Stop reading from the sessions sending to it until it catches up */
+        PAUSE_SOURCES("pause"),
+        /* Reject the messages sent to it until it catches up */
+        REJECT("reject"),
+        /* Disconnect it, its messages then being saved until it comes back */
+        DISCONNECT("disconnect");
+
+        private final String label;
+
+        Policy(final String labelParam) {
+            this.label = labelParam;
+        }
+
+        /**
+         * @return The policy named @param label, or null if there is none
+         */
+        static Policy of(final String label) {
+            for (final Policy policy : values()) {
+                if (policy.label.equalsIgnoreCase(label)) {
+                    return policy;
+                }
+            }
+            return null;
+        }
+
+        public String getLabel() { return this.label; }
+    }
+
+    private final AtomicLong queued = new AtomicLong();
+    /* Only changed by compareAndSet, so each transition is made, and acted on, by a single thread */
+    private final AtomicBoolean backedUp = new AtomicBoolean();
+    /* Run once the session catches up or is closed */
+    private final ConcurrentLinkedQueue<Runnable> onDrained = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Count @param bytes queued for the session
+     */
+    void queued(final int bytes) {
+        if (this.queued.addAndGet(bytes) > HIGH) {
+            this.backUp();
+        }
+    }
+
+    /**
+     * Count @param bytes written to the session
+     */
+    void written(final int bytes) {
+        if (this.queued.addAndGet(-bytes) <= LOW) {
+            this.catchUp();
+        }
+    }
+
+    private void backUp() {
+        if (this.backedUp.compareAndSet(false, true) && this.queued.get() <= LOW) {
+            /* Written down to the low watermark before the flag was set, by a writer that found nothing to lift */
+            this.catchUp();
+        }
+    }
+
+    private void catchUp() {
+        if (this.backedUp.compareAndSet(true, false)) {
+            this.runOnDrained();
+            /* Queued past the high watermark before the flag was cleared, by a writer that found it still set */
+            if (this.queued.get() > HIGH) {
+                this.backUp();
+            }
+        }
+    }
+
+    boolean isBackedUp() { return this.backedUp.get(); }
+
+    long getQueued() { return this.queued.get(); }
+
+    /**
+     * Run @param task once the session is no longer backed up, right away if it is not
+     */
+    void whenDrained(final Runnable task) {
+        this.onDrained.add(task);
+        /* Caught up meanwhile, and the tasks already run */
+        if (!this.backedUp.get()) {
+            this.runOnDrained();
+        }
+    }
+
+    /**
+     * Release everything waiting for the session to catch up, as it never will once closed
+     */
+    void close() {
+        this.backedUp.set(false);
+        this.runOnDrained();
+    }
+
+    private void runOnDrained() {
+        Runnable task;
+
+        while ((task = this.onDrained.poll()) != null) {
+            task.run();
+        }
+    }
+}
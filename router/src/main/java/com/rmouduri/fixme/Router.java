@@ -1,16 +1,62 @@
 package com.rmouduri.fixme;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.*;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 
 public class Router {
-    private final static short BROKER_PORT = 5000;
-    private final static short MARKET_PORT = 5001;
+    private final static int BROKER_PORT = Integer.getInteger("fixme.router.broker.port", 5000);
+    private final static int MARKET_PORT = Integer.getInteger("fixme.router.market.port", 5001);
+    /* Interface both ports are bound to, every interface by default */
+    private final static String BIND_ADDRESS = System.getProperty("fixme.router.bind", "");
+    /* Accept loops per port with `fixme.router.reuseport', each on its own socket */
+    private final static int ACCEPTORS = Integer.getInteger("fixme.router.acceptors",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    private final static int ACCEPT_BACKLOG = Integer.getInteger("fixme.router.backlog", 1024);
+    /* Off by default: any process of the same user could then bind the ports too, and take a share of logons */
+    private final static boolean REUSE_PORT = Boolean.getBoolean("fixme.router.reuseport") && supportsReusePort();
+    /* Host the other nodes of a cluster and the sessions redirected to this node reach it on */
+    private final static String HOST = System.getProperty("fixme.router.host", "localhost");
+    private final static int CLUSTER_PORT = Integer.getInteger("fixme.router.cluster.port", 5003);
+    /* `host:port' of every node of the cluster, none by default */
+    private final static List<String> CLUSTER_NODES = List.of(System.getProperty("fixme.router.cluster.nodes", "")
+            .split(","));
+    private final static String MODE = System.getProperty("fixme.router.mode", "blocking");
+    private final static int EVENT_LOOPS = Integer.getInteger("fixme.router.loops",
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    private final static Path JOURNAL_DIRECTORY = Paths.get(System.getProperty("fixme.router.journal.dir",
+            "router-journal"));
+    private final static int METRICS_PORT = Integer.getInteger("fixme.router.metrics.port", 5002);
+    private final static int REPLAY_BATCH = 256;
+    /* Last messages sent to each id kept for resending, the older ones being skipped with a SequenceReset */
+    private final static int RESEND_WINDOW = Integer.getInteger("fixme.router.resend.window", 1024);
+    /* What to do to a destination once more than `fixme.router.queue.high' bytes are queued for it */
+    private final static String SLOW_POLICY_NAME = System.getProperty("fixme.router.slow.policy", "pause");
+    private final static OutboundWatermarks.Policy SLOW_POLICY = OutboundWatermarks.Policy.of(SLOW_POLICY_NAME);
+    /* Seconds without traffic before a Heartbeat or TestRequest is sent, none if not positive */
+    private final static long HEARTBEAT_INTERVAL = TimeUnit.SECONDS.toNanos(
+            Long.getLong("fixme.router.heartbeat.interval", 30));
+    /* Seconds the MsgSeqNums of a logged out session are kept for it to resume */
+    private final static long RESUME_LINGER = Long.getLong("fixme.router.resume.linger", 300);
+    private final static ThreadLocal<FixEncoder> ENCODER = ThreadLocal.withInitial(FixEncoder::new);
+    private final static ThreadLocal<FixBinaryEncoder> BINARY_ENCODER = ThreadLocal.withInitial(FixBinaryEncoder::new);
     private static Router instance;
 
     public static final String RESET = "\u001B[0m";
@@ -18,240 +64,1076 @@ public class Router {
     public static final String RED = "\u001B[31m";
     public static final String CYAN = "\u001B[36m";
 
-    private final AtomicInteger id = new AtomicInteger(1);
     private final ExecutorService executorService;
-    private final HashMap<String, Socket> routingTable = new HashMap<>();
-    private final HashMap<String, List<FixMessage>> savedUnsentMessage = new HashMap<>();
+    /* Runs handleClient, on virtual threads when `fixme.threads' is `virtual' */
+    private final ExecutorService clientExecutor;
+    private final AtomicInteger nextEventLoop = new AtomicInteger();
+    private EventLoop[] eventLoops;
+    private final SessionRegistry routingTable = new SessionRegistry();
+    private final ConcurrentHashMap<String, MessageJournal> savedUnsentMessage = new ConcurrentHashMap<>();
+    /* MsgSeqNums of every id, kept while it is away so it only gets the messages it missed when it comes back */
+    private final ConcurrentHashMap<String, SessionSequence> sequences = new ConcurrentHashMap<>();
+    private final RouterMetrics metrics = new RouterMetrics(this.routingTable, this.savedUnsentMessage);
+    private final MarketDataHub marketData = new MarketDataHub(this.metrics);
+    /* Destinations backed up, reported once until they catch up */
+    private final Set<Session> backedUp = ConcurrentHashMap.newKeySet();
+    private final Cluster cluster;
+    /* Liveness checks of every session and expiry of the sequences of the ones gone */
+    private final HashedWheelTimer timer = new HashedWheelTimer("router-timer", TimeUnit.MILLISECONDS.toNanos(100),
+            512);
 
     private Router() {
+        this.metrics.setMarketData(this.marketData);
         this.executorService = Executors.newCachedThreadPool();
+        this.cluster = new Cluster(this, this.executorService, HOST, CLUSTER_PORT, CLUSTER_NODES, BROKER_PORT,
+                MARKET_PORT);
+        this.clientExecutor = ThreadMode.isVirtual() ? ThreadMode.newExecutor() : this.executorService;
+        this.recoverUnsentMessages();
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            System.out.println("Shutting down Router...");
+            Log.info("Shutting down Router...");
+            this.metrics.stop();
+            this.cluster.stop();
+            this.timer.stop();
+            this.clientExecutor.shutdown();
             executorService.shutdown();
         }));
     }
 
+    /**
+     * Start listening to Brokers and Markets, with one thread per connection by default,
+     * or on a fixed set of EventLoops when the `fixme.router.mode' property is `nio'.
+     * Metrics are served on `fixme.router.metrics.port', unless it is negative.
+     * With `fixme.router.cluster.nodes', the Router joins the cluster of those nodes.
+     */
     public void start() {
-        this.executorService.submit(() -> this.startPortListening(BROKER_PORT));
-        this.executorService.submit(() -> this.startPortListening(MARKET_PORT));
+        if (SLOW_POLICY == null) {
+            Log.error("Unknown slow consumer policy `%s', expected `pause', `reject' or `disconnect'",
+                    SLOW_POLICY_NAME);
+            this.executorService.shutdown();
+            return;
+        }
+        Log.info("Destinations with more than %d bytes queued are slow consumers: policy `%s'",
+                OutboundWatermarks.HIGH, SLOW_POLICY.getLabel());
+        if (HEARTBEAT_INTERVAL > 0) {
+            Log.info("Sessions silent for %d seconds are sent a TestRequest, and disconnected if they do not answer",
+                    TimeUnit.NANOSECONDS.toSeconds(HEARTBEAT_INTERVAL));
+        }
+
+        this.timer.start();
+        this.metrics.start(METRICS_PORT);
+        this.cluster.start();
+        if (MODE.equalsIgnoreCase("nio")) {
+            this.startEventLoops(EVENT_LOOPS);
+        } else {
+            this.startPortListening(BROKER_PORT);
+            this.startPortListening(MARKET_PORT);
+        }
     }
 
     /**
-     * Start listening to port @param port
+     * Serve both ports from @param count EventLoop threads, as many of them as there are acceptors of a port
+     * also accepting its connections
+     */
+    private void startEventLoops(final int count) {
+        try {
+            this.eventLoops = new EventLoop[count];
+            for (int i = 0; i < count; ++i) {
+                this.eventLoops[i] = new EventLoop(this);
+                this.executorService.submit(this.eventLoops[i]);
+            }
+
+            int loop = 0;
+            for (final int port : new int[] { BROKER_PORT, MARKET_PORT }) {
+                final int acceptors = REUSE_PORT ? Math.min(ACCEPTORS, count) : 1;
+
+                for (int i = 0; i < acceptors; ++i) {
+                    final ServerSocketChannel serverChannel = ServerSocketChannel.open();
+
+                    if (REUSE_PORT) {
+                        serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                    }
+                    serverChannel.bind(getListenAddress(port), ACCEPT_BACKLOG);
+                    serverChannel.configureBlocking(false);
+                    this.eventLoops[loop++ % count].listen(serverChannel, port);
+                }
+                Log.info("Router started listening to port %d with %d event loops and %d acceptors",
+                        port, count, acceptors);
+            }
+        } catch (IOException e) {
+            Log.error("Error while starting router event loops: " + e.getMessage());
+            this.executorService.shutdown();
+        }
+    }
+
+    /**
+     * @return The EventLoop serving the next accepted connection, chosen round-robin
+     */
+    EventLoop nextEventLoop() {
+        return this.eventLoops[Math.floorMod(this.nextEventLoop.getAndIncrement(), this.eventLoops.length)];
+    }
+
+    String getSessionType(final int port) {
+        return port == BROKER_PORT ? "Broker" : "Market";
+    }
+
+    /**
+     * Start listening to port @param port with ACCEPTORS accept loops, so a storm of reconnecting sessions is
+     * not accepted one at a time. Each loop has its own socket bound with SO_REUSEPORT, the kernel spreading
+     * new connections over them, or they all accept on a single socket where SO_REUSEPORT is not supported.
+     * Another process of the same user binding the port with SO_REUSEPORT would share its connections too.
      */
     private void startPortListening(final int port) {
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.printf("Router started listening to port %d\n", port);
+        final List<ServerSocket> serverSockets = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < (REUSE_PORT ? ACCEPTORS : 1); ++i) {
+                final ServerSocket serverSocket = new ServerSocket();
 
+                serverSockets.add(serverSocket);
+                if (REUSE_PORT) {
+                    serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                }
+                serverSocket.bind(getListenAddress(port), ACCEPT_BACKLOG);
+            }
+        } catch (IOException e) {
+            Log.error("Error while starting router on port %d: %s", port, e.getMessage());
+            serverSockets.forEach(Router::closeQuietly);
+            this.executorService.shutdown();
+            return;
+        }
+
+        for (int i = 0; i < ACCEPTORS; ++i) {
+            final ServerSocket serverSocket = serverSockets.get(i % serverSockets.size());
+
+            this.executorService.submit(() -> this.acceptConnections(serverSocket, port));
+        }
+        Log.info("Router started listening to port %d with %d acceptors%s", port, ACCEPTORS,
+                ThreadMode.isVirtual() ? " on virtual threads" : "");
+    }
+
+    /**
+     * Hand every connection accepted on @param serverSocket to a thread of its own
+     */
+    private void acceptConnections(final ServerSocket serverSocket, final int port) {
+        try {
             while (true) {
                 Socket clientSocket = serverSocket.accept();
 
-                executorService.submit(() -> handleClient(clientSocket, port));
+                this.clientExecutor.submit(() -> handleClient(clientSocket, port));
             }
         } catch (IOException e) {
-            System.err.printf("Error while starting router on port %d%n", port);
-            this.executorService.shutdown();
+            Log.error("Error while accepting connections on port %d: %s", port, e.getMessage());
+            closeQuietly(serverSocket);
+        }
+    }
+
+    private static InetSocketAddress getListenAddress(final int port) {
+        return BIND_ADDRESS.isEmpty() ? new InetSocketAddress(port) : new InetSocketAddress(BIND_ADDRESS, port);
+    }
+
+    private static boolean supportsReusePort() {
+        try (ServerSocket serverSocket = new ServerSocket()) {
+            if (serverSocket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+                return true;
+            }
+        } catch (IOException ignored) {
+        }
+        Log.warn("SO_REUSEPORT is not supported, accepting on a single socket per port");
+        return false;
+    }
+
+    private static void closeQuietly(final ServerSocket serverSocket) {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
         }
     }
 
     private void handleClient(final Socket socket, final int port) {
+        final SocketSession session = new SocketSession(socket, this.clientExecutor);
+        final FixDecoder decoder = new FixDecoder();
+        final FixBinaryDecoder binaryDecoder = new FixBinaryDecoder();
+        String id = null;
+
         try (socket) {
-            String id;
-            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-            String request = in.readLine();
-            System.out.printf("%sNew Connection request received from Unknown %s: `%s'%s\n",
-                    GREEN, port == BROKER_PORT ? "Broker" : "Market", request, RESET);
-
-            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-            if (request == null || request.isEmpty()) {
-                id = String.format("%s%06d", port == BROKER_PORT ? "Broker" : "Market",
-                        this.getNextId());
-            } else if (this.isValidId(request, port == BROKER_PORT ? "Broker" : "Market")
-                    && (!this.routingTable.containsKey(request)
-                    || this.routingTable.get(request).isClosed())) {
-                id = request;
-            } else {
-                id = String.format("%s%06d", port == BROKER_PORT ? "Broker" : "Market",
-                        this.getNextId());
-                System.err.printf("%sInvalid id `%s'%s, assigned id will be: %s%s%s\n",
-                        RED, request, RESET, GREEN, id, RESET);
-            }
-
-            FixMessage identificationFixMessage = new FixMessage();
-            identificationFixMessage.setMsgType(FixMessage.LOGON_MSG_TYPE);
-            identificationFixMessage.setSenderId("Router");
-            identificationFixMessage.setDestId(id);
-            identificationFixMessage.setUserId(id);
-            identificationFixMessage.buildMessage(new LinkedHashSet<>(Arrays.asList(
-                    FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
-                    FixMessage.USERID_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER)));
-
-            this.routingTable.put(id, socket);
-
-            System.out.println(CYAN + "Sending: " + RESET + identificationFixMessage.getMessage());
-            out.write(identificationFixMessage.getMessage() + '\n');
-            out.flush();
-
-            if (id.equals(request)) {
-                this.sendUnsentMessages(id);
-                this.savedUnsentMessage.remove(id);
-            }
-
-            while ((request = in.readLine()) != null) {
-                final FixMessage fixMessage = new FixMessage(request);
-                /* Validating Checksum */
-                if (!fixMessage.validateChecksum()) {
-                    final FixMessage errorFixMessage = new FixMessage();
-
-                    errorFixMessage.setSenderId("Router");
-                    errorFixMessage.setDestId(fixMessage.getSenderId());
-                    errorFixMessage.setMsgType(FixMessage.REJECTED_MSG_TYPE);
-                    errorFixMessage.setText("Invalid checksum");
-                    errorFixMessage.buildMessage(new LinkedHashSet<>(Arrays.asList(
-                            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
-                            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEXT_IDENTIFIER)));
-
-                    System.out.println(RED + "Sending" + RESET + " Invalid Checksum.");
-                    this.sendMessage(errorFixMessage);
-                    /* Checking if destination is of different type from source */
-                } else if ((fixMessage.getSenderId().contains("Broker")
-                        && fixMessage.getDestId().contains("Broker"))
-                        || (fixMessage.getSenderId().contains("Market")
-                        && fixMessage.getDestId().contains("Market"))) {
-                    final FixMessage errorFixMessage = new FixMessage();
-
-                    errorFixMessage.setSenderId("Router");
-                    errorFixMessage.setDestId(fixMessage.getSenderId());
-                    errorFixMessage.setMsgType(FixMessage.REJECTED_MSG_TYPE);
-                    errorFixMessage.setText(String.format("Invalid target: %s instead of %s",
-                            fixMessage.getSenderId().contains("Broker") ? "Broker" : "Market",
-                            !fixMessage.getSenderId().contains("Broker") ? "Broker" : "Market"));
-                    errorFixMessage.buildMessage(new LinkedHashSet<>(Arrays.asList(
-                            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
-                            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEXT_IDENTIFIER)));
-
-                    System.out.println(RED + "Sending" + RESET + " Invalid Target.");
-                    this.sendMessage(errorFixMessage);
-                    /* Checking the message has been sent successfully */
-                } else if (this.sendMessage(fixMessage) == -1) {
-                    final FixMessage errorFixMessage = new FixMessage();
-
-                    errorFixMessage.setSenderId("Router");
-                    errorFixMessage.setDestId(fixMessage.getSenderId());
-                    errorFixMessage.setMsgType(FixMessage.REJECTED_MSG_TYPE);
-                    errorFixMessage.setText("Unknown destination");
-                    errorFixMessage.buildMessage(new LinkedHashSet<>(Arrays.asList(
-                            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
-                            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEXT_IDENTIFIER)));
-
-                    System.out.println(RED + "Sending" + RESET + " Unknown Destination.");
-                    if (this.isValidId(fixMessage.getDestId(), port == BROKER_PORT ? "Market" : "Broker")) {
-                        System.out.println("Saving message in case of destination reconnects.");
-                        this.saveUnsentMessage(fixMessage);
+            final FixLineReader in = new FixLineReader(socket.getInputStream());
+            id = this.logon(session, in.readLine(), port);
+            if (id == null) {
+                /* Redirected: the session closes once its Logout is written, not before */
+                try {
+                    while (in.next()) {
                     }
-                    this.sendMessage(errorFixMessage);
+                } catch (IOException ignored) {
                 }
+                return;
+            }
+            in.setBinary(session.isBinary());
+
+            long replayOffset = 0;
+            while ((replayOffset = this.sendUnsentMessages(id, session, replayOffset)) != -1) {
+                /* Waiting for the session to catch up, so a large backlog never sits in memory */
+                if (session.isBackedUp()) {
+                    session.pauseUntilDrained(session);
+                }
+            }
+
+            while (in.next()) {
+                this.handleRequest(session.isBinary()
+                        ? binaryDecoder.wrap(in.getBuffer(), in.getOffset(), in.getLength())
+                        : decoder.wrapRouting(in.getBuffer(), in.getOffset(), in.getLength()), session, port);
             }
 
-            System.err.printf(RED + "%s disconnected."+ RESET + "\n", id);
+            Log.warn(RED + "%s disconnected." + RESET, id);
         } catch (IOException e) {
-            System.err.printf("Error while listening to %s: %s\n",
-                    port == BROKER_PORT ? "Broker" : "Market", e.getMessage());
-            System.err.println("Error: " + e.getMessage());
+            if (session.isClosed()) {
+                /* Closed by the Router, e.g. once redirected to another node */
+                Log.warn(RED + "%s disconnected." + RESET, id);
+            } else {
+                Log.error("Error while listening to %s: %s", this.getSessionType(port), e.getMessage());
+                Log.error("Error: " + e.getMessage());
+            }
         } catch (FixMessageException e) {
-            System.err.println("Error in FixMessage: " + e.getMessage());
+            Log.error("Error in FixMessage: " + e.getMessage());
         } catch (RouterException e) {
-            System.err.println("Error in Router: " + e.getMessage());
+            Log.error("Error in Router: " + e.getMessage());
+        } finally {
+            if (id != null) {
+                this.logout(id, session);
+            }
         }
     }
 
-    private int sendMessage(final FixMessage fixMessage) throws RouterException {
-        final Socket socket = this.routingTable.get(fixMessage.getDestId());
+    /**
+     * Assign an id to the new @param session from its first line @param request, and send it the Logon message.
+     * The first line is either the requested id, or a Logon message with the requested id and wire encoding,
+     * which the Router's Logon then grants: the session switches to binary frames right after it if requested.
+     * The messages saved while it was away are then sent with sendUnsentMessages.
+     * In a cluster, a session asking for an id another node owns is redirected to that node instead, and new ids
+     * are only given among the ones this node owns.
+     * A session coming back tells in its Logon the last MsgSeqNum it processed: the messages it missed since are
+     * resent right after the Router's Logon, which tells in turn the last number the Router processed from it.
+     * A session without it starts new sequences from 1.
+     * @return The id of the session, or null if it was redirected
+     */
+    String logon(final Session session, final String request, final int port)
+            throws IOException, FixMessageException, RouterException {
+        String requestedId = request;
+        String encoding = null;
+        long lastProcessed = -1;
 
-        if (socket == null) {
-            return -1;
-        } else if (socket.isClosed()) {
-//            this.routingTable.remove(fixMessage.getDestId());
-            return -1;
+        Log.info("%sNew Connection request received from Unknown %s: `%s'%s",
+                GREEN, this.getSessionType(port), request, RESET);
+
+        if (request != null && request.startsWith(FixMessage.FIX_IDENTIFIER + "=")) {
+            final FixDecoder logon = new FixDecoder().wrap(request);
+
+            if (!logon.validateChecksum()
+                    || !logon.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.LOGON_MSG_TYPE)) {
+                throw new RouterException(String.format("Invalid Logon message: `%s'.", request));
+            }
+            requestedId = logon.getString(FixMessage.USERID_IDENTIFIER, null);
+            encoding = logon.valueEquals(FixMessage.ENCODING_IDENTIFIER, FixMessage.BINARY_ENCODING)
+                    ? FixMessage.BINARY_ENCODING : FixMessage.TEXT_ENCODING;
+            if (logon.contains(FixMessage.LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER)) {
+                lastProcessed = logon.getInt(FixMessage.LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER);
+            }
+        }
+
+        final String type = this.getSessionType(port);
+        final boolean requested = requestedId != null && !requestedId.isEmpty();
+        final ClusterLink owner = requested && requestedId.startsWith(type) ? this.cluster.getOwner(requestedId)
+                : null;
+        if (owner != null) {
+            this.redirect(requestedId, session, owner);
+            return null;
+        }
+
+        final String id = this.routingTable.register(requested ? requestedId : null, type, session,
+                this.cluster::owns);
+        if (id == null) {
+            throw new RouterException("Every session id is in use.");
+        } else if (requested && !id.equals(requestedId)) {
+            Log.warn("%sInvalid id `%s'%s, assigned id will be: %s%s%s",
+                    RED, requestedId, RESET, GREEN, id, RESET);
         }
+        session.setIdGranted(requested && id.equals(requestedId));
 
+        /* A session this node has no sequence of, e.g. moved from another node, has its numbers adopted */
+        final boolean resumed = lastProcessed != -1;
+        final SessionSequence sequence = this.sequences.compute(id, (key, previous) -> previous != null && resumed
+                ? previous : new SessionSequence(RESEND_WINDOW, resumed ? -1 : 0));
+        final FixEncoder encoder = encoding == null
+                ? ENCODER.get().begin(FixLayout.LOGON).putString("Router").putString(id).putString(id)
+                : ENCODER.get().begin(FixLayout.ENCODED_LOGON).putString("Router").putString(id).putString(id)
+                        .putString(encoding);
+
+        /* Messages forwarded meanwhile are numbered after the resent ones */
+        sequence.getLock().lock();
         try {
-            BufferedWriter destOut = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            if (resumed && sequence.getLastReceived() != -1) {
+                encoder.putField(FixMessage.LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER, sequence.getLastReceived());
+            }
+            encoder.finish();
 
-            System.out.printf(CYAN + "Sending" + RESET + " message to %s: %s\n",
-                    fixMessage.getDestId(), fixMessage.getMessage());
-            destOut.write(fixMessage.getMessage() + '\n');
-            destOut.flush();
-        } catch (IOException e) {
-            throw new RouterException(String.format("Error while sending message to `%s': %s",
-                    fixMessage.getDestId(), e.getMessage()));
+            this.metrics.logon(id, session);
+            if (Log.isDebugEnabled()) {
+                Log.debug(CYAN + "Sending: " + RESET + encoder);
+            }
+            session.write(encoder.getBuffer(), 0, encoder.getLength());
+            this.metrics.sent(session);
+            session.setBinary(FixMessage.BINARY_ENCODING.equals(encoding));
+            session.setSequence(sequence);
+
+            if (resumed) {
+                final int resent = sequence.resume(lastProcessed, "Router", id, session.isBinary(), session::write);
+
+                this.metrics.resent(resent);
+                Log.info("%sResumed%s %s after message %d, %d messages resent", CYAN, RESET, id, lastProcessed,
+                        resent);
+            }
+        } finally {
+            sequence.getLock().unlock();
         }
 
-        return 0;
+        if (HEARTBEAT_INTERVAL > 0) {
+            this.timer.schedule(() -> this.checkLiveness(id, session), HEARTBEAT_INTERVAL, TimeUnit.NANOSECONDS);
+        }
+        return id;
+    }
+
+    /**
+     * Remove the disconnected @param session, keeping its id reserved if messages wait for it
+     */
+    void logout(final String id, final Session session) {
+        this.metrics.logout(session);
+        this.marketData.unsubscribeAll(session);
+        this.routingTable.unregister(id, session, this.savedUnsentMessage.containsKey(id));
+        /* Forgotten unless the session came back meanwhile */
+        this.timer.schedule(() -> this.sequences.computeIfPresent(id,
+                (key, sequence) -> this.routingTable.get(id) == null ? null : sequence),
+                RESUME_LINGER, TimeUnit.SECONDS);
+
+        /* Messages saved while a redirected session was leaving */
+        final ClusterLink owner = this.cluster.getOwner(id);
+        if (owner != null && this.savedUnsentMessage.containsKey(id)) {
+            this.handOff(id, owner);
+        }
+    }
+
+    /**
+     * Validate @param request received from @param source on @param port and forward it to its destination,
+     * or reject it. Market data and subscriptions to it are handed to the MarketDataHub instead.
+     */
+    void handleRequest(final FixFields request, final Session source, final int port)
+            throws FixMessageException, RouterException {
+        final long received = System.nanoTime();
+        final Session destination;
+
+        source.getLiveness().received();
+        this.metrics.received(source);
+        /* Validating Checksum */
+        if (!request.validateChecksum()) {
+            Log.debug(RED + "Sending" + RESET + " Invalid Checksum.");
+            this.metrics.rejected(RouterMetrics.Reject.CHECKSUM);
+            this.sendReject(request, "Invalid checksum");
+        } else if (!this.inSequence(request, source)) {
+            if (Log.isDebugEnabled()) {
+                Log.debug("Message out of sequence from %s: %s",
+                        request.getString(FixMessage.SENDER_IDENTIFIER, null), request);
+            }
+        } else if (request.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEST_REQUEST_MSG_TYPE)) {
+            this.sendHeartbeat(request.getString(FixMessage.SENDER_IDENTIFIER), source,
+                    request.getString(FixMessage.TEST_REQ_ID_IDENTIFIER, null));
+        } else if (request.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.HEARTBEAT_MSG_TYPE)) {
+            /* Its arrival was all that mattered */
+        } else if (port == MARKET_PORT
+                && request.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.MARKET_DATA_MSG_TYPE)) {
+            this.handleMarketData(request, source, true, false);
+        } else if (port == BROKER_PORT
+                && request.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.MARKET_DATA_REQUEST_MSG_TYPE)) {
+            this.handleMarketData(request, source, false, false);
+            /* Checking if destination is of different type from source */
+        } else if ((request.valueContains(FixMessage.SENDER_IDENTIFIER, "Broker")
+                && request.valueContains(FixMessage.DEST_IDENTIFIER, "Broker"))
+                || (request.valueContains(FixMessage.SENDER_IDENTIFIER, "Market")
+                && request.valueContains(FixMessage.DEST_IDENTIFIER, "Market"))) {
+            final boolean fromBroker = request.valueContains(FixMessage.SENDER_IDENTIFIER, "Broker");
+
+            Log.debug(RED + "Sending" + RESET + " Invalid Target.");
+            this.metrics.rejected(RouterMetrics.Reject.INVALID_TARGET);
+            this.sendReject(request, String.format("Invalid target: %s instead of %s",
+                    fromBroker ? "Broker" : "Market", !fromBroker ? "Broker" : "Market"));
+        } else if (SLOW_POLICY == OutboundWatermarks.Policy.REJECT && this.isBackedUp(request)) {
+            Log.debug(RED + "Sending" + RESET + " Slow Destination.");
+            this.metrics.rejected(RouterMetrics.Reject.SLOW_DESTINATION);
+            this.sendReject(request, "Destination too slow to read, try again later");
+            /* Checking the message has been sent successfully */
+        } else if ((destination = this.forwardMessage(request, false)) == null) {
+            final String destId = request.getString(FixMessage.DEST_IDENTIFIER);
+
+            Log.debug(RED + "Sending" + RESET + " Unknown Destination.");
+            this.metrics.rejected(RouterMetrics.Reject.UNKNOWN_DESTINATION);
+            if (this.routingTable.isValidId(destId,
+                    this.getSessionType(port == BROKER_PORT ? MARKET_PORT : BROKER_PORT))) {
+                this.saveRequest(destId, request);
+            }
+            this.sendReject(request, "Unknown destination");
+        } else {
+            this.metrics.forwarded(System.nanoTime() - received);
+            this.applySlowPolicy(request.getString(FixMessage.DEST_IDENTIFIER), destination, source);
+        }
     }
 
-    private boolean isValidId(final String id, final String type) {
-        if (id.length() != 12 || !id.startsWith(type)) {
+    /**
+     * @return true if the destination of @param request, on this node or the link to its node, is backed up
+     */
+    private boolean isBackedUp(final FixFields request) throws FixMessageException {
+        final String destId = request.getString(FixMessage.DEST_IDENTIFIER);
+        final Session destination = this.getSession(destId);
+
+        if (destination == null || !destination.isBackedUp()) {
             return false;
         }
+        this.reportBackedUp(destId, destination);
+        return true;
+    }
+
+    /**
+     * Once @param destination of @param destId is backed up, pause @param source sending to it, or disconnect
+     * @param destination, as told by `fixme.router.slow.policy'. Under the reject policy, the next messages to
+     * @param destination are rejected instead. A message from another node has no @param source, as the link
+     * it came on is shared by every session of that node and is never paused, and a link to another node is
+     * never disconnected: its sources are paused instead.
+     */
+    private void applySlowPolicy(final String destId, final Session destination, final Session source) {
+        if (!destination.isBackedUp()) {
+            return;
+        }
+
+        this.reportBackedUp(destId, destination);
+        if (SLOW_POLICY == OutboundWatermarks.Policy.DISCONNECT && this.cluster.getOwner(destId) == null) {
+            Log.warn("%sDisconnecting%s slow consumer %s, %d bytes queued", RED, RESET, destId,
+                    destination.getQueuedBytes());
+            this.metrics.slowConsumerDisconnected();
+            destination.abort();
+        } else if (SLOW_POLICY != OutboundWatermarks.Policy.REJECT && source != null) {
+            Log.debug("Pausing source of %s until it catches up", destId);
+            this.metrics.sourcePaused();
+            source.pauseUntilDrained(destination);
+        }
+    }
+
+    /**
+     * Log that @param destination of @param destId is backed up, once until it catches up
+     */
+    private void reportBackedUp(final String destId, final Session destination) {
+        if (!this.backedUp.add(destination)) {
+            return;
+        }
+
+        Log.warn("%s%s backed up%s with %d bytes queued, policy `%s'", RED, destId, RESET,
+                destination.getQueuedBytes(), SLOW_POLICY.getLabel());
+        this.metrics.slowConsumer();
+        destination.whenDrained(() -> {
+            this.backedUp.remove(destination);
+            Log.info("%s%s no longer backed up%s, %d bytes queued", GREEN, destId, RESET,
+                    destination.getQueuedBytes());
+        });
+    }
+
+    /**
+     * Check the MsgSeqNum of @param request received from @param source, asking it again for the messages missed
+     * before it, and answer the ResendRequests and SequenceResets of the session
+     * @return true if @param request is to be handled, false if it is dropped or was a session message
+     */
+    private boolean inSequence(final FixFields request, final Session source)
+            throws FixMessageException, RouterException {
+        final SessionSequence sequence = source.getSequence();
 
-        final String idNumber = id.substring(6);
+        try {
+            switch (sequence.receive(request)) {
+                case ACCEPTED -> {
+                    return true;
+                }
+                case GAP -> {
+                    final String id = request.getString(FixMessage.SENDER_IDENTIFIER);
 
-        for (char c : idNumber.toCharArray()) {
-            if (c < '0' || c > '9') {
-                return false;
+                    Log.warn("%sGap%s in messages from %s, asking again from %d", RED, RESET, id,
+                            sequence.getExpectedSeqNum());
+                    sequence.requestResend("Router", id, source.isBinary(), source::write);
+                }
+                case RESEND_REQUESTED -> this.resend(request.getString(FixMessage.SENDER_IDENTIFIER), source,
+                        request.getInt(FixMessage.BEGIN_SEQ_NO_IDENTIFIER));
+                default -> {
+                    /* Duplicate, or after a gap already asked for again, or a SequenceReset already applied */
+                }
             }
+        } catch (IOException e) {
+            throw new RouterException("Error while recovering messages: " + e.getMessage());
         }
+        return false;
+    }
 
-        for (final String key : this.routingTable.keySet()) {
-            if (key.contains(idNumber) && !this.routingTable.get(key).isClosed()) {
-                return false;
+    /**
+     * Check on the timer thread that @param session of @param id is alive: a session silent for an interval is
+     * sent a TestRequest, and disconnected if still silent an interval later. A Heartbeat is sent to a session
+     * nothing was written to for an interval. The check then runs again at the next of those deadlines.
+     */
+    private void checkLiveness(final String id, final Session session) {
+        if (session.isClosed()) {
+            return;
+        }
+
+        final Liveness liveness = session.getLiveness();
+        final long now = System.nanoTime();
+        final long testRequestSent = liveness.getTestRequestSent();
+        final boolean answered = testRequestSent == 0 || liveness.getLastReceived() - testRequestSent >= 0;
+
+        try {
+            if (!answered && now - testRequestSent >= HEARTBEAT_INTERVAL) {
+                Log.warn("%s%s did not answer its TestRequest%s, disconnecting it", RED, id, RESET);
+                this.metrics.evicted();
+                session.abort();
+                return;
+            } else if (answered && now - liveness.getLastReceived() >= HEARTBEAT_INTERVAL) {
+                final FixMessageEncoder encoder = session.isBinary() ? BINARY_ENCODER.get() : ENCODER.get();
+
+                encoder.begin(FixLayout.TEST_REQUEST).putString("Router").putString(id).putString(Long.toString(now))
+                        .finish();
+                session.write(encoder.getBuffer(), 0, encoder.getLength());
+                this.metrics.sent(session);
+                liveness.setTestRequestSent(now);
+            } else if (answered) {
+                liveness.setTestRequestSent(0);
+            }
+
+            if (now - liveness.getLastSent() >= HEARTBEAT_INTERVAL) {
+                this.sendHeartbeat(id, session, null);
             }
+        } catch (IOException | RouterException e) {
+            Log.error("Error while checking on `%s': %s", id, e.getMessage());
+            session.close();
+            return;
         }
 
-        return true;
+        final long deadline = Math.min(liveness.getTestRequestSent() != 0 ? liveness.getTestRequestSent()
+                : liveness.getLastReceived(), liveness.getLastSent()) + HEARTBEAT_INTERVAL;
+        this.timer.schedule(() -> this.checkLiveness(id, session), deadline - now, TimeUnit.NANOSECONDS);
     }
 
-    private boolean isIdUsed(final int id) {
-        String idNumber = String.format("%06d", id);
+    /**
+     * Send @param session of @param id a Heartbeat, echoing @param testReqId if it answers a TestRequest
+     */
+    private void sendHeartbeat(final String id, final Session session, final String testReqId)
+            throws RouterException {
+        final FixMessageEncoder encoder = session.isBinary() ? BINARY_ENCODER.get() : ENCODER.get();
 
-        for (final String key : this.routingTable.keySet()) {
-            if (key.contains(idNumber)) {
-                return true;
+        if (testReqId == null) {
+            encoder.begin(FixLayout.HEARTBEAT).putString("Router").putString(id).finish();
+        } else {
+            encoder.begin(FixLayout.TEST_HEARTBEAT).putString("Router").putString(id).putString(testReqId).finish();
+        }
+        try {
+            session.write(encoder.getBuffer(), 0, encoder.getLength());
+            this.metrics.sent(session);
+        } catch (IOException e) {
+            throw new RouterException(String.format("Error while sending Heartbeat to `%s': %s", id, e.getMessage()));
+        }
+    }
+
+    /**
+     * Write again to @param session of @param id the messages from @param fromSeqNum on, as asked by the session
+     */
+    private void resend(final String id, final Session session, final long fromSeqNum) throws IOException {
+        final SessionSequence sequence = session.getSequence();
+
+        sequence.getLock().lock();
+        try {
+            final int resent = sequence.resend(fromSeqNum, "Router", id, session.isBinary(), session::write);
+
+            this.metrics.resent(resent);
+            Log.info("%sResent%s %d messages to %s from %d", CYAN, RESET, resent, id, fromSeqNum);
+        } finally {
+            sequence.getLock().unlock();
+        }
+    }
+
+    /**
+     * Deliver @param message, which Router node @param node sent to this node as the owner of its destination,
+     * to the local session, saving it if the destination is away. Market data and subscriptions coming from
+     * the node are handled locally only, and the saved messages the node handed over are not rejected again.
+     */
+    void handleLinkMessage(final FixFields message, final String node) throws FixMessageException, RouterException {
+        final long received = System.nanoTime();
+        final Session destination;
+
+        if (message.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.MARKET_DATA_MSG_TYPE)) {
+            this.handleMarketData(message, null, true, true);
+        } else if (message.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.MARKET_DATA_REQUEST_MSG_TYPE)) {
+            final ClusterLink link = this.cluster.getLink(node);
+
+            if (link != null) {
+                this.handleMarketData(message, link.getSession(), false, true);
             }
+        } else if ((destination = this.forwardMessage(message, true)) == null) {
+            final String destId = message.getString(FixMessage.DEST_IDENTIFIER);
+
+            if (this.routingTable.isValidId(destId, destId.startsWith("Market") ? "Market" : "Broker")) {
+                this.saveRequest(destId, message);
+            }
+            if (!message.valueEquals(FixMessage.POSS_DUP_IDENTIFIER, FixMessage.POSS_DUP)) {
+                this.metrics.rejected(RouterMetrics.Reject.UNKNOWN_DESTINATION);
+                this.sendReject(message, "Unknown destination");
+            }
+        } else {
+            this.metrics.forwarded(System.nanoTime() - received);
+            this.applySlowPolicy(message.getString(FixMessage.DEST_IDENTIFIER), destination, null);
         }
+    }
 
-        return false;
+    /**
+     * Publish the quotes of @param request if @param published, or subscribe @param source to them.
+     * A subscription to a market another node owns is also sent to that node, unless it came from a node
+     * as told by @param fromLink, so its quotes reach this node.
+     */
+    private void handleMarketData(final FixFields request, final Session source, final boolean published,
+            final boolean fromLink) throws FixMessageException, RouterException {
+        try {
+            if (published) {
+                this.marketData.publish(request);
+                return;
+            }
+
+            if (Log.isDebugEnabled()) {
+                Log.debug(CYAN + "Market data request" + RESET + " from %s: %s",
+                        request.getString(FixMessage.SENDER_IDENTIFIER, null), request);
+            }
+            this.marketData.request(request, source);
+
+            final ClusterLink owner = fromLink ? null
+                    : this.cluster.getOwner(request.getString(FixMessage.DEST_IDENTIFIER));
+            if (owner != null && request.valueEquals(FixMessage.SUBSCRIPTION_TYPE_IDENTIFIER, FixMessage.SUBSCRIBE)) {
+                this.writeMessage(owner.getNode(), owner.getSession(), request);
+            }
+        } catch (IOException e) {
+            throw new RouterException("Error while sending market data: " + e.getMessage());
+        }
     }
 
-    private int getNextId() {
-        int id;
+    /**
+     * Save @param request for @param destId until it connects, as text
+     */
+    private void saveRequest(final String destId, final FixFields request) throws RouterException {
+        Log.debug("Saving message in case of destination reconnects.");
+        if (request.isBinary()) {
+            final FixEncoder text = FixTranslator.toText((FixBinaryDecoder) request, ENCODER.get());
 
-        do {
-            id = this.id.getAndIncrement();
-        } while (isIdUsed(id));
+            this.saveUnsentMessage(destId, text.getBuffer(), 0, text.getLength());
+        } else {
+            this.saveUnsentMessage(destId, request.getBuffer(), request.getOffset(), request.getLength());
+        }
+        this.metrics.saved();
+    }
 
-        return id;
+    /**
+     * Reject @param request to its sender, in the sender's encoding, echoing its ClOrdID if it has one
+     */
+    private void sendReject(final FixFields request, final String reason)
+            throws FixMessageException, RouterException {
+        final String destId = request.getString(FixMessage.SENDER_IDENTIFIER);
+        final String clOrdId = request.getString(FixMessage.CLORDID_IDENTIFIER, null);
+        final ClusterLink owner = this.cluster.getOwner(destId);
+        final Session session = owner != null ? owner.getSession() : this.routingTable.get(destId);
+
+        if (session == null || session.isClosed()) {
+            return;
+        }
+
+        final FixMessageEncoder encoder = session.isBinary() ? BINARY_ENCODER.get() : ENCODER.get();
+        if (clOrdId == null) {
+            encoder.begin(FixLayout.REJECT).putString("Router").putString(destId).putString(reason).putSeqNum(0)
+                    .finish();
+        } else {
+            encoder.begin(FixLayout.ORDER_REJECT).putString("Router").putString(destId).putString(clOrdId)
+                    .putString(reason).putSeqNum(0).finish();
+        }
+
+        if (owner != null || session.getSequence() == null) {
+            this.sendMessage(destId, session, encoder.getBuffer(), encoder.getLength());
+            return;
+        }
+
+        final SessionSequence sequence = session.getSequence();
+        sequence.getLock().lock();
+        try {
+            sequence.resetIfExhausted("Router", destId, session.isBinary(), session::write);
+            final long seqNum = sequence.nextSeqNum();
+
+            encoder.setSeqNum(seqNum);
+            this.writeNumbered(destId, session, seqNum, encoder.getBuffer(), 0, encoder.getLength());
+        } catch (IOException e) {
+            throw new RouterException(String.format("Error while sending message to `%s': %s",
+                    destId, e.getMessage()));
+        } finally {
+            sequence.getLock().unlock();
+        }
     }
 
-    private void saveUnsentMessage(final FixMessage fixMessage) {
-        if (!this.savedUnsentMessage.containsKey(fixMessage.getDestId())) {
-            this.savedUnsentMessage.put(fixMessage.getDestId(), new ArrayList<>());
+    /**
+     * Copy the bytes of @param request to its destination without re-encoding it, unless the destination chose
+     * the other wire encoding, and then translate it. The destination is only looked for on this node if
+     * @param local, and else on the node owning it, which numbers the message for the destination.
+     * @return The session or link the message was written to, or null if the destination is not connected
+     */
+    private Session forwardMessage(final FixFields request, final boolean local)
+            throws FixMessageException, RouterException {
+        final String destId = request.getString(FixMessage.DEST_IDENTIFIER);
+        final ClusterLink owner = local ? null : this.cluster.getOwner(destId);
+
+        if (owner != null) {
+            this.writeMessage(destId, owner.getSession(), request);
+            return owner.getSession();
+        }
+
+        final Session session = this.routingTable.get(destId);
+        if (session == null || session.isClosed() || session.getSequence() == null) {
+            return null;
         }
 
-        this.savedUnsentMessage.get(fixMessage.getDestId()).add(fixMessage);
+        try {
+            this.deliver(destId, session, request);
+        } catch (IOException e) {
+            throw new RouterException(String.format("Error while sending message to `%s': %s",
+                    destId, e.getMessage()));
+        }
+        return session;
+    }
+
+    /**
+     * Write @param request to the local @param session of @param destId, numbered with the next MsgSeqNum of the
+     * id unless it is not an application message. The number is rewritten in place when the message has the
+     * session's encoding and a fixed-width MsgSeqNum, and the message encoded again otherwise.
+     */
+    private void deliver(final String destId, final Session session, final FixFields request)
+            throws FixMessageException, IOException, RouterException {
+        if (!SessionSequence.isNumbered(request)) {
+            this.writeMessage(destId, session, request);
+            return;
+        }
+
+        final SessionSequence sequence = session.getSequence();
+        sequence.getLock().lock();
+        try {
+            sequence.resetIfExhausted("Router", destId, session.isBinary(), session::write);
+            final long seqNum = sequence.nextSeqNum();
+
+            if (request.isBinary() == session.isBinary() && request.setSeqNum(seqNum)) {
+                this.writeNumbered(destId, session, seqNum, request.getBuffer(), request.getOffset(),
+                        request.getLength());
+            } else {
+                final FixMessageEncoder encoder = session.isBinary()
+                        ? FixTranslator.toBinary(request, BINARY_ENCODER.get())
+                        : FixTranslator.toSequencedText(request, ENCODER.get());
+
+                encoder.setSeqNum(seqNum);
+                this.writeNumbered(destId, session, seqNum, encoder.getBuffer(), 0, encoder.getLength());
+            }
+        } finally {
+            sequence.getLock().unlock();
+        }
+    }
+
+    /**
+     * Write the message numbered @param seqNum to @param session of @param destId, and keep it for resending,
+     * holding the lock of the session's sequence
+     */
+    private void writeNumbered(final String destId, final Session session, final long seqNum, final byte[] message,
+            final int offset, final int length) throws IOException {
+        if (Log.isDebugEnabled()) {
+            Log.debug(CYAN + "Sending" + RESET + " message %d to %s: %s", seqNum, destId, session.isBinary()
+                    ? length + " bytes binary frame" : new String(message, offset, length, StandardCharsets.US_ASCII));
+        }
+        session.getSequence().sent(seqNum, message, offset, length, session.isBinary());
+        session.write(message, offset, length);
+        this.metrics.sent(session);
+    }
+
+    /**
+     * Write @param request to @param session of @param destId, in the session's encoding
+     */
+    private void writeMessage(final String destId, final Session session, final FixFields request)
+            throws FixMessageException, RouterException {
+        try {
+            if (Log.isDebugEnabled()) {
+                Log.debug(CYAN + "Sending" + RESET + " message to %s: %s", destId, request);
+            }
+            if (request.isBinary() == session.isBinary()) {
+                session.write(request.getBuffer(), request.getOffset(), request.getLength());
+            } else if (session.isBinary()) {
+                final FixBinaryEncoder binary = FixTranslator.toBinary(request, BINARY_ENCODER.get());
+
+                session.write(binary.getBuffer(), 0, binary.getLength());
+            } else {
+                final FixEncoder text = FixTranslator.toText((FixBinaryDecoder) request, ENCODER.get());
+
+                session.write(text.getBuffer(), 0, text.getLength());
+            }
+            this.metrics.sent(session);
+        } catch (IOException e) {
+            throw new RouterException(String.format("Error while sending message to `%s': %s",
+                    destId, e.getMessage()));
+        }
+    }
+
+    /**
+     * @return The session of @param id on this node, or the link to the node owning it in a cluster
+     */
+    private Session getSession(final String id) {
+        final ClusterLink owner = this.cluster.getOwner(id);
+
+        return owner != null ? owner.getSession() : this.routingTable.get(id);
     }
 
-    private void sendUnsentMessages(final String id) throws RouterException {
+    /**
+     * Move to their owner the ids this node no longer owns once the ring changed: their sessions are redirected,
+     * their saved messages handed over, and the subscriptions to markets of another node sent to it again
+     */
+    void rebalance() {
+        this.routingTable.forEach((id, session) -> {
+            final ClusterLink owner = this.cluster.getOwner(id);
+
+            if (owner != null && !session.isClosed()) {
+                this.redirect(id, session, owner);
+            }
+        });
+
+        for (final String id : this.savedUnsentMessage.keySet()) {
+            final ClusterLink owner = this.cluster.getOwner(id);
+
+            if (owner != null && this.routingTable.get(id) == null) {
+                this.handOff(id, owner);
+            }
+        }
+
+        this.marketData.forEachTopic((marketId, instrument) -> {
+            final ClusterLink owner = this.cluster.getOwner(marketId);
+
+            if (owner != null) {
+                final FixBinaryEncoder encoder = BINARY_ENCODER.get().begin(FixLayout.MARKET_DATA_REQUEST)
+                        .putString(this.cluster.getSelf()).putString(marketId).putString(instrument)
+                        .putString(FixMessage.SUBSCRIBE).finish();
+
+                try {
+                    this.sendMessage(marketId, owner.getSession(), encoder.getBuffer(), encoder.getLength());
+                } catch (RouterException e) {
+                    Log.error("Error in Router: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    /**
+     * Forget the subscriptions of the node @param link led to, once it is down
+     */
+    void linkDown(final ClusterLink link) {
+        this.marketData.unsubscribeAll(link.getSession());
+    }
+
+    /**
+     * Send @param session of @param id the Logout moving it to the node of @param owner, and close it once sent
+     */
+    private void redirect(final String id, final Session session, final ClusterLink owner) {
+        final FixMessageEncoder encoder = session.isBinary() ? BINARY_ENCODER.get() : ENCODER.get();
+        final String address = owner.getAddressFor(id);
+
+        Log.info("%sRedirecting%s %s to Router node %s at %s", CYAN, RESET, id, owner.getNode(), address);
+        /* Its numbers are not moved: the owner starts them again */
+        this.sequences.remove(id);
+        encoder.begin(FixLayout.REDIRECT).putString("Router").putString(id)
+                .putString("Id owned by Router node " + owner.getNode()).putString(address).finish();
+        try {
+            session.write(encoder.getBuffer(), 0, encoder.getLength());
+            this.metrics.sent(session);
+            session.closeWhenFlushed();
+        } catch (IOException e) {
+            Log.error("Error while redirecting `%s': %s", id, e.getMessage());
+            session.close();
+        }
+    }
+
+    /**
+     * Send the messages saved for @param id to the node of @param owner, which saves them in turn, and forget them
+     */
+    private void handOff(final String id, final ClusterLink owner) {
+        final FixDecoder decoder = new FixDecoder();
+        final FixBinaryEncoder binary = BINARY_ENCODER.get();
+        final byte[] possDup = FixMessage.POSS_DUP.getBytes(StandardCharsets.US_ASCII);
+
+        this.savedUnsentMessage.computeIfPresent(id, (key, journal) -> {
+            try {
+                long offset = journal.getAcknowledgedOffset();
+
+                while (!journal.deleteIfEmpty()) {
+                    offset = journal.replay(offset, REPLAY_BATCH, (record, length) -> {
+                        try {
+                            FixTranslator.toBinary(decoder.wrap(record, 0, length), binary)
+                                    .putField(FixMessage.POSS_DUP_IDENTIFIER, possDup, 0, possDup.length).finish();
+                            owner.getSession().write(binary.getBuffer(), 0, binary.getLength());
+                        } catch (FixMessageException e) {
+                            Log.error("Dropping invalid saved message for `%s': %s", key, e.getMessage());
+                        }
+                    });
+                    journal.acknowledge(offset);
+                }
+            } catch (IOException e) {
+                Log.error("Error while handing saved messages of `%s' to %s: %s", key, owner.getNode(),
+                        e.getMessage());
+                return journal;
+            }
+
+            Log.info("%sHanded%s saved messages of %s to Router node %s", CYAN, RESET, key, owner.getNode());
+            return null;
+        });
+
         if (!this.savedUnsentMessage.containsKey(id)) {
+            this.routingTable.release(id);
+        }
+    }
+
+    /**
+     * Send the first @param length bytes of @param message to @param session of @param destId
+     */
+    private void sendMessage(final String destId, final Session session, final byte[] message, final int length)
+            throws RouterException {
+        try {
+            if (Log.isDebugEnabled()) {
+                Log.debug(CYAN + "Sending" + RESET + " message to %s: %s", destId, session.isBinary()
+                        ? length + " bytes binary frame" : new String(message, 0, length, StandardCharsets.US_ASCII));
+            }
+            session.write(message, 0, length);
+            this.metrics.sent(session);
+        } catch (IOException e) {
+            throw new RouterException(String.format("Error while sending message to `%s': %s",
+                    destId, e.getMessage()));
+        }
+    }
+
+    /**
+     * Append the message to the journal of the offline @param destId, keeping its id reserved meanwhile.
+     * Only opening the journal runs in the map: appending takes the journal's own lock, so saving messages
+     * for other sessions, or replaying them, does not wait for the write.
+     */
+    private void saveUnsentMessage(final String destId, final byte[] message, final int offset, final int length)
+            throws RouterException {
+        try {
+            MessageJournal journal;
+
+            while (!(journal = this.savedUnsentMessage.computeIfAbsent(destId, Router::openJournal))
+                    .append(message, offset, length)) {
+                /* Drained and deleted meanwhile */
+                this.savedUnsentMessage.remove(destId, journal);
+            }
+        } catch (IOException e) {
+            throw new RouterException(String.format("Error while saving message to `%s': %s",
+                    destId, e.getMessage()));
+        } catch (UncheckedIOException e) {
+            throw new RouterException(String.format("Error while saving message to `%s': %s",
+                    destId, e.getCause().getMessage()));
+        }
+        this.routingTable.reserve(destId);
+    }
+
+    private static MessageJournal openJournal(final String id) {
+        try {
+            return new MessageJournal(JOURNAL_DIRECTORY.resolve(id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Send @param session a batch of the messages saved for @param id, starting at @param offset of its journal,
+     * and forget them. Messages are saved as text, numbered once sent, and translated for a binary session.
+     * Nothing is sent to a session which did not ask for @param id at Logon.
+     * @return The offset to resume from, or -1 once every saved message has been sent
+     */
+    long sendUnsentMessages(final String id, final Session session, final long offset) throws RouterException {
+        final MessageJournal journal = this.savedUnsentMessage.get(id);
+
+        if (journal == null || !session.isIdGranted()) {
+            return -1;
+        }
+
+        try {
+            if (offset == 0) {
+                Log.info(CYAN + "Sending" + RESET + " saved messages to " + id);
+            }
+
+            final FixDecoder decoder = new FixDecoder();
+            final long next = journal.replay(offset, REPLAY_BATCH, (record, length) -> {
+                try {
+                    this.deliver(id, session, decoder.wrapRouting(record, 0, length));
+                } catch (FixMessageException | RouterException e) {
+                    Log.error("Dropping invalid saved message for `%s': %s", id, e.getMessage());
+                    return;
+                }
+                this.metrics.replayed();
+            });
+            journal.acknowledge(next);
+
+            if (journal.isEmpty()) {
+                this.savedUnsentMessage.computeIfPresent(id, (key, drained) -> {
+                    try {
+                        return drained.deleteIfEmpty() ? null : drained;
+                    } catch (IOException e) {
+                        Log.error("Error while deleting journal of `%s': %s", key, e.getMessage());
+                        return null;
+                    }
+                });
+            }
+
+            /* A message saved meanwhile may have started a new journal */
+            final MessageJournal current = this.savedUnsentMessage.get(id);
+            if (current == null) {
+                this.routingTable.release(id);
+                return -1;
+            }
+            return current == journal ? next : 0;
+        } catch (IOException e) {
+            throw new RouterException(String.format("Error while sending saved messages to `%s': %s",
+                    id, e.getMessage()));
+        }
+    }
+
+    /**
+     * Reopen the journals left by a previous run, and keep their ids reserved until their sessions come back
+     */
+    private void recoverUnsentMessages() {
+        if (!Files.isDirectory(JOURNAL_DIRECTORY)) {
             return;
         }
 
-        System.out.println(CYAN + "Sending" + RESET + " saved messages to " + id);
-        for (final FixMessage fixMessage : this.savedUnsentMessage.get(id)) {
-            this.sendMessage(fixMessage);
+        try (Stream<Path> directories = Files.list(JOURNAL_DIRECTORY)) {
+            for (final Path directory : directories.filter(Files::isDirectory).toList()) {
+                final String id = directory.getFileName().toString();
+                if (SessionRegistry.getNumber(id) <= 0) {
+                    Log.warn("%sSkipping%s `%s': not the journal of a session id", RED, RESET, directory);
+                    continue;
+                }
+
+                final MessageJournal journal = new MessageJournal(directory);
+
+                if (journal.isEmpty()) {
+                    journal.delete();
+                } else {
+                    this.savedUnsentMessage.put(id, journal);
+                    this.routingTable.reserve(id);
+                    Log.info("Recovered saved messages for %s", id);
+                }
+            }
+        } catch (IOException e) {
+            Log.error("Error while recovering saved messages: " + e.getMessage());
         }
     }
 
@@ -0,0 +1,419 @@
+package com.rmouduri.fixme;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the Router, updated by the session threads without locking: every counter is a LongAdder, and the
+ * gauges (sessions, saved backlog) are only computed when read.
+ * Read through JMX, or in the Prometheus text format on http://host:port/metrics.
+ */
+public class RouterMetrics implements RouterMetricsMBean {
+    private static final String OBJECT_NAME = "com.rmouduri.fixme:type=Router";
+    private static final String METRICS_PATH = "/metrics";
+    /* Upper bounds of the forward latency buckets, in nanoseconds */
+    private static final long[] LATENCY_BOUNDS = { 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000,
+            250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000, 25_000_000, 50_000_000, 100_000_000,
+            250_000_000, 500_000_000, 1_000_000_000 };
+
+    /**
+     * Reasons the Router rejects a message for
+     */
+    public enum Reject {
+        CHECKSUM("checksum"),
+        INVALID_TARGET("invalid_target"),
+        UNKNOWN_DESTINATION("unknown_destination"),
+        SLOW_DESTINATION("slow_destination");
+
+        private final String label;
+
+        Reject(final String labelParam) {
+            this.label = labelParam;
+        }
+    }
+
+    /**
+     * Messages received from and sent to one session
+     */
+    private static final class SessionCounters {
+        private final String id;
+        private final LongAdder received = new LongAdder();
+        private final LongAdder sent = new LongAdder();
+
+        private SessionCounters(final String idParam) {
+            this.id = idParam;
+        }
+    }
+
+    private final SessionRegistry routingTable;
+    private final Map<String, MessageJournal> savedUnsentMessage;
+    private final ConcurrentHashMap<Session, SessionCounters> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder[] rejects = new LongAdder[Reject.values().length];
+    private final LongAdder saved = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder resent = new LongAdder();
+    private final LongAdder slowConsumers = new LongAdder();
+    private final LongAdder sourcePauses = new LongAdder();
+    private final LongAdder slowConsumerDisconnects = new LongAdder();
+    private final LongAdder evictedSessions = new LongAdder();
+    private final LongAdder marketDataPublished = new LongAdder();
+    /* Count of each latency bucket, the last one for latencies above every bound */
+    private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BOUNDS.length + 1];
+    private final LongAdder latencySum = new LongAdder();
+
+    private MarketDataHub marketData;
+    private HttpServer server;
+
+    /**
+     * @param routingTableParam Sessions of the Router, counted when read
+     * @param savedUnsentMessageParam Journals of the offline destinations, measured when read
+     */
+    public RouterMetrics(final SessionRegistry routingTableParam,
+            final Map<String, MessageJournal> savedUnsentMessageParam) {
+        this.routingTable = routingTableParam;
+        this.savedUnsentMessage = savedUnsentMessageParam;
+
+        for (int i = 0; i < this.rejects.length; ++i) {
+            this.rejects[i] = new LongAdder();
+        }
+        for (int i = 0; i < this.latencyBuckets.length; ++i) {
+            this.latencyBuckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Count the subscriptions of @param marketDataParam when read
+     */
+    public void setMarketData(final MarketDataHub marketDataParam) {
+        this.marketData = marketDataParam;
+    }
+
+    /**
+     * Register the metrics on the platform MBean server, and serve them over HTTP on @param port unless negative
+     */
+    public void start(final int port) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            Log.error("Error while registering Router metrics: " + e.getMessage());
+        }
+
+        if (port < 0) {
+            return;
+        }
+        try {
+            this.server = HttpServer.create(new InetSocketAddress(port), 0);
+            this.server.createContext(METRICS_PATH, this::handleScrape);
+            this.server.setExecutor(Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "router-metrics");
+
+                thread.setDaemon(true);
+                return thread;
+            }));
+            this.server.start();
+            Log.info("Router metrics served on port %d%s", port, METRICS_PATH);
+        } catch (IOException e) {
+            Log.error("Error while serving Router metrics on port %d: %s", port, e.getMessage());
+        }
+    }
+
+    public void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+        }
+    }
+
+    /**
+     * Start counting the messages of @param session, logged on as @param id
+     */
+    public void logon(final String id, final Session session) {
+        this.sessions.put(session, new SessionCounters(id));
+    }
+
+    public void logout(final Session session) {
+        this.sessions.remove(session);
+    }
+
+    /**
+     * Count a message received from @param session
+     */
+    public void received(final Session session) {
+        final SessionCounters counters = this.sessions.get(session);
+
+        this.received.increment();
+        if (counters != null) {
+            counters.received.increment();
+        }
+    }
+
+    /**
+     * Count a message sent to @param session
+     */
+    public void sent(final Session session) {
+        final SessionCounters counters = this.sessions.get(session);
+
+        this.sent.increment();
+        if (counters != null) {
+            counters.sent.increment();
+        }
+    }
+
+    /**
+     * Count a message forwarded to its destination @param latency nanoseconds after it was read
+     */
+    public void forwarded(final long latency) {
+        int bucket = 0;
+
+        while (bucket < LATENCY_BOUNDS.length && latency > LATENCY_BOUNDS[bucket]) {
+            ++bucket;
+        }
+        this.forwarded.increment();
+        this.latencyBuckets[bucket].increment();
+        this.latencySum.add(latency);
+    }
+
+    public void rejected(final Reject reason) {
+        this.rejects[reason.ordinal()].increment();
+    }
+
+    public void saved() {
+        this.saved.increment();
+    }
+
+    public void replayed() {
+        this.replayed.increment();
+    }
+
+    /**
+     * Count @param count messages sent again to a session which missed them
+     */
+    public void resent(final int count) {
+        this.resent.add(count);
+    }
+
+    /**
+     * Count a destination going over the high watermark of its outbound queue
+     */
+    public void slowConsumer() {
+        this.slowConsumers.increment();
+    }
+
+    public void sourcePaused() {
+        this.sourcePauses.increment();
+    }
+
+    public void slowConsumerDisconnected() {
+        this.slowConsumerDisconnects.increment();
+    }
+
+    public void evicted() {
+        this.evictedSessions.increment();
+    }
+
+    public void marketDataPublished() {
+        this.marketDataPublished.increment();
+    }
+
+    @Override
+    public long getMessagesReceived() { return this.received.sum(); }
+
+    @Override
+    public long getMessagesSent() { return this.sent.sum(); }
+
+    @Override
+    public long getMessagesForwarded() { return this.forwarded.sum(); }
+
+    @Override
+    public long getChecksumRejects() { return this.rejects[Reject.CHECKSUM.ordinal()].sum(); }
+
+    @Override
+    public long getInvalidTargetRejects() { return this.rejects[Reject.INVALID_TARGET.ordinal()].sum(); }
+
+    @Override
+    public long getUnknownDestinationRejects() { return this.rejects[Reject.UNKNOWN_DESTINATION.ordinal()].sum(); }
+
+    @Override
+    public long getSlowDestinationRejects() { return this.rejects[Reject.SLOW_DESTINATION.ordinal()].sum(); }
+
+    @Override
+    public long getSlowConsumers() { return this.slowConsumers.sum(); }
+
+    @Override
+    public long getSourcePauses() { return this.sourcePauses.sum(); }
+
+    @Override
+    public long getSlowConsumerDisconnects() { return this.slowConsumerDisconnects.sum(); }
+
+    @Override
+    public long getEvictedSessions() { return this.evictedSessions.sum(); }
+
+    @Override
+    public long getSavedMessages() { return this.saved.sum(); }
+
+    @Override
+    public long getReplayedMessages() { return this.replayed.sum(); }
+
+    @Override
+    public long getResentMessages() { return this.resent.sum(); }
+
+    @Override
+    public int getSessions() { return this.routingTable.size(); }
+
+    @Override
+    public long getMarketDataPublished() { return this.marketDataPublished.sum(); }
+
+    @Override
+    public int getMarketDataSubscriptions() { return this.marketData == null ? 0 : this.marketData.getSubscriptions(); }
+
+    @Override
+    public long getSavedBacklogBytes() {
+        long backlog = 0;
+
+        for (final MessageJournal journal : this.savedUnsentMessage.values()) {
+            backlog += backlogOf(journal);
+        }
+        return backlog;
+    }
+
+    @Override
+    public long getForwardLatencyCount() { return this.forwarded.sum(); }
+
+    @Override
+    public double getForwardLatencyMeanMicros() {
+        final long count = this.forwarded.sum();
+
+        return count == 0 ? 0 : this.latencySum.sum() / 1e3 / count;
+    }
+
+    @Override
+    public double getForwardLatencyP99Micros() {
+        final long[] counts = new long[this.latencyBuckets.length];
+        long total = 0;
+
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = this.latencyBuckets[i].sum();
+            total += counts[i];
+        }
+
+        final long rank = (long) Math.ceil(total * 0.99);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BOUNDS.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return total == 0 ? 0 : LATENCY_BOUNDS[i] / 1e3;
+            }
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static long backlogOf(final MessageJournal journal) {
+        return Math.max(0, journal.getWriteOffset() - journal.getAcknowledgedOffset());
+    }
+
+    private void handleScrape(final HttpExchange exchange) throws IOException {
+        final byte[] body = this.toPrometheus().getBytes(StandardCharsets.UTF_8);
+
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * @return Every metric in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+        final StringBuilder text = new StringBuilder(4096);
+
+        counter(text, "fixme_router_messages_received_total", "Messages received from sessions",
+                this.getMessagesReceived());
+        counter(text, "fixme_router_messages_sent_total", "Messages sent to sessions", this.getMessagesSent());
+        counter(text, "fixme_router_messages_forwarded_total", "Messages forwarded to their destination",
+                this.getMessagesForwarded());
+        counter(text, "fixme_router_saved_messages_total", "Messages saved for an offline destination",
+                this.getSavedMessages());
+        counter(text, "fixme_router_replayed_messages_total", "Saved messages sent once their destination is back",
+                this.getReplayedMessages());
+        counter(text, "fixme_router_resent_messages_total", "Messages sent again to a session which missed them",
+                this.getResentMessages());
+
+        counter(text, "fixme_router_slow_consumers_total", "Destinations going over the high watermark of their "
+                + "outbound queue", this.getSlowConsumers());
+        counter(text, "fixme_router_source_pauses_total", "Sources paused until the destination they send to "
+                + "catches up", this.getSourcePauses());
+        counter(text, "fixme_router_slow_consumer_disconnects_total", "Destinations disconnected for being too "
+                + "slow to read", this.getSlowConsumerDisconnects());
+        counter(text, "fixme_router_evicted_sessions_total", "Sessions disconnected for not answering a TestRequest",
+                this.getEvictedSessions());
+
+        counter(text, "fixme_router_market_data_published_total", "Market data updates received from Markets",
+                this.getMarketDataPublished());
+
+        header(text, "fixme_router_rejects_total", "Messages rejected, by reason", "counter");
+        for (final Reject reason : Reject.values()) {
+            text.append("fixme_router_rejects_total{reason=\"").append(reason.label).append("\"} ")
+                    .append(this.rejects[reason.ordinal()].sum()).append('\n');
+        }
+
+        header(text, "fixme_router_sessions", "Sessions registered", "gauge");
+        text.append("fixme_router_sessions ").append(this.getSessions()).append('\n');
+
+        header(text, "fixme_router_market_data_subscriptions", "Subscriptions of Brokers to market data", "gauge");
+        text.append("fixme_router_market_data_subscriptions ").append(this.getMarketDataSubscriptions()).append('\n');
+
+        header(text, "fixme_router_session_messages_received_total", "Messages received, by session", "counter");
+        this.sessions.forEach((session, counters) -> text
+                .append("fixme_router_session_messages_received_total{session=\"").append(counters.id)
+                .append("\"} ").append(counters.received.sum()).append('\n'));
+        header(text, "fixme_router_session_messages_sent_total", "Messages sent, by session", "counter");
+        this.sessions.forEach((session, counters) -> text
+                .append("fixme_router_session_messages_sent_total{session=\"").append(counters.id)
+                .append("\"} ").append(counters.sent.sum()).append('\n'));
+
+        header(text, "fixme_router_saved_backlog_bytes", "Bytes of saved messages not yet delivered, by destination",
+                "gauge");
+        this.savedUnsentMessage.forEach((id, journal) -> text.append("fixme_router_saved_backlog_bytes{destination=\"")
+                .append(id).append("\"} ").append(backlogOf(journal)).append('\n'));
+
+        header(text, "fixme_router_forward_latency_seconds", "Time from reading a message to handing it to its "
+                + "destination", "histogram");
+        long cumulated = 0;
+        for (int i = 0; i < this.latencyBuckets.length; ++i) {
+            cumulated += this.latencyBuckets[i].sum();
+            text.append("fixme_router_forward_latency_seconds_bucket{le=\"")
+                    .append(i < LATENCY_BOUNDS.length ? Double.toString(LATENCY_BOUNDS[i] / 1e9) : "+Inf")
+                    .append("\"} ").append(cumulated).append('\n');
+        }
+        text.append("fixme_router_forward_latency_seconds_sum ").append(this.latencySum.sum() / 1e9).append('\n');
+        text.append("fixme_router_forward_latency_seconds_count ").append(cumulated).append('\n');
+
+        return text.toString();
+    }
+
+    private static void counter(final StringBuilder text, final String name, final String help, final long value) {
+        header(text, name, help, "counter");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void header(final StringBuilder text, final String name, final String help, final String type) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+}
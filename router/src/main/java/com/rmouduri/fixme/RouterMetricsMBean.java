@@ -0,0 +1,51 @@
+package com.rmouduri.fixme;
+
+/**
+ * Router metrics exposed through JMX, under com.rmouduri.fixme:type=Router
+ */
+public interface RouterMetricsMBean {
+    long getMessagesReceived();
+
+    long getMessagesSent();
+
+    long getMessagesForwarded();
+
+    long getChecksumRejects();
+
+    long getInvalidTargetRejects();
+
+    long getUnknownDestinationRejects();
+
+    long getSlowDestinationRejects();
+
+    long getSlowConsumers();
+
+    long getSourcePauses();
+
+    long getSlowConsumerDisconnects();
+
+    long getEvictedSessions();
+
+    long getSavedMessages();
+
+    long getReplayedMessages();
+
+    long getResentMessages();
+
+    int getSessions();
+
+    long getMarketDataPublished();
+
+    int getMarketDataSubscriptions();
+
+    long getSavedBacklogBytes();
+
+    long getForwardLatencyCount();
+
+    double getForwardLatencyMeanMicros();
+
+    /**
+     * @return The upper bound of the latency bucket holding the 99th percentile
+     */
+    double getForwardLatencyP99Micros();
+}
@@ -0,0 +1,95 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Broker or Market connection as seen by the Router, independent of the IO model serving it
+ */
+public interface Session {
+    /**
+     * Queue @param length bytes of @param buffer from @param offset for the peer, followed by a new line unless
+     * the session is binary, a binary frame carrying its own length.
+     * The bytes are copied, so the caller may reuse @param buffer as soon as this returns.
+     */
+    void write(final byte[] buffer, final int offset, final int length) throws IOException;
+
+    /**
+     * Queue @param frame through @param slot, replacing the frame queued there before if it is not written yet.
+     * @param frame is already framed for the peer and shared by every session it is sent to, so it is neither
+     * copied nor modified.
+     */
+    void writeConflated(final ConflationSlot slot, final byte[] frame) throws IOException;
+
+    /**
+     * Queue @param message followed by a new line for the peer
+     */
+    default void write(final String message) throws IOException {
+        final byte[] bytes = message.getBytes(StandardCharsets.US_ASCII);
+
+        this.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * @return true once the peer chose binary frames at Logon, which it then sends and expects instead of text
+     */
+    boolean isBinary();
+
+    void setBinary(final boolean binary);
+
+    /**
+     * @return The MsgSeqNums of the session's id, given at Logon and kept across its connections, or null before
+     */
+    SessionSequence getSequence();
+
+    void setSequence(final SessionSequence sequence);
+
+    /**
+     * @return true if the session was given the id it asked for at Logon, the messages saved for that id being
+     * only sent to such a session
+     */
+    boolean isIdGranted();
+
+    void setIdGranted(final boolean idGranted);
+
+    /**
+     * @return When the session was last read from and written to, every write updating it
+     */
+    Liveness getLiveness();
+
+    /**
+     * @return true once more than `fixme.router.queue.high' bytes are queued for the peer, until they fall to
+     * `fixme.router.queue.low'
+     */
+    boolean isBackedUp();
+
+    /**
+     * @return The bytes queued for the peer and not written yet
+     */
+    long getQueuedBytes();
+
+    /**
+     * Run @param task once the session is no longer backed up or is closed, right away if it is not backed up.
+     * @param task runs on whichever thread writes to the session, and must not block.
+     */
+    void whenDrained(final Runnable task);
+
+    /**
+     * Stop reading from the session until the backed up @param destination it sends to catches up
+     */
+    void pauseUntilDrained(final Session destination);
+
+    boolean isClosed();
+
+    void close();
+
+    /**
+     * Close the session at once, dropping what is queued for it, and have it logged out
+     */
+    void abort();
+
+    /**
+     * Close the session once everything queued for it is written, e.g. after the Logout redirecting it
+     */
+    void closeWhenFlushed() throws IOException;
+}
@@ -0,0 +1,183 @@
+package com.rmouduri.fixme;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Thread-safe table of the live sessions, and of the session numbers they hold.
+ * A number stays claimed while its session is connected, or while messages wait for one of its ids, which is
+ * then reserved: a reserved id is only given to a session asking for it, never allocated to another one.
+ */
+public class SessionRegistry {
+    private static final int TYPE_LENGTH = 6;
+    private static final int ID_LENGTH = 12;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final IdAllocator ids = new IdAllocator();
+    private final Set<String> reserved = ConcurrentHashMap.newKeySet();
+
+    public Session get(final String id) {
+        return this.sessions.get(id);
+    }
+
+    /**
+     * Register @param session under @param requestedId if it is a valid id of @param type that no live
+     * session holds, or under a newly allocated one otherwise
+     * @return The id of the session, or null if every number is in use
+     */
+    public String register(final String requestedId, final String type, final Session session) {
+        return this.register(requestedId, type, session, number -> true);
+    }
+
+    /**
+     * Same as register, a newly allocated id only being given a number @param owned accepts, which a node of
+     * a Router cluster uses to only hand out the ids it owns
+     */
+    public String register(final String requestedId, final String type, final Session session,
+            final IntPredicate owned) {
+        if (requestedId != null && this.isValidId(requestedId, type)) {
+            final int number = parseNumber(requestedId);
+
+            this.ids.tryClaim(number);
+
+            final Session previous = this.sessions.putIfAbsent(requestedId, session);
+            if (previous == null
+                    || (previous.isClosed() && this.sessions.replace(requestedId, previous, session))) {
+                return requestedId;
+            }
+        }
+
+        /* Numbers owned by other nodes stay claimed until the allocation is done, so they are not handed again */
+        final List<Integer> skipped = new ArrayList<>();
+        try {
+            while (true) {
+                final int number = this.ids.allocate();
+
+                if (number == -1) {
+                    return null;
+                } else if (!owned.test(number)) {
+                    skipped.add(number);
+                    continue;
+                }
+
+                final String id = formatId(type, number);
+                if (!this.reserved.contains(id) && this.sessions.putIfAbsent(id, session) == null) {
+                    return id;
+                }
+            }
+        } finally {
+            for (final int number : skipped) {
+                this.ids.release(number);
+            }
+        }
+    }
+
+    /**
+     * Forget @param session, and free its number unless @param keepNumber as messages still wait for it
+     */
+    public void unregister(final String id, final Session session, final boolean keepNumber) {
+        if (this.sessions.remove(id, session) && !keepNumber) {
+            this.releaseNumber(getNumber(id));
+        }
+    }
+
+    /**
+     * Keep the offline @param id, and its number, from being allocated to another session
+     * @throws IllegalArgumentException if @param id is not `Broker' or `Market' followed by six digits
+     */
+    public void reserve(final String id) {
+        final int number = getNumber(id);
+
+        if (number <= 0) {
+            throw new IllegalArgumentException(String.format("Invalid session id: `%s'.", id));
+        }
+        this.reserved.add(id);
+        this.ids.tryClaim(number);
+    }
+
+    /**
+     * Free @param id, which nothing waits for on this Router anymore, and its number unless a live session or
+     * another reserved id holds it
+     */
+    public void release(final String id) {
+        final int number = getNumber(id);
+
+        if (number > 0 && this.reserved.remove(id)) {
+            this.releaseNumber(number);
+        }
+    }
+
+    private void releaseNumber(final int number) {
+        if (!this.isLive(number) && !this.reserved.contains(formatId("Broker", number))
+                && !this.reserved.contains(formatId("Market", number))) {
+            this.ids.release(number);
+        }
+    }
+
+    /**
+     * @return true if @param id is `type' followed by six digits, and no live session holds that number
+     */
+    public boolean isValidId(final String id, final String type) {
+        if (!id.startsWith(type)) {
+            return false;
+        }
+
+        final int number = getNumber(id);
+        return number > 0 && !this.isLive(number);
+    }
+
+    /**
+     * @return The number of @param id, or -1 if it is not `Broker' or `Market' followed by six digits
+     */
+    public static int getNumber(final String id) {
+        if (id == null || id.length() != ID_LENGTH || !(id.startsWith("Broker") || id.startsWith("Market"))) {
+            return -1;
+        }
+
+        for (int i = TYPE_LENGTH; i < ID_LENGTH; ++i) {
+            final char c = id.charAt(i);
+
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+        }
+        return parseNumber(id);
+    }
+
+    private boolean isLive(final int number) {
+        return this.isLive(formatId("Broker", number)) || this.isLive(formatId("Market", number));
+    }
+
+    private boolean isLive(final String id) {
+        final Session session = this.sessions.get(id);
+
+        return session != null && !session.isClosed();
+    }
+
+    /**
+     * Call @param action with every registered id and session
+     */
+    public void forEach(final BiConsumer<String, Session> action) {
+        this.sessions.forEach(action);
+    }
+
+    public int size() { return this.sessions.size(); }
+
+    private static int parseNumber(final String id) {
+        return Integer.parseInt(id, TYPE_LENGTH, ID_LENGTH, 10);
+    }
+
+    private static String formatId(final String type, final int number) {
+        final StringBuilder id = new StringBuilder(ID_LENGTH).append(type);
+        final String digits = Integer.toString(number);
+
+        for (int i = digits.length(); i < ID_LENGTH - TYPE_LENGTH; ++i) {
+            id.append('0');
+        }
+        return id.append(digits).toString();
+    }
+}
@@ -0,0 +1,195 @@
+package com.rmouduri.fixme;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Session served by a blocking Socket and its own handler thread.
+ * Writers only queue their message; the first of them finding the session idle starts a drain task, which
+ * writes the queue for everyone, so messages never interleave, a burst to the same session costs a single flush,
+ * and a writer never blocks on a peer slow to read.
+ */
+public class SocketSession implements Session {
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    private final Socket socket;
+    private final Executor drainer;
+    /* Lines, or ConflationSlots read when written */
+    private final ConcurrentLinkedQueue<Object> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final OutboundWatermarks watermarks = new OutboundWatermarks();
+    private final Liveness liveness = new Liveness();
+    private OutputStream out;
+    private volatile boolean binary;
+    private volatile SessionSequence sequence;
+    private volatile boolean idGranted;
+    private volatile boolean closing;
+
+    /**
+     * @param drainerParam Runs the tasks writing the queued messages to @param socketParam
+     */
+    public SocketSession(final Socket socketParam, final Executor drainerParam) {
+        this.socket = socketParam;
+        this.drainer = drainerParam;
+    }
+
+    @Override
+    public void write(final byte[] buffer, final int offset, final int length) throws IOException {
+        final byte[] line = new byte[this.binary ? length : length + 1];
+
+        System.arraycopy(buffer, offset, line, 0, length);
+        if (!this.binary) {
+            line[length] = '\n';
+        }
+        this.watermarks.queued(line.length);
+        this.liveness.sent();
+        this.outbound.add(line);
+        this.scheduleDrain();
+    }
+
+    @Override
+    public void writeConflated(final ConflationSlot slot, final byte[] frame) {
+        if (slot.offer(frame)) {
+            this.outbound.add(slot);
+        }
+        this.liveness.sent();
+        this.scheduleDrain();
+    }
+
+    private void scheduleDrain() {
+        if (!this.outbound.isEmpty() && this.draining.compareAndSet(false, true)) {
+            try {
+                this.drainer.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                /* Router shutting down */
+                this.draining.set(false);
+            }
+        } else if (this.closing && this.outbound.isEmpty() && !this.draining.get()) {
+            this.close();
+        }
+    }
+
+    /**
+     * Write the queued messages until there is none left, then close the session if it is closing
+     */
+    private void drain() {
+        try {
+            /* Checking again once released, in case a message was queued while flushing */
+            do {
+                if (this.out == null) {
+                    this.out = new BufferedOutputStream(this.socket.getOutputStream(), OUTPUT_BUFFER_SIZE);
+                }
+
+                Object message;
+                int written = 0;
+                while ((message = this.outbound.poll()) != null) {
+                    if (message instanceof ConflationSlot slot) {
+                        final byte[] frame = slot.take();
+
+                        if (frame != null) {
+                            this.out.write(frame);
+                        }
+                    } else {
+                        this.out.write((byte[]) message);
+                        written += ((byte[]) message).length;
+                    }
+                }
+                this.out.flush();
+                this.watermarks.written(written);
+                this.draining.set(false);
+            } while (!this.outbound.isEmpty() && this.draining.compareAndSet(false, true));
+        } catch (IOException e) {
+            /* The handler thread reading the session sees it closed, and logs it out */
+            Log.debug("Error while writing to session: " + e.getMessage());
+            this.close();
+            this.draining.set(false);
+            return;
+        }
+
+        /* The last drainer closes, closing being set before draining is checked */
+        if (this.closing && this.outbound.isEmpty() && !this.draining.get()) {
+            this.close();
+        }
+    }
+
+    @Override
+    public void closeWhenFlushed() {
+        this.closing = true;
+        this.scheduleDrain();
+    }
+
+    @Override
+    public boolean isBackedUp() { return this.watermarks.isBackedUp(); }
+
+    @Override
+    public long getQueuedBytes() { return this.watermarks.getQueued(); }
+
+    @Override
+    public void whenDrained(final Runnable task) {
+        this.watermarks.whenDrained(task);
+    }
+
+    /**
+     * Block the handler thread reading the session, as it is the one calling this
+     */
+    @Override
+    public void pauseUntilDrained(final Session destination) {
+        final CountDownLatch drained = new CountDownLatch(1);
+
+        destination.whenDrained(drained::countDown);
+        try {
+            drained.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isBinary() { return this.binary; }
+
+    @Override
+    public void setBinary(final boolean binaryParam) { this.binary = binaryParam; }
+
+    @Override
+    public SessionSequence getSequence() { return this.sequence; }
+
+    @Override
+    public void setSequence(final SessionSequence sequenceParam) { this.sequence = sequenceParam; }
+
+    @Override
+    public boolean isIdGranted() { return this.idGranted; }
+
+    @Override
+    public void setIdGranted(final boolean idGrantedParam) { this.idGranted = idGrantedParam; }
+
+    @Override
+    public Liveness getLiveness() { return this.liveness; }
+
+    @Override
+    public boolean isClosed() { return this.socket.isClosed(); }
+
+    @Override
+    public void close() {
+        try {
+            this.socket.close();
+        } catch (IOException ignored) {
+        }
+        this.watermarks.close();
+    }
+
+    /**
+     * Close the socket, the handler thread reading it then logging the session out
+     */
+    @Override
+    public void abort() {
+        this.outbound.clear();
+        this.close();
+    }
+}
@@ -0,0 +1,73 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Ownership of session numbers by the nodes of a consistent-hash ring, and what moves when nodes join or leave
+ */
+class ClusterRingTest {
+    private static final int NUMBERS = 100_000;
+
+    @Test
+    void nodesAgreeWhateverTheOrderTheyAreListedIn() {
+        final ClusterRing ring = new ClusterRing(List.of("a:5000", "b:5000", "c:5000"));
+        final ClusterRing reordered = new ClusterRing(List.of("c:5000", "a:5000", "b:5000", "a:5000"));
+
+        assertEquals(Set.of("a:5000", "b:5000", "c:5000"), reordered.getNodes());
+        for (int number = 0; number < NUMBERS; ++number) {
+            assertEquals(ring.getOwner(number), reordered.getOwner(number));
+        }
+    }
+
+    @Test
+    void spreadsNumbersOverEveryNode() {
+        final ClusterRing ring = new ClusterRing(List.of("a:5000", "b:5000", "c:5000", "d:5000"));
+        final Map<String, Integer> owned = new HashMap<>();
+
+        for (int number = 0; number < NUMBERS; ++number) {
+            owned.merge(ring.getOwner(number), 1, Integer::sum);
+        }
+        assertEquals(ring.getNodes(), owned.keySet());
+        for (final int count : owned.values()) {
+            /* A quarter each, give or take what 128 points per node leave uneven */
+            assertTrue(count > NUMBERS / 8 && count < NUMBERS / 2, owned.toString());
+        }
+    }
+
+    @Test
+    void onlyNumbersOfAJoiningOrLeavingNodeMove() {
+        final ClusterRing before = new ClusterRing(List.of("a:5000", "b:5000", "c:5000"));
+        final ClusterRing joined = new ClusterRing(List.of("a:5000", "b:5000", "c:5000", "d:5000"));
+        final ClusterRing left = new ClusterRing(List.of("a:5000", "c:5000"));
+        int moved = 0;
+
+        for (int number = 0; number < NUMBERS; ++number) {
+            final String owner = before.getOwner(number);
+
+            if (!owner.equals(joined.getOwner(number))) {
+                assertEquals("d:5000", joined.getOwner(number));
+                ++moved;
+            }
+            if (!owner.equals("b:5000")) {
+                assertEquals(owner, left.getOwner(number));
+            }
+        }
+        assertTrue(moved > 0 && moved < NUMBERS / 2, "Moved " + moved);
+    }
+
+    @Test
+    void singleNodeOwnsEveryNumber() {
+        final ClusterRing ring = new ClusterRing(List.of("a:5000"));
+
+        for (final int number : new int[] { 0, 1, -1, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+            assertEquals("a:5000", ring.getOwner(number));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Timeouts run by the wheel timer no earlier than their delay, including those several turns of the wheel away
+ */
+class HashedWheelTimerTest {
+    private static final long TICK = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private HashedWheelTimer timer;
+
+    @BeforeEach
+    void startTimer() {
+        this.timer = new HashedWheelTimer("TestTimer", TICK, 8);
+        this.timer.start();
+    }
+
+    @AfterEach
+    void stopTimer() {
+        this.timer.stop();
+    }
+
+    @Test
+    void runsTimeoutsNoEarlierThanTheirDelay() throws InterruptedException {
+        final long[] delays = { 0, 3, 7, 8, 9, 30 };
+        final CountDownLatch done = new CountDownLatch(delays.length);
+        final AtomicLong early = new AtomicLong(-1);
+
+        for (final long delay : delays) {
+            final long scheduledAt = System.nanoTime();
+
+            this.timer.schedule(() -> {
+                if (System.nanoTime() - scheduledAt < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                    early.set(delay);
+                }
+                done.countDown();
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(-1, early.get(), "Timeout of " + early.get() + " ms ran early");
+    }
+
+    @Test
+    void cancelledTimeoutsNeverRun() throws InterruptedException {
+        final AtomicBoolean ran = new AtomicBoolean();
+        final CountDownLatch after = new CountDownLatch(1);
+
+        final HashedWheelTimer.Timeout timeout = this.timer.schedule(() -> ran.set(true), 5, TimeUnit.MILLISECONDS);
+        final HashedWheelTimer.Timeout farTimeout = this.timer.schedule(() -> ran.set(true), 20,
+                TimeUnit.MILLISECONDS);
+        timeout.cancel();
+        Thread.sleep(2);
+        farTimeout.cancel();
+        this.timer.schedule(after::countDown, 40, TimeUnit.MILLISECONDS);
+
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        assertTrue(timeout.isCancelled());
+        assertFalse(ran.get());
+    }
+
+    @Test
+    void keepsRunningAfterAFailingTask() throws InterruptedException {
+        final CountDownLatch after = new CountDownLatch(1);
+
+        this.timer.schedule(() -> {
+            throw new IllegalStateException("Failing task");
+        }, 1, TimeUnit.MILLISECONDS);
+        this.timer.schedule(after::countDown, 5, TimeUnit.MILLISECONDS);
+
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,108 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Claim, allocation and release of session numbers
+ */
+class IdAllocatorTest {
+    @Test
+    void neverAllocatesZero() {
+        final IdAllocator ids = new IdAllocator();
+
+        assertTrue(ids.isClaimed(0));
+        assertFalse(ids.tryClaim(0));
+        assertEquals(1, ids.allocate());
+    }
+
+    @Test
+    void claimsANumberOnce() {
+        final IdAllocator ids = new IdAllocator();
+
+        assertTrue(ids.tryClaim(42));
+        assertFalse(ids.tryClaim(42));
+        assertTrue(ids.isClaimed(42));
+
+        ids.release(42);
+        assertFalse(ids.isClaimed(42));
+        assertTrue(ids.tryClaim(42));
+    }
+
+    @Test
+    void allocationSkipsClaimedNumbers() {
+        final IdAllocator ids = new IdAllocator();
+
+        ids.tryClaim(1);
+        ids.tryClaim(2);
+        ids.tryClaim(64);
+        assertEquals(3, ids.allocate());
+
+        for (int expected = 4; expected < 64; ++expected) {
+            assertEquals(expected, ids.allocate());
+        }
+        assertEquals(65, ids.allocate());
+    }
+
+    @Test
+    void releasingAFreeNumberDoesNothing() {
+        final IdAllocator ids = new IdAllocator();
+
+        ids.release(7);
+        assertFalse(ids.isClaimed(7));
+        assertEquals(1, ids.allocate());
+    }
+
+    @Test
+    void releasedNumberIsAllocatedOnceEveryOtherIsInUse() {
+        final IdAllocator ids = new IdAllocator();
+
+        for (int i = 1; i <= IdAllocator.MAX_ID; ++i) {
+            assertEquals(i, ids.allocate());
+        }
+        assertEquals(-1, ids.allocate());
+
+        ids.release(500_000);
+        assertEquals(500_000, ids.allocate());
+        assertEquals(-1, ids.allocate());
+    }
+
+    @Test
+    void concurrentAllocationsAreDistinct() throws InterruptedException {
+        final IdAllocator ids = new IdAllocator();
+        final int threadCount = 4;
+        final int perThread = 10_000;
+        final List<List<Integer>> allocated = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < threadCount; ++t) {
+            final List<Integer> numbers = new ArrayList<>(perThread);
+
+            allocated.add(numbers);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perThread; ++i) {
+                    numbers.add(ids.allocate());
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        final Set<Integer> distinct = new HashSet<>();
+        for (final List<Integer> numbers : allocated) {
+            for (final int number : numbers) {
+                assertTrue(number > 0 && number <= IdAllocator.MAX_ID);
+                assertTrue(distinct.add(number), "Number allocated twice: " + number);
+            }
+        }
+        assertEquals(threadCount * perThread, distinct.size());
+    }
+}
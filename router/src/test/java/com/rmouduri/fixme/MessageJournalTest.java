@@ -0,0 +1,198 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Appending, replaying and acknowledging saved messages, across segments and reopenings
+ */
+class MessageJournalTest {
+    /* Records large enough to fill the default 1 MiB segments in a few thousand appends */
+    private static final int LARGE_RECORD = 1000;
+
+    @TempDir
+    Path directory;
+
+    private static byte[] message(final int index) {
+        return String.format("8=FIX.4.2|49=Broker000001|56=Market000001|11=%d|", index)
+                .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] largeMessage(final int index) {
+        final byte[] record = new byte[LARGE_RECORD];
+
+        Arrays.fill(record, (byte) ('a' + index % 26));
+        return record;
+    }
+
+    private static List<String> replayAll(final MessageJournal journal, final long from) throws IOException {
+        final List<String> records = new ArrayList<>();
+
+        journal.replay(from, Integer.MAX_VALUE,
+                (record, length) -> records.add(new String(record, 0, length, StandardCharsets.US_ASCII)));
+        return records;
+    }
+
+    private long segmentCount() throws IOException {
+        try (Stream<Path> files = Files.list(this.directory)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+
+    @Test
+    void replaysRecordsInOrder() throws IOException {
+        final MessageJournal journal = new MessageJournal(this.directory);
+
+        assertTrue(journal.isEmpty());
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(journal.append(message(i), 0, message(i).length));
+        }
+
+        final List<String> records = replayAll(journal, 0);
+        assertEquals(10, records.size());
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(new String(message(i), StandardCharsets.US_ASCII), records.get(i));
+        }
+        assertFalse(journal.isEmpty());
+    }
+
+    @Test
+    void replaysInBatches() throws IOException {
+        final MessageJournal journal = new MessageJournal(this.directory);
+        final List<String> records = new ArrayList<>();
+
+        for (int i = 0; i < 10; ++i) {
+            journal.append(message(i), 0, message(i).length);
+        }
+
+        long offset = 0;
+        int batches = 0;
+        while (offset < journal.getWriteOffset()) {
+            offset = journal.replay(offset, 3,
+                    (record, length) -> records.add(new String(record, 0, length, StandardCharsets.US_ASCII)));
+            ++batches;
+        }
+        assertEquals(4, batches);
+        assertEquals(10, records.size());
+        assertEquals(new String(message(9), StandardCharsets.US_ASCII), records.get(9));
+    }
+
+    @Test
+    void acknowledgedRecordsAreNotReplayed() throws IOException {
+        final MessageJournal journal = new MessageJournal(this.directory);
+
+        for (int i = 0; i < 4; ++i) {
+            journal.append(message(i), 0, message(i).length);
+        }
+        final long afterTwo = journal.replay(0, 2, (record, length) -> { });
+        journal.acknowledge(afterTwo);
+
+        final List<String> records = replayAll(journal, 0);
+        assertEquals(List.of(new String(message(2), StandardCharsets.US_ASCII),
+                new String(message(3), StandardCharsets.US_ASCII)), records);
+
+        journal.acknowledge(journal.getWriteOffset());
+        assertTrue(journal.isEmpty());
+        assertTrue(replayAll(journal, 0).isEmpty());
+    }
+
+    @Test
+    void reopeningRecoversUnacknowledgedRecords() throws IOException {
+        final MessageJournal journal = new MessageJournal(this.directory);
+
+        for (int i = 0; i < 5; ++i) {
+            journal.append(message(i), 0, message(i).length);
+        }
+        journal.acknowledge(journal.replay(0, 2, (record, length) -> { }));
+
+        final MessageJournal reopened = new MessageJournal(this.directory);
+        assertEquals(journal.getAcknowledgedOffset(), reopened.getAcknowledgedOffset());
+        assertEquals(journal.getWriteOffset(), reopened.getWriteOffset());
+        assertEquals(3, replayAll(reopened, 0).size());
+
+        reopened.append(message(5), 0, message(5).length);
+        final List<String> records = replayAll(reopened, 0);
+        assertEquals(4, records.size());
+        assertEquals(new String(message(5), StandardCharsets.US_ASCII), records.get(3));
+    }
+
+    @Test
+    void truncatedAcknowledgedOffsetReplaysFromTheStart() throws IOException {
+        final MessageJournal journal = new MessageJournal(this.directory);
+
+        for (int i = 0; i < 3; ++i) {
+            journal.append(message(i), 0, message(i).length);
+        }
+        journal.acknowledge(journal.replay(0, 1, (record, length) -> { }));
+        assertEquals(8, Files.size(this.directory.resolve("acknowledged")));
+        assertFalse(Files.exists(this.directory.resolve("acknowledged.tmp")));
+
+        Files.write(this.directory.resolve("acknowledged"), new byte[3]);
+        final MessageJournal reopened = new MessageJournal(this.directory);
+        assertEquals(0, reopened.getAcknowledgedOffset());
+        assertEquals(3, replayAll(reopened, 0).size());
+    }
+
+    @Test
+    void rollsOverToNewSegmentsAndDeletesAcknowledgedOnes() throws IOException {
+        final MessageJournal journal = new MessageJournal(this.directory);
+        final int count = 3000;
+
+        for (int i = 0; i < count; ++i) {
+            journal.append(largeMessage(i), 0, LARGE_RECORD);
+        }
+        assertEquals(3, this.segmentCount());
+
+        final List<byte[]> records = new ArrayList<>();
+        final long end = journal.replay(0, Integer.MAX_VALUE,
+                (record, length) -> records.add(Arrays.copyOf(record, length)));
+        assertEquals(count, records.size());
+        for (int i = 0; i < count; ++i) {
+            assertArrayEquals(largeMessage(i), records.get(i));
+        }
+
+        journal.acknowledge(end);
+        assertTrue(journal.isEmpty());
+        assertEquals(1, this.segmentCount());
+
+        /* Recovered after the last record of the last segment */
+        final MessageJournal reopened = new MessageJournal(this.directory);
+        assertTrue(reopened.isEmpty());
+        reopened.append(message(0), 0, message(0).length);
+        assertEquals(List.of(new String(message(0), StandardCharsets.US_ASCII)), replayAll(reopened, 0));
+    }
+
+    @Test
+    void rejectsRecordsLargerThanASegment() {
+        assertThrows(IOException.class, () -> {
+            final MessageJournal journal = new MessageJournal(this.directory);
+            final byte[] record = new byte[1 << 20];
+
+            journal.append(record, 0, record.length);
+        });
+    }
+
+    @Test
+    void deletedJournalRefusesAppends() throws IOException {
+        final MessageJournal journal = new MessageJournal(this.directory.resolve("Market000001"));
+
+        journal.append(message(0), 0, message(0).length);
+        assertFalse(journal.deleteIfEmpty());
+
+        journal.acknowledge(journal.getWriteOffset());
+        assertTrue(journal.deleteIfEmpty());
+        assertFalse(Files.exists(this.directory.resolve("Market000001")));
+        assertFalse(journal.append(message(1), 0, message(1).length));
+    }
+}
@@ -0,0 +1,110 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Hysteresis between the high and low watermarks of the bytes queued for a session, and the tasks waiting on it
+ */
+class OutboundWatermarksTest {
+    @Test
+    void backsUpAboveHighAndCatchesUpAtLow() {
+        final OutboundWatermarks watermarks = new OutboundWatermarks();
+
+        watermarks.queued((int) OutboundWatermarks.HIGH);
+        assertFalse(watermarks.isBackedUp());
+        watermarks.queued(1);
+        assertTrue(watermarks.isBackedUp());
+
+        /* Under high but still above low */
+        watermarks.written((int) (OutboundWatermarks.HIGH - OutboundWatermarks.LOW));
+        assertTrue(watermarks.isBackedUp());
+        watermarks.written(1);
+        assertFalse(watermarks.isBackedUp());
+        assertEquals(OutboundWatermarks.LOW, watermarks.getQueued());
+    }
+
+    @Test
+    void runsWaitersOnceCaughtUp() {
+        final OutboundWatermarks watermarks = new OutboundWatermarks();
+        final AtomicInteger ran = new AtomicInteger();
+
+        watermarks.whenDrained(ran::incrementAndGet);
+        assertEquals(1, ran.get());
+
+        watermarks.queued((int) OutboundWatermarks.HIGH + 1);
+        watermarks.whenDrained(ran::incrementAndGet);
+        watermarks.whenDrained(ran::incrementAndGet);
+        assertEquals(1, ran.get());
+
+        watermarks.written((int) OutboundWatermarks.HIGH + 1);
+        assertEquals(3, ran.get());
+    }
+
+    @Test
+    void closingReleasesWaiters() {
+        final OutboundWatermarks watermarks = new OutboundWatermarks();
+        final AtomicInteger ran = new AtomicInteger();
+
+        watermarks.queued((int) OutboundWatermarks.HIGH + 1);
+        watermarks.whenDrained(ran::incrementAndGet);
+        watermarks.close();
+        assertEquals(1, ran.get());
+        assertFalse(watermarks.isBackedUp());
+    }
+
+    @Test
+    void concurrentQueueingAndWritingNeverStrandWaiters() throws InterruptedException {
+        final OutboundWatermarks watermarks = new OutboundWatermarks();
+        /* Every message crosses the high watermark on its own */
+        final int bytes = (int) OutboundWatermarks.HIGH + 1;
+        final AtomicLong pending = new AtomicLong();
+        final AtomicBoolean done = new AtomicBoolean();
+
+        final Thread writer = new Thread(() -> {
+            while (!done.get()) {
+                final long written = pending.getAndSet(0);
+
+                if (written > 0) {
+                    watermarks.written((int) written);
+                } else {
+                    Thread.onSpinWait();
+                }
+            }
+        });
+        writer.start();
+
+        try {
+            for (int i = 0; i < 100_000; ++i) {
+                /* Handed to the writer before being counted, so it may write them in the middle of queued */
+                pending.addAndGet(bytes);
+                watermarks.queued(bytes);
+
+                /* Pausing as a source does, until the session catches up */
+                if (watermarks.isBackedUp()) {
+                    final CountDownLatch drained = new CountDownLatch(1);
+
+                    watermarks.whenDrained(drained::countDown);
+                    assertTrue(drained.await(5, TimeUnit.SECONDS), "Waiter stranded after " + i + " messages");
+                }
+            }
+        } finally {
+            done.set(true);
+            writer.join();
+        }
+    }
+
+    @Test
+    void policiesAreNamedByTheirLabel() {
+        assertEquals(OutboundWatermarks.Policy.PAUSE_SOURCES, OutboundWatermarks.Policy.of("pause"));
+        assertEquals(OutboundWatermarks.Policy.DISCONNECT, OutboundWatermarks.Policy.of("DISCONNECT"));
+        assertNull(OutboundWatermarks.Policy.of("drop"));
+    }
+}
@@ -0,0 +1,77 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.Socket;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Registration of sessions under requested or allocated ids, and ids reserved for the messages saved offline
+ */
+class SessionRegistryTest {
+    private static Session session() {
+        return new SocketSession(new Socket(), Runnable::run);
+    }
+
+    @Test
+    void grantsAValidRequestedIdAndAllocatesOtherwise() {
+        final SessionRegistry registry = new SessionRegistry();
+        final Session requesting = session();
+
+        assertEquals("Broker000042", registry.register("Broker000042", "Broker", requesting));
+        assertSame(requesting, registry.get("Broker000042"));
+        assertEquals("Broker000001", registry.register("Market000042", "Broker", session()));
+        assertEquals("Market000002", registry.register("Market000042", "Market", session()));
+        assertEquals("Broker000003", registry.register("Broker42", "Broker", session()));
+        assertEquals(4, registry.size());
+    }
+
+    @Test
+    void closedSessionGivesItsIdBack() {
+        final SessionRegistry registry = new SessionRegistry();
+        final Session first = session();
+
+        assertEquals("Broker000001", registry.register(null, "Broker", first));
+        first.close();
+        assertEquals("Broker000001", registry.register("Broker000001", "Broker", session()));
+    }
+
+    @Test
+    void reservedIdIsOnlyGivenToTheSessionAskingForIt() {
+        final SessionRegistry registry = new SessionRegistry();
+
+        registry.reserve("Market000001");
+        assertEquals("Broker000002", registry.register(null, "Broker", session()));
+        assertEquals("Market000001", registry.register("Market000001", "Market", session()));
+    }
+
+    @Test
+    void numberIsFreedOnceNothingHoldsIt() {
+        final SessionRegistry registry = new SessionRegistry();
+        final Session session = session();
+
+        registry.reserve("Broker000001");
+        registry.reserve("Market000001");
+        assertEquals("Broker000001", registry.register("Broker000001", "Broker", session));
+        registry.release("Broker000001");
+        registry.unregister("Broker000001", session, false);
+
+        /* Still reserved for the market */
+        assertEquals("Broker000002", registry.register(null, "Broker", session()));
+        registry.release("Market000001");
+        assertEquals("Broker000001", registry.register(null, "Broker", session()));
+    }
+
+    @Test
+    void refusesToReserveInvalidIds() {
+        final SessionRegistry registry = new SessionRegistry();
+
+        for (final String id : new String[] { "journal", "Broker00001", "Broker00000a", "Trader000001",
+                "Broker000000" }) {
+            assertThrows(IllegalArgumentException.class, () -> registry.reserve(id), id);
+        }
+        assertEquals(-1, SessionRegistry.getNumber(null));
+        assertEquals(12, SessionRegistry.getNumber("Market000012"));
+    }
+}
@@ -0,0 +1,94 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Messages queued by concurrent writers and drained through the session's single output stream
+ */
+class SocketSessionTest {
+    private static String line(final int writer, final int index) {
+        return String.format("49=Writer%d|11=%d|58=%s|", writer, index, "x".repeat(index % 50));
+    }
+
+    @Test
+    void concurrentWritesArriveWholeAndInOrder() throws Exception {
+        final int writerCount = 8;
+        final int perWriter = 2000;
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+                Socket accepted = server.accept()) {
+            final SocketSession session = new SocketSession(accepted, Thread::startVirtualThread);
+            final List<Thread> writers = new ArrayList<>();
+            final List<Throwable> failures = new ArrayList<>();
+
+            for (int w = 0; w < writerCount; ++w) {
+                final int writer = w;
+
+                writers.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < perWriter; ++i) {
+                            session.write(line(writer, i));
+                        }
+                    } catch (IOException e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }));
+            }
+            writers.forEach(Thread::start);
+
+            final BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            final int[] next = new int[writerCount];
+            for (int received = 0; received < writerCount * perWriter; ++received) {
+                final String line = in.readLine();
+
+                assertNotNull(line, "Stream ended after " + received + " lines");
+                final int writer = line.charAt("49=Writer".length()) - '0';
+                assertEquals(line(writer, next[writer]), line);
+                ++next[writer];
+            }
+            for (final Thread thread : writers) {
+                thread.join();
+            }
+            assertTrue(failures.isEmpty(), failures.toString());
+        }
+    }
+
+    @Test
+    void writerMayReuseItsBuffer() throws Exception {
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                Socket client = new Socket(server.getInetAddress(), server.getLocalPort());
+                Socket accepted = server.accept()) {
+            final SocketSession session = new SocketSession(accepted, Thread::startVirtualThread);
+            final byte[] buffer = "35=0|49=First|".getBytes(StandardCharsets.US_ASCII);
+
+            session.write(buffer, 0, buffer.length);
+            System.arraycopy("35=0|49=Other|".getBytes(StandardCharsets.US_ASCII), 0, buffer, 0, buffer.length);
+            session.write(buffer, 5, 9);
+
+            final BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(),
+                    StandardCharsets.US_ASCII));
+            assertEquals("35=0|49=First|", in.readLine());
+            assertEquals("49=Other|", in.readLine());
+
+            session.close();
+            assertTrue(session.isClosed());
+            assertNull(in.readLine());
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.rmouduri.fixme;
+
+import java.net.InetSocketAddress;
+
+/**
+ * `host:port' addresses of Routers, as given in properties and sent in redirects
+ */
+public final class Address {
+    private Address() {
+    }
+
+    /**
+     * @return The socket address of @param address, resolved
+     * @throws IllegalArgumentException if @param address is not `host:port'
+     */
+    public static InetSocketAddress parse(final String address) {
+        final int colon = address.lastIndexOf(':');
+
+        if (colon <= 0 || colon == address.length() - 1) {
+            throw new IllegalArgumentException(String.format("Invalid address `%s', expected host:port", address));
+        }
+        return new InetSocketAddress(address.substring(0, colon).trim(),
+                Integer.parseInt(address.substring(colon + 1).trim()));
+    }
+}
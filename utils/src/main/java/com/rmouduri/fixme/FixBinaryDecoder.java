@@ -0,0 +1,324 @@
+package com.rmouduri.fixme;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable view over a binary Fix frame written by a FixBinaryEncoder, indexed in a single pass and read in place.
+ * The MsgType of the header reads as a MSG_TYPE_IDENTIFIER field, and its MsgSeqNum, unless 0, as a VARINT
+ * MSG_SEQ_NUM_IDENTIFIER field. Numbers read as text when asked for Strings.
+ * A decoder is not thread safe, and its values are only valid until the next wrap.
+ */
+public final class FixBinaryDecoder implements FixFields {
+    private static final int INITIAL_FIELDS = 16;
+    private static final int MAX_VARINT_LENGTH = 10;
+
+    private byte[] buffer;
+    private int offset;
+    private int length;
+    private int position;
+
+    private int fieldCount;
+    private int[] tags = new int[INITIAL_FIELDS];
+    private int[] types = new int[INITIAL_FIELDS];
+    private int[] valueStarts = new int[INITIAL_FIELDS];
+    private int[] valueEnds = new int[INITIAL_FIELDS];
+    /* Decoded value of the VARINT and PRICE fields */
+    private long[] values = new long[INITIAL_FIELDS];
+
+    /**
+     * Index the frame held in @param bufferParam from @param offsetParam for @param lengthParam bytes,
+     * length prefix included
+     */
+    public FixBinaryDecoder wrap(final byte[] bufferParam, final int offsetParam, final int lengthParam)
+            throws FixMessageException {
+        this.buffer = bufferParam;
+        this.offset = offsetParam;
+        this.length = lengthParam;
+        this.fieldCount = 0;
+
+        if (lengthParam < FixBinaryEncoder.HEADER_LENGTH
+                || FixBinaryEncoder.getFrameLength(bufferParam, offsetParam) != lengthParam
+                || bufferParam[offsetParam + FixBinaryEncoder.MAGIC_OFFSET] != FixBinaryEncoder.MAGIC
+                || bufferParam[offsetParam + FixBinaryEncoder.VERSION_OFFSET] != FixBinaryEncoder.VERSION) {
+            throw new FixMessageException("Invalid binary frame header.");
+        }
+
+        final int msgType = offsetParam + FixBinaryEncoder.MSG_TYPE_OFFSET;
+        if (bufferParam[msgType] != 0) {
+            this.addField(FixMessage.MSG_TYPE_IDENTIFIER, FixBinaryEncoder.BYTES, msgType, msgType + 1, 0);
+        }
+
+        final int sequence = offsetParam + FixBinaryEncoder.SEQUENCE_OFFSET;
+        final long seqNum = FixBinaryEncoder.getInt32(bufferParam, sequence) & 0xFFFFFFFFL;
+        if (seqNum != 0) {
+            this.addField(FixMessage.MSG_SEQ_NUM_IDENTIFIER, FixBinaryEncoder.VARINT, sequence,
+                    sequence + FixBinaryEncoder.SEQUENCE_LENGTH, seqNum);
+        }
+
+        final int end = offsetParam + lengthParam;
+        this.position = offsetParam + FixBinaryEncoder.HEADER_LENGTH;
+        while (this.position < end) {
+            final long key = this.readVarint(end);
+            final int type = (int) key & 3;
+
+            if (key >>> 2 > 100_000 || type > FixBinaryEncoder.BYTES) {
+                throw new FixMessageException(String.format("Invalid field key `%d' in binary frame.", key));
+            }
+
+            if (type == FixBinaryEncoder.BYTES) {
+                final long valueLength = this.readVarint(end);
+
+                if (valueLength > end - this.position) {
+                    throw new FixMessageException("Truncated field in binary frame.");
+                }
+                this.addField((int) (key >>> 2), type, this.position, this.position + (int) valueLength, 0);
+                this.position += (int) valueLength;
+            } else {
+                final int valueStart = this.position;
+                final long zigzag = this.readVarint(end);
+
+                this.addField((int) (key >>> 2), type, valueStart, this.position, zigzag >>> 1 ^ -(zigzag & 1));
+            }
+        }
+
+        return this;
+    }
+
+    private long readVarint(final int end) throws FixMessageException {
+        long value = 0;
+
+        for (int shift = 0; shift < MAX_VARINT_LENGTH * 7; shift += 7) {
+            if (this.position == end) {
+                throw new FixMessageException("Truncated varint in binary frame.");
+            }
+
+            final byte b = this.buffer[this.position++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new FixMessageException("Invalid varint in binary frame.");
+    }
+
+    private void addField(final int tag, final int type, final int valueStart, final int valueEnd, final long value) {
+        if (this.fieldCount == this.tags.length) {
+            this.tags = Arrays.copyOf(this.tags, this.fieldCount * 2);
+            this.types = Arrays.copyOf(this.types, this.fieldCount * 2);
+            this.valueStarts = Arrays.copyOf(this.valueStarts, this.fieldCount * 2);
+            this.valueEnds = Arrays.copyOf(this.valueEnds, this.fieldCount * 2);
+            this.values = Arrays.copyOf(this.values, this.fieldCount * 2);
+        }
+
+        this.tags[this.fieldCount] = tag;
+        this.types[this.fieldCount] = type;
+        this.valueStarts[this.fieldCount] = valueStart;
+        this.valueEnds[this.fieldCount] = valueEnd;
+        this.values[this.fieldCount] = value;
+        ++this.fieldCount;
+    }
+
+    @Override
+    public int indexOf(final int tag) {
+        for (int i = 0; i < this.fieldCount; ++i) {
+            if (this.tags[i] == tag) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public String getString(final int tag) throws FixMessageException {
+        return this.getStringAt(this.requireIndex(tag, "String"));
+    }
+
+    @Override
+    public String getString(final int tag, final String defaultValue) {
+        final int index = this.indexOf(tag);
+
+        return index == -1 ? defaultValue : this.getStringAt(index);
+    }
+
+    @Override
+    public int getInt(final int tag) throws FixMessageException {
+        return this.getIntAt(this.requireIndex(tag, "Integer"));
+    }
+
+    @Override
+    public double getDouble(final int tag) throws FixMessageException {
+        return this.getDoubleAt(this.requireIndex(tag, "Double"));
+    }
+
+    /**
+     * @return The value at @param index as it would be written in a text message
+     */
+    @Override
+    public String getStringAt(final int index) {
+        return switch (this.types[index]) {
+            case FixBinaryEncoder.VARINT -> Long.toString(this.values[index]);
+            case FixBinaryEncoder.PRICE -> {
+                final long ticks = Math.abs(this.values[index]);
+
+                yield String.format("%s%d.%06d", this.values[index] < 0 ? "-" : "",
+                        ticks / FixBinaryEncoder.PRICE_SCALE, ticks % FixBinaryEncoder.PRICE_SCALE);
+            }
+            default -> new String(this.buffer, this.valueStarts[index],
+                    this.valueEnds[index] - this.valueStarts[index], StandardCharsets.US_ASCII);
+        };
+    }
+
+    @Override
+    public int getIntAt(final int index) throws FixMessageException {
+        final long value;
+
+        if (this.types[index] == FixBinaryEncoder.VARINT) {
+            value = this.values[index];
+        } else if (this.types[index] == FixBinaryEncoder.BYTES) {
+            try {
+                value = Long.parseLong(this.getStringAt(index));
+            } catch (NumberFormatException e) {
+                throw new FixMessageException(String.format("Invalid integer for identifier `%d'.",
+                        this.tags[index]));
+            }
+        } else {
+            throw new FixMessageException(String.format("Invalid integer for identifier `%d'.", this.tags[index]));
+        }
+
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new FixMessageException(String.format("Invalid integer for identifier `%d'.", this.tags[index]));
+        }
+        return (int) value;
+    }
+
+    @Override
+    public double getDoubleAt(final int index) throws FixMessageException {
+        return switch (this.types[index]) {
+            case FixBinaryEncoder.VARINT -> this.values[index];
+            case FixBinaryEncoder.PRICE -> this.values[index] / (double) FixBinaryEncoder.PRICE_SCALE;
+            default -> {
+                try {
+                    yield Double.parseDouble(this.getStringAt(index));
+                } catch (NumberFormatException e) {
+                    throw new FixMessageException(String.format("Invalid double for identifier `%d'.",
+                            this.tags[index]));
+                }
+            }
+        };
+    }
+
+    @Override
+    public boolean valueContains(final int tag, final String text) {
+        final int index = this.indexOf(tag);
+
+        if (index == -1) {
+            return false;
+        } else if (this.types[index] != FixBinaryEncoder.BYTES) {
+            return this.getStringAt(index).contains(text);
+        }
+
+        final int last = this.valueEnds[index] - text.length();
+        for (int start = this.valueStarts[index]; start <= last; ++start) {
+            int j = 0;
+
+            while (j < text.length() && this.buffer[start + j] == text.charAt(j)) {
+                ++j;
+            }
+            if (j == text.length()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean valueEquals(final int tag, final String text) {
+        final int index = this.indexOf(tag);
+
+        if (index == -1) {
+            return false;
+        } else if (this.types[index] != FixBinaryEncoder.BYTES) {
+            return this.getStringAt(index).equals(text);
+        }
+        return this.valueEnds[index] - this.valueStarts[index] == text.length() && this.valueContains(tag, text);
+    }
+
+    /**
+     * Binary frames carry no checksum, TCP having already checked their bytes
+     */
+    @Override
+    public boolean validateChecksum() { return true; }
+
+    /**
+     * Rewrite the MsgSeqNum of the header, which every frame has
+     */
+    @Override
+    public boolean setSeqNum(final long seqNum) {
+        final int index = this.indexOf(FixMessage.MSG_SEQ_NUM_IDENTIFIER);
+
+        FixBinaryEncoder.putInt32(this.buffer, this.offset + FixBinaryEncoder.SEQUENCE_OFFSET, (int) seqNum);
+        if (index != -1) {
+            this.values[index] = seqNum;
+        }
+        return true;
+    }
+
+    private int requireIndex(final int tag, final String type) throws FixMessageException {
+        final int index = this.indexOf(tag);
+
+        if (index == -1) {
+            throw new FixMessageException(String.format("%s of identifier `%d' not found.", type, tag));
+        }
+        return index;
+    }
+
+    @Override
+    public int getFieldCount() { return this.fieldCount; }
+
+    @Override
+    public int getTagAt(final int index) { return this.tags[index]; }
+
+    /**
+     * @return FixBinaryEncoder.VARINT, PRICE or BYTES
+     */
+    public int getTypeAt(final int index) { return this.types[index]; }
+
+    /**
+     * @return The integer of a VARINT field, or the millionths of a PRICE field, at @param index
+     */
+    public long getLongAt(final int index) { return this.values[index]; }
+
+    @Override
+    public int getValueOffset(final int index) { return this.valueStarts[index]; }
+
+    @Override
+    public int getValueLength(final int index) { return this.valueEnds[index] - this.valueStarts[index]; }
+
+    @Override
+    public byte[] getBuffer() { return this.buffer; }
+
+    @Override
+    public int getOffset() { return this.offset; }
+
+    @Override
+    public int getLength() { return this.length; }
+
+    @Override
+    public boolean isBinary() { return true; }
+
+    /**
+     * @return The fields as `tag=value|' text, for logging
+     */
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder();
+
+        for (int i = 0; i < this.fieldCount; ++i) {
+            text.append(this.tags[i]).append('=').append(this.getStringAt(i)).append('|');
+        }
+        return text.toString();
+    }
+}
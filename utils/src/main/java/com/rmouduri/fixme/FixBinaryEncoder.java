@@ -0,0 +1,236 @@
+package com.rmouduri.fixme;
+
+import java.util.Arrays;
+
+/**
+ * Reusable writer of length-prefixed binary Fix frames, the wire encoding a session may ask for in its Logon.
+ * A frame starts with a fixed header: its length after the prefix (u32), MAGIC, VERSION, the MsgType character
+ * or 0, and the MsgSeqNum (u32, 0 for the messages sessions do not number). Every field then follows as a varint
+ * key, tag << 2 | wire type, and its value: a zigzag varint for VARINT, a zigzag varint count of millionths for
+ * PRICE, and a varint length followed by ASCII bytes for BYTES.
+ * There is no BeginString nor checksum field: the header versions the frame, and TCP already checks its bytes.
+ * An encoder is not thread safe, and its buffer is only valid until the next begin.
+ */
+public final class FixBinaryEncoder implements FixMessageEncoder {
+    public static final int LENGTH_PREFIX = 4;
+    public static final int MAGIC_OFFSET = 4;
+    public static final int VERSION_OFFSET = 5;
+    public static final int MSG_TYPE_OFFSET = 6;
+    public static final int SEQUENCE_OFFSET = 7;
+    public static final int SEQUENCE_LENGTH = 4;
+    public static final int HEADER_LENGTH = 11;
+    public static final int MAX_FRAME_LENGTH = 1 << 20;
+    public static final byte MAGIC = (byte) 0xF1;
+    public static final byte VERSION = 1;
+
+    public static final int VARINT = 0;
+    public static final int PRICE = 1;
+    public static final int BYTES = 2;
+    public static final int PRICE_SCALE = 1_000_000;
+
+    private byte[] buffer = new byte[256];
+    private int length;
+    private FixLayout layout;
+    private int field;
+    private boolean sequenced;
+
+    /**
+     * @return The wire type given to the text values of @param tag when a text message is translated
+     */
+    public static int wireTypeOf(final int tag) {
+        return switch (tag) {
+            case FixMessage.ORDER_TYPE_IDENTIFIER, FixMessage.QUANTITY_IDENTIFIER, FixMessage.BID_SIZE_IDENTIFIER,
+                    FixMessage.ASK_SIZE_IDENTIFIER -> VARINT;
+            case FixMessage.PRICE_IDENTIFIER, FixMessage.BID_PRICE_IDENTIFIER,
+                    FixMessage.ASK_PRICE_IDENTIFIER -> PRICE;
+            default -> BYTES;
+        };
+    }
+
+    /**
+     * @return The length of the whole frame starting at @param offset of @param bytes, prefix included
+     */
+    public static int getFrameLength(final byte[] bytes, final int offset) {
+        return LENGTH_PREFIX + getInt32(bytes, offset);
+    }
+
+    /**
+     * @return The u32 at @param offset of @param bytes, as an int
+     */
+    static int getInt32(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+
+    static void putInt32(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Start a new frame of @param layoutParam, values then being expected in the layout's order
+     */
+    @Override
+    public FixBinaryEncoder begin(final FixLayout layoutParam) {
+        final String msgType = layoutParam.getMsgType();
+
+        this.begin(msgType == null ? 0 : (byte) msgType.charAt(0));
+        this.layout = layoutParam;
+        return this;
+    }
+
+    /**
+     * Start a new frame of MsgType @param msgType, or 0 for none, its fields then being written with putField
+     */
+    public FixBinaryEncoder begin(final byte msgType) {
+        this.layout = null;
+        this.field = 0;
+        this.sequenced = false;
+        this.length = HEADER_LENGTH;
+        this.buffer[MAGIC_OFFSET] = MAGIC;
+        this.buffer[VERSION_OFFSET] = VERSION;
+        this.buffer[MSG_TYPE_OFFSET] = msgType;
+        putInt32(this.buffer, SEQUENCE_OFFSET, 0);
+
+        return this;
+    }
+
+    @Override
+    public FixBinaryEncoder putString(final CharSequence value) {
+        final int valueLength = value.length();
+
+        this.writeKey(this.nextTag(), BYTES);
+        this.writeVarint(valueLength);
+        this.ensureCapacity(valueLength);
+        for (int i = 0; i < valueLength; ++i) {
+            this.buffer[this.length++] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    @Override
+    public FixBinaryEncoder putInt(final int value) {
+        return this.putLong(value);
+    }
+
+    @Override
+    public FixBinaryEncoder putLong(final long value) {
+        return this.putField(this.nextTag(), value);
+    }
+
+    @Override
+    public FixBinaryEncoder putPrice(final double value) {
+        return this.putPriceField(this.nextTag(), Math.round(value * PRICE_SCALE));
+    }
+
+    /**
+     * Write field @param tag with the @param valueLength bytes of @param value from @param valueOffset
+     */
+    public FixBinaryEncoder putField(final int tag, final byte[] value, final int valueOffset,
+            final int valueLength) {
+        this.writeKey(tag, BYTES);
+        this.writeVarint(valueLength);
+        this.ensureCapacity(valueLength);
+        System.arraycopy(value, valueOffset, this.buffer, this.length, valueLength);
+        this.length += valueLength;
+        return this;
+    }
+
+    public FixBinaryEncoder putField(final int tag, final long value) {
+        this.writeKey(tag, VARINT);
+        this.writeVarint(zigzag(value));
+        return this;
+    }
+
+    /**
+     * Write field @param tag with the price of @param ticks millionths
+     */
+    public FixBinaryEncoder putPriceField(final int tag, final long ticks) {
+        this.writeKey(tag, PRICE);
+        this.writeVarint(zigzag(ticks));
+        return this;
+    }
+
+    /**
+     * Write @param seqNum in the header, once every field of the layout has been written
+     */
+    @Override
+    public FixBinaryEncoder putSeqNum(final long seqNum) {
+        if (this.layout != null && this.field != this.layout.getFieldCount()) {
+            throw new IllegalStateException("MsgSeqNum written before the fields of the layout.");
+        }
+
+        putInt32(this.buffer, SEQUENCE_OFFSET, (int) seqNum);
+        this.sequenced = true;
+        return this;
+    }
+
+    @Override
+    public void setSeqNum(final long seqNum) {
+        if (!this.sequenced) {
+            throw new IllegalStateException("Message built without MsgSeqNum.");
+        }
+        putInt32(this.buffer, SEQUENCE_OFFSET, (int) seqNum);
+    }
+
+    @Override
+    public boolean hasSeqNum() { return this.sequenced; }
+
+    /**
+     * Write the length prefix once every field of the layout has been written
+     */
+    @Override
+    public FixBinaryEncoder finish() {
+        if (this.layout != null && this.field != this.layout.getFieldCount()) {
+            throw new IllegalStateException(String.format("Identifier `%d' missing when building message.",
+                    this.layout.getTag(this.field)));
+        }
+
+        putInt32(this.buffer, 0, this.length - LENGTH_PREFIX);
+        return this;
+    }
+
+    private int nextTag() {
+        if (this.layout == null) {
+            throw new IllegalStateException("Message begun without layout.");
+        }
+        if (this.field >= this.layout.getFieldCount()) {
+            throw new IllegalStateException("Too many values for the layout of this message.");
+        }
+        return this.layout.getTag(this.field++);
+    }
+
+    private void writeKey(final int tag, final int wireType) {
+        this.writeVarint((long) tag << 2 | wireType);
+    }
+
+    private void writeVarint(long value) {
+        this.ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            this.buffer[this.length++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        this.buffer[this.length++] = (byte) value;
+    }
+
+    private static long zigzag(final long value) {
+        return value << 1 ^ value >> 63;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (this.length + extra > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.length + extra, this.buffer.length * 2));
+        }
+    }
+
+    @Override
+    public byte[] getBuffer() { return this.buffer; }
+
+    @Override
+    public int getLength() { return this.length; }
+
+    @Override
+    public boolean isBinary() { return true; }
+}
@@ -0,0 +1,241 @@
+package com.rmouduri.fixme;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Checksums of `tag=value|' messages read in place, the checksum field being found from the end of the message
+ * so no value can be mistaken for it.
+ * Bytes are summed with the Vector API when the JVM runs with `--add-modules jdk.incubator.vector', unless
+ * `fixme.checksum.vector' is false, and eight at a time in a long otherwise.
+ */
+public final class FixChecksum {
+    private static final boolean VECTORIZED = Boolean.parseBoolean(System.getProperty("fixme.checksum.vector",
+            "true")) && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    /* Shorter runs are summed faster in a long than by setting up a vector */
+    private static final int VECTOR_THRESHOLD = 64;
+
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    private static final long EVEN_BYTES = 0x00FF00FF00FF00FFL;
+    private static final long EVEN_SHORTS = 0x0000FFFF0000FFFFL;
+    private static final long LANES = 0x0001000100010001L;
+    /* Words added into the 16 bits lanes of a long before they could overflow: 128 * 2 * 255 < 65536 */
+    private static final int BLOCK_WORDS = 128;
+    private static final String CHECKSUM_FIELD = FixMessage.CHECKSUM_IDENTIFIER + "=";
+    private static final int CHECKSUM_DIGITS = 3;
+
+    private FixChecksum() {
+    }
+
+    /**
+     * @return true if the Vector API sums the bytes
+     */
+    public static boolean isVectorized() { return VECTORIZED; }
+
+    /**
+     * @return The sum of the @param length bytes of @param buffer from @param offset, modulo 256
+     */
+    public static int sum(final byte[] buffer, final int offset, final int length) {
+        return VECTORIZED && length >= VECTOR_THRESHOLD ? FixChecksumVector.sum(buffer, offset, length)
+                : sumWords(buffer, offset, length);
+    }
+
+    /**
+     * @return The sum of the @param length bytes of @param buffer from index @param offset, modulo 256,
+     * whatever the position of the buffer
+     */
+    public static int sum(final ByteBuffer buffer, final int offset, final int length) {
+        if (buffer.hasArray()) {
+            return sum(buffer.array(), buffer.arrayOffset() + offset, length);
+        }
+
+        final int end = offset + length;
+        int sum = 0;
+        int i = offset;
+        while (i + Long.BYTES <= end) {
+            final int blockEnd = Math.min(end, i + BLOCK_WORDS * Long.BYTES);
+            long lanes = 0;
+
+            for (; i + Long.BYTES <= blockEnd; i += Long.BYTES) {
+                final long word = buffer.getLong(i);
+
+                lanes += (word & EVEN_BYTES) + ((word >>> 8) & EVEN_BYTES);
+            }
+            sum += sumLanes(lanes);
+        }
+        for (; i < end; ++i) {
+            sum += buffer.get(i) & 0xFF;
+        }
+        return sum & 0xFF;
+    }
+
+    /**
+     * Sum eight bytes at a time, each pair of them added into one of the four 16 bits lanes of a long
+     * @return The sum of the @param length bytes of @param buffer from @param offset, modulo 256
+     */
+    static int sumWords(final byte[] buffer, final int offset, final int length) {
+        final int end = offset + length;
+        int sum = 0;
+        int i = offset;
+
+        while (i + Long.BYTES <= end) {
+            final int blockEnd = Math.min(end, i + BLOCK_WORDS * Long.BYTES);
+            long lanes = 0;
+
+            for (; i + Long.BYTES <= blockEnd; i += Long.BYTES) {
+                final long word = (long) LONGS.get(buffer, i);
+
+                lanes += (word & EVEN_BYTES) + ((word >>> 8) & EVEN_BYTES);
+            }
+            sum += sumLanes(lanes);
+        }
+        for (; i < end; ++i) {
+            sum += buffer[i] & 0xFF;
+        }
+        return sum & 0xFF;
+    }
+
+    /**
+     * @return The exact sum of the eight unsigned bytes of @param word
+     */
+    static int sumWord(final long word) {
+        return (int) ((((word & EVEN_BYTES) + ((word >>> 8) & EVEN_BYTES)) * LANES) >>> 48);
+    }
+
+    private static int sumLanes(final long lanes) {
+        final long halves = (lanes & EVEN_SHORTS) + ((lanes >>> 16) & EVEN_SHORTS);
+
+        return (int) ((halves & 0xFFFFFFFFL) + (halves >>> 32));
+    }
+
+    /**
+     * @return The offset in @param buffer of the checksum field ending the message of @param length bytes from
+     * @param offset, optionally followed by a delimiter, or -1 if the message does not end with one
+     */
+    public static int trailerOffset(final byte[] buffer, final int offset, final int length) {
+        int end = offset + length;
+
+        if (end > offset && buffer[end - 1] == '|') {
+            --end;
+        }
+
+        int start = end;
+        while (start > offset && buffer[start - 1] >= '0' && buffer[start - 1] <= '9') {
+            --start;
+        }
+
+        final int field = start - CHECKSUM_FIELD.length();
+        if (start == end || field < offset || (field > offset && buffer[field - 1] != '|')) {
+            return -1;
+        }
+        for (int i = 0; i < CHECKSUM_FIELD.length(); ++i) {
+            if (buffer[field + i] != CHECKSUM_FIELD.charAt(i)) {
+                return -1;
+            }
+        }
+        return field;
+    }
+
+    /**
+     * @return true if the checksum field ending the message of @param length bytes from @param offset of
+     * @param buffer is the sum of every byte before it
+     */
+    public static boolean validate(final byte[] buffer, final int offset, final int length) {
+        final int field = trailerOffset(buffer, offset, length);
+
+        return field != -1 && parseChecksum(buffer, field + CHECKSUM_FIELD.length(), offset + length)
+                == sum(buffer, offset, field - offset);
+    }
+
+    /**
+     * @return true if the checksum field ending the message of @param length bytes from index @param offset of
+     * @param buffer is the sum of every byte before it, whatever the position of the buffer
+     */
+    public static boolean validate(final ByteBuffer buffer, final int offset, final int length) {
+        if (buffer.hasArray()) {
+            return validate(buffer.array(), buffer.arrayOffset() + offset, length);
+        }
+
+        int end = offset + length;
+        if (end > offset && buffer.get(end - 1) == '|') {
+            --end;
+        }
+
+        int start = end;
+        int checksum = 0;
+        for (int scale = 1; start > offset && buffer.get(start - 1) >= '0' && buffer.get(start - 1) <= '9'
+                && end - start < CHECKSUM_DIGITS; scale *= 10) {
+            checksum += (buffer.get(--start) - '0') * scale;
+        }
+
+        final int field = start - CHECKSUM_FIELD.length();
+        if (start == end || field < offset || (field > offset && buffer.get(field - 1) != '|')) {
+            return false;
+        }
+        for (int i = 0; i < CHECKSUM_FIELD.length(); ++i) {
+            if (buffer.get(field + i) != CHECKSUM_FIELD.charAt(i)) {
+                return false;
+            }
+        }
+        return checksum == sum(buffer, offset, field - offset);
+    }
+
+    /**
+     * @return true if the checksum field ending @param message is the sum of every character before it
+     */
+    public static boolean validate(final CharSequence message) {
+        final int length = message.length();
+        int end = length;
+
+        if (end > 0 && message.charAt(end - 1) == '|') {
+            --end;
+        }
+
+        int start = end;
+        while (start > 0 && message.charAt(start - 1) >= '0' && message.charAt(start - 1) <= '9') {
+            --start;
+        }
+
+        final int field = start - CHECKSUM_FIELD.length();
+        if (start == end || end - start > CHECKSUM_DIGITS || field < 0
+                || (field > 0 && message.charAt(field - 1) != '|')) {
+            return false;
+        }
+
+        int checksum = 0;
+        for (int i = 0; i < CHECKSUM_FIELD.length(); ++i) {
+            if (message.charAt(field + i) != CHECKSUM_FIELD.charAt(i)) {
+                return false;
+            }
+        }
+        for (int i = start; i < end; ++i) {
+            checksum = checksum * 10 + message.charAt(i) - '0';
+        }
+
+        int sum = 0;
+        for (int i = 0; i < field; ++i) {
+            sum += message.charAt(i);
+        }
+        return checksum == sum % 256;
+    }
+
+    /**
+     * @return The value of the checksum digits from @param from to @param end, an optional delimiter excluded,
+     * or -1 if there are more than three of them
+     */
+    private static int parseChecksum(final byte[] buffer, final int from, final int end) {
+        final int digitsEnd = buffer[end - 1] == '|' ? end - 1 : end;
+        int checksum = 0;
+
+        if (digitsEnd - from > CHECKSUM_DIGITS) {
+            return -1;
+        }
+        for (int i = from; i < digitsEnd; ++i) {
+            checksum = checksum * 10 + buffer[i] - '0';
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,31 @@
+package com.rmouduri.fixme;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API summing of FixChecksum, only loaded when the jdk.incubator.vector module is present.
+ * Bytes are added lane-wise in a vector of the widest shape the CPU supports: each lane wraps modulo 256,
+ * which is all a checksum keeps, so a single reduction is left once the whole run is added.
+ */
+final class FixChecksumVector {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private FixChecksumVector() {
+    }
+
+    /**
+     * @return The sum of the @param length bytes of @param buffer from @param offset, modulo 256
+     */
+    static int sum(final byte[] buffer, final int offset, final int length) {
+        final int bound = offset + SPECIES.loopBound(length);
+        ByteVector lanes = ByteVector.zero(SPECIES);
+        int i = offset;
+
+        for (; i < bound; i += SPECIES.length()) {
+            lanes = lanes.add(ByteVector.fromArray(SPECIES, buffer, i));
+        }
+        return (lanes.reduceLanes(VectorOperators.ADD) + FixChecksum.sumWords(buffer, i, offset + length - i)) & 0xFF;
+    }
+}
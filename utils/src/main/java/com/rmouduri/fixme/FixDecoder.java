@@ -0,0 +1,415 @@
+package com.rmouduri.fixme;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable view over a `tag=value|' Fix message, indexed in a single pass and read in place.
+ * With wrapRouting, only the fields the Router routes on are indexed, the others being indexed the first time
+ * one of them is asked for, so forwarding a message costs the same whatever else it holds.
+ * A decoder is not thread safe, and its values are only valid until the next wrap.
+ */
+public final class FixDecoder implements FixFields {
+    private static final byte DELIMITER = '|';
+    private static final byte EQUAL = '=';
+    private static final int INITIAL_FIELDS = 16;
+    /* Values are scanned eight bytes at a time, looking for the delimiter and summing them in a long */
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class,
+            ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long DELIMITERS = ONES * DELIMITER;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private byte[] buffer;
+    private int offset;
+    private int length;
+    private byte[] scratch = new byte[256];
+
+    private int fieldCount;
+    private int[] tags = new int[INITIAL_FIELDS];
+    private int[] valueStarts = new int[INITIAL_FIELDS];
+    private int[] valueEnds = new int[INITIAL_FIELDS];
+    private int checksumSum;
+    private int checksumIndex;
+    /* Only the routing fields are indexed yet */
+    private boolean routingOnly;
+
+    /**
+     * Index the message held in @param bufferParam from @param offsetParam for @param lengthParam bytes
+     */
+    public FixDecoder wrap(final byte[] bufferParam, final int offsetParam, final int lengthParam)
+            throws FixMessageException {
+        return this.index(bufferParam, offsetParam, lengthParam, false);
+    }
+
+    /**
+     * Validate the message held in @param bufferParam from @param offsetParam for @param lengthParam bytes and
+     * sum it for its checksum, indexing only its routing fields: MsgType, MsgSeqNum, sender, destination and
+     * checksum. Positions returned before another field is asked for are no longer valid after.
+     */
+    public FixDecoder wrapRouting(final byte[] bufferParam, final int offsetParam, final int lengthParam)
+            throws FixMessageException {
+        return this.index(bufferParam, offsetParam, lengthParam, true);
+    }
+
+    private static boolean isRoutingTag(final int tag) {
+        return tag == FixMessage.SENDER_IDENTIFIER || tag == FixMessage.DEST_IDENTIFIER
+                || tag == FixMessage.MSG_TYPE_IDENTIFIER || tag == FixMessage.MSG_SEQ_NUM_IDENTIFIER
+                || tag == FixMessage.CHECKSUM_IDENTIFIER;
+    }
+
+    private FixDecoder index(final byte[] bufferParam, final int offsetParam, final int lengthParam,
+            final boolean routingOnlyParam) throws FixMessageException {
+        this.buffer = bufferParam;
+        this.offset = offsetParam;
+        this.length = lengthParam;
+        this.routingOnly = routingOnlyParam;
+        this.fieldCount = 0;
+        this.checksumSum = -1;
+        this.checksumIndex = -1;
+
+        final int end = offsetParam + lengthParam;
+        int sum = 0;
+        int i = offsetParam;
+
+        while (i < end) {
+            final int fieldStart = i;
+            final int sumBeforeField = sum;
+            int tag = 0;
+            byte b;
+
+            while (i < end && (b = bufferParam[i]) != EQUAL) {
+                if (b < '0' || b > '9' || tag > 100_000) {
+                    throw new FixMessageException(String.format("Invalid identifier in `%s'.", this));
+                }
+                tag = tag * 10 + (b - '0');
+                sum += b;
+                ++i;
+            }
+            if (i == end || i == fieldStart) {
+                throw new FixMessageException(String.format("Invalid field in `%s'.", this));
+            }
+            sum += EQUAL;
+
+            final int valueStart = ++i;
+            while (i + Long.BYTES <= end) {
+                final long word = (long) LONGS.get(bufferParam, i);
+                final long delimiters = word ^ DELIMITERS;
+
+                if (((delimiters - ONES) & ~delimiters & HIGH_BITS) != 0) {
+                    break;
+                }
+                sum += FixChecksum.sumWord(word);
+                i += Long.BYTES;
+            }
+            while (i < end && bufferParam[i] != DELIMITER) {
+                sum += bufferParam[i] & 0xFF;
+                ++i;
+            }
+
+            if (tag == FixMessage.CHECKSUM_IDENTIFIER) {
+                this.checksumSum = sumBeforeField;
+                this.checksumIndex = this.fieldCount;
+            }
+            if (!routingOnlyParam || isRoutingTag(tag)) {
+                this.addField(tag, valueStart, i);
+            }
+
+            if (i < end) {
+                sum += DELIMITER;
+                ++i;
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Index @param message, copied into a buffer owned by the decoder
+     */
+    public FixDecoder wrap(final CharSequence message) throws FixMessageException {
+        final int messageLength = message.length();
+
+        if (this.scratch.length < messageLength) {
+            this.scratch = new byte[Math.max(messageLength, this.scratch.length * 2)];
+        }
+        for (int i = 0; i < messageLength; ++i) {
+            this.scratch[i] = (byte) message.charAt(i);
+        }
+
+        return this.wrap(this.scratch, 0, messageLength);
+    }
+
+    private void addField(final int tag, final int valueStart, final int valueEnd) {
+        if (this.fieldCount == this.tags.length) {
+            this.tags = Arrays.copyOf(this.tags, this.fieldCount * 2);
+            this.valueStarts = Arrays.copyOf(this.valueStarts, this.fieldCount * 2);
+            this.valueEnds = Arrays.copyOf(this.valueEnds, this.fieldCount * 2);
+        }
+
+        this.tags[this.fieldCount] = tag;
+        this.valueStarts[this.fieldCount] = valueStart;
+        this.valueEnds[this.fieldCount] = valueEnd;
+        ++this.fieldCount;
+    }
+
+    /**
+     * Index every field of a message wrapped with wrapRouting, once one beyond the routing fields is needed
+     */
+    private void indexAll() {
+        if (!this.routingOnly) {
+            return;
+        }
+        try {
+            this.index(this.buffer, this.offset, this.length, false);
+        } catch (FixMessageException e) {
+            /* Already scanned once without error */
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The position of the first field with @param tag, or -1
+     */
+    @Override
+    public int indexOf(final int tag) {
+        if (this.routingOnly && !isRoutingTag(tag)) {
+            this.indexAll();
+        }
+        for (int i = 0; i < this.fieldCount; ++i) {
+            if (this.tags[i] == tag) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    @Override
+    public boolean contains(final int tag) { return this.indexOf(tag) != -1; }
+
+    @Override
+    public String getString(final int tag) throws FixMessageException {
+        return this.getStringAt(this.requireIndex(tag, "String"));
+    }
+
+    /**
+     * @return The value of @param tag, or @param defaultValue if the message does not have it
+     */
+    @Override
+    public String getString(final int tag, final String defaultValue) {
+        final int index = this.indexOf(tag);
+
+        return index == -1 ? defaultValue : this.getStringAt(index);
+    }
+
+    @Override
+    public int getInt(final int tag) throws FixMessageException {
+        return this.getIntAt(this.requireIndex(tag, "Integer"));
+    }
+
+    @Override
+    public double getDouble(final int tag) throws FixMessageException {
+        return this.getDoubleAt(this.requireIndex(tag, "Double"));
+    }
+
+    @Override
+    public String getStringAt(final int index) {
+        return new String(this.buffer, this.valueStarts[index], this.valueEnds[index] - this.valueStarts[index],
+                StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public int getIntAt(final int index) throws FixMessageException {
+        int i = this.valueStarts[index];
+        final int end = this.valueEnds[index];
+        final boolean negative = i < end && this.buffer[i] == '-';
+        long value = 0;
+
+        if (negative) {
+            ++i;
+        }
+        if (i == end) {
+            throw new FixMessageException(String.format("Invalid integer for identifier `%d'.", this.tags[index]));
+        }
+        for (; i < end; ++i) {
+            final byte b = this.buffer[i];
+
+            if (b < '0' || b > '9' || value > Integer.MAX_VALUE) {
+                throw new FixMessageException(String.format("Invalid integer for identifier `%d'.",
+                        this.tags[index]));
+            }
+            value = value * 10 + (b - '0');
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new FixMessageException(String.format("Invalid integer for identifier `%d'.", this.tags[index]));
+        }
+
+        return (int) value;
+    }
+
+    /**
+     * Parse plain decimals exactly in place, and fall back to Double.parseDouble for anything longer or fancier
+     */
+    @Override
+    public double getDoubleAt(final int index) throws FixMessageException {
+        int i = this.valueStarts[index];
+        final int end = this.valueEnds[index];
+        final boolean negative = i < end && this.buffer[i] == '-';
+        long mantissa = 0;
+        int fractionDigits = -1;
+        int digits = 0;
+
+        if (negative) {
+            ++i;
+        }
+        for (; i < end; ++i) {
+            final byte b = this.buffer[i];
+
+            if (b == '.' && fractionDigits == -1) {
+                fractionDigits = 0;
+            } else if (b >= '0' && b <= '9' && mantissa < MAX_EXACT_MANTISSA / 10) {
+                mantissa = mantissa * 10 + (b - '0');
+                if (fractionDigits != -1) {
+                    ++fractionDigits;
+                }
+                ++digits;
+            } else {
+                return this.parseDoubleSlow(index);
+            }
+        }
+        if (digits == 0) {
+            throw new FixMessageException(String.format("Invalid double for identifier `%d'.", this.tags[index]));
+        }
+        /* Leading zeros of the fraction do not grow the mantissa, so they may outnumber the exact powers of ten */
+        if (fractionDigits >= POWERS_OF_TEN.length) {
+            return this.parseDoubleSlow(index);
+        }
+
+        final double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlow(final int index) throws FixMessageException {
+        try {
+            return Double.parseDouble(this.getStringAt(index));
+        } catch (NumberFormatException e) {
+            throw new FixMessageException(String.format("Invalid double for identifier `%d'.", this.tags[index]));
+        }
+    }
+
+    /**
+     * @return true if the value of @param tag contains @param text, without copying it
+     */
+    @Override
+    public boolean valueContains(final int tag, final String text) {
+        final int index = this.indexOf(tag);
+
+        if (index == -1) {
+            return false;
+        }
+
+        final int last = this.valueEnds[index] - text.length();
+        for (int start = this.valueStarts[index]; start <= last; ++start) {
+            int j = 0;
+
+            while (j < text.length() && this.buffer[start + j] == text.charAt(j)) {
+                ++j;
+            }
+            if (j == text.length()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return true if the value of @param tag is exactly @param text, without copying it
+     */
+    @Override
+    public boolean valueEquals(final int tag, final String text) {
+        final int index = this.indexOf(tag);
+
+        return index != -1 && this.valueEnds[index] - this.valueStarts[index] == text.length()
+                && this.valueContains(tag, text);
+    }
+
+    /**
+     * Compare the checksum field with the sum of every byte preceding it, computed while indexing
+     */
+    @Override
+    public boolean validateChecksum() throws FixMessageException {
+        return this.checksumSum != -1 && this.getInt(FixMessage.CHECKSUM_IDENTIFIER) == this.checksumSum % 256;
+    }
+
+    /**
+     * Rewrite the MsgSeqNum digits and the checksum in place, keeping the checksum valid if it was
+     */
+    @Override
+    public boolean setSeqNum(final long seqNum) {
+        final int index = this.indexOf(FixMessage.MSG_SEQ_NUM_IDENTIFIER);
+
+        if (index == -1 || this.getValueLength(index) != FixSeqNum.DIGITS || this.checksumIndex == -1
+                || this.getValueLength(this.checksumIndex) != 3) {
+            return false;
+        }
+
+        final int delta = FixSeqNum.rewrite(this.buffer, this.valueStarts[index],
+                this.valueStarts[this.checksumIndex], seqNum);
+        if (this.checksumSum != -1) {
+            this.checksumSum += delta;
+        }
+        return true;
+    }
+
+    private int requireIndex(final int tag, final String type) throws FixMessageException {
+        final int index = this.indexOf(tag);
+
+        if (index == -1) {
+            throw new FixMessageException(String.format("%s of identifier `%d' not found.", type, tag));
+        }
+        return index;
+    }
+
+    @Override
+    public int getFieldCount() {
+        this.indexAll();
+        return this.fieldCount;
+    }
+
+    @Override
+    public int getTagAt(final int index) { return this.tags[index]; }
+
+    @Override
+    public int getValueOffset(final int index) { return this.valueStarts[index]; }
+
+    @Override
+    public int getValueLength(final int index) { return this.valueEnds[index] - this.valueStarts[index]; }
+
+    @Override
+    public byte[] getBuffer() { return this.buffer; }
+
+    @Override
+    public int getOffset() { return this.offset; }
+
+    @Override
+    public int getLength() { return this.length; }
+
+    @Override
+    public boolean isBinary() { return false; }
+
+    @Override
+    public String toString() {
+        return this.buffer == null ? "" : new String(this.buffer, this.offset, this.length, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,297 @@
+package com.rmouduri.fixme;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reusable writer of Fix messages following a FixLayout, straight into a byte buffer and checksummed on the way.
+ * Messages without a layout, such as translated binary frames, are written field by field with putField.
+ * An encoder is not thread safe, and its buffer is only valid until the next begin.
+ */
+public final class FixEncoder implements FixMessageEncoder {
+    private static final byte[] HEADER = (FixMessage.FIX_IDENTIFIER + "=" + FixMessage.FIX_VERSION + "|")
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHECKSUM_PREFIX = (FixMessage.CHECKSUM_IDENTIFIER + "=")
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final int PRICE_SCALE = 1_000_000;
+    private static final int PRICE_DECIMALS = 6;
+    private static final double MAX_SCALED_PRICE = 9e12;
+
+    private byte[] buffer = new byte[512];
+    private int length;
+    private int checksum;
+    private FixLayout layout;
+    private int field;
+    /* Position of the MsgSeqNum digits, and of the checksum digits once finished, or -1 */
+    private int seqNumOffset;
+    private int checksumOffset;
+
+    /**
+     * Start a new message of @param layoutParam, values then being expected in the layout's order
+     */
+    @Override
+    public FixEncoder begin(final FixLayout layoutParam) {
+        this.layout = layoutParam;
+        this.length = 0;
+        this.checksum = 0;
+        this.field = 0;
+        this.seqNumOffset = -1;
+        this.checksumOffset = -1;
+        this.writeLiteral();
+
+        return this;
+    }
+
+    /**
+     * Start a new message without layout, its fields then being written with putField
+     */
+    public FixEncoder begin() {
+        this.layout = null;
+        this.length = 0;
+        this.checksum = 0;
+        this.field = 0;
+        this.seqNumOffset = -1;
+        this.checksumOffset = -1;
+        this.writeBytes(HEADER, 0, HEADER.length);
+
+        return this;
+    }
+
+    /**
+     * Write field @param tag with the @param valueLength bytes of @param value from @param valueOffset
+     */
+    public FixEncoder putField(final int tag, final byte[] value, final int valueOffset, final int valueLength) {
+        this.writeTag(tag);
+        this.writeBytes(value, valueOffset, valueLength);
+        this.writeByte('|');
+        return this;
+    }
+
+    public FixEncoder putField(final int tag, final long value) {
+        this.writeTag(tag);
+        this.writeLong(value);
+        this.writeByte('|');
+        return this;
+    }
+
+    /**
+     * Write field @param tag with the price of @param ticks millionths
+     */
+    public FixEncoder putPriceField(final int tag, final long ticks) {
+        this.writeTag(tag);
+        this.writeTicks(ticks);
+        this.writeByte('|');
+        return this;
+    }
+
+    @Override
+    public FixEncoder putString(final CharSequence value) {
+        this.checkField();
+        this.writeAscii(value);
+        return this.nextField();
+    }
+
+    @Override
+    public FixEncoder putInt(final int value) {
+        return this.putLong(value);
+    }
+
+    @Override
+    public FixEncoder putLong(final long value) {
+        this.checkField();
+        this.writeLong(value);
+        return this.nextField();
+    }
+
+    /**
+     * Write @param value with six decimals, as `%f' would
+     */
+    @Override
+    public FixEncoder putPrice(final double value) {
+        this.checkField();
+
+        if (!(Math.abs(value) < MAX_SCALED_PRICE)) {
+            this.writeAscii(String.format("%f", value));
+        } else {
+            final long scaled = Math.round(Math.abs(value) * PRICE_SCALE);
+
+            this.writeTicks(value < 0 ? -scaled : scaled);
+        }
+
+        return this.nextField();
+    }
+
+    /**
+     * Write the MsgSeqNum field with @param seqNum on FixSeqNum.DIGITS digits, once every field of the layout
+     * has been written, so setSeqNum can renumber the message in place
+     */
+    @Override
+    public FixEncoder putSeqNum(final long seqNum) {
+        if (this.layout != null && this.field != this.layout.getFieldCount()) {
+            throw new IllegalStateException("MsgSeqNum written before the fields of the layout.");
+        }
+
+        this.writeTag(FixMessage.MSG_SEQ_NUM_IDENTIFIER);
+        this.ensureCapacity(FixSeqNum.DIGITS);
+        this.seqNumOffset = this.length;
+        this.checksum += FixSeqNum.write(this.buffer, this.length, seqNum);
+        this.length += FixSeqNum.DIGITS;
+        this.writeByte('|');
+        return this;
+    }
+
+    @Override
+    public void setSeqNum(final long seqNum) {
+        if (this.seqNumOffset == -1 || this.checksumOffset == -1) {
+            throw new IllegalStateException("Message not finished with a MsgSeqNum.");
+        }
+        this.checksum += FixSeqNum.rewrite(this.buffer, this.seqNumOffset, this.checksumOffset, seqNum);
+    }
+
+    @Override
+    public boolean hasSeqNum() { return this.seqNumOffset != -1; }
+
+    /**
+     * Append the three digits checksum field once every field of the layout has been written
+     */
+    @Override
+    public FixEncoder finish() {
+        if (this.layout != null && this.field != this.layout.getFieldCount()) {
+            throw new IllegalStateException(String.format("Identifier `%d' missing when building message.",
+                    this.layout.getTag(this.field)));
+        }
+
+        final int sum = this.checksum % 256;
+        this.ensureCapacity(CHECKSUM_PREFIX.length + 3);
+        System.arraycopy(CHECKSUM_PREFIX, 0, this.buffer, this.length, CHECKSUM_PREFIX.length);
+        this.length += CHECKSUM_PREFIX.length;
+        this.checksumOffset = this.length;
+        this.buffer[this.length++] = (byte) ('0' + sum / 100);
+        this.buffer[this.length++] = (byte) ('0' + sum / 10 % 10);
+        this.buffer[this.length++] = (byte) ('0' + sum % 10);
+
+        return this;
+    }
+
+    private void checkField() {
+        if (this.layout == null) {
+            throw new IllegalStateException("Message begun without layout.");
+        }
+        if (this.field >= this.layout.getFieldCount()) {
+            throw new IllegalStateException("Too many values for the layout of this message.");
+        }
+    }
+
+    private FixEncoder nextField() {
+        ++this.field;
+        this.writeLiteral();
+        return this;
+    }
+
+    private void writeLiteral() {
+        final byte[] literal = this.layout.getLiteral(this.field);
+
+        this.ensureCapacity(literal.length);
+        System.arraycopy(literal, 0, this.buffer, this.length, literal.length);
+        this.length += literal.length;
+        this.checksum += this.layout.getLiteralSum(this.field);
+    }
+
+    private void writeTag(final int tag) {
+        this.writeLong(tag);
+        this.writeByte('=');
+    }
+
+    /**
+     * Write the price of @param ticks millionths with six decimals
+     */
+    private void writeTicks(final long ticks) {
+        long scaled = Math.abs(ticks);
+
+        if (ticks < 0) {
+            this.writeByte('-');
+        }
+        this.writeLong(scaled / PRICE_SCALE);
+        this.writeByte('.');
+
+        scaled %= PRICE_SCALE;
+        this.ensureCapacity(PRICE_DECIMALS);
+        for (int i = this.length + PRICE_DECIMALS - 1; i >= this.length; --i) {
+            this.buffer[i] = (byte) ('0' + scaled % 10);
+            this.checksum += this.buffer[i];
+            scaled /= 10;
+        }
+        this.length += PRICE_DECIMALS;
+    }
+
+    private void writeBytes(final byte[] bytes, final int bytesOffset, final int bytesLength) {
+        this.ensureCapacity(bytesLength);
+        System.arraycopy(bytes, bytesOffset, this.buffer, this.length, bytesLength);
+        this.checksum += FixChecksum.sum(bytes, bytesOffset, bytesLength);
+        this.length += bytesLength;
+    }
+
+    private void writeAscii(final CharSequence value) {
+        final int valueLength = value.length();
+
+        this.ensureCapacity(valueLength);
+        for (int i = 0; i < valueLength; ++i) {
+            final byte b = (byte) value.charAt(i);
+
+            this.buffer[this.length++] = b;
+            this.checksum += b & 0xFF;
+        }
+    }
+
+    private void writeLong(final long value) {
+        if (value == Long.MIN_VALUE) {
+            this.writeAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            this.writeByte('-');
+        }
+
+        long remaining = Math.abs(value);
+        int digits = 1;
+        for (long bound = 10; bound <= remaining && digits < 19; bound *= 10) {
+            ++digits;
+        }
+
+        this.ensureCapacity(digits);
+        for (int i = this.length + digits - 1; i >= this.length; --i) {
+            this.buffer[i] = (byte) ('0' + remaining % 10);
+            this.checksum += this.buffer[i];
+            remaining /= 10;
+        }
+        this.length += digits;
+    }
+
+    private void writeByte(final char c) {
+        this.ensureCapacity(1);
+        this.buffer[this.length++] = (byte) c;
+        this.checksum += c;
+    }
+
+    private void ensureCapacity(final int extra) {
+        if (this.length + extra > this.buffer.length) {
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.length + extra, this.buffer.length * 2));
+        }
+    }
+
+    @Override
+    public byte[] getBuffer() { return this.buffer; }
+
+    @Override
+    public int getLength() { return this.length; }
+
+    @Override
+    public boolean isBinary() { return false; }
+
+    public int getChecksum() { return this.checksum % 256; }
+
+    @Override
+    public String toString() {
+        return new String(this.buffer, 0, this.length, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,73 @@
+package com.rmouduri.fixme;
+
+/**
+ * Read access to the fields of a decoded Fix message, whatever its wire encoding
+ */
+public interface FixFields {
+    /**
+     * @return The position of the first field with @param tag, or -1
+     */
+    int indexOf(final int tag);
+
+    default boolean contains(final int tag) { return this.indexOf(tag) != -1; }
+
+    String getString(final int tag) throws FixMessageException;
+
+    /**
+     * @return The value of @param tag, or @param defaultValue if the message does not have it
+     */
+    String getString(final int tag, final String defaultValue);
+
+    int getInt(final int tag) throws FixMessageException;
+
+    double getDouble(final int tag) throws FixMessageException;
+
+    String getStringAt(final int index);
+
+    int getIntAt(final int index) throws FixMessageException;
+
+    double getDoubleAt(final int index) throws FixMessageException;
+
+    /**
+     * @return true if the value of @param tag contains @param text, without copying it
+     */
+    boolean valueContains(final int tag, final String text);
+
+    /**
+     * @return true if the value of @param tag is exactly @param text, without copying it
+     */
+    boolean valueEquals(final int tag, final String text);
+
+    boolean validateChecksum() throws FixMessageException;
+
+    /**
+     * Renumber the message in place with @param seqNum, so it can be forwarded without being encoded again
+     * @return false if the message has no MsgSeqNum of the fixed width of FixSeqNum to rewrite
+     */
+    boolean setSeqNum(final long seqNum);
+
+    int getFieldCount();
+
+    int getTagAt(final int index);
+
+    /**
+     * @return The position in getBuffer() of the encoded value at @param index
+     */
+    int getValueOffset(final int index);
+
+    int getValueLength(final int index);
+
+    /**
+     * @return The buffer holding the whole message as received, from getOffset() for getLength() bytes
+     */
+    byte[] getBuffer();
+
+    int getOffset();
+
+    int getLength();
+
+    /**
+     * @return true if the message is a length-prefixed binary frame rather than `tag=value|' text
+     */
+    boolean isBinary();
+}
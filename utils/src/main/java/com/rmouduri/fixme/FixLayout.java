@@ -0,0 +1,140 @@
+package com.rmouduri.fixme;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Precompiled field order of a kind of Fix message, with every `tag=' prefix and constant field already encoded
+ */
+public final class FixLayout {
+    public static final FixLayout LOGON = new FixLayout(FixMessage.LOGON_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
+            FixMessage.USERID_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER);
+    public static final FixLayout REJECT = new FixLayout(FixMessage.REJECTED_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
+            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEXT_IDENTIFIER);
+    public static final FixLayout EXECUTION = new FixLayout(FixMessage.EXECUTED_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
+            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEXT_IDENTIFIER);
+    public static final FixLayout NEW_ORDER = new FixLayout(null,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.ORDER_TYPE_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
+            FixMessage.INSTRUMENT_IDENTIFIER, FixMessage.QUANTITY_IDENTIFIER, FixMessage.PRICE_IDENTIFIER,
+            FixMessage.CLORDID_IDENTIFIER);
+    /* Quotes of an instrument published by a Market, and a Broker's subscription to them */
+    public static final FixLayout MARKET_DATA = new FixLayout(FixMessage.MARKET_DATA_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.INSTRUMENT_IDENTIFIER,
+            FixMessage.PRICE_IDENTIFIER, FixMessage.QUANTITY_IDENTIFIER,
+            FixMessage.BID_PRICE_IDENTIFIER, FixMessage.BID_SIZE_IDENTIFIER,
+            FixMessage.ASK_PRICE_IDENTIFIER, FixMessage.ASK_SIZE_IDENTIFIER);
+    public static final FixLayout MARKET_DATA_REQUEST = new FixLayout(FixMessage.MARKET_DATA_REQUEST_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER,
+            FixMessage.INSTRUMENT_IDENTIFIER, FixMessage.SUBSCRIPTION_TYPE_IDENTIFIER);
+    /* Logon asking for a wire encoding, and the Router's answer granting it */
+    public static final FixLayout LOGON_REQUEST = new FixLayout(FixMessage.LOGON_MSG_TYPE,
+            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.USERID_IDENTIFIER, FixMessage.ENCODING_IDENTIFIER);
+    public static final FixLayout ENCODED_LOGON = new FixLayout(FixMessage.LOGON_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
+            FixMessage.USERID_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.ENCODING_IDENTIFIER);
+    /* Logon of a session coming back, with the last MsgSeqNum it processed for the Router to resend the next ones */
+    public static final FixLayout SEQUENCED_LOGON = new FixLayout(FixMessage.LOGON_MSG_TYPE,
+            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.USERID_IDENTIFIER, FixMessage.ENCODING_IDENTIFIER,
+            FixMessage.LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER);
+    /* Session messages recovering the messages a side missed, from BeginSeqNo on */
+    public static final FixLayout RESEND_REQUEST = new FixLayout(FixMessage.RESEND_REQUEST_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER,
+            FixMessage.BEGIN_SEQ_NO_IDENTIFIER, FixMessage.END_SEQ_NO_IDENTIFIER);
+    public static final FixLayout SEQUENCE_RESET = new FixLayout(FixMessage.SEQUENCE_RESET_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER,
+            FixMessage.GAP_FILL_IDENTIFIER, FixMessage.NEW_SEQ_NO_IDENTIFIER);
+    /* Heartbeat of an idle side, and TestRequest asking the peer for a Heartbeat echoing its TestReqID */
+    public static final FixLayout HEARTBEAT = new FixLayout(FixMessage.HEARTBEAT_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER);
+    public static final FixLayout TEST_REQUEST = new FixLayout(FixMessage.TEST_REQUEST_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER,
+            FixMessage.TEST_REQ_ID_IDENTIFIER);
+    public static final FixLayout TEST_HEARTBEAT = new FixLayout(FixMessage.HEARTBEAT_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER,
+            FixMessage.TEST_REQ_ID_IDENTIFIER);
+    /* Logout moving a session to the Router node owning its id */
+    public static final FixLayout REDIRECT = new FixLayout(FixMessage.LOGOUT_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
+            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.TEXT_IDENTIFIER, FixMessage.REDIRECT_IDENTIFIER);
+    /* Logon exchanged by the nodes of a Router cluster on the links between them */
+    public static final FixLayout ROUTER_LOGON = new FixLayout(FixMessage.LOGON_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.MSG_TYPE_IDENTIFIER,
+            FixMessage.BROKER_ADDRESS_IDENTIFIER, FixMessage.MARKET_ADDRESS_IDENTIFIER);
+    /* Reports about an order, echoing its ClOrdID */
+    public static final FixLayout ORDER_REJECT = new FixLayout(FixMessage.REJECTED_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
+            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.CLORDID_IDENTIFIER, FixMessage.TEXT_IDENTIFIER);
+    public static final FixLayout ORDER_EXECUTION = new FixLayout(FixMessage.EXECUTED_MSG_TYPE,
+            FixMessage.SENDER_IDENTIFIER, FixMessage.DEST_IDENTIFIER,
+            FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.CLORDID_IDENTIFIER, FixMessage.TEXT_IDENTIFIER);
+
+    private static final String HEADER = FixMessage.FIX_IDENTIFIER + "=" + FixMessage.FIX_VERSION + "|";
+
+    private final String msgType;
+    private final int[] tags;
+    private final byte[][] literals;
+    private final int[] literalSums;
+
+    /**
+     * @param msgType Value written for MSG_TYPE_IDENTIFIER, which is then not expected from the encoder
+     * @param identifiers Identifiers in the order they are written, without FIX_IDENTIFIER and CHECKSUM_IDENTIFIER
+     */
+    public FixLayout(final String msgType, final int... identifiers) {
+        this.msgType = msgType;
+
+        int variableFields = 0;
+        for (final int id : identifiers) {
+            if (id != FixMessage.MSG_TYPE_IDENTIFIER || msgType == null) {
+                ++variableFields;
+            }
+        }
+
+        this.tags = new int[variableFields];
+        this.literals = new byte[variableFields + 1][];
+        this.literalSums = new int[variableFields + 1];
+
+        /* Everything between two variable values is a literal: the previous delimiter, constants, the next tag */
+        StringBuilder literal = new StringBuilder(HEADER);
+        int field = 0;
+        for (final int id : identifiers) {
+            if (id == FixMessage.MSG_TYPE_IDENTIFIER && msgType != null) {
+                literal.append(id).append('=').append(msgType).append('|');
+            } else {
+                literal.append(id).append('=');
+                this.setLiteral(field, literal);
+                this.tags[field++] = id;
+                literal = new StringBuilder("|");
+            }
+        }
+        this.setLiteral(field, literal);
+    }
+
+    private void setLiteral(final int index, final CharSequence literal) {
+        final byte[] bytes = literal.toString().getBytes(StandardCharsets.US_ASCII);
+        int sum = 0;
+
+        for (final byte b : bytes) {
+            sum += b;
+        }
+        this.literals[index] = bytes;
+        this.literalSums[index] = sum;
+    }
+
+    /**
+     * @return The constant MSG_TYPE_IDENTIFIER value of the layout, or null if it has none
+     */
+    public String getMsgType() { return this.msgType; }
+
+    public int getFieldCount() { return this.tags.length; }
+
+    public int getTag(final int field) { return this.tags[field]; }
+
+    /**
+     * @return The bytes written before the value of @param field, or before the checksum field for the last one
+     */
+    byte[] getLiteral(final int field) { return this.literals[field]; }
+
+    int getLiteralSum(final int field) { return this.literalSums[field]; }
+}
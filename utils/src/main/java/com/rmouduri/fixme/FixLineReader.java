@@ -0,0 +1,138 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Reads `\n' terminated messages from a stream into one reusable buffer, without allocating per line.
+ * Once switched to binary, it reads length-prefixed FixBinaryEncoder frames instead.
+ */
+public class FixLineReader {
+    private static final int INITIAL_CAPACITY = 8192;
+    private static final int MAX_LINE_LENGTH = 1 << 20;
+
+    private final InputStream in;
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int start;
+    private int end;
+    private int lineStart;
+    private int lineLength;
+    private boolean binary;
+
+    public FixLineReader(final InputStream inParam) {
+        this.in = inParam;
+    }
+
+    /**
+     * Move to the next line, available through getBuffer(), getOffset() and getLength() until the next call
+     * @return false once the stream ended
+     */
+    public boolean next() throws IOException {
+        if (this.binary) {
+            return this.nextFrame();
+        }
+
+        int scanned = this.start;
+
+        while (true) {
+            for (; scanned < this.end; ++scanned) {
+                if (this.buffer[scanned] == '\n') {
+                    this.lineStart = this.start;
+                    this.lineLength = (scanned > this.start && this.buffer[scanned - 1] == '\r' ? scanned - 1 : scanned)
+                            - this.start;
+                    this.start = scanned + 1;
+                    return true;
+                }
+            }
+
+            if (this.start > 0) {
+                System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+                scanned -= this.start;
+                this.end -= this.start;
+                this.start = 0;
+            }
+            if (this.end == this.buffer.length) {
+                if (this.buffer.length >= MAX_LINE_LENGTH) {
+                    throw new IOException("Message exceeds " + MAX_LINE_LENGTH + " bytes");
+                }
+                this.buffer = Arrays.copyOf(this.buffer, this.buffer.length * 2);
+            }
+
+            final int read = this.in.read(this.buffer, this.end, this.buffer.length - this.end);
+            if (read == -1) {
+                if (this.start == this.end) {
+                    return false;
+                }
+                this.lineStart = this.start;
+                this.lineLength = this.end - this.start;
+                this.start = this.end;
+                return true;
+            }
+            this.end += read;
+        }
+    }
+
+    /**
+     * Move to the next binary frame, length prefix included
+     */
+    private boolean nextFrame() throws IOException {
+        while (true) {
+            final int available = this.end - this.start;
+            int frameLength = FixBinaryEncoder.HEADER_LENGTH;
+
+            if (available >= FixBinaryEncoder.LENGTH_PREFIX) {
+                frameLength = FixBinaryEncoder.getFrameLength(this.buffer, this.start);
+                if (frameLength < FixBinaryEncoder.HEADER_LENGTH || frameLength > MAX_LINE_LENGTH) {
+                    throw new IOException("Invalid binary frame length " + frameLength);
+                }
+                if (available >= frameLength) {
+                    this.lineStart = this.start;
+                    this.lineLength = frameLength;
+                    this.start += frameLength;
+                    return true;
+                }
+            }
+
+            if (this.start > 0) {
+                System.arraycopy(this.buffer, this.start, this.buffer, 0, available);
+                this.end = available;
+                this.start = 0;
+            }
+            if (frameLength > this.buffer.length) {
+                this.buffer = Arrays.copyOf(this.buffer, Math.max(frameLength, this.buffer.length * 2));
+            }
+
+            final int read = this.in.read(this.buffer, this.end, this.buffer.length - this.end);
+            if (read == -1) {
+                if (this.start == this.end) {
+                    return false;
+                }
+                throw new IOException("Stream ended inside a binary frame");
+            }
+            this.end += read;
+        }
+    }
+
+    /**
+     * Read length-prefixed binary frames from now on if @param binaryParam, or `\n' terminated lines
+     */
+    public void setBinary(final boolean binaryParam) { this.binary = binaryParam; }
+
+    public boolean isBinary() { return this.binary; }
+
+    /**
+     * @return The next line as a String, or null once the stream ended
+     */
+    public String readLine() throws IOException {
+        return this.next() ? new String(this.buffer, this.lineStart, this.lineLength,
+                StandardCharsets.US_ASCII) : null;
+    }
+
+    public byte[] getBuffer() { return this.buffer; }
+
+    public int getOffset() { return this.lineStart; }
+
+    public int getLength() { return this.lineLength; }
+}
@@ -1,10 +1,11 @@
 package com.rmouduri.fixme;
 
-import java.util.*;
+import java.util.LinkedHashSet;
 
 public class FixMessage {
     private static final char DELIMITER = '|';
-    private static final String EQUAL = "=";
+
+    public static final String FIX_VERSION = "FIX.4.2";
 
     public static final int FIX_IDENTIFIER = 8;
     public static final int SENDER_IDENTIFIER = 49;
@@ -18,11 +19,47 @@ public class FixMessage {
     public static final int USERID_IDENTIFIER = 553;
     public static final int ORDER_TYPE_IDENTIFIER = 54;
     public static final int TEXT_IDENTIFIER = 58;
+    public static final int CLORDID_IDENTIFIER = 11;
+    public static final int POSS_DUP_IDENTIFIER = 43;
+    public static final int MSG_SEQ_NUM_IDENTIFIER = 34;
+    public static final int BEGIN_SEQ_NO_IDENTIFIER = 7;
+    public static final int END_SEQ_NO_IDENTIFIER = 16;
+    public static final int NEW_SEQ_NO_IDENTIFIER = 36;
+    public static final int GAP_FILL_IDENTIFIER = 123;
+    public static final int LAST_MSG_SEQ_NUM_PROCESSED_IDENTIFIER = 369;
+    public static final int TEST_REQ_ID_IDENTIFIER = 112;
+    public static final int BID_PRICE_IDENTIFIER = 132;
+    public static final int ASK_PRICE_IDENTIFIER = 133;
+    public static final int BID_SIZE_IDENTIFIER = 134;
+    public static final int ASK_SIZE_IDENTIFIER = 135;
+    public static final int SUBSCRIPTION_TYPE_IDENTIFIER = 263;
+    /* User defined: wire encoding requested in a Logon, and granted in the Router's answer */
+    public static final int ENCODING_IDENTIFIER = 9001;
+    /* User defined: addresses a clustered Router serves Brokers and Markets on, and the one a session must move to */
+    public static final int BROKER_ADDRESS_IDENTIFIER = 9002;
+    public static final int MARKET_ADDRESS_IDENTIFIER = 9003;
+    public static final int REDIRECT_IDENTIFIER = 9004;
 
     public static final String LOGON_MSG_TYPE = "A";
     public static final String LOGOUT_MSG_TYPE = "5";
     public static final String REJECTED_MSG_TYPE = "3";
     public static final String EXECUTED_MSG_TYPE = "8";
+    public static final String MARKET_DATA_REQUEST_MSG_TYPE = "V";
+    public static final String MARKET_DATA_MSG_TYPE = "X";
+    public static final String RESEND_REQUEST_MSG_TYPE = "2";
+    public static final String SEQUENCE_RESET_MSG_TYPE = "4";
+    public static final String HEARTBEAT_MSG_TYPE = "0";
+    public static final String TEST_REQUEST_MSG_TYPE = "1";
+
+    public static final String SUBSCRIBE = "1";
+    public static final String UNSUBSCRIBE = "2";
+
+    public static final String TEXT_ENCODING = "T";
+    public static final String BINARY_ENCODING = "B";
+
+    public static final String POSS_DUP = "Y";
+    public static final String GAP_FILL = "Y";
+    public static final String RESET = "N";
 
     public static final int BUY_ORDER = 1;
     public static final int SELL_ORDER = 2;
@@ -35,10 +72,12 @@ public class FixMessage {
     private String msgType;
     private String userId;
     private String text;
+    private String clOrdId;
 
     private int quantity;
     private int orderType;
     private int checksum;
+    private long msgSeqNum;
 
     private double price;
 
@@ -48,14 +87,17 @@ public class FixMessage {
      * @throws FixMessageException
      */
     public FixMessage(final String messageParam) throws FixMessageException {
-        this.message = messageParam;
-
-        final Set<Integer> identifiers = new LinkedHashSet<>();
-        for (final String s : this.message.split("\\" + DELIMITER)) {
-            identifiers.add(Integer.parseInt(s.split(EQUAL)[0]));
-        }
+        this(new FixDecoder().wrap(messageParam));
+    }
 
-        this.extract(identifiers);
+    /**
+     * A Class with every component of the Fix Message currently held by @param decoder
+     * @param decoder
+     * @throws FixMessageException
+     */
+    public FixMessage(final FixDecoder decoder) throws FixMessageException {
+        this.message = decoder.toString();
+        this.extract(decoder);
     }
 
     /**
@@ -63,44 +105,52 @@ public class FixMessage {
      */
     public FixMessage() {
         this.message = null;
-        this.setFixIdentifier("FIX.4.2");
+        this.setFixIdentifier(FIX_VERSION);
     }
 
-    private void extract(final Set<Integer> identifiers) throws FixMessageException {
-        for (int id : identifiers) {
+    private void extract(final FixDecoder decoder) throws FixMessageException {
+        for (int i = 0; i < decoder.getFieldCount(); ++i) {
+            final int id = decoder.getTagAt(i);
+
             switch (id) {
                 case FIX_IDENTIFIER:
-                    this.setFixIdentifier(this.extractString(FIX_IDENTIFIER));
+                    this.setFixIdentifier(decoder.getStringAt(i));
                     break;
                 case SENDER_IDENTIFIER:
-                    this.setSenderId(this.extractString(SENDER_IDENTIFIER));
+                    this.setSenderId(decoder.getStringAt(i));
                     break;
                 case DEST_IDENTIFIER:
-                    this.setDestId(this.extractString(DEST_IDENTIFIER));
+                    this.setDestId(decoder.getStringAt(i));
                     break;
                 case QUANTITY_IDENTIFIER:
-                    this.setQuantity(this.extractInteger(QUANTITY_IDENTIFIER));
+                    this.setQuantity(decoder.getIntAt(i));
                     break;
                 case CHECKSUM_IDENTIFIER:
-                    this.setChecksum(this.extractInteger(CHECKSUM_IDENTIFIER));
+                    this.setChecksum(decoder.getIntAt(i));
                     break;
                 case USERID_IDENTIFIER:
-                    this.setUserId(this.extractString(USERID_IDENTIFIER));
+                    this.setUserId(decoder.getStringAt(i));
                     break;
                 case ORDER_TYPE_IDENTIFIER:
-                    this.setOrderType(this.extractInteger(ORDER_TYPE_IDENTIFIER));
+                    this.setOrderType(decoder.getIntAt(i));
                     break;
                 case INSTRUMENT_IDENTIFIER:
-                    this.setInstrument(this.extractString(INSTRUMENT_IDENTIFIER));
+                    this.setInstrument(decoder.getStringAt(i));
                     break;
                 case MSG_TYPE_IDENTIFIER:
-                    this.setMsgType(this.extractString(MSG_TYPE_IDENTIFIER));
+                    this.setMsgType(decoder.getStringAt(i));
                     break;
                 case PRICE_IDENTIFIER:
-                    this.setPrice(this.extractDouble(PRICE_IDENTIFIER));
+                    this.setPrice(decoder.getDoubleAt(i));
                     break;
                 case TEXT_IDENTIFIER:
-                    this.setText(this.extractString(TEXT_IDENTIFIER));
+                    this.setText(decoder.getStringAt(i));
+                    break;
+                case CLORDID_IDENTIFIER:
+                    this.setClOrdId(decoder.getStringAt(i));
+                    break;
+                case MSG_SEQ_NUM_IDENTIFIER:
+                    this.setMsgSeqNum(decoder.getIntAt(i));
                     break;
                 default:
                     throw new FixMessageException(String.format("Unknown identifier `%d'.", id));
@@ -108,121 +158,55 @@ public class FixMessage {
         }
     }
 
-    private int extractInteger(final int identifier) throws FixMessageException {
-        final String[] splitMessage = this.message.split("\\" + DELIMITER);
-        int ret;
-
-        for (String s : splitMessage) {
-            if (Integer.parseInt(s.split(EQUAL)[0]) == identifier) {
-                ret = Integer.parseInt(s.split(EQUAL)[1]);
-
-                return ret;
-            }
-        }
-
-        throw new FixMessageException(String.format("Integer of identifier `%d' not found.", identifier));
-    }
-
-    private double extractDouble(final int identifier) throws FixMessageException {
-        final String[] splitMessage = this.message.split("\\" + DELIMITER);
-        double ret;
-
-        for (String s : splitMessage) {
-            if (Integer.parseInt(s.split(EQUAL)[0]) == identifier) {
-                ret = Double.parseDouble(s.split(EQUAL)[1]);
-
-                return ret;
-            }
-        }
-
-        throw new FixMessageException(String.format("Double of identifier `%d' not found.", identifier));
-    }
-
-    private String extractString(final int identifier) throws FixMessageException {
-        final String[] splitMessage = this.message.split("\\" + DELIMITER);
-        String ret;
-
-        for (String s : splitMessage) {
-            if (Integer.parseInt(s.split(EQUAL)[0]) == identifier) {
-                ret = s.split(EQUAL)[1];
-
-                return ret;
-            }
-        }
-
-        throw new FixMessageException(String.format("String of identifier `%d' not found.", identifier));
-    }
-
     /**
      * Build the message with the identifiers given in @param identifiers
      * @param identifiers
      */
     public String buildMessage(final LinkedHashSet<Integer> identifiers) throws FixMessageException {
-        final StringBuilder message = new StringBuilder();
-
         identifiers.remove(FIX_IDENTIFIER);
         identifiers.remove(CHECKSUM_IDENTIFIER);
 
-        message.append(String.format("%d=%s%c", FIX_IDENTIFIER, this.fixVersion, DELIMITER));
+        return this.buildMessage(new FixLayout(null, identifiers.stream().mapToInt(Integer::intValue).toArray()));
+    }
+
+    /**
+     * Build the message with the identifiers of @param layout, in its order
+     * @param layout
+     */
+    public String buildMessage(final FixLayout layout) throws FixMessageException {
+        final FixEncoder encoder = new FixEncoder().begin(layout);
+
+        for (int field = 0; field < layout.getFieldCount(); ++field) {
+            final int id = layout.getTag(field);
 
-        for (int id : identifiers) {
             switch (id) {
-                case SENDER_IDENTIFIER:
-                    message.append(String.format("%d=%s%c", SENDER_IDENTIFIER, this.getSenderId(), DELIMITER));
-                    break;
-                case DEST_IDENTIFIER:
-                    message.append(String.format("%d=%s%c", DEST_IDENTIFIER, this.getDestId(), DELIMITER));
-                    break;
-                case USERID_IDENTIFIER:
-                    message.append(String.format("%d=%s%c", USERID_IDENTIFIER, this.getUserId(), DELIMITER));
-                    break;
-                case INSTRUMENT_IDENTIFIER:
-                    message.append(String.format("%d=%s%c", INSTRUMENT_IDENTIFIER, this.getInstrument(), DELIMITER));
-                    break;
-                case MSG_TYPE_IDENTIFIER:
-                    message.append(String.format("%d=%s%c", MSG_TYPE_IDENTIFIER, this.getMsgType(), DELIMITER));
-                    break;
-                case TEXT_IDENTIFIER:
-                    message.append(String.format("%d=%s%c", TEXT_IDENTIFIER, this.getText(), DELIMITER));
-                    break;
-                case QUANTITY_IDENTIFIER:
-                    message.append(String.format("%d=%d%c", QUANTITY_IDENTIFIER, this.getQuantity(), DELIMITER));
-                    break;
-                case ORDER_TYPE_IDENTIFIER:
-                    message.append(String.format("%d=%d%c", ORDER_TYPE_IDENTIFIER, this.getOrderType(), DELIMITER));
-                    break;
-                case PRICE_IDENTIFIER:
-                    message.append(String.format("%d=%f%c", PRICE_IDENTIFIER, this.getPrice(), DELIMITER));
-                    break;
-                default:
-                    throw new FixMessageException(String.format("Unknown identifier `%d' when building message.", id));
+                case SENDER_IDENTIFIER -> encoder.putString(this.getSenderId());
+                case DEST_IDENTIFIER -> encoder.putString(this.getDestId());
+                case USERID_IDENTIFIER -> encoder.putString(this.getUserId());
+                case INSTRUMENT_IDENTIFIER -> encoder.putString(this.getInstrument());
+                case MSG_TYPE_IDENTIFIER -> encoder.putString(this.getMsgType());
+                case TEXT_IDENTIFIER -> encoder.putString(this.getText());
+                case CLORDID_IDENTIFIER -> encoder.putString(this.getClOrdId());
+                case QUANTITY_IDENTIFIER -> encoder.putInt(this.getQuantity());
+                case ORDER_TYPE_IDENTIFIER -> encoder.putInt(this.getOrderType());
+                case PRICE_IDENTIFIER -> encoder.putPrice(this.getPrice());
+                case MSG_SEQ_NUM_IDENTIFIER -> encoder.putLong(this.getMsgSeqNum());
+                default -> throw new FixMessageException(
+                        String.format("Unknown identifier `%d' when building message.", id));
             }
         }
 
-        int checksum = 0;
-        for (char c : message.toString().toCharArray()) {
-            checksum += c;
-        }
-
-        checksum %= 256;
-        this.setChecksum(checksum);
-        message.append(String.format("%d=%d", CHECKSUM_IDENTIFIER, this.getChecksum()));
-
-        this.setMessage(message.toString());
+        encoder.finish();
+        this.setChecksum(encoder.getChecksum());
+        this.setMessage(encoder.toString());
         return this.getMessage();
     }
 
+    /**
+     * Check the checksum field ending the message against the characters before it, read in place
+     */
     public boolean validateChecksum() {
-        int checksum = 0;
-        final String message = this.message.split("10=")[0];
-
-        for (char c : message.toCharArray()) {
-            checksum += c;
-        }
-
-        checksum %= 256;
-
-        return this.checksum == checksum;
+        return this.message != null && FixChecksum.validate(this.message);
     }
 
     // Getters
@@ -287,4 +271,12 @@ public class FixMessage {
     public void setText(String text) {
         this.text = text;
     }
-}
\ No newline at end of file
+
+    public String getClOrdId() { return this.clOrdId; }
+
+    public void setClOrdId(final String clOrdIdParam) { this.clOrdId = clOrdIdParam; }
+
+    public long getMsgSeqNum() { return this.msgSeqNum; }
+
+    public void setMsgSeqNum(final long msgSeqNumParam) { this.msgSeqNum = msgSeqNumParam; }
+}
@@ -0,0 +1,48 @@
+package com.rmouduri.fixme;
+
+/**
+ * Writer of Fix messages following a FixLayout, whatever its wire encoding.
+ * The message is getLength() bytes of getBuffer(), valid until the next begin.
+ */
+public interface FixMessageEncoder {
+    /**
+     * Start a new message of @param layout, values then being expected in the layout's order
+     */
+    FixMessageEncoder begin(final FixLayout layout);
+
+    FixMessageEncoder putString(final CharSequence value);
+
+    FixMessageEncoder putInt(final int value);
+
+    FixMessageEncoder putLong(final long value);
+
+    FixMessageEncoder putPrice(final double value);
+
+    /**
+     * Write the MsgSeqNum of the message, @param seqNum or 0 for setSeqNum to number it once finished,
+     * after every field of the layout and before finish
+     */
+    FixMessageEncoder putSeqNum(final long seqNum);
+
+    /**
+     * Complete the message once every field of the layout has been written
+     */
+    FixMessageEncoder finish();
+
+    /**
+     * Renumber the finished message in place with @param seqNum, e.g. when it is written to the session
+     * @throws IllegalStateException if the message was built without putSeqNum
+     */
+    void setSeqNum(final long seqNum);
+
+    boolean hasSeqNum();
+
+    byte[] getBuffer();
+
+    int getLength();
+
+    /**
+     * @return true if messages are length-prefixed binary frames, sent without a line ending
+     */
+    boolean isBinary();
+}
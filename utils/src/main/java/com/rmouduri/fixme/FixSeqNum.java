@@ -0,0 +1,59 @@
+package com.rmouduri.fixme;
+
+/**
+ * MsgSeqNum values of text messages, always written with DIGITS digits so a message can be renumbered in place:
+ * only those digits and the checksum change, every other byte and the length of the message staying the same.
+ */
+public final class FixSeqNum {
+    public static final int DIGITS = 9;
+    public static final long MAX = 999_999_999L;
+    private static final int CHECKSUM_DIGITS = 3;
+
+    private FixSeqNum() {
+    }
+
+    /**
+     * Write @param seqNum as DIGITS digits at @param offset of @param buffer.
+     * A SessionSequence resets to 1 before passing MAX, so a number out of range is a bug of the caller.
+     * @return The sum of the digits written, for the checksum
+     */
+    static int write(final byte[] buffer, final int offset, final long seqNum) {
+        if (seqNum < 0 || seqNum > MAX) {
+            throw new IllegalArgumentException(String.format("MsgSeqNum `%d' out of range.", seqNum));
+        }
+
+        long remaining = seqNum;
+        int sum = 0;
+        for (int i = offset + DIGITS - 1; i >= offset; --i) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            sum += buffer[i];
+            remaining /= 10;
+        }
+        return sum;
+    }
+
+    /**
+     * Renumber with @param seqNum the message of @param buffer whose MsgSeqNum digits start at @param offset,
+     * and fix its three checksum digits starting at @param checksumOffset
+     * @return The change of the sum of the message's bytes
+     */
+    static int rewrite(final byte[] buffer, final int offset, final int checksumOffset, final long seqNum) {
+        int delta = 0;
+
+        for (int i = offset; i < offset + DIGITS; ++i) {
+            delta -= buffer[i];
+        }
+        delta += write(buffer, offset, seqNum);
+
+        int checksum = 0;
+        for (int i = checksumOffset; i < checksumOffset + CHECKSUM_DIGITS; ++i) {
+            checksum = checksum * 10 + buffer[i] - '0';
+        }
+        checksum = Math.floorMod(checksum + delta, 256);
+        buffer[checksumOffset] = (byte) ('0' + checksum / 100);
+        buffer[checksumOffset + 1] = (byte) ('0' + checksum / 10 % 10);
+        buffer[checksumOffset + 2] = (byte) ('0' + checksum % 10);
+
+        return delta;
+    }
+}
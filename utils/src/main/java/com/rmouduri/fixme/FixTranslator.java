@@ -0,0 +1,108 @@
+package com.rmouduri.fixme;
+
+/**
+ * Converts messages between the text and binary wire encodings, field by field and without allocating,
+ * for the Router to serve sessions which did not choose the same encoding
+ */
+public final class FixTranslator {
+    private FixTranslator() {
+    }
+
+    /**
+     * Write @param text into @param binary as a binary frame, its MsgSeqNum, or 0, moved to the header so the
+     * frame can be renumbered. Numeric values that do not parse are kept as BYTES.
+     */
+    public static FixBinaryEncoder toBinary(final FixFields text, final FixBinaryEncoder binary) {
+        final int msgType = text.indexOf(FixMessage.MSG_TYPE_IDENTIFIER);
+
+        binary.begin(msgType == -1 || text.getValueLength(msgType) == 0 ? 0
+                : text.getBuffer()[text.getValueOffset(msgType)]);
+        binary.putSeqNum(0);
+
+        for (int i = 0; i < text.getFieldCount(); ++i) {
+            final int tag = text.getTagAt(i);
+
+            if (tag == FixMessage.FIX_IDENTIFIER || tag == FixMessage.CHECKSUM_IDENTIFIER
+                    || tag == FixMessage.MSG_TYPE_IDENTIFIER) {
+                continue;
+            }
+            try {
+                if (tag == FixMessage.MSG_SEQ_NUM_IDENTIFIER) {
+                    binary.putSeqNum(text.getIntAt(i));
+                    continue;
+                }
+                switch (FixBinaryEncoder.wireTypeOf(tag)) {
+                    case FixBinaryEncoder.VARINT -> binary.putField(tag, text.getIntAt(i));
+                    case FixBinaryEncoder.PRICE -> binary.putPriceField(tag,
+                            Math.round(text.getDoubleAt(i) * FixBinaryEncoder.PRICE_SCALE));
+                    default -> binary.putField(tag, text.getBuffer(), text.getValueOffset(i), text.getValueLength(i));
+                }
+            } catch (FixMessageException e) {
+                binary.putField(tag, text.getBuffer(), text.getValueOffset(i), text.getValueLength(i));
+            }
+        }
+
+        return binary.finish();
+    }
+
+    /**
+     * Write @param binary into @param text as a checksummed `tag=value|' message, its MsgType first, and its
+     * MsgSeqNum, if any, with the fixed width of FixSeqNum
+     */
+    public static FixEncoder toText(final FixBinaryDecoder binary, final FixEncoder text) {
+        text.begin();
+        copyFields(binary, text);
+        return text.finish();
+    }
+
+    /**
+     * Write @param message, of either encoding, into @param text with a MsgSeqNum of the fixed width of FixSeqNum,
+     * 0 if it had none, for the message to be renumbered with setSeqNum
+     */
+    public static FixEncoder toSequencedText(final FixFields message, final FixEncoder text)
+            throws FixMessageException {
+        text.begin();
+        if (message.isBinary()) {
+            copyFields((FixBinaryDecoder) message, text);
+        } else {
+            for (int i = 0; i < message.getFieldCount(); ++i) {
+                final int tag = message.getTagAt(i);
+
+                if (tag != FixMessage.FIX_IDENTIFIER && tag != FixMessage.CHECKSUM_IDENTIFIER
+                        && tag != FixMessage.MSG_SEQ_NUM_IDENTIFIER) {
+                    text.putField(tag, message.getBuffer(), message.getValueOffset(i), message.getValueLength(i));
+                }
+            }
+        }
+
+        final int seqNum = message.indexOf(FixMessage.MSG_SEQ_NUM_IDENTIFIER);
+        if (!text.hasSeqNum()) {
+            text.putSeqNum(seqNum == -1 ? 0 : message.getIntAt(seqNum));
+        }
+        return text.finish();
+    }
+
+    private static void copyFields(final FixBinaryDecoder binary, final FixEncoder text) {
+        final int msgType = binary.indexOf(FixMessage.MSG_TYPE_IDENTIFIER);
+
+        if (msgType != -1) {
+            text.putField(FixMessage.MSG_TYPE_IDENTIFIER, binary.getBuffer(), binary.getValueOffset(msgType), 1);
+        }
+
+        for (int i = 0; i < binary.getFieldCount(); ++i) {
+            if (i == msgType) {
+                continue;
+            }
+            if (binary.getTagAt(i) == FixMessage.MSG_SEQ_NUM_IDENTIFIER) {
+                text.putSeqNum(binary.getLongAt(i));
+                continue;
+            }
+            switch (binary.getTypeAt(i)) {
+                case FixBinaryEncoder.VARINT -> text.putField(binary.getTagAt(i), binary.getLongAt(i));
+                case FixBinaryEncoder.PRICE -> text.putPriceField(binary.getTagAt(i), binary.getLongAt(i));
+                default -> text.putField(binary.getTagAt(i), binary.getBuffer(), binary.getValueOffset(i),
+                        binary.getValueLength(i));
+            }
+        }
+    }
+}
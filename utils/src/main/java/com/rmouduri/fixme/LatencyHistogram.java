@@ -0,0 +1,97 @@
+package com.rmouduri.fixme;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies in nanoseconds, with log-linear buckets: exact below 128, then 64 buckets per power of
+ * two, so any recorded value is known within 1/64 of it.
+ * Methods are synchronized so one thread can record while another reports.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 7;
+    private static final int HALF_SUB_COUNT = 1 << (SUB_BITS - 1);
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BITS) * HALF_SUB_COUNT + (1 << SUB_BITS);
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long count;
+    private long max;
+
+    private static int indexOf(final long value) {
+        final int shift = Math.max(0, Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BITS);
+
+        return shift * HALF_SUB_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @return The highest value counted in the bucket at @param index
+     */
+    private static long highestValueAt(final int index) {
+        final int shift = Math.max(0, index / HALF_SUB_COUNT - 1);
+        final long sub = index - (long) shift * HALF_SUB_COUNT;
+
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Count @param value nanoseconds, negative values counting as 0
+     */
+    public synchronized void record(final long value) {
+        final long latency = Math.max(0, value);
+
+        ++this.counts[indexOf(latency)];
+        ++this.count;
+        this.max = Math.max(this.max, latency);
+    }
+
+    /**
+     * Count @param value, and the values the requests that could not be sent while it was pending would have seen,
+     * had they been sent every @param expectedInterval nanoseconds
+     */
+    public synchronized void recordWithExpectedInterval(final long value, final long expectedInterval) {
+        this.record(value);
+        if (expectedInterval <= 0) {
+            return;
+        }
+        for (long missed = value - expectedInterval; missed >= expectedInterval; missed -= expectedInterval) {
+            this.record(missed);
+        }
+    }
+
+    /**
+     * @return The value under which @param percentile percent of the values fall, 0 if none was recorded
+     */
+    public synchronized long getValueAtPercentile(final double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+
+        final long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100.) / 100. * this.count));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    public synchronized long getCount() { return this.count; }
+
+    public synchronized long getMax() { return this.max; }
+
+    public synchronized void reset() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.max = 0;
+    }
+
+    /**
+     * @return The percentiles of the histogram, in microseconds
+     */
+    public synchronized String summary() {
+        return String.format("p50=%.1fus p99=%.1fus p99.9=%.1fus max=%.1fus", this.getValueAtPercentile(50) / 1e3,
+                this.getValueAtPercentile(99) / 1e3, this.getValueAtPercentile(99.9) / 1e3, this.max / 1e3);
+    }
+}
@@ -0,0 +1,214 @@
+package com.rmouduri.fixme;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Console logging off the calling threads: lines are formatted by the caller, put in a lock-free ring buffer,
+ * and written by a background thread in batches, warnings and errors to System.err and the rest to System.out.
+ * `fixme.log.level' selects the lowest level written (debug, info, warn, error or off, info by default),
+ * `fixme.log.buffer' the number of lines the ring holds, and `fixme.log.policy' what a caller does when it is
+ * full: `drop' the line (the default, counted and reported), or `block' until the writer makes room.
+ * Per-message lines are logged at debug level, guarded by isDebugEnabled() so they cost nothing when off.
+ */
+public final class Log {
+    public enum Level { DEBUG, INFO, WARN, ERROR, OFF }
+
+    private static final Level LEVEL = parseLevel(System.getProperty("fixme.log.level", "info"));
+    private static final boolean BLOCK = System.getProperty("fixme.log.policy", "drop").equalsIgnoreCase("block");
+    private static final int CAPACITY = Integer.highestOneBit(Math.max(2,
+            Integer.getInteger("fixme.log.buffer", 1 << 14) - 1)) << 1;
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    private static final int MAX_BATCH_LENGTH = 1 << 16;
+
+    private static final Log INSTANCE = new Log();
+
+    private final String[] lines = new String[CAPACITY];
+    private final boolean[] errors = new boolean[CAPACITY];
+    /* Position at which each slot can next be written, or position + 1 once its line is published */
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);
+    private final int mask = CAPACITY - 1;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    /* Writer side */
+    private long head;
+    private long reportedDropped;
+    private final StringBuilder out = new StringBuilder();
+    private final StringBuilder err = new StringBuilder();
+    private final Thread writer;
+    /* Set while the writer sleeps on an empty ring, for the next published line to wake it up */
+    private volatile boolean parked;
+    private volatile boolean closed;
+
+    private Log() {
+        for (int i = 0; i < CAPACITY; ++i) {
+            this.sequences.set(i, i);
+        }
+
+        this.writer = new Thread(this::write, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    public static boolean isDebugEnabled() { return LEVEL == Level.DEBUG; }
+
+    public static boolean isEnabled(final Level level) { return level.compareTo(LEVEL) >= 0; }
+
+    public static void debug(final String format, final Object... args) { log(Level.DEBUG, format, args); }
+
+    public static void info(final String format, final Object... args) { log(Level.INFO, format, args); }
+
+    public static void warn(final String format, final Object... args) { log(Level.WARN, format, args); }
+
+    public static void error(final String format, final Object... args) { log(Level.ERROR, format, args); }
+
+    /**
+     * Queue the line formatted from @param format and @param args if @param level is enabled
+     */
+    public static void log(final Level level, final String format, final Object... args) {
+        if (isEnabled(level) && level != Level.OFF) {
+            INSTANCE.offer(args.length == 0 ? format : String.format(format, args), level.compareTo(Level.WARN) >= 0);
+        }
+    }
+
+    /**
+     * @return The number of lines dropped because the ring was full
+     */
+    public static long getDropped() { return INSTANCE.dropped.get(); }
+
+    private void offer(final String line, final boolean error) {
+        long position;
+
+        while (true) {
+            position = this.tail.get();
+
+            final int index = (int) position & this.mask;
+            final long free = this.sequences.get(index) - position;
+
+            if (free == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    break;
+                }
+            } else if (free < 0) {
+                /* Full: the writer has not taken the line written a lap ago */
+                if (!BLOCK || this.closed) {
+                    this.dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.unpark(this.writer);
+                Thread.onSpinWait();
+            }
+        }
+
+        final int index = (int) position & this.mask;
+        this.lines[index] = line;
+        this.errors[index] = error;
+        this.sequences.set(index, position + 1);
+        if (this.parked) {
+            LockSupport.unpark(this.writer);
+        }
+    }
+
+    /**
+     * Writer thread: drain the ring in batches, and sleep whenever it is empty until a line is published.
+     * The writer tells it sleeps before checking the ring one last time, and a producer checks it after
+     * publishing, so a line is never left waiting.
+     */
+    private void write() {
+        while (true) {
+            final boolean closing = this.closed;
+
+            if (this.drain()) {
+                continue;
+            } else if (closing) {
+                return;
+            }
+
+            this.parked = true;
+            if (!this.isPublished() && !this.closed) {
+                LockSupport.park(this);
+            }
+            this.parked = false;
+        }
+    }
+
+    /**
+     * @return true if the next line for the writer is published
+     */
+    private boolean isPublished() {
+        return this.sequences.get((int) this.head & this.mask) == this.head + 1;
+    }
+
+    /**
+     * Write every published line
+     * @return false if there was none
+     */
+    private boolean drain() {
+        boolean drained = false;
+
+        while (true) {
+            final int index = (int) this.head & this.mask;
+
+            if (!this.isPublished()) {
+                break;
+            }
+
+            (this.errors[index] ? this.err : this.out).append(this.lines[index]).append('\n');
+            this.lines[index] = null;
+            this.sequences.set(index, this.head + CAPACITY);
+            ++this.head;
+            drained = true;
+
+            if (this.out.length() >= MAX_BATCH_LENGTH || this.err.length() >= MAX_BATCH_LENGTH) {
+                this.flush();
+            }
+        }
+
+        final long droppedNow = this.dropped.get();
+        if (droppedNow != this.reportedDropped) {
+            this.err.append(String.format("%d log lines dropped\n", droppedNow - this.reportedDropped));
+            this.reportedDropped = droppedNow;
+        }
+        this.flush();
+        return drained;
+    }
+
+    private void flush() {
+        flush(System.out, this.out);
+        flush(System.err, this.err);
+    }
+
+    private static void flush(final PrintStream stream, final StringBuilder batch) {
+        if (batch.length() > 0) {
+            stream.print(batch);
+            stream.flush();
+            batch.setLength(0);
+        }
+    }
+
+    /**
+     * Let the writer write what is left, then stop it
+     */
+    private void close() {
+        this.closed = true;
+        LockSupport.unpark(this.writer);
+        try {
+            this.writer.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Level parseLevel(final String name) {
+        try {
+            return Level.valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.printf("Unknown log level `%s', using info\n", name);
+            return Level.INFO;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.rmouduri.fixme;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * MsgSeqNums of one side of a session: the number of the next message it sends, the last number it processed
+ * from its peer, and the last messages it sent, kept to resend the ones the peer missed instead of everything.
+ * Only application messages are numbered: Logon, Logout, Heartbeat, TestRequest, ResendRequest and market data
+ * are not, and a SequenceReset carries the number of the first message it skips.
+ * Numbers never pass FixSeqNum.MAX: once it is used, the side sending resets its peer to 1 with a SequenceReset,
+ * see resetIfExhausted(). The messages held for resending take `fixme.sequence.held.bytes' bytes at most, 64 KiB
+ * by default, the oldest ones being dropped past it and gap filled if asked for again.
+ * A SessionSequence is not thread safe. A side numbering messages from several threads holds getLock() while
+ * numbering and writing each of them, so they are written in sequence order; the received side of the sequence
+ * is only used by the thread reading the peer.
+ */
+public final class SessionSequence {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final long MAX_HELD_BYTES = Long.getLong("fixme.sequence.held.bytes", 1 << 16);
+
+    /**
+     * What to do with a message received from the peer
+     */
+    public enum Status {
+        /* Next number, or a message without number, to process */
+        ACCEPTED,
+        /* Number already processed, e.g. resent twice: the message is dropped */
+        DUPLICATE,
+        /* Number after a gap: the message is dropped, and a ResendRequest from getExpectedSeqNum() sent */
+        GAP,
+        /* Number after a gap already asked for again: the message is dropped */
+        AHEAD,
+        /* ResendRequest of the peer, to answer with resend from its BeginSeqNo */
+        RESEND_REQUESTED,
+        /* SequenceReset of the peer, already applied */
+        RESET
+    }
+
+    /**
+     * Destination of the messages resent to the peer
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(final byte[] message, final int offset, final int length) throws IOException;
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final int capacity;
+    private long nextSeqNum = 1;
+    /* Last number processed from the peer, or -1 until known, the next number received then being adopted */
+    private volatile long lastReceived;
+    /* Expected number a ResendRequest was sent for, so a gap is only asked for once */
+    private long requestedFrom;
+
+    /* Ring of the last messages sent, by number modulo its length, from firstHeld to nextSeqNum excluded */
+    private long firstHeld = 1;
+    private long[] seqNums = new long[0];
+    private byte[][] messages = new byte[0][];
+    private int[] lengths = new int[0];
+    private boolean[] binaries = new boolean[0];
+    /* Bytes of the buffers of the ring */
+    private long heldBytes;
+
+    /**
+     * @param capacityParam Messages sent kept for resending, the older ones being skipped with a SequenceReset
+     */
+    public SessionSequence(final int capacityParam) {
+        this.capacity = Math.max(0, capacityParam);
+    }
+
+    /**
+     * @param capacityParam Messages sent kept for resending
+     * @param lastReceivedParam Last number the peer is known to have sent, or -1 to adopt its next one, as when
+     * a peer resumes a session this side has no record of
+     */
+    public SessionSequence(final int capacityParam, final long lastReceivedParam) {
+        this(capacityParam);
+        this.lastReceived = lastReceivedParam;
+    }
+
+    /**
+     * @return true if @param message is an application message, numbered by the side sending it
+     */
+    public static boolean isNumbered(final FixFields message) {
+        final int index = message.indexOf(FixMessage.MSG_TYPE_IDENTIFIER);
+
+        if (index == -1 || message.getValueLength(index) != 1) {
+            return true;
+        }
+
+        /* Market data and its requests, Logon, Logout, Heartbeat, TestRequest, ResendRequest and SequenceReset */
+        final byte msgType = message.getBuffer()[message.getValueOffset(index)];
+        return msgType != 'X' && msgType != 'V' && msgType != 'A' && msgType != '5' && msgType != '0'
+                && msgType != '1' && msgType != '2' && msgType != '4';
+    }
+
+    public ReentrantLock getLock() { return this.lock; }
+
+    /**
+     * @return The number of the next message sent, which must then be given to sent() once written
+     */
+    public long nextSeqNum() {
+        return this.nextSeqNum++;
+    }
+
+    /**
+     * Start numbering from 1 again once every number up to FixSeqNum.MAX is used, writing the SequenceReset from
+     * @param senderId to @param destId telling the peer so first, in the @param binary encoding.
+     * The messages held for resending are forgotten, as their numbers are used again.
+     * Called before numbering each message, holding getLock() when several threads number them.
+     * @return true if the sequence was reset
+     */
+    public boolean resetIfExhausted(final String senderId, final String destId, final boolean binary,
+            final Writer writer) throws IOException {
+        if (this.nextSeqNum <= FixSeqNum.MAX) {
+            return false;
+        }
+
+        this.sequenceReset(1, 1, false, senderId, destId, binary, writer);
+        this.nextSeqNum = 1;
+        this.firstHeld = 1;
+        this.seqNums = new long[0];
+        this.messages = new byte[0][];
+        this.lengths = new int[0];
+        this.binaries = new boolean[0];
+        this.heldBytes = 0;
+        return true;
+    }
+
+    /**
+     * Keep @param length bytes of @param message, numbered @param seqNum and of the @param binary encoding,
+     * for resending it, the oldest message kept being dropped once there are capacity of them or they take
+     * more than MAX_HELD_BYTES
+     */
+    public void sent(final long seqNum, final byte[] message, final int offset, final int length,
+            final boolean binary) {
+        if (this.capacity == 0) {
+            return;
+        }
+        if (seqNum - this.firstHeld >= this.messages.length) {
+            if (this.messages.length < this.capacity) {
+                this.grow(seqNum, Math.min(this.capacity, Math.max(INITIAL_CAPACITY, this.messages.length * 2)));
+            }
+            this.firstHeld = Math.max(this.firstHeld, seqNum - this.messages.length + 1);
+        }
+
+        final int slot = (int) (seqNum % this.messages.length);
+        final byte[] held = this.messages[slot];
+        if (held == null || held.length < length) {
+            this.heldBytes += length - (held == null ? 0 : held.length);
+            this.messages[slot] = new byte[length];
+        }
+        System.arraycopy(message, offset, this.messages[slot], 0, length);
+        this.seqNums[slot] = seqNum;
+        this.lengths[slot] = length;
+        this.binaries[slot] = binary;
+
+        while (this.heldBytes > MAX_HELD_BYTES && this.firstHeld < seqNum) {
+            final int oldest = (int) (this.firstHeld++ % this.messages.length);
+
+            if (this.messages[oldest] != null) {
+                this.heldBytes -= this.messages[oldest].length;
+                this.messages[oldest] = null;
+            }
+        }
+    }
+
+    /**
+     * Move the messages held before @param seqNum to a ring of @param newCapacity
+     */
+    private void grow(final long seqNum, final int newCapacity) {
+        final long[] newSeqNums = new long[newCapacity];
+        final byte[][] newMessages = new byte[newCapacity][];
+        final int[] newLengths = new int[newCapacity];
+        final boolean[] newBinaries = new boolean[newCapacity];
+        long newHeldBytes = 0;
+
+        for (long held = Math.max(this.firstHeld, seqNum - newCapacity + 1); held < seqNum; ++held) {
+            final int slot = this.slotOf(held);
+
+            if (slot != -1) {
+                final int newSlot = (int) (held % newCapacity);
+
+                newSeqNums[newSlot] = held;
+                newMessages[newSlot] = this.messages[slot];
+                newLengths[newSlot] = this.lengths[slot];
+                newBinaries[newSlot] = this.binaries[slot];
+                newHeldBytes += this.messages[slot].length;
+            }
+        }
+
+        this.seqNums = newSeqNums;
+        this.messages = newMessages;
+        this.lengths = newLengths;
+        this.binaries = newBinaries;
+        this.heldBytes = newHeldBytes;
+    }
+
+    /**
+     * @return The slot of the ring holding message @param seqNum, or -1 if it is not held
+     */
+    private int slotOf(final long seqNum) {
+        if (this.messages.length == 0 || seqNum < this.firstHeld || seqNum >= this.nextSeqNum) {
+            return -1;
+        }
+
+        final int slot = (int) (seqNum % this.messages.length);
+        return this.seqNums[slot] == seqNum ? slot : -1;
+    }
+
+    /**
+     * Check the MsgSeqNum of @param message received from the peer, and apply it if it is a SequenceReset
+     */
+    public Status receive(final FixFields message) throws FixMessageException {
+        if (message.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.SEQUENCE_RESET_MSG_TYPE)) {
+            this.reset(message);
+            return Status.RESET;
+        } else if (message.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.RESEND_REQUEST_MSG_TYPE)) {
+            return Status.RESEND_REQUESTED;
+        }
+
+        final int index = message.indexOf(FixMessage.MSG_SEQ_NUM_IDENTIFIER);
+        final long seqNum = index == -1 ? 0 : message.getIntAt(index);
+        final long last = this.lastReceived;
+
+        if (seqNum == 0) {
+            return Status.ACCEPTED;
+        } else if (last == -1 || seqNum == last + 1) {
+            this.lastReceived = seqNum;
+            return Status.ACCEPTED;
+        } else if (seqNum <= last) {
+            return Status.DUPLICATE;
+        } else if (this.requestedFrom == last + 1) {
+            return Status.AHEAD;
+        }
+        this.requestedFrom = last + 1;
+        return Status.GAP;
+    }
+
+    /**
+     * Move to the NewSeqNo of the SequenceReset @param message: a gap fill skips the messages the peer no longer
+     * has, when it starts at the expected number, and a reset is always applied
+     */
+    private void reset(final FixFields message) throws FixMessageException {
+        final long newSeqNum = message.getInt(FixMessage.NEW_SEQ_NO_IDENTIFIER);
+        final long last = this.lastReceived;
+
+        if (!message.valueEquals(FixMessage.GAP_FILL_IDENTIFIER, FixMessage.GAP_FILL)) {
+            this.lastReceived = newSeqNum - 1;
+        } else if (last != -1 && message.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER) <= last + 1
+                && newSeqNum - 1 > last) {
+            this.lastReceived = newSeqNum - 1;
+        }
+    }
+
+    /**
+     * Write the ResendRequest from @param senderId to @param destId asking again for the messages from the
+     * expected number on, in the @param binary encoding
+     */
+    public void requestResend(final String senderId, final String destId, final boolean binary,
+            final Writer writer) throws IOException {
+        final FixMessageEncoder encoder = binary ? new FixBinaryEncoder() : new FixEncoder();
+
+        encoder.begin(FixLayout.RESEND_REQUEST).putString(senderId).putString(destId)
+                .putLong(this.getExpectedSeqNum()).putLong(0).finish();
+        writer.write(encoder.getBuffer(), 0, encoder.getLength());
+    }
+
+    /**
+     * Write again the messages sent from @param fromSeqNum on, in the @param binary encoding the peer now uses,
+     * and a gap filling SequenceReset from @param senderId to @param destId in place of the ones no longer held
+     * @return The number of messages resent
+     */
+    public int resend(final long fromSeqNum, final String senderId, final String destId, final boolean binary,
+            final Writer writer) throws IOException {
+        long gapFrom = -1;
+        long seqNum = Math.max(1, fromSeqNum);
+        int resent = 0;
+
+        if (seqNum < this.firstHeld && seqNum < this.nextSeqNum) {
+            gapFrom = seqNum;
+            seqNum = Math.min(this.firstHeld, this.nextSeqNum);
+        }
+
+        for (; seqNum < this.nextSeqNum; ++seqNum) {
+            final int slot = this.slotOf(seqNum);
+
+            if (slot == -1) {
+                gapFrom = gapFrom == -1 ? seqNum : gapFrom;
+                continue;
+            }
+            if (gapFrom != -1) {
+                this.sequenceReset(gapFrom, seqNum, true, senderId, destId, binary, writer);
+                gapFrom = -1;
+            }
+            if (this.write(this.messages[slot], this.lengths[slot], this.binaries[slot], binary, writer)) {
+                ++resent;
+            } else {
+                gapFrom = seqNum;
+            }
+        }
+
+        if (gapFrom != -1) {
+            this.sequenceReset(gapFrom, this.nextSeqNum, true, senderId, destId, binary, writer);
+        }
+        return resent;
+    }
+
+    /**
+     * Resend the messages after @param lastProcessed, the last number the peer processed as told at Logon, or
+     * reset the peer to the next number if it processed numbers this side never sent, as when this side lost
+     * its sequence
+     * @return The number of messages resent
+     */
+    public int resume(final long lastProcessed, final String senderId, final String destId, final boolean binary,
+            final Writer writer) throws IOException {
+        if (lastProcessed >= this.nextSeqNum) {
+            this.sequenceReset(this.nextSeqNum, this.nextSeqNum, false, senderId, destId, binary, writer);
+            return 0;
+        }
+        return this.resend(lastProcessed + 1, senderId, destId, binary, writer);
+    }
+
+    /**
+     * Write @param length bytes of @param message, kept in the @param messageBinary encoding, in the @param binary
+     * one of the peer
+     * @return false if the message could not be translated
+     */
+    private boolean write(final byte[] message, final int length, final boolean messageBinary, final boolean binary,
+            final Writer writer) throws IOException {
+        try {
+            if (messageBinary == binary) {
+                writer.write(message, 0, length);
+            } else if (binary) {
+                final FixBinaryEncoder encoder = FixTranslator.toBinary(new FixDecoder().wrap(message, 0, length),
+                        new FixBinaryEncoder());
+
+                writer.write(encoder.getBuffer(), 0, encoder.getLength());
+            } else {
+                final FixEncoder encoder = FixTranslator.toText(new FixBinaryDecoder().wrap(message, 0, length),
+                        new FixEncoder());
+
+                writer.write(encoder.getBuffer(), 0, encoder.getLength());
+            }
+            return true;
+        } catch (FixMessageException e) {
+            return false;
+        }
+    }
+
+    private void sequenceReset(final long seqNum, final long newSeqNum, final boolean gapFill, final String senderId,
+            final String destId, final boolean binary, final Writer writer) throws IOException {
+        final FixMessageEncoder encoder = binary ? new FixBinaryEncoder() : new FixEncoder();
+
+        encoder.begin(FixLayout.SEQUENCE_RESET).putString(senderId).putString(destId)
+                .putString(gapFill ? FixMessage.GAP_FILL : FixMessage.RESET).putLong(newSeqNum).putSeqNum(seqNum)
+                .finish();
+        writer.write(encoder.getBuffer(), 0, encoder.getLength());
+    }
+
+    public long getNextSeqNum() { return this.nextSeqNum; }
+
+    /**
+     * @return The bytes taken by the messages held for resending
+     */
+    public long getHeldBytes() { return this.heldBytes; }
+
+    /**
+     * @return The last number processed from the peer, or -1 if it is not known yet
+     */
+    public long getLastReceived() { return this.lastReceived; }
+
+    public long getExpectedSeqNum() { return this.lastReceived + 1; }
+
+    @Override
+    public String toString() {
+        return String.format("next %d, last received %d, held from %d", this.nextSeqNum, this.lastReceived,
+                this.firstHeld);
+    }
+}
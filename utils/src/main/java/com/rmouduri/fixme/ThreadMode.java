@@ -0,0 +1,91 @@
+package com.rmouduri.fixme;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Threads running blocking session code: platform threads by default, or virtual threads when
+ * `fixme.threads' is `virtual' and the runtime is Java 21 or later.
+ * Virtual threads are reached through method handles, so the modules still compile for Java 18.
+ */
+public final class ThreadMode {
+    private static final int VIRTUAL_THREADS_VERSION = 21;
+
+    /* Thread.ofVirtual(), Thread.Builder.name(String), Thread.Builder.unstarted(Runnable)
+       and Executors.newVirtualThreadPerTaskExecutor(), null when platform threads are used */
+    private static final MethodHandle OF_VIRTUAL;
+    private static final MethodHandle NAME;
+    private static final MethodHandle UNSTARTED;
+    private static final MethodHandle NEW_VIRTUAL_EXECUTOR;
+
+    static {
+        MethodHandle ofVirtual = null;
+        MethodHandle name = null;
+        MethodHandle unstarted = null;
+        MethodHandle newVirtualExecutor = null;
+
+        if (System.getProperty("fixme.threads", "platform").equalsIgnoreCase("virtual")) {
+            if (Runtime.version().feature() < VIRTUAL_THREADS_VERSION) {
+                Log.warn("Virtual threads need Java %d, running on Java %d with platform threads",
+                        VIRTUAL_THREADS_VERSION, Runtime.version().feature());
+            } else {
+                try {
+                    final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                    final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+
+                    ofVirtual = lookup.findStatic(Thread.class, "ofVirtual",
+                            MethodType.methodType(Class.forName("java.lang.Thread$Builder$OfVirtual")));
+                    name = lookup.findVirtual(builder, "name", MethodType.methodType(builder, String.class));
+                    unstarted = lookup.findVirtual(builder, "unstarted",
+                            MethodType.methodType(Thread.class, Runnable.class));
+                    newVirtualExecutor = lookup.findStatic(Executors.class, "newVirtualThreadPerTaskExecutor",
+                            MethodType.methodType(ExecutorService.class));
+                } catch (ReflectiveOperationException e) {
+                    Log.warn("Virtual threads unavailable, using platform threads: %s", e);
+                    ofVirtual = null;
+                }
+            }
+        }
+
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        UNSTARTED = unstarted;
+        NEW_VIRTUAL_EXECUTOR = newVirtualExecutor;
+    }
+
+    private ThreadMode() {}
+
+    public static boolean isVirtual() { return OF_VIRTUAL != null; }
+
+    /**
+     * @return An unstarted thread named @param name running @param task, virtual when enabled.
+     * Unlike a platform thread, a virtual thread does not keep the JVM alive.
+     */
+    public static Thread newThread(final String name, final Runnable task) {
+        if (OF_VIRTUAL == null) {
+            return new Thread(task, name);
+        }
+        try {
+            return (Thread) UNSTARTED.invoke(NAME.invoke(OF_VIRTUAL.invoke(), name), task);
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual thread", e);
+        }
+    }
+
+    /**
+     * @return An executor starting a virtual thread per task when enabled, or a cached pool of platform threads
+     */
+    public static ExecutorService newExecutor() {
+        if (NEW_VIRTUAL_EXECUTOR == null) {
+            return Executors.newCachedThreadPool();
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_EXECUTOR.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Cannot create virtual thread executor", e);
+        }
+    }
+}
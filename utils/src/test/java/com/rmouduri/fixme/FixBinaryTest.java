@@ -0,0 +1,182 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Binary frames written by FixBinaryEncoder, read back by FixBinaryDecoder and translated to and from text
+ */
+class FixBinaryTest {
+    private static FixBinaryDecoder decode(final FixMessageEncoder encoder) throws FixMessageException {
+        return new FixBinaryDecoder().wrap(encoder.getBuffer(), 0, encoder.getLength());
+    }
+
+    private static byte[] copy(final FixMessageEncoder encoder) {
+        return Arrays.copyOf(encoder.getBuffer(), encoder.getLength());
+    }
+
+    private static FixEncoder order(final String quantity) {
+        final byte[] quantityBytes = quantity.getBytes(StandardCharsets.US_ASCII);
+
+        return new FixEncoder().begin()
+                .putField(FixMessage.MSG_TYPE_IDENTIFIER, new byte[] { 'D' }, 0, 1)
+                .putSeqNum(7)
+                .putField(FixMessage.SENDER_IDENTIFIER, "Broker000001".getBytes(StandardCharsets.US_ASCII), 0, 12)
+                .putField(FixMessage.ORDER_TYPE_IDENTIFIER, 1)
+                .putField(FixMessage.QUANTITY_IDENTIFIER, quantityBytes, 0, quantityBytes.length)
+                .putPriceField(FixMessage.PRICE_IDENTIFIER, 12_345_678)
+                .putField(FixMessage.CLORDID_IDENTIFIER, "Order-1".getBytes(StandardCharsets.US_ASCII), 0, 7)
+                .finish();
+    }
+
+    @Test
+    void decodesTheFieldsOfALayout() throws FixMessageException {
+        final FixBinaryEncoder encoder = new FixBinaryEncoder().begin(FixLayout.NEW_ORDER)
+                .putString("Broker000001").putInt(2).putString("Market000001").putString("AAPL")
+                .putInt(150).putPrice(187.25).putString("Order-1").putSeqNum(42).finish();
+        final FixBinaryDecoder decoder = decode(encoder);
+
+        assertEquals(encoder.getLength(), FixBinaryEncoder.getFrameLength(encoder.getBuffer(), 0));
+        assertEquals(-1, decoder.indexOf(FixMessage.MSG_TYPE_IDENTIFIER));
+        assertEquals(42, decoder.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertEquals("Broker000001", decoder.getString(FixMessage.SENDER_IDENTIFIER));
+        assertEquals(2, decoder.getInt(FixMessage.ORDER_TYPE_IDENTIFIER));
+        assertEquals("Market000001", decoder.getString(FixMessage.DEST_IDENTIFIER));
+        assertTrue(decoder.valueEquals(FixMessage.INSTRUMENT_IDENTIFIER, "AAPL"));
+        assertEquals(150, decoder.getInt(FixMessage.QUANTITY_IDENTIFIER));
+        assertEquals(187.25, decoder.getDouble(FixMessage.PRICE_IDENTIFIER));
+        assertEquals("187.250000", decoder.getString(FixMessage.PRICE_IDENTIFIER));
+        assertEquals("Order-1", decoder.getString(FixMessage.CLORDID_IDENTIFIER));
+        assertTrue(decoder.validateChecksum());
+    }
+
+    @Test
+    void keepsTheMsgTypeInTheHeader() throws FixMessageException {
+        final FixBinaryEncoder encoder = new FixBinaryEncoder().begin(FixLayout.REJECT)
+                .putString("Router").putString("Broker000001").putString("Unknown market")
+                .putSeqNum(3).finish();
+        final FixBinaryDecoder decoder = decode(encoder);
+
+        assertEquals(0, decoder.indexOf(FixMessage.MSG_TYPE_IDENTIFIER));
+        assertTrue(decoder.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.REJECTED_MSG_TYPE));
+        assertEquals("Unknown market", decoder.getString(FixMessage.TEXT_IDENTIFIER));
+    }
+
+    @Test
+    void varintsKeepTheirSignAndWidth() throws FixMessageException {
+        final long[] values = { 0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE };
+        final FixBinaryEncoder encoder = new FixBinaryEncoder().begin((byte) 0);
+
+        for (int i = 0; i < values.length; ++i) {
+            encoder.putField(1000 + i, values[i]);
+        }
+        encoder.putPriceField(FixMessage.PRICE_IDENTIFIER, -1_500_000).finish();
+
+        final FixBinaryDecoder decoder = decode(encoder);
+        assertEquals(values.length + 1, decoder.getFieldCount());
+        for (int i = 0; i < values.length; ++i) {
+            assertEquals(1000 + i, decoder.getTagAt(i));
+            assertEquals(FixBinaryEncoder.VARINT, decoder.getTypeAt(i));
+            assertEquals(values[i], decoder.getLongAt(i));
+        }
+        assertEquals("-1.500000", decoder.getString(FixMessage.PRICE_IDENTIFIER));
+        assertThrows(FixMessageException.class, () -> decoder.getIntAt(decoder.indexOf(1008)));
+    }
+
+    @Test
+    void renumbersInPlace() throws FixMessageException {
+        final FixBinaryEncoder encoder = new FixBinaryEncoder().begin(FixLayout.REJECT)
+                .putString("Router").putString("Broker000001").putString("Rejected")
+                .putSeqNum(1).finish();
+
+        encoder.setSeqNum(FixSeqNum.MAX);
+        final FixBinaryDecoder decoder = decode(encoder);
+        assertEquals(FixSeqNum.MAX, decoder.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+
+        decoder.setSeqNum(5);
+        assertEquals(5, decoder.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertEquals(5, decode(encoder).getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+
+        final FixBinaryEncoder unsequenced = new FixBinaryEncoder().begin(FixLayout.REJECT)
+                .putString("Router").putString("Broker000001").putString("Rejected").finish();
+        assertThrows(IllegalStateException.class, () -> unsequenced.setSeqNum(2));
+        assertEquals(-1, decode(unsequenced).indexOf(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+    }
+
+    @Test
+    void translatesTextToBinaryAndBack() throws FixMessageException {
+        final FixEncoder text = order("150");
+        final FixDecoder parsed = new FixDecoder().wrap(text.getBuffer(), 0, text.getLength());
+
+        final FixBinaryDecoder binary = decode(FixTranslator.toBinary(parsed, new FixBinaryEncoder()));
+        assertTrue(binary.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, "D"));
+        assertEquals(7, binary.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertEquals(FixBinaryEncoder.VARINT, binary.getTypeAt(binary.indexOf(FixMessage.QUANTITY_IDENTIFIER)));
+        assertEquals(150, binary.getInt(FixMessage.QUANTITY_IDENTIFIER));
+        assertEquals(FixBinaryEncoder.PRICE, binary.getTypeAt(binary.indexOf(FixMessage.PRICE_IDENTIFIER)));
+        assertEquals(12.345678, binary.getDouble(FixMessage.PRICE_IDENTIFIER));
+        assertEquals(-1, binary.indexOf(FixMessage.CHECKSUM_IDENTIFIER));
+
+        final FixEncoder back = FixTranslator.toText(binary, new FixEncoder());
+        assertArrayEquals(copy(text), copy(back));
+        assertTrue(FixChecksum.validate(back.getBuffer(), 0, back.getLength()));
+    }
+
+    @Test
+    void keepsUnparsableNumbersAsBytes() throws FixMessageException {
+        final FixEncoder text = order("lots");
+        final FixDecoder parsed = new FixDecoder().wrap(text.getBuffer(), 0, text.getLength());
+
+        final FixBinaryDecoder binary = decode(FixTranslator.toBinary(parsed, new FixBinaryEncoder()));
+        assertEquals(FixBinaryEncoder.BYTES, binary.getTypeAt(binary.indexOf(FixMessage.QUANTITY_IDENTIFIER)));
+        assertTrue(binary.valueEquals(FixMessage.QUANTITY_IDENTIFIER, "lots"));
+        assertThrows(FixMessageException.class, () -> binary.getInt(FixMessage.QUANTITY_IDENTIFIER));
+        assertArrayEquals(copy(text), copy(FixTranslator.toText(binary, new FixEncoder())));
+    }
+
+    @Test
+    void sequencedTextOfAnUnnumberedFrameCanBeRenumbered() throws FixMessageException {
+        final FixBinaryEncoder encoder = new FixBinaryEncoder().begin(FixLayout.REJECT)
+                .putString("Router").putString("Broker000001").putString("Rejected").finish();
+
+        final FixEncoder text = FixTranslator.toSequencedText(decode(encoder), new FixEncoder());
+        final FixDecoder parsed = new FixDecoder().wrap(text.getBuffer(), 0, text.getLength());
+        assertEquals(0, parsed.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertEquals(FixSeqNum.DIGITS, parsed.getValueLength(parsed.indexOf(FixMessage.MSG_SEQ_NUM_IDENTIFIER)));
+
+        text.setSeqNum(123);
+        final FixDecoder renumbered = new FixDecoder().wrap(text.getBuffer(), 0, text.getLength());
+        assertEquals(123, renumbered.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertTrue(renumbered.validateChecksum());
+    }
+
+    @Test
+    void rejectsInvalidFrames() {
+        final FixBinaryEncoder encoder = new FixBinaryEncoder().begin(FixLayout.REJECT)
+                .putString("Router").putString("Broker000001").putString("Rejected")
+                .putSeqNum(1).finish();
+        final byte[] frame = copy(encoder);
+        final FixBinaryDecoder decoder = new FixBinaryDecoder();
+
+        assertThrows(FixMessageException.class, () -> decoder.wrap(frame, 0, frame.length - 1));
+        assertThrows(FixMessageException.class, () -> decoder.wrap(frame, 0, FixBinaryEncoder.HEADER_LENGTH - 1));
+
+        final byte[] badMagic = frame.clone();
+        badMagic[FixBinaryEncoder.MAGIC_OFFSET] = 0;
+        assertThrows(FixMessageException.class, () -> decoder.wrap(badMagic, 0, badMagic.length));
+
+        final byte[] badVersion = frame.clone();
+        ++badVersion[FixBinaryEncoder.VERSION_OFFSET];
+        assertThrows(FixMessageException.class, () -> decoder.wrap(badVersion, 0, badVersion.length));
+
+        /* Length of the last value pointing past the end of the frame */
+        final byte[] truncated = Arrays.copyOf(frame, frame.length - 1);
+        --truncated[FixBinaryEncoder.LENGTH_PREFIX - 1];
+        assertThrows(FixMessageException.class, () -> decoder.wrap(truncated, 0, truncated.length));
+    }
+}
@@ -0,0 +1,184 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Word, vector and ByteBuffer sums against a byte by byte sum, across word and block boundaries, and validation
+ * of the checksum field
+ */
+class FixChecksumTest {
+    /* Past two blocks of 128 words, so runs end in a partial block after full ones */
+    private static final int MAX_LENGTH = 2 * 128 * Long.BYTES + 100;
+    private static final int MAX_OFFSET = Long.BYTES + 1;
+
+    private static int scalarSum(final byte[] buffer, final int offset, final int length) {
+        int sum = 0;
+
+        for (int i = offset; i < offset + length; ++i) {
+            sum += buffer[i] & 0xFF;
+        }
+        return sum & 0xFF;
+    }
+
+    private static byte[] randomBytes(final long seed) {
+        final byte[] bytes = new byte[MAX_OFFSET + MAX_LENGTH];
+
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] filled(final int value) {
+        final byte[] bytes = new byte[MAX_OFFSET + MAX_LENGTH];
+
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+
+    private static String withChecksum(final String body) {
+        return body + "10=" + String.format("%03d",
+                scalarSum(body.getBytes(StandardCharsets.US_ASCII), 0, body.length()));
+    }
+
+    private static ByteBuffer direct(final byte[] bytes) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+
+        buffer.put(bytes).clear();
+        return buffer;
+    }
+
+    private static void assertSumsMatch(final byte[] bytes) {
+        final ByteBuffer heap = ByteBuffer.wrap(bytes);
+        final ByteBuffer direct = direct(bytes);
+
+        for (int offset = 0; offset < MAX_OFFSET; ++offset) {
+            for (int length = 0; length <= MAX_LENGTH; ++length) {
+                final int expected = scalarSum(bytes, offset, length);
+                final String run = String.format("offset %d, length %d", offset, length);
+
+                assertEquals(expected, FixChecksum.sumWords(bytes, offset, length), run);
+                assertEquals(expected, FixChecksum.sum(bytes, offset, length), run);
+                assertEquals(expected, FixChecksum.sum(heap, offset, length), run);
+                assertEquals(expected, FixChecksum.sum(direct, offset, length), run);
+            }
+        }
+    }
+
+    @Test
+    void sumsMatchTheByteByByteSum() {
+        assertSumsMatch(randomBytes(42));
+    }
+
+    @Test
+    void sumsOfHighBytesDoNotOverflowTheirLanes() {
+        assertSumsMatch(filled(0xFF));
+        assertSumsMatch(filled(0x80));
+    }
+
+    @Test
+    void vectorSumMatchesTheByteByByteSum() {
+        assumeTrue(FixChecksum.isVectorized());
+
+        for (final byte[] bytes : new byte[][] { randomBytes(7), filled(0xFF) }) {
+            for (int offset = 0; offset < MAX_OFFSET; ++offset) {
+                for (int length = 0; length <= MAX_LENGTH; ++length) {
+                    assertEquals(scalarSum(bytes, offset, length), FixChecksumVector.sum(bytes, offset, length),
+                            String.format("offset %d, length %d", offset, length));
+                }
+            }
+        }
+    }
+
+    @Test
+    void byteBufferSumIgnoresItsPositionAndArrayOffset() {
+        final byte[] bytes = randomBytes(3);
+        final ByteBuffer slice = ByteBuffer.wrap(bytes, 5, 100).slice();
+        final ByteBuffer direct = direct(bytes).position(40);
+
+        assertEquals(scalarSum(bytes, 5, 100), FixChecksum.sum(slice, 0, 100));
+        assertEquals(scalarSum(bytes, 8, 60), FixChecksum.sum(slice, 3, 60));
+        assertEquals(scalarSum(bytes, 0, 70), FixChecksum.sum(direct, 0, 70));
+    }
+
+    @Test
+    void sumsTheEightBytesOfAWord() {
+        final Random random = new Random(11);
+        final byte[] bytes = new byte[Long.BYTES];
+
+        for (int i = 0; i < 10_000; ++i) {
+            final long word = i == 0 ? -1L : random.nextLong();
+            int expected = 0;
+
+            ByteBuffer.wrap(bytes).putLong(word);
+            for (final byte b : bytes) {
+                expected += b & 0xFF;
+            }
+            assertEquals(expected, FixChecksum.sumWord(word));
+        }
+    }
+
+    @Test
+    void validatesEveryInputType() {
+        final String message = withChecksum("8=FIX.4.2|35=D|49=Broker000001|56=Market000001|55=AAPL|38=150|44=12.5|");
+
+        for (final String wire : new String[] { message, message + "|" }) {
+            final byte[] bytes = wire.getBytes(StandardCharsets.US_ASCII);
+            final byte[] padded = new byte[bytes.length + 20];
+
+            System.arraycopy(bytes, 0, padded, 10, bytes.length);
+            assertTrue(FixChecksum.validate(wire));
+            assertTrue(FixChecksum.validate(bytes, 0, bytes.length));
+            assertTrue(FixChecksum.validate(padded, 10, bytes.length));
+            assertTrue(FixChecksum.validate(ByteBuffer.wrap(padded), 10, bytes.length));
+            assertTrue(FixChecksum.validate(ByteBuffer.wrap(padded, 10, bytes.length).slice(), 0, bytes.length));
+            assertTrue(FixChecksum.validate(direct(padded), 10, bytes.length));
+        }
+    }
+
+    @Test
+    void rejectsWrongAndMissingChecksums() {
+        final String valid = withChecksum("8=FIX.4.2|35=0|49=Router|");
+        final String checksum = valid.substring(valid.length() - 3);
+        final String wrong = valid.substring(0, valid.length() - 3)
+                + String.format("%03d", (Integer.parseInt(checksum) + 1) % 256);
+        final String[] invalid = {
+                wrong,
+                "8=FIX.4.2|35=0|49=Router|",
+                "8=FIX.4.2|35=0|49=Router|10=",
+                "8=FIX.4.2|35=0|49=Router|110=" + checksum,
+                "8=FIX.4.2|35=0|49=Router|10=0" + checksum,
+                ""
+        };
+
+        for (final String wire : invalid) {
+            final byte[] bytes = wire.getBytes(StandardCharsets.US_ASCII);
+
+            assertFalse(FixChecksum.validate(wire), wire);
+            assertFalse(FixChecksum.validate(bytes, 0, bytes.length), wire);
+            assertFalse(FixChecksum.validate(ByteBuffer.wrap(bytes), 0, bytes.length), wire);
+            assertFalse(FixChecksum.validate(direct(bytes), 0, bytes.length), wire);
+        }
+    }
+
+    @Test
+    void findsTheTrailerFromTheEnd() {
+        final String body = "8=FIX.4.2|35=3|58=bad 10=123|";
+        final byte[] bytes = withChecksum(body).getBytes(StandardCharsets.US_ASCII);
+
+        assertEquals(body.length(), FixChecksum.trailerOffset(bytes, 0, bytes.length));
+        assertTrue(FixChecksum.validate(bytes, 0, bytes.length));
+
+        final byte[] untrailed = body.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(-1, FixChecksum.trailerOffset(untrailed, 0, untrailed.length));
+
+        final byte[] bare = "10=042".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(0, FixChecksum.trailerOffset(bare, 0, bare.length));
+    }
+}
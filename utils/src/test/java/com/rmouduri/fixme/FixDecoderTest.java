@@ -0,0 +1,184 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Indexing of text messages in place, their values, and the checksum summed eight bytes at a time while indexing
+ */
+class FixDecoderTest {
+    private static final String ORDER = "8=FIX.4.2|35=D|49=Broker000001|56=Market000001|55=AAPL|54=1|38=150|"
+            + "44=187.25|58=Order-1|";
+
+    /**
+     * @return @param body followed by the checksum field of its bytes
+     */
+    private static byte[] withChecksum(final byte[] body) {
+        final ByteArrayOutputStream message = new ByteArrayOutputStream();
+        int sum = 0;
+
+        for (final byte b : body) {
+            sum += b & 0xFF;
+        }
+        message.writeBytes(body);
+        message.writeBytes(String.format("10=%03d", sum % 256).getBytes(StandardCharsets.US_ASCII));
+        return message.toByteArray();
+    }
+
+    private static byte[] withChecksum(final String body) {
+        return withChecksum(body.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static FixDecoder decode(final byte[] message) throws FixMessageException {
+        return new FixDecoder().wrap(message, 0, message.length);
+    }
+
+    @Test
+    void indexesEveryField() throws FixMessageException {
+        final FixDecoder decoder = decode(withChecksum(ORDER));
+
+        assertEquals(10, decoder.getFieldCount());
+        assertEquals(FixMessage.FIX_IDENTIFIER, decoder.getTagAt(0));
+        assertEquals(FixMessage.CHECKSUM_IDENTIFIER, decoder.getTagAt(9));
+        assertTrue(decoder.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, "D"));
+        assertEquals("Broker000001", decoder.getString(FixMessage.SENDER_IDENTIFIER));
+        assertEquals(1, decoder.getInt(FixMessage.ORDER_TYPE_IDENTIFIER));
+        assertEquals(150, decoder.getInt(FixMessage.QUANTITY_IDENTIFIER));
+        assertEquals(187.25, decoder.getDouble(FixMessage.PRICE_IDENTIFIER));
+        assertTrue(decoder.valueContains(FixMessage.TEXT_IDENTIFIER, "der-"));
+        assertFalse(decoder.valueEquals(FixMessage.TEXT_IDENTIFIER, "Order"));
+        assertEquals(-1, decoder.indexOf(FixMessage.USERID_IDENTIFIER));
+        assertEquals("none", decoder.getString(FixMessage.USERID_IDENTIFIER, "none"));
+        assertThrows(FixMessageException.class, () -> decoder.getString(FixMessage.USERID_IDENTIFIER));
+        assertTrue(decoder.validateChecksum());
+    }
+
+    @Test
+    void indexesAMessageWithinALargerBuffer() throws FixMessageException {
+        final byte[] message = withChecksum(ORDER);
+        final byte[] buffer = new byte[message.length + 13];
+
+        System.arraycopy(message, 0, buffer, 5, message.length);
+        final FixDecoder decoder = new FixDecoder().wrap(buffer, 5, message.length);
+        assertEquals("AAPL", decoder.getString(FixMessage.INSTRUMENT_IDENTIFIER));
+        assertTrue(decoder.validateChecksum());
+
+        final FixDecoder copied = new FixDecoder().wrap(new String(message, StandardCharsets.US_ASCII));
+        assertEquals("Market000001", copied.getString(FixMessage.DEST_IDENTIFIER));
+        assertTrue(copied.validateChecksum());
+    }
+
+    @Test
+    void sumsValuesOfEveryLengthAcrossWords() throws FixMessageException {
+        final StringBuilder value = new StringBuilder();
+
+        for (int length = 0; length <= 4 * Long.BYTES + 1; ++length) {
+            for (int shift = 0; shift < Long.BYTES; ++shift) {
+                final String body = "8=FIX.4.2|100=" + "x".repeat(shift) + "|58=" + value + "|55=AAPL|";
+                final FixDecoder decoder = decode(withChecksum(body));
+
+                assertEquals(value.toString(), decoder.getString(FixMessage.TEXT_IDENTIFIER), body);
+                assertEquals("AAPL", decoder.getString(FixMessage.INSTRUMENT_IDENTIFIER), body);
+                assertTrue(decoder.validateChecksum(), body);
+            }
+            value.append((char) ('a' + length % 26));
+        }
+    }
+
+    @Test
+    void sumsBytesPastAscii() throws FixMessageException {
+        final byte[] body = "8=FIX.4.2|58=................|55=AAPL|".getBytes(StandardCharsets.US_ASCII);
+
+        for (int i = 13; i < 29; ++i) {
+            body[i] = (byte) (0x80 | i * 7);
+        }
+        final FixDecoder decoder = decode(withChecksum(body));
+        assertEquals(16, decoder.getValueLength(decoder.indexOf(FixMessage.TEXT_IDENTIFIER)));
+        assertTrue(decoder.validateChecksum());
+    }
+
+    @Test
+    void detectsAWrongChecksum() throws FixMessageException {
+        final byte[] message = withChecksum(ORDER);
+
+        message[ORDER.indexOf("AAPL")] = 'B';
+        assertFalse(decode(message).validateChecksum());
+        assertFalse(decode(ORDER.getBytes(StandardCharsets.US_ASCII)).validateChecksum());
+    }
+
+    @Test
+    void routingIndexesTheOtherFieldsWhenAskedFor() throws FixMessageException {
+        final String routed = ORDER.replace("Order-1", "routed without being read ".repeat(10)) + "34=000000007|";
+        final byte[] message = withChecksum(routed);
+        final FixDecoder decoder = new FixDecoder().wrapRouting(message, 0, message.length);
+
+        assertEquals("Market000001", decoder.getString(FixMessage.DEST_IDENTIFIER));
+        assertEquals(7, decoder.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertTrue(decoder.validateChecksum());
+
+        /* Counting the fields indexes them all */
+        assertEquals(150, decoder.getInt(FixMessage.QUANTITY_IDENTIFIER));
+        assertEquals(11, decoder.getFieldCount());
+        assertEquals(FixMessage.FIX_IDENTIFIER, decoder.getTagAt(0));
+        assertTrue(decoder.valueContains(FixMessage.TEXT_IDENTIFIER, "without"));
+        assertTrue(decoder.validateChecksum());
+    }
+
+    @Test
+    void parsesNumbers() throws FixMessageException {
+        final FixDecoder decoder = decode(withChecksum("8=FIX.4.2|1=-42|2=2147483647|3=-2147483648|4=2147483648|"
+                + "5=12a|6=|7=-0.5|9=3|11=1e3|12=12345678901234567890.5|13=0.1|14=.|15=abc|"
+                + "16=0.00000000000000000000001|17=-0.0000000000000000000000000000000000000000000000000125|"));
+
+        assertEquals(-42, decoder.getInt(1));
+        assertEquals(Integer.MAX_VALUE, decoder.getInt(2));
+        assertEquals(Integer.MIN_VALUE, decoder.getInt(3));
+        assertThrows(FixMessageException.class, () -> decoder.getInt(4));
+        assertThrows(FixMessageException.class, () -> decoder.getInt(5));
+        assertThrows(FixMessageException.class, () -> decoder.getInt(6));
+
+        assertEquals(-0.5, decoder.getDouble(7));
+        assertEquals(3.0, decoder.getDouble(9));
+        assertEquals(1e3, decoder.getDouble(11));
+        assertEquals(12345678901234567890.5, decoder.getDouble(12));
+        assertEquals(0.1, decoder.getDouble(13));
+        assertThrows(FixMessageException.class, () -> decoder.getDouble(14));
+        assertThrows(FixMessageException.class, () -> decoder.getDouble(15));
+        assertEquals(1e-23, decoder.getDouble(16));
+        assertEquals(-1.25e-50, decoder.getDouble(17));
+    }
+
+    @Test
+    void renumbersInPlaceKeepingTheChecksumValid() throws FixMessageException {
+        final byte[] message = withChecksum(ORDER + "34=000000007|");
+        final FixDecoder decoder = decode(message);
+
+        assertTrue(decoder.setSeqNum(123_456));
+        assertEquals(123_456, decoder.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertTrue(decoder.validateChecksum());
+
+        final FixDecoder reread = decode(message);
+        assertEquals(123_456, reread.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertTrue(reread.validateChecksum());
+        assertTrue(FixChecksum.validate(message, 0, message.length));
+
+        assertFalse(decode(withChecksum("8=FIX.4.2|35=D|34=7|")).setSeqNum(8));
+        assertFalse(decode(withChecksum("8=FIX.4.2|35=D|")).setSeqNum(8));
+    }
+
+    @Test
+    void rejectsMalformedFields() {
+        final FixDecoder decoder = new FixDecoder();
+
+        for (final String message : new String[] { "8=FIX.4.2|ab=1|", "8=FIX.4.2|=1|", "8=FIX.4.2|35",
+                "8=FIX.4.2|1234567=1|" }) {
+            final byte[] bytes = message.getBytes(StandardCharsets.US_ASCII);
+
+            assertThrows(FixMessageException.class, () -> decoder.wrap(bytes, 0, bytes.length), message);
+        }
+    }
+}
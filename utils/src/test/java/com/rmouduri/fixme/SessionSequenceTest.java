@@ -0,0 +1,249 @@
+package com.rmouduri.fixme;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Numbering, gap detection, SequenceReset handling and resending of a session's messages
+ */
+class SessionSequenceTest {
+    private static final String SENDER = "Router";
+    private static final String DEST = "Broker000001";
+
+    /* Messages written to the peer, copied as they are written */
+    private final List<byte[]> written = new ArrayList<>();
+
+    private void write(final byte[] message, final int offset, final int length) {
+        this.written.add(Arrays.copyOfRange(message, offset, offset + length));
+    }
+
+    private static byte[] message(final long seqNum, final String text) {
+        final FixEncoder encoder = new FixEncoder().begin(FixLayout.REJECT)
+                .putString(SENDER).putString(DEST).putString(text).putSeqNum(seqNum).finish();
+
+        return Arrays.copyOf(encoder.getBuffer(), encoder.getLength());
+    }
+
+    private static FixDecoder decode(final byte[] message) throws FixMessageException {
+        return new FixDecoder().wrap(message, 0, message.length);
+    }
+
+    private static FixDecoder sequenceReset(final long seqNum, final long newSeqNum, final boolean gapFill)
+            throws FixMessageException {
+        final FixEncoder encoder = new FixEncoder().begin(FixLayout.SEQUENCE_RESET).putString(SENDER).putString(DEST)
+                .putString(gapFill ? FixMessage.GAP_FILL : FixMessage.RESET).putLong(newSeqNum).putSeqNum(seqNum)
+                .finish();
+
+        return new FixDecoder().wrap(Arrays.copyOf(encoder.getBuffer(), encoder.getLength()), 0,
+                encoder.getLength());
+    }
+
+    /**
+     * Number and send @param count messages of @param text
+     */
+    private static void send(final SessionSequence sequence, final int count, final String text) {
+        for (int i = 0; i < count; ++i) {
+            final long seqNum = sequence.nextSeqNum();
+            final byte[] message = message(seqNum, text);
+
+            sequence.sent(seqNum, message, 0, message.length, false);
+        }
+    }
+
+    private static void assertSequenceReset(final byte[] message, final long seqNum, final long newSeqNum,
+            final boolean gapFill) throws FixMessageException {
+        final FixDecoder decoder = decode(message);
+
+        assertTrue(decoder.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.SEQUENCE_RESET_MSG_TYPE));
+        assertEquals(seqNum, decoder.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        assertEquals(newSeqNum, decoder.getInt(FixMessage.NEW_SEQ_NO_IDENTIFIER));
+        assertTrue(decoder.valueEquals(FixMessage.GAP_FILL_IDENTIFIER, gapFill ? FixMessage.GAP_FILL
+                : FixMessage.RESET));
+        assertTrue(decoder.validateChecksum());
+    }
+
+    @Test
+    void numbersFromOne() {
+        final SessionSequence sequence = new SessionSequence(16);
+
+        assertEquals(1, sequence.nextSeqNum());
+        assertEquals(2, sequence.nextSeqNum());
+        assertEquals(3, sequence.getNextSeqNum());
+    }
+
+    @Test
+    void detectsDuplicatesAndGaps() throws FixMessageException, IOException {
+        final SessionSequence sequence = new SessionSequence(16);
+
+        assertEquals(SessionSequence.Status.ACCEPTED, sequence.receive(decode(message(1, "a"))));
+        assertEquals(SessionSequence.Status.ACCEPTED, sequence.receive(decode(message(2, "b"))));
+        assertEquals(SessionSequence.Status.DUPLICATE, sequence.receive(decode(message(2, "b"))));
+        assertEquals(SessionSequence.Status.GAP, sequence.receive(decode(message(5, "e"))));
+        assertEquals(SessionSequence.Status.AHEAD, sequence.receive(decode(message(6, "f"))));
+        assertEquals(3, sequence.getExpectedSeqNum());
+
+        sequence.requestResend(SENDER, DEST, false, this::write);
+        final FixDecoder request = decode(this.written.get(0));
+        assertTrue(request.valueEquals(FixMessage.MSG_TYPE_IDENTIFIER, FixMessage.RESEND_REQUEST_MSG_TYPE));
+        assertEquals(3, request.getInt(FixMessage.BEGIN_SEQ_NO_IDENTIFIER));
+        assertEquals(0, request.getInt(FixMessage.END_SEQ_NO_IDENTIFIER));
+        assertEquals(SessionSequence.Status.RESEND_REQUESTED, sequence.receive(request));
+
+        for (int seqNum = 3; seqNum <= 6; ++seqNum) {
+            assertEquals(SessionSequence.Status.ACCEPTED, sequence.receive(decode(message(seqNum, "c"))));
+        }
+        assertEquals(6, sequence.getLastReceived());
+    }
+
+    @Test
+    void acceptsUnnumberedMessages() throws FixMessageException {
+        final SessionSequence sequence = new SessionSequence(16);
+        final FixEncoder heartbeat = new FixEncoder().begin(FixLayout.REJECT)
+                .putString(SENDER).putString(DEST).putString("unnumbered").finish();
+
+        assertEquals(SessionSequence.Status.ACCEPTED,
+                sequence.receive(new FixDecoder().wrap(heartbeat.getBuffer(), 0, heartbeat.getLength())));
+        assertEquals(0, sequence.getLastReceived());
+    }
+
+    @Test
+    void adoptsTheNumberOfAPeerItHasNoRecordOf() throws FixMessageException {
+        final SessionSequence sequence = new SessionSequence(16, -1);
+
+        assertEquals(SessionSequence.Status.ACCEPTED, sequence.receive(decode(message(40, "a"))));
+        assertEquals(40, sequence.getLastReceived());
+        assertEquals(SessionSequence.Status.GAP, sequence.receive(decode(message(42, "c"))));
+    }
+
+    @Test
+    void appliesSequenceResets() throws FixMessageException {
+        final SessionSequence sequence = new SessionSequence(16);
+
+        sequence.receive(decode(message(1, "a")));
+        sequence.receive(decode(message(2, "b")));
+
+        /* Gap fill starting after the expected number: the messages in between are still to come */
+        assertEquals(SessionSequence.Status.RESET, sequence.receive(sequenceReset(5, 8, true)));
+        assertEquals(2, sequence.getLastReceived());
+
+        assertEquals(SessionSequence.Status.RESET, sequence.receive(sequenceReset(3, 8, true)));
+        assertEquals(7, sequence.getLastReceived());
+
+        /* Gap fill of numbers already processed */
+        sequence.receive(sequenceReset(4, 6, true));
+        assertEquals(7, sequence.getLastReceived());
+
+        /* A reset is applied even backwards */
+        sequence.receive(sequenceReset(1, 1, false));
+        assertEquals(0, sequence.getLastReceived());
+        assertEquals(SessionSequence.Status.ACCEPTED, sequence.receive(decode(message(1, "a"))));
+    }
+
+    @Test
+    void resendsHeldMessagesAndGapFillsTheOthers() throws FixMessageException, IOException {
+        final SessionSequence sequence = new SessionSequence(4);
+
+        send(sequence, 6, "resent");
+        assertEquals(4, sequence.resend(1, SENDER, DEST, false, this::write));
+
+        assertEquals(5, this.written.size());
+        assertSequenceReset(this.written.get(0), 1, 3, true);
+        for (int i = 1; i < 5; ++i) {
+            assertEquals(i + 2, decode(this.written.get(i)).getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+        }
+
+        this.written.clear();
+        assertEquals(2, sequence.resend(5, SENDER, DEST, false, this::write));
+        assertEquals(2, this.written.size());
+        assertArrayEquals(message(5, "resent"), this.written.get(0));
+
+        this.written.clear();
+        assertEquals(0, sequence.resend(7, SENDER, DEST, false, this::write));
+        assertTrue(this.written.isEmpty());
+    }
+
+    @Test
+    void gapFillsEverythingWithoutCapacity() throws FixMessageException, IOException {
+        final SessionSequence sequence = new SessionSequence(0);
+
+        send(sequence, 3, "dropped");
+        assertEquals(0, sequence.resend(2, SENDER, DEST, false, this::write));
+        assertEquals(1, this.written.size());
+        assertSequenceReset(this.written.get(0), 2, 4, true);
+    }
+
+    @Test
+    void resendsInTheEncodingOfThePeer() throws FixMessageException, IOException {
+        final SessionSequence sequence = new SessionSequence(16);
+
+        send(sequence, 2, "translated");
+        assertEquals(2, sequence.resend(1, SENDER, DEST, true, this::write));
+
+        for (int i = 0; i < 2; ++i) {
+            final byte[] frame = this.written.get(i);
+            final FixBinaryDecoder decoder = new FixBinaryDecoder().wrap(frame, 0, frame.length);
+
+            assertEquals(i + 1, decoder.getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+            assertEquals("translated", decoder.getString(FixMessage.TEXT_IDENTIFIER));
+        }
+    }
+
+    @Test
+    void resumesAfterTheLastNumberProcessedByThePeer() throws FixMessageException, IOException {
+        final SessionSequence sequence = new SessionSequence(16);
+
+        send(sequence, 3, "resumed");
+        assertEquals(1, sequence.resume(2, SENDER, DEST, false, this::write));
+        assertArrayEquals(message(3, "resumed"), this.written.get(0));
+
+        this.written.clear();
+        assertEquals(0, sequence.resume(3, SENDER, DEST, false, this::write));
+        assertTrue(this.written.isEmpty());
+
+        /* The peer processed numbers this side never sent */
+        assertEquals(0, sequence.resume(10, SENDER, DEST, false, this::write));
+        assertSequenceReset(this.written.get(0), 4, 4, false);
+    }
+
+    @Test
+    void capsTheBytesHeld() throws FixMessageException, IOException {
+        final SessionSequence sequence = new SessionSequence(1000);
+        final int count = 200;
+
+        send(sequence, count, "x".repeat(1000));
+        assertTrue(sequence.getHeldBytes() > 0);
+        assertTrue(sequence.getHeldBytes() <= 1 << 16, "Held " + sequence.getHeldBytes() + " bytes");
+
+        final int resent = sequence.resend(1, SENDER, DEST, false, this::write);
+        assertTrue(resent > 0 && resent < count);
+        assertSequenceReset(this.written.get(0), 1, count - resent + 1, true);
+        assertEquals(count, decode(this.written.get(this.written.size() - 1))
+                .getInt(FixMessage.MSG_SEQ_NUM_IDENTIFIER));
+    }
+
+    @Test
+    void resetsThePeerOnceEveryNumberIsUsed() throws FixMessageException, IOException {
+        final SessionSequence sequence = new SessionSequence(16);
+
+        while (sequence.getNextSeqNum() < FixSeqNum.MAX) {
+            sequence.nextSeqNum();
+        }
+        assertFalse(sequence.resetIfExhausted(SENDER, DEST, false, this::write));
+        assertTrue(this.written.isEmpty());
+        send(sequence, 1, "last");
+        assertEquals(1, sequence.resend(FixSeqNum.MAX, SENDER, DEST, false, this::write));
+
+        this.written.clear();
+        assertTrue(sequence.resetIfExhausted(SENDER, DEST, false, this::write));
+        assertSequenceReset(this.written.get(0), 1, 1, false);
+        assertEquals(0, sequence.getHeldBytes());
+        assertEquals(1, sequence.nextSeqNum());
+        assertFalse(sequence.resetIfExhausted(SENDER, DEST, false, this::write));
+    }
+}